@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.optimizer.PassManager;
+import com.github.rharri.wabbitj.tokenizer.LineIndex;
+import com.github.rharri.wabbitj.tokenizer.MappedSource;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import com.github.rharri.wabbitj.vm.Artifact;
+import com.github.rharri.wabbitj.vm.BytecodeCompiler;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+
+@CommandLine.Command(name = "build", mixinStandardHelpOptions = true,
+        description = "Compile a Wabbit file into a " + Artifact.EXTENSION + " artifact of bytecode, which the run"
+                + " command executes without the source.")
+public class BuildCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(index = "0", description = "The Wabbit file to build.")
+    private File file;
+
+    @CommandLine.Option(names = {"-o", "--output"}, paramLabel = "<file>",
+            description = "The artifact to write (default: the file name with the " + Artifact.EXTENSION
+                    + " extension).")
+    private @Nullable Path output;
+
+    @CommandLine.Option(names = "--strip",
+            description = "Leave out the line table, so that a division by zero is reported without its line.")
+    private boolean strip;
+
+    @Override
+    public Integer call() {
+        if (!file.exists()) {
+            System.out.printf("%s does not exist.%n", file.toPath());
+            return 1;
+        }
+
+        Path written = output != null
+                ? output
+                : Path.of(file.getPath().replaceFirst("(\\.wb)?$", Matcher.quoteReplacement(Artifact.EXTENSION)));
+        try {
+            MappedSource source = MappedSource.map(file.toPath());
+            var lines = new LineIndex();
+            Program program = new Parser(new Tokenizer(source, lines)).parse();
+            var typeChecker = new TypeChecker(file.getName(), source, lines);
+            program.accept(typeChecker);
+
+            if (!typeChecker.getDiagnostics().isEmpty()) {
+                for (String error : typeChecker.getErrors())
+                    System.out.println(error);
+                return 1;
+            }
+
+            // The arithmetic on constants is done once, here, rather than on every run
+            program = PassManager.standard().run(program).program();
+            typeChecker = new TypeChecker(file.getName(), source);
+            program.accept(typeChecker);
+
+            Artifact.write(BytecodeCompiler.compile(program, typeChecker), !strip, written);
+            System.out.printf("Wrote %s%n", written);
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("File cannot be read.");
+            return 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BuildCommand{" +
+                "file=" + file +
+                ", output=" + output +
+                '}';
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.c.CGenerator;
+import com.github.rharri.wabbitj.jvm.JvmCompiler;
+import com.github.rharri.wabbitj.jvm.ProgramJar;
+import com.github.rharri.wabbitj.llvm.LlvmGenerator;
+import com.github.rharri.wabbitj.optimizer.PassManager;
+import com.github.rharri.wabbitj.tokenizer.LineIndex;
+import com.github.rharri.wabbitj.tokenizer.MappedSource;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+
+@CommandLine.Command(name = "compile", mixinStandardHelpOptions = true,
+        description = "Compile a Wabbit file ahead of time into a runnable jar that does not need the compiler, or into"
+                + " C source or LLVM IR for a native build.")
+public class CompileCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(index = "0", description = "The Wabbit file to compile.")
+    private File file;
+
+    @CommandLine.Option(names = "--target", paramLabel = "<target>",
+            description = "What to write: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private Target target = Target.JAR;
+
+    enum Target {
+        // A runnable jar holding a JVM class and the runtime
+        JAR(".jar"),
+        // C99 source for a local C compiler
+        C(".c"),
+        // An LLVM IR module for clang, linked with the C runtime that is written beside it
+        LLVM(".ll");
+
+        private final String extension;
+
+        Target(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    @CommandLine.Option(names = {"-o", "--output"}, paramLabel = "<file>",
+            description = "The file to write (default: the file name with the target's extension).")
+    private @Nullable Path output;
+
+    @CommandLine.Option(names = "--runs", paramLabel = "<runs>",
+            description = "Times to run the file and the jar, to compare the latency of a run; 0 to skip. Only the jar"
+                    + " target is run (default: ${DEFAULT-VALUE}).")
+    private int runs = 5;
+
+    @Override
+    public Integer call() {
+        if (!file.exists()) {
+            System.out.printf("%s does not exist.%n", file.toPath());
+            return 1;
+        }
+
+        if (runs < 0) {
+            System.out.println("runs must be >= 0.");
+            return 1;
+        }
+
+        Path written = output != null
+                ? output
+                : Path.of(file.getPath().replaceFirst("(\\.wb)?$", Matcher.quoteReplacement(target.extension)));
+        try {
+            MappedSource source = MappedSource.map(file.toPath());
+            var lines = new LineIndex();
+            Program program = new Parser(new Tokenizer(source, lines)).parse();
+            var typeChecker = new TypeChecker(file.getName(), source, lines);
+            program.accept(typeChecker);
+
+            if (!typeChecker.getDiagnostics().isEmpty()) {
+                for (String error : typeChecker.getErrors())
+                    System.out.println(error);
+                return 1;
+            }
+
+            // All of the arithmetic is done now; the jar only prints the results
+            program = PassManager.standard().run(program).program();
+            typeChecker = new TypeChecker(file.getName(), source);
+            program.accept(typeChecker);
+
+            if (target == Target.C) {
+                Files.writeString(written, CGenerator.generate(program, typeChecker));
+                System.out.printf("Wrote %s%n", written);
+                return 0;
+            }
+
+            if (target == Target.LLVM) {
+                Files.writeString(written, LlvmGenerator.generate(program, typeChecker, file.getName()));
+                Path runtime = written.resolveSibling(LlvmGenerator.RUNTIME_FILE_NAME);
+                Files.writeString(runtime, LlvmGenerator.runtime());
+                System.out.printf("Wrote %s and %s%n", written, runtime);
+                return 0;
+            }
+
+            Optional<byte[]> classFile = JvmCompiler.emit(program, typeChecker);
+            if (classFile.isEmpty()) {
+                System.out.printf("%s is too large to compile.%n", file.toPath());
+                return 1;
+            }
+            ProgramJar.write(classFile.get(), written);
+            System.out.printf("Wrote %s%n", written);
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("File cannot be read.");
+            return 1;
+        }
+
+        if (runs > 0)
+            compareLatency(written);
+        return 0;
+    }
+
+    // Runs the file through the compiler and the jar in new JVMs, as each would be run in production
+    private void compareLatency(Path jar) {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> interpreted = List.of(java, "-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                file.getPath());
+        List<String> compiled = List.of(java, "-jar", jar.toString());
+
+        // Both are run once first, so that neither pays for filling the file cache
+        run(interpreted);
+        run(compiled);
+
+        long[] interpretedNanos = new long[runs];
+        long[] compiledNanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            interpretedNanos[i] = run(interpreted);
+            compiledNanos[i] = run(compiled);
+        }
+
+        double interpretedMillis = medianMillis(interpretedNanos);
+        double compiledMillis = medianMillis(compiledNanos);
+        System.out.printf("wabbitj %s: %.1f ms (median of %d runs)%n", file.getName(), interpretedMillis, runs);
+        System.out.printf("java -jar %s: %.1f ms (median of %d runs)%n", jar.getFileName(), compiledMillis, runs);
+        System.out.printf("Saved per run: %.1f ms%n", interpretedMillis - compiledMillis);
+    }
+
+    private static long run(List<String> command) {
+        try {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            // A valid program can still fail when it runs, such as with a division by zero, which both ways of running
+            // it do alike, so the run is measured whatever its exit status
+            process.waitFor();
+            return System.nanoTime() - start;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while measuring.", e);
+        }
+    }
+
+    private static double medianMillis(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        long median = sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+        return median / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "CompileCommand{" +
+                "file=" + file +
+                ", output=" + output +
+                '}';
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.Operator;
+import com.github.rharri.wabbitj.interpreter.WabbitType;
+
+import java.util.List;
+import java.util.Objects;
+
+// A problem found in a program, kept as data so that it can be rendered for people or serialized for tools. The
+// offset is the byte offset of the offending token in the source, alongside its 1-based line and column.
+public record Diagnostic(String code, String message, String filename, int line, int column, long offset,
+                         Operator operator, List<WabbitType> operandTypes) {
+
+    public static final String UNSUPPORTED_OPERAND_TYPES = "WB001";
+
+    public Diagnostic {
+        Objects.requireNonNull(code);
+        Objects.requireNonNull(message);
+        Objects.requireNonNull(filename);
+        Objects.requireNonNull(operator);
+
+        if (line <= 0)
+            throw new IllegalArgumentException("line must be >= 1.");
+
+        if (column <= 0)
+            throw new IllegalArgumentException("column must be >= 1.");
+
+        if (offset < 0)
+            throw new IllegalArgumentException("offset must be >= 0.");
+
+        operandTypes = List.copyOf(operandTypes);
+    }
+
+    public String toJson() {
+        var json = new StringBuilder(160);
+        json.append("{\"code\":");
+        appendString(json, code);
+        json.append(",\"message\":");
+        appendString(json, message);
+        json.append(",\"file\":");
+        appendString(json, filename);
+        json.append(",\"line\":").append(line);
+        json.append(",\"column\":").append(column);
+        json.append(",\"offset\":").append(offset);
+        json.append(",\"operator\":");
+        appendString(json, operator.toString());
+        json.append(",\"operandTypes\":[");
+        for (int i = 0; i < operandTypes.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            appendString(json, operandTypes.get(i).toString());
+        }
+        return json.append("]}").toString();
+    }
+
+    public static String toJson(List<Diagnostic> diagnostics) {
+        var json = new StringBuilder("[");
+        for (int i = 0; i < diagnostics.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            json.append(diagnostics.get(i).toJson());
+        }
+        return json.append(']').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        json.append(String.format("\\u%04x", (int) c));
+                    else
+                        json.append(c);
+                }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -27,7 +27,9 @@ import picocli.CommandLine;
 public class Main {
 
     public static void main(String[] args) {
-        int statusCode = new CommandLine(new WabbitJ()).execute(args);
+        int statusCode = new CommandLine(new WabbitJ())
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .execute(args);
         System.exit(statusCode);
     }
 }
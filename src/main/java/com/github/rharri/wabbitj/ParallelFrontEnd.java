@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.ast.Statement;
+import com.github.rharri.wabbitj.ast.Statements;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Tokenizes and parses a large source in chunks on a fork-join pool. Statements end at ';' and never cross a comment
+// boundary, so the source is first split after semicolons that are outside of comments. Each chunk is then tokenized
+// and parsed independently, starting from the line and column at which it begins, and the statements of all chunks
+// are joined in order into one program.
+public final class ParallelFrontEnd {
+
+    // Chunks smaller than this are not worth handing to another thread
+    static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    // More chunks than threads, so that threads that finish early can pick up the remaining work
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    // States of the boundary scan
+    private static final int CODE = 0;
+    private static final int BLOCK_COMMENT = 1;
+    private static final int LINE_COMMENT = 2;
+
+    private final int parallelism;
+    private final long minChunkSize;
+
+    public ParallelFrontEnd(int parallelism) {
+        this(parallelism, MIN_CHUNK_SIZE);
+    }
+
+    ParallelFrontEnd(int parallelism, long minChunkSize) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be >= 1.");
+
+        if (minChunkSize <= 0)
+            throw new IllegalArgumentException("minChunkSize must be >= 1.");
+
+        this.parallelism = parallelism;
+        this.minChunkSize = minChunkSize;
+    }
+
+    public Program parse(Source source) {
+        Objects.requireNonNull(source);
+
+        List<Chunk> chunks = split(source, parallelism * CHUNKS_PER_THREAD, minChunkSize);
+        List<ForkJoinTask<List<Statement>>> tasks = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks)
+            tasks.add(ForkJoinTask.adapt(() -> parse(source, chunk)));
+
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        } finally {
+            pool.shutdown();
+        }
+
+        var statements = new Statements();
+        for (ForkJoinTask<List<Statement>> task : tasks) {
+            for (Statement statement : task.join())
+                statements.add(statement);
+        }
+        return new Program(statements);
+    }
+
+    private static List<Statement> parse(Source source, Chunk chunk) {
+        var tokenizer = new Tokenizer(source, chunk.start(), chunk.end(), chunk.line(), chunk.column());
+        Program program = new Parser(tokenizer).parse();
+        return program.statements().statements();
+    }
+
+    // Find the chunk boundaries with a single pass that only tracks whether it is inside a comment, counting lines
+    // and columns along the way. This is much cheaper than tokenizing, which is the part done in parallel.
+    static List<Chunk> split(Source source, int count, long minChunkSize) {
+        assert count > 0;
+        assert minChunkSize > 0;
+
+        long length = source.length();
+        long target = Math.max(minChunkSize, length / count);
+        List<Chunk> chunks = new ArrayList<>();
+
+        long chunkStart = 0;
+        int chunkLine = 1;
+        int chunkColumn = 1;
+
+        int line = 1;
+        int column = 1;
+        int state = CODE;
+        int previous = 0;
+        long offset = 0;
+
+        ByteBuffer window = ByteBuffer.allocate(64 * 1024);
+
+        try (ReadableByteChannel channel = source.newChannel()) {
+            while (channel.read(window.clear()) > 0) {
+                window.flip();
+
+                while (window.hasRemaining()) {
+                    int ch = window.get() & 0xFF;
+                    offset += 1;
+
+                    if (ch == '\n') {
+                        line += 1;
+                        column = 1;
+                    } else if ((ch & 0xC0) != 0x80) {
+                        column += 1;
+                    }
+
+                    switch (state) {
+                        case CODE -> {
+                            if (previous == '/' && ch == '*') {
+                                state = BLOCK_COMMENT;
+                                ch = 0;
+                            } else if (previous == '/' && ch == '/') {
+                                state = LINE_COMMENT;
+                            } else if (ch == ';' && offset - chunkStart >= target && length - offset >= minChunkSize) {
+                                chunks.add(new Chunk(chunkStart, offset, chunkLine, chunkColumn));
+                                chunkStart = offset;
+                                chunkLine = line;
+                                chunkColumn = column;
+                            }
+                        }
+                        case BLOCK_COMMENT -> {
+                            if (previous == '*' && ch == '/') {
+                                state = CODE;
+                                ch = 0;
+                            }
+                        }
+                        case LINE_COMMENT -> {
+                            if (ch == '\n')
+                                state = CODE;
+                        }
+                        default -> throw new IllegalStateException("Unknown state " + state + ".");
+                    }
+
+                    // A '/' or '*' that opens or closes a comment cannot also be the start of the next delimiter
+                    previous = ch;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        chunks.add(new Chunk(chunkStart, length, chunkLine, chunkColumn));
+        return chunks;
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelFrontEnd{" +
+                "parallelism=" + parallelism +
+                '}';
+    }
+
+    record Chunk(long start, long end, int line, int column) {
+
+        Chunk {
+            assert start >= 0;
+            assert end >= start;
+            assert line >= 1;
+            assert column >= 1;
+        }
+    }
+}
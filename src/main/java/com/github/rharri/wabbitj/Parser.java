@@ -24,52 +24,72 @@ package com.github.rharri.wabbitj;
 
 import com.github.rharri.wabbitj.ast.*;
 import com.github.rharri.wabbitj.tokenizer.Token;
+import com.github.rharri.wabbitj.tokenizer.TokenBuffer;
+import com.github.rharri.wabbitj.tokenizer.TokenCursor;
 import com.github.rharri.wabbitj.tokenizer.TokenType;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
 
 public class Parser {
 
-    private final List<Token> tokens = new ArrayList<>();
+    private final TokenCursor tokens;
     private int index;
 
     public Parser(List<Token> tokens) {
+        this(TokenCursor.of(tokens));
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this(tokens.cursor());
+    }
+
+    // Tokens are pulled from the cursor as they are needed instead of materializing the whole token list up front.
+    // Only the text of literals is ever requested, so comments are never decoded.
+    public Parser(TokenCursor tokens) {
         Objects.requireNonNull(tokens);
 
-        this.tokens.addAll(tokens);
+        this.tokens = tokens;
+        this.tokens.advance();
         this.index = 0;
     }
 
-    private Token expect(TokenType type) {
-        Token token = tokens.get(index);
+    private void expect(TokenType type) {
+        TokenType found = tokens.type();
 
-        if (token.type().equals(type)) {
+        if (found.equals(type)) {
             index += 1;
-            return token;
+            if (found != TokenType.EOF)
+                tokens.advance();
+            return;
         }
 
-        throw new IllegalArgumentException("Expected " + type + "." + " Got " + token.type() + ".");
+        throw new IllegalArgumentException("Expected " + type + "." + " Got " + found + ".");
     }
 
-    private @Nullable Token tryExpect(TokenType type) {
-        return peek(type) ? expect(type) : null;
+    private @Nullable TokenType tryExpect(TokenType type) {
+        if (!peek(type))
+            return null;
+
+        expect(type);
+        return type;
     }
 
-    private @Nullable Token tryExpect(TokenType type1, TokenType type2) {
+    private @Nullable TokenType tryExpect(TokenType type1, TokenType type2) {
         assert type1 != type2;
 
-        Token token = tryExpect(type1);
-        return token != null ? token : tryExpect(type2);
+        TokenType type = tryExpect(type1);
+        return type != null ? type : tryExpect(type2);
     }
 
     private boolean peek(TokenType type) {
-        return tokens.get(index).type().equals(type);
+        return tokens.type().equals(type);
     }
 
-    public AbstractSyntaxTree parse() {
+    public Program parse() {
         var statements = new Statements();
 
         while (!peek(TokenType.EOF)) {
@@ -77,6 +97,8 @@ public class Parser {
                 statements.add(parsePrintStatement());
             else if (peek(TokenType.COMMENT))
                 expect(TokenType.COMMENT);
+            else
+                throw new IllegalArgumentException("Parser error: Unexpected token " + tokens.type() + ".");
         }
 
         return new Program(statements);
@@ -89,114 +111,170 @@ public class Parser {
         return new Print(expression);
     }
 
-    private Expression parseFactor() {
-        if (peek(TokenType.INTEGER))
-            return parseIntLiteral();
-
-        if (peek(TokenType.FLOAT))
-            return parseFloatLiteral();
-
-        if (peek(TokenType.MINUS) || peek(TokenType.PLUS))
-            return parseUnary();
-
-        if (peek(TokenType.LPAREN))
-            return parseGrouping();
-
-        Token token = tokens.get(index);
-        throw new IllegalArgumentException("Parser error: Unexpected token " + token.type() + ".");
-    }
-
     private Expression parseIntLiteral() {
-        Token token = expect(TokenType.INTEGER);
-        int value = Integer.parseInt(token.representation());
-        return new IntLiteral(value, token.position().line(), token.position().column());
+        int line = tokens.line();
+        int column = tokens.column();
+        int value = Integer.parseInt(tokens.text());
+        expect(TokenType.INTEGER);
+        return new IntLiteral(value, line, column);
     }
 
     private Expression parseFloatLiteral() {
-        Token token = expect(TokenType.FLOAT);
-        float value = Float.parseFloat(token.representation());
-        return new FloatLiteral(value, token.position().line(), token.position().column());
+        int line = tokens.line();
+        int column = tokens.column();
+        float value = Float.parseFloat(tokens.text());
+        expect(TokenType.FLOAT);
+        return new FloatLiteral(value, line, column);
     }
 
+    // expression := sum
+    // sum        := product (('+' | '-') product)*
+    // product    := factor (('*' | '/') factor)*
+    // factor     := INTEGER | FLOAT | ('-' | '+') expression | '(' expression ')'
+    //
+    // A unary operator or a parenthesis opens a nested expression. Instead of recursing into it, which overflows the
+    // thread's stack on machine-generated code that nests deeply enough, the enclosing expressions wait on a stack of
+    // frames in the heap, so nesting is only bounded by memory. Tokens are consumed and nodes are built in the same
+    // order as by recursive descent.
     private Expression parseExpression() {
-        return parseSumTerm();
-    }
-
-    private Expression parseSumTerm() {
-        Expression lhs = parseMulTerm();
+        Deque<Frame> frames = new ArrayDeque<>();
+        var frame = new Frame(Frame.Kind.EXPRESSION, null);
 
         while (true) {
-            Token token = tryExpect(TokenType.PLUS, TokenType.MINUS);
-
-            if (token == null)
-                break;
-
-            Expression rhs = parseMulTerm();
-
-            lhs = switch (token.type()) {
-                case PLUS -> new BinaryOp(Operator.PLUS,
-                        lhs,
-                        rhs,
-                        token.position().line(),
-                        token.position().column());
-                case MINUS -> new BinaryOp(Operator.MINUS,
-                        lhs,
-                        rhs,
-                        token.position().line(),
-                        token.position().column());
-                default -> throw new IllegalArgumentException("Binary operation not supported.");
-            };
+            // Open nested expressions until a literal is found
+            Expression factor;
+            if (peek(TokenType.INTEGER)) {
+                factor = parseIntLiteral();
+            } else if (peek(TokenType.FLOAT)) {
+                factor = parseFloatLiteral();
+            } else if (peek(TokenType.MINUS) || peek(TokenType.PLUS)) {
+                TokenType type = Objects.requireNonNull(tryExpect(TokenType.MINUS, TokenType.PLUS));
+                frames.push(frame);
+                frame = new Frame(Frame.Kind.UNARY, type);
+                continue;
+            } else if (peek(TokenType.LPAREN)) {
+                expect(TokenType.LPAREN);
+                frames.push(frame);
+                frame = new Frame(Frame.Kind.GROUPING, null);
+                continue;
+            } else {
+                throw new IllegalArgumentException("Parser error: Unexpected token " + tokens.type() + ".");
+            }
+
+            // Add the factor to the expression of the innermost frame, closing frames whose expression has ended
+            while (true) {
+                Expression product = frame.product(factor);
+                if (peek(TokenType.TIMES) || peek(TokenType.DIVIDE)) {
+                    // Positions can be costly to derive, so only ask for them once an operator is found
+                    int line = tokens.line();
+                    int column = tokens.column();
+                    TokenType type = Objects.requireNonNull(tryExpect(TokenType.TIMES, TokenType.DIVIDE));
+                    frame.continueProduct(product, type, line, column);
+                    break;
+                }
+
+                Expression sum = frame.sum(product);
+                if (peek(TokenType.PLUS) || peek(TokenType.MINUS)) {
+                    int line = tokens.line();
+                    int column = tokens.column();
+                    TokenType type = Objects.requireNonNull(tryExpect(TokenType.PLUS, TokenType.MINUS));
+                    frame.continueSum(sum, type, line, column);
+                    break;
+                }
+
+                factor = switch (frame.kind) {
+                    case EXPRESSION -> {
+                        assert frames.isEmpty();
+                        yield sum;
+                    }
+                    case UNARY -> switch (Objects.requireNonNull(frame.unary)) {
+                        case MINUS -> new UnaryOp(Operator.MINUS, sum);
+                        case PLUS -> new UnaryOp(Operator.PLUS, sum);
+                        default -> throw new IllegalArgumentException("Unary operation not supported.");
+                    };
+                    case GROUPING -> {
+                        expect(TokenType.RPAREN);
+                        yield new Grouping(sum);
+                    }
+                };
+
+                if (frame.kind == Frame.Kind.EXPRESSION)
+                    return factor;
+                frame = frames.pop();
+            }
         }
-        return lhs;
     }
 
-    private Expression parseMulTerm() {
-        Expression lhs = parseFactor();
+    // An expression that is being parsed: the sum and the product built so far, each with the operator that is
+    // waiting for its right operand
+    private static final class Frame {
+
+        enum Kind {
+            // The expression of a statement
+            EXPRESSION,
+            // The operand of a unary operator
+            UNARY,
+            // The expression inside parentheses
+            GROUPING
+        }
 
-        while (true) {
-            Token token = tryExpect(TokenType.TIMES, TokenType.DIVIDE);
-
-            if (token == null)
-                break;
-
-            Expression rhs = parseFactor();
-
-            lhs = switch (token.type()) {
-                case TIMES -> new BinaryOp(Operator.TIMES,
-                        lhs,
-                        rhs,
-                        token.position().line(),
-                        token.position().column());
-                case DIVIDE -> new BinaryOp(Operator.DIVIDE,
-                        lhs,
-                        rhs,
-                        token.position().line(),
-                        token.position().column());
-                default -> throw new IllegalArgumentException("Binary operation not supported.");
-            };
+        private final Kind kind;
+        private final @Nullable TokenType unary;
+
+        private @Nullable Expression sum;
+        private @Nullable Operator sumOperator;
+        private int sumLine;
+        private int sumColumn;
+
+        private @Nullable Expression product;
+        private @Nullable Operator productOperator;
+        private int productLine;
+        private int productColumn;
+
+        Frame(Kind kind, @Nullable TokenType unary) {
+            this.kind = kind;
+            this.unary = unary;
         }
-        return lhs;
-    }
 
-    private Expression parseUnary() {
-        Token token = tryExpect(TokenType.MINUS, TokenType.PLUS);
+        Expression product(Expression factor) {
+            if (product == null)
+                return factor;
 
-        Objects.requireNonNull(token, "Expected MINUS or PLUS.");
+            Expression lhs = product;
+            product = null;
+            return new BinaryOp(Objects.requireNonNull(productOperator), lhs, factor, productLine, productColumn);
+        }
 
-        Expression operand = parseExpression();
+        void continueProduct(Expression lhs, TokenType type, int line, int column) {
+            product = lhs;
+            productOperator = switch (type) {
+                case TIMES -> Operator.TIMES;
+                case DIVIDE -> Operator.DIVIDE;
+                default -> throw new IllegalArgumentException("Binary operation not supported.");
+            };
+            productLine = line;
+            productColumn = column;
+        }
 
-        return switch (token.type()) {
-            case MINUS -> new UnaryOp(Operator.MINUS, operand);
-            case PLUS -> new UnaryOp(Operator.PLUS, operand);
-            default -> throw new IllegalArgumentException("Unary operation not supported.");
-        };
-    }
+        Expression sum(Expression term) {
+            if (sum == null)
+                return term;
 
-    private Expression parseGrouping() {
-        expect(TokenType.LPAREN);
-        Expression expression = parseExpression();
-        expect(TokenType.RPAREN);
-        return new Grouping(expression);
+            Expression lhs = sum;
+            sum = null;
+            return new BinaryOp(Objects.requireNonNull(sumOperator), lhs, term, sumLine, sumColumn);
+        }
+
+        void continueSum(Expression lhs, TokenType type, int line, int column) {
+            sum = lhs;
+            sumOperator = switch (type) {
+                case PLUS -> Operator.PLUS;
+                case MINUS -> Operator.MINUS;
+                default -> throw new IllegalArgumentException("Binary operation not supported.");
+            };
+            sumLine = line;
+            sumColumn = column;
+        }
     }
 
     @Override
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.interpreter.BufferedSink;
+import com.github.rharri.wabbitj.interpreter.FlushPolicy;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.interpreter.OutputSink;
+import com.github.rharri.wabbitj.vm.Artifact;
+import com.github.rharri.wabbitj.vm.VirtualMachine;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "run", mixinStandardHelpOptions = true,
+        description = "Run a " + Artifact.EXTENSION + " artifact written by the build command.")
+public class RunCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(index = "0", description = "The artifact to run.")
+    private File file;
+
+    // Where the program and any errors are printed
+    private final PrintStream out;
+
+    public RunCommand() {
+        this(System.out);
+    }
+
+    RunCommand(PrintStream out) {
+        this.out = Objects.requireNonNull(out);
+    }
+
+    @Override
+    public Integer call() {
+        if (!file.exists()) {
+            out.printf("%s does not exist.%n", file.toPath());
+            return 1;
+        }
+
+        Artifact artifact;
+        try {
+            artifact = Artifact.map(file.toPath());
+        } catch (IllegalArgumentException e) {
+            out.printf("%s: %s%n", file.toPath(), e.getMessage());
+            return 1;
+        } catch (IOException | UncheckedIOException e) {
+            out.println("File cannot be read.");
+            return 1;
+        }
+
+        // Output printed before a division by zero is still written
+        try (OutputSink sink = BufferedSink.of(out, FlushPolicy.onExit())) {
+            new VirtualMachine(new JavaRuntime(sink)).run(artifact);
+        } catch (UncheckedIOException e) {
+            out.println("Output cannot be written.");
+            return 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RunCommand{" +
+                "file=" + file +
+                '}';
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.daemon.Daemon;
+import com.github.rharri.wabbitj.daemon.Request;
+import com.github.rharri.wabbitj.daemon.Response;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "serve", mixinStandardHelpOptions = true,
+        description = "Keep a JVM running and run the files that wabbitj --daemon sends, printing the latency of each"
+                + " run.")
+public class ServeCommand implements Callable<Integer> {
+
+    @CommandLine.Option(names = "--socket", paramLabel = "<socket>",
+            description = "The Unix domain socket to listen on (default: ${DEFAULT-VALUE}).")
+    private Path socket = Daemon.defaultSocket();
+
+    @CommandLine.Option(names = "--max-runs", paramLabel = "<runs>",
+            description = "The most files run at once (default: all processors).")
+    private int maxRuns = Runtime.getRuntime().availableProcessors();
+
+    // Where the daemon's messages and the log of its runs are printed
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public ServeCommand() {
+        this(System.out, System.err);
+    }
+
+    ServeCommand(PrintStream out, PrintStream err) {
+        this.out = Objects.requireNonNull(out);
+        this.err = Objects.requireNonNull(err);
+    }
+
+    @Override
+    public Integer call() {
+        if (maxRuns <= 0) {
+            out.println("max-runs must be >= 1.");
+            return 1;
+        }
+
+        Daemon daemon;
+        try {
+            daemon = Daemon.bind(socket, ServeCommand::run, err, maxRuns);
+        } catch (IOException | UncheckedIOException e) {
+            out.printf("Cannot listen on %s: %s%n", socket, e.getMessage());
+            return 1;
+        }
+
+        // The socket file is also removed when the daemon is stopped with a signal
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close(daemon)));
+
+        out.printf("Listening on %s%n", daemon.socket());
+        try {
+            daemon.serve();
+        } catch (IOException | UncheckedIOException e) {
+            out.printf("Stopped listening on %s: %s%n", socket, e.getMessage());
+            return 1;
+        } finally {
+            close(daemon);
+        }
+        return 0;
+    }
+
+    private static void close(Daemon daemon) {
+        try {
+            daemon.close();
+        } catch (IOException e) {
+            // The next daemon replaces the socket file
+        }
+    }
+
+    // Runs a request as wabbitj would run it from the command line, with its own output streams
+    static Response run(Request request) {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        int exitCode;
+        try (var outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+             var errStream = new PrintStream(err, true, StandardCharsets.UTF_8)) {
+            exitCode = run(request, outStream, errStream);
+        }
+        return new Response(exitCode, out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8), 0);
+    }
+
+    private static int run(Request request, PrintStream out, PrintStream err) {
+        var wabbitj = new WabbitJ(out, err);
+        var commandLine = new CommandLine(wabbitj).setCaseInsensitiveEnumValuesAllowed(true);
+        try {
+            List<String> args = new ArrayList<>(request.options());
+            if (request.text() == null)
+                args.add(request.path());
+            commandLine.parseArgs(args.toArray(String[]::new));
+
+            // A run that sends itself back to the daemon could wait forever for a free run
+            if (commandLine.getParseResult().hasMatchedOption("--daemon"))
+                throw new CommandLine.ParameterException(commandLine, "--daemon cannot be sent to the daemon.");
+
+            if (request.text() == null)
+                return wabbitj.call();
+
+            Path name = Path.of(request.path()).getFileName();
+            return wabbitj.run(name != null ? name.toString() : request.path(), Source.of(request.text()));
+        } catch (CommandLine.ParameterException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (IOException | UncheckedIOException e) {
+            out.println("File cannot be read.");
+            return 1;
+        } catch (ArithmeticException e) {
+            // Once a division is hot, the JVM throws a preallocated exception without a message or a stack trace, and
+            // a division by zero is the only arithmetic that fails
+            (e.getMessage() != null ? e : new ArithmeticException("/ by zero")).printStackTrace(err);
+            return 1;
+        } catch (RuntimeException e) {
+            // Reported as picocli reports it from the command line
+            e.printStackTrace(err);
+            return 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ServeCommand{" +
+                "socket=" + socket +
+                ", maxRuns=" + maxRuns +
+                '}';
+    }
+}
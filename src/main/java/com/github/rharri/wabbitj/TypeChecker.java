@@ -25,21 +25,58 @@ package com.github.rharri.wabbitj;
 import com.github.rharri.wabbitj.ast.*;
 import com.github.rharri.wabbitj.interpreter.WabbitType;
 
+import com.github.rharri.wabbitj.tokenizer.LineIndex;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import java.util.*;
 
 public class TypeChecker implements NodeVisitor {
 
-    private final List<String> errors = new ArrayList<>();
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
     private final String filename;
-    private final String programText;
+    private final Source source;
+    private @Nullable LineIndex lines;
     private final Deque<TypeInfo> stack = new ArrayDeque<>();
 
+    // Nodes waiting to be visited, or to be completed once their operands are checked when the flag is set
+    private AbstractSyntaxTree[] work = new AbstractSyntaxTree[16];
+    private boolean[] completes = new boolean[16];
+    private int pending = 0;
+    private boolean walking = false;
+
+    // The type of every expression, keyed by node identity since equal subtrees can appear in different places
+    private final IdentityHashMap<Expression, WabbitType> types = new IdentityHashMap<>();
+    // A program that is known to check, but has not been visited yet
+    private @Nullable Program unchecked;
+
     public TypeChecker(String filename, String programText) {
+        this(filename, Source.of(Objects.requireNonNull(programText)));
+    }
+
+    public TypeChecker(String filename, Source source) {
         Objects.requireNonNull(filename);
-        Objects.requireNonNull(programText);
+        Objects.requireNonNull(source);
 
         this.filename = filename;
-        this.programText = programText;
+        this.source = source;
+        this.lines = null;
+    }
+
+    // Reuse the line index the tokenizer built instead of scanning the source again when an error is found
+    public TypeChecker(String filename, Source source, LineIndex lines) {
+        this(filename, source);
+        this.lines = Objects.requireNonNull(lines);
+    }
+
+    // A checker for a program that already checked without errors, such as one restored from the compilation cache.
+    // The program is only visited if a later stage asks for the type of an expression; the interpreter never does.
+    public static TypeChecker ofCheckedProgram(String filename, Source source, Program program) {
+        Objects.requireNonNull(program);
+
+        var typeChecker = new TypeChecker(filename, source);
+        typeChecker.unchecked = program;
+        return typeChecker;
     }
 
     @Override
@@ -58,28 +95,98 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visitPrint(Print print) {
         Objects.requireNonNull(print);
-        print.expression().accept(this);
+        schedule(print, true);
+        schedule(print.expression(), false);
+        walk();
     }
 
     @Override
     public void visitIntLiteral(IntLiteral intLiteral) {
         Objects.requireNonNull(intLiteral);
-        stack.push(new TypeInfo(WabbitType.INT, intLiteral.line(), intLiteral.column()));
+        push(intLiteral, new TypeInfo(WabbitType.INT, intLiteral.line(), intLiteral.column()));
     }
 
     @Override
     public void visitFloatLiteral(FloatLiteral floatLiteral) {
         Objects.requireNonNull(floatLiteral);
-        stack.push(new TypeInfo(WabbitType.FLOAT, floatLiteral.line(), floatLiteral.column()));
+        push(floatLiteral, new TypeInfo(WabbitType.FLOAT, floatLiteral.line(), floatLiteral.column()));
     }
 
+    // Only schedules the operands and the check of the operator; see walk()
     @Override
     public void visitBinaryOp(BinaryOp binaryOp) {
         Objects.requireNonNull(binaryOp);
+        schedule(binaryOp, true);
+        schedule(binaryOp.rhs(), false);
+        schedule(binaryOp.lhs(), false);
+        walk();
+    }
 
-        binaryOp.lhs().accept(this);
-        binaryOp.rhs().accept(this);
+    @Override
+    public void visitUnaryOp(UnaryOp unaryOp) {
+        Objects.requireNonNull(unaryOp);
+        schedule(unaryOp, true);
+        schedule(unaryOp.operand(), false);
+        walk();
+    }
+
+    @Override
+    public void visitGrouping(Grouping grouping) {
+        Objects.requireNonNull(grouping);
+        schedule(grouping, true);
+        schedule(grouping.expression(), false);
+        walk();
+    }
+
+    private void schedule(AbstractSyntaxTree node, boolean complete) {
+        if (pending == work.length) {
+            work = Arrays.copyOf(work, pending * 2);
+            completes = Arrays.copyOf(completes, pending * 2);
+        }
+
+        work[pending] = node;
+        completes[pending] = complete;
+        pending += 1;
+    }
 
+    // Nodes are visited in the same order as by recursion, but the nodes still to visit, and the nodes that are waiting
+    // for the types of their operands, are kept in an array instead of on the thread's stack. The visit of the
+    // outermost node walks until everything it scheduled is done; nested visits only schedule.
+    private void walk() {
+        if (walking)
+            return;
+
+        walking = true;
+        try {
+            while (pending > 0) {
+                pending -= 1;
+                AbstractSyntaxTree node = work[pending];
+                work[pending] = null;
+
+                if (completes[pending])
+                    complete(node);
+                else
+                    node.accept(this);
+            }
+        } finally {
+            walking = false;
+            // Nothing is left after an exception either
+            Arrays.fill(work, 0, pending, null);
+            pending = 0;
+        }
+    }
+
+    private void complete(AbstractSyntaxTree node) {
+        if (node instanceof BinaryOp binaryOp)
+            completeBinaryOp(binaryOp);
+        else if (node instanceof UnaryOp || node instanceof Grouping)
+            // Negation, absolute value and parentheses keep the type of their operand
+            push((Expression) node, stack.pop());
+        else
+            stack.pop();
+    }
+
+    private void completeBinaryOp(BinaryOp binaryOp) {
         TypeInfo rhs = stack.pop();
         TypeInfo lhs = stack.pop();
 
@@ -88,42 +195,83 @@ public class TypeChecker implements NodeVisitor {
                     binaryOp.operator(),
                     lhs.type,
                     rhs.type);
-            errors.add(formatErrorMessage(message, binaryOp.line(), binaryOp.column()));
+            diagnostics.add(new Diagnostic(Diagnostic.UNSUPPORTED_OPERAND_TYPES, message, filename,
+                    binaryOp.line(), binaryOp.column(), offsetOf(binaryOp.line(), binaryOp.column()),
+                    binaryOp.operator(), List.of(lhs.type, rhs.type)));
         }
 
         // Reduce the binary op to a type; use the type of the LHS
         // If the types are the same then it doesn't matter which type we use and if the types are different then
         // another type error *could* be raised for the same line
-        stack.push(lhs);
+        push(binaryOp, lhs);
     }
 
-    @Override
-    public void visitUnaryOp(UnaryOp unaryOp) {
-        // Not handled yet
+    private void push(Expression expression, TypeInfo typeInfo) {
+        types.put(expression, typeInfo.type);
+        stack.push(typeInfo);
     }
 
-    @Override
-    public void visitGrouping(Grouping grouping) {
-        // Not handled yet
+    // The type of an expression in the checked program, so later stages can pick an operation per node up front
+    public WabbitType typeOf(Expression expression) {
+        Objects.requireNonNull(expression);
+
+        if (unchecked != null) {
+            Program program = unchecked;
+            unchecked = null;
+            program.accept(this);
+        }
+
+        WabbitType type = types.get(expression);
+        if (type == null)
+            throw new IllegalArgumentException("expression is not part of the checked program.");
+
+        return type;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
     }
 
+    // The errors rendered for people, with the offending line and a caret under the error
     public List<String> getErrors() {
+        var errors = new ArrayList<String>(diagnostics.size());
+        for (Diagnostic diagnostic : diagnostics)
+            errors.add(formatErrorMessage(diagnostic.message(), diagnostic.line(), diagnostic.column()));
         return Collections.unmodifiableList(errors);
     }
 
+    private LineIndex lines() {
+        if (lines == null)
+            lines = LineIndex.of(source);
+        return lines;
+    }
+
+    // The byte offset of a 1-based line and a column counted in characters
+    private long offsetOf(int line, int column) {
+        long offset = lines().lineStart(line);
+        for (int remaining = column - 1; remaining > 0 && offset < source.length(); remaining--) {
+            offset += 1;
+            while (offset < source.length() && (source.byteAt(offset) & 0xC0) == 0x80)
+                offset += 1;
+        }
+        return offset;
+    }
+
     private String formatErrorMessage(String message, int line, int column) {
         assert message != null;
         assert !message.isEmpty() || !message.isBlank();
         assert line >= 1;
         assert column >= 1;
 
-        String[] lines = programText.split("\n", -1);
+        LineIndex lines = lines();
 
         // File 'file.wb', line 1, col 1
         String header = String.format("File '%s', line %s, col %s", filename, line, column);
 
         // The line with the error
-        String subject = lines[line - 1];
+        long start = lines.lineStart(line);
+        long end = line < lines.lineCount() ? lines.lineStart(line + 1) - 1 : source.length();
+        String subject = source.decode(start, Math.toIntExact(end - start));
 
         // An arrow to highlight the error with the line
         String highlighter = String.format("\t " + " ".repeat(column - 2) + "%s", "^------");
@@ -22,65 +22,322 @@
 
 package com.github.rharri.wabbitj;
 
-import com.github.rharri.wabbitj.ast.AbstractSyntaxTree;
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.cache.CompilationCache;
+import com.github.rharri.wabbitj.closure.ClosureCompiler;
+import com.github.rharri.wabbitj.daemon.Daemon;
+import com.github.rharri.wabbitj.daemon.DaemonClient;
+import com.github.rharri.wabbitj.daemon.Request;
+import com.github.rharri.wabbitj.daemon.Response;
+import com.github.rharri.wabbitj.interpreter.BufferedSink;
+import com.github.rharri.wabbitj.interpreter.FlushPolicy;
 import com.github.rharri.wabbitj.interpreter.Interpreter;
 import com.github.rharri.wabbitj.interpreter.JavaRuntime;
-import com.github.rharri.wabbitj.tokenizer.Token;
+import com.github.rharri.wabbitj.interpreter.OutputSink;
+import com.github.rharri.wabbitj.jvm.JvmCompiler;
+import com.github.rharri.wabbitj.optimizer.Optimization;
+import com.github.rharri.wabbitj.optimizer.PassManager;
+import com.github.rharri.wabbitj.optimizer.PassReport;
+import com.github.rharri.wabbitj.tokenizer.LineIndex;
+import com.github.rharri.wabbitj.tokenizer.MappedSource;
+import com.github.rharri.wabbitj.tokenizer.Source;
 import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import com.github.rharri.wabbitj.vm.BytecodeCompiler;
+import com.github.rharri.wabbitj.vm.VirtualMachine;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import picocli.CommandLine;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "wabbitj", mixinStandardHelpOptions = true, versionProvider = WabbitJ.PackageVersionProvider.class,
+    subcommands = {CompileCommand.class, BuildCommand.class, RunCommand.class, ServeCommand.class},
     description = "Wabbit is a statically typed programming language similar to Go. Wabbit was created by David Beazley." +
             " Please see https://www.dabeaz.com/compiler.html for more information.")
 public class WabbitJ implements Callable<Integer> {
 
-    @CommandLine.Parameters(index = "0", description = "The Wabbit file to execute.")
-    private File file;
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    // Optional only so that a subcommand can be given instead
+    @CommandLine.Parameters(index = "0", arity = "0..1", description = "The Wabbit file to execute.")
+    private @Nullable File file;
+
+    @CommandLine.Option(names = "--parallel-frontend",
+            description = "Tokenize and parse the file in chunks on multiple threads.")
+    private boolean parallelFrontEnd;
+
+    @CommandLine.Option(names = "--frontend-threads", paramLabel = "<threads>",
+            description = "Threads used by --parallel-frontend (default: all processors).")
+    private int frontEndThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = "--error-format", paramLabel = "<format>",
+            description = "How type errors are reported: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private ErrorFormat errorFormat = ErrorFormat.TEXT;
+
+    enum ErrorFormat {
+        TEXT, JSON
+    }
+
+    @CommandLine.Option(names = "--engine", paramLabel = "<engine>",
+            description = "How the program is executed: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private Engine engine = Engine.INTERPRETER;
+
+    @CommandLine.Option(names = "--optimize",
+            description = "Fold constants and simplify the program before it is executed.")
+    private boolean optimize;
+
+    @CommandLine.Option(names = "--pass-report",
+            description = "Print the rewrites and time of each optimizer pass to standard error.")
+    private boolean passReport;
+
+    @CommandLine.Option(names = "--output", paramLabel = "<file>",
+            description = "Write the program's output to a file instead of standard output.")
+    private @Nullable Path output;
+
+    @CommandLine.Option(names = "--flush", paramLabel = "<policy>", converter = FlushPolicyConverter.class,
+            description = "When buffered output is written: exit, size:<bytes> or interval:<milliseconds>"
+                    + " (default: exit).")
+    private FlushPolicy flushPolicy = FlushPolicy.onExit();
+
+    @CommandLine.Option(names = "--cache",
+            description = "Keep the checked program in a cache and skip tokenizing, parsing and type checking while the"
+                    + " file is unchanged.")
+    private boolean cache;
+
+    @CommandLine.Option(names = "--cache-dir", paramLabel = "<dir>",
+            description = "The directory of --cache (default: ${DEFAULT-VALUE}).")
+    private Path cacheDirectory = Path.of(System.getProperty("user.home"), ".cache", "wabbitj");
+
+    @CommandLine.Option(names = "--cache-size", paramLabel = "<bytes>",
+            description = "The most that --cache keeps before the least recently used programs are evicted"
+                    + " (default: ${DEFAULT-VALUE}).")
+    private long cacheSize = CompilationCache.DEFAULT_MAX_BYTES;
+
+    @CommandLine.Option(names = "--daemon",
+            description = "Send the file to a daemon started with the serve command instead of running it here.")
+    private boolean daemon;
+
+    @CommandLine.Option(names = "--socket", paramLabel = "<socket>",
+            description = "The socket of --daemon (default: ${DEFAULT-VALUE}).")
+    private Path socket = Daemon.defaultSocket();
+
+    @CommandLine.Option(names = "--send-source",
+            description = "Send the text of the file with --daemon, for a daemon that cannot read the file itself.")
+    private boolean sendSource;
+
+    // The options of --daemon that are used by this process rather than sent with the file
+    private static final Set<String> LOCAL_OPTIONS = Set.of("--daemon", "--socket", "--send-source", "--output");
+
+    // Where the program and its errors are printed; the daemon gives each run its own
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public WabbitJ() {
+        this(System.out, System.err);
+    }
+
+    WabbitJ(PrintStream out, PrintStream err) {
+        this.out = Objects.requireNonNull(out);
+        this.err = Objects.requireNonNull(err);
+    }
+
+    enum Engine {
+        // Walk the tree
+        INTERPRETER,
+        // Compile to bytecode and run it on the stack machine
+        VM,
+        // Compile to a JVM class, or interpret a program too large for one
+        JIT,
+        // Convert the tree into typed, executable nodes
+        CLOSURE
+    }
 
     @Override
     public Integer call() {
-        if (file.exists()) {
-            try {
-                String programText = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        if (file == null)
+            throw new CommandLine.ParameterException(spec.commandLine(), "Missing required parameter: '<file>'");
 
-                Tokenizer tokenizer = new Tokenizer(programText);
-                tokenizer.tokenize();
-                List<Token> tokens = tokenizer.getTokens();
+        if (cacheSize <= 0)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--cache-size must be >= 1.");
 
-                Parser parser = new Parser(tokens);
-                AbstractSyntaxTree ast = parser.parse();
+        if (daemon)
+            return runOnDaemon(file);
 
-                TypeChecker typeChecker = new TypeChecker(file.getName(), programText);
-                ast.accept(typeChecker);
-                List<String> errors = typeChecker.getErrors();
+        if (!file.exists()) {
+            out.printf("%s does not exist.%n", file.toPath());
+            return 1;
+        }
 
-                if (!errors.isEmpty()) {
-                    for (String error : errors)
-                        System.out.println(error);
+        try {
+            // Tokens are pulled from the mapped file as the parser needs them, so the source text is never held in
+            // memory as a String
+            return run(file.getName(), MappedSource.map(file.toPath()));
+        } catch (IOException | UncheckedIOException e) {
+            out.println("File cannot be read.");
+            return 1;
+        }
+    }
+
+    // Checks and executes a program with the options that were parsed; the daemon also calls this for source sent as
+    // text
+    int run(String filename, Source source) throws IOException {
+        Program ast;
+        TypeChecker typeChecker;
+
+        @Nullable CompilationCache compilationCache = cache ? new CompilationCache(cacheDirectory, cacheSize) : null;
+        @Nullable String cacheKey = compilationCache != null ? CompilationCache.key(source, version()) : null;
+        Optional<Program> cached = compilationCache != null
+                ? load(compilationCache, Objects.requireNonNull(cacheKey))
+                : Optional.empty();
 
-                    return 1;
+        if (cached.isPresent()) {
+            ast = cached.get();
+            typeChecker = TypeChecker.ofCheckedProgram(filename, source, ast);
+        } else if (parallelFrontEnd) {
+            ast = new ParallelFrontEnd(frontEndThreads).parse(source);
+            typeChecker = new TypeChecker(filename, source);
+        } else {
+            // The line index built while tokenizing is reused to report errors
+            var lines = new LineIndex();
+            Parser parser = new Parser(new Tokenizer(source, lines));
+            ast = parser.parse();
+            typeChecker = new TypeChecker(filename, source, lines);
+        }
+
+        if (cached.isEmpty()) {
+            ast.accept(typeChecker);
+            List<Diagnostic> diagnostics = typeChecker.getDiagnostics();
+
+            if (!diagnostics.isEmpty()) {
+                if (errorFormat == ErrorFormat.JSON) {
+                    out.println(Diagnostic.toJson(diagnostics));
+                } else {
+                    for (String error : typeChecker.getErrors())
+                        out.println(error);
                 }
 
-                Interpreter interpreter = new Interpreter(new JavaRuntime(System.out));
-                ast.accept(interpreter);
-            } catch (IOException e) {
-                System.out.println("File cannot be read.");
                 return 1;
             }
-        } else {
-            System.out.printf("%s does not exist.%n", file.toPath());
-            return 1;
+
+            // Only programs without errors are kept, so that errors are always reported from the source
+            if (compilationCache != null)
+                store(compilationCache, Objects.requireNonNull(cacheKey), ast);
+        }
+
+        if (optimize) {
+            Optimization optimization = PassManager.standard().run(ast);
+            if (passReport) {
+                for (PassReport report : optimization.reports())
+                    err.println(report.format());
+            }
+
+            // The rewritten nodes are typed again for the backends; a program that checked cannot fail here
+            ast = optimization.program();
+            typeChecker = new TypeChecker(filename, source);
+            ast.accept(typeChecker);
+        }
+
+        try (OutputSink sink = output == null
+                ? BufferedSink.of(out, flushPolicy)
+                : BufferedSink.owning(FileChannel.open(output, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), flushPolicy)) {
+            // The sink is flushed when the program ends, including when it fails with a division by zero
+            execute(ast, typeChecker, new JavaRuntime(sink));
         }
         return 0;
     }
 
+    // Every option given is sent as it was given, except those that say how to reach the daemon and --output: the
+    // output is written here. Paths are made absolute, since the daemon runs in another directory.
+    private int runOnDaemon(File file) {
+        if (!file.exists()) {
+            out.printf("%s does not exist.%n", file.toPath());
+            return 1;
+        }
+
+        List<String> options = new ArrayList<>();
+        for (CommandLine.Model.OptionSpec option : spec.commandLine().getParseResult().matchedOptions()) {
+            String name = option.longestName();
+            if (LOCAL_OPTIONS.contains(name))
+                continue;
+
+            if (option.arity().max() == 0) {
+                options.add(name);
+                continue;
+            }
+            for (String value : option.stringValues())
+                options.add(name + "=" + (option.type() == Path.class ? Path.of(value).toAbsolutePath() : value));
+        }
+
+        Path path = file.toPath().toAbsolutePath();
+        Response response;
+        try {
+            @Nullable String text = sendSource ? Files.readString(path) : null;
+            response = DaemonClient.send(socket, new Request(options, path.toString(), text));
+        } catch (IOException | UncheckedIOException e) {
+            out.printf("Cannot run %s on the daemon at %s: %s%n", file.toPath(), socket, e.getMessage());
+            return 1;
+        }
+
+        try {
+            if (output == null)
+                out.print(response.out());
+            else
+                Files.writeString(output, response.out());
+        } catch (IOException e) {
+            out.println("Output cannot be written.");
+            return 1;
+        }
+        err.print(response.err());
+        return response.exitCode();
+    }
+
+    // The cache only saves time, so a cache that cannot be read or written is used as if it were empty
+    private static Optional<Program> load(CompilationCache compilationCache, String key) {
+        try {
+            return compilationCache.load(key);
+        } catch (IOException | UncheckedIOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void store(CompilationCache compilationCache, String key, Program program) {
+        try {
+            compilationCache.store(key, program);
+        } catch (IOException | UncheckedIOException e) {
+            // The next run checks the program again
+        }
+    }
+
+    // Programs are cached per version of wabbitj, in case a later version checks or represents them differently
+    static String version() {
+        return String.valueOf(WabbitJ.class.getPackage().getImplementationVersion());
+    }
+
+    private void execute(Program program, TypeChecker typeChecker, JavaRuntime runtime) {
+        switch (engine) {
+            case INTERPRETER -> program.accept(new Interpreter(runtime));
+            case VM -> new VirtualMachine(runtime).run(BytecodeCompiler.compile(program, typeChecker));
+            case JIT -> JvmCompiler.compile(program, typeChecker).ifPresentOrElse(
+                    compiled -> compiled.run(runtime),
+                    () -> program.accept(new Interpreter(runtime)));
+            case CLOSURE -> ClosureCompiler.compile(program, typeChecker).run(runtime);
+        }
+    }
+
     @Override
     public String toString() {
         return "WabbitJ{" +
@@ -88,6 +345,18 @@ public class WabbitJ implements Callable<Integer> {
                 '}';
     }
 
+    static class FlushPolicyConverter implements CommandLine.ITypeConverter<FlushPolicy> {
+
+        @Override
+        public FlushPolicy convert(String value) {
+            try {
+                return FlushPolicy.parse(value);
+            } catch (IllegalArgumentException e) {
+                throw new CommandLine.TypeConversionException(e.getMessage());
+            }
+        }
+    }
+
     // Credit: https://github.com/remkop/picocli/issues/236
     // Credit: https://docs.oracle.com/javase/tutorial/deployment/jar/packageman.html
     // Credit: https://docs.oracle.com/javase/8/docs/technotes/guides/versioning/spec/versioning2.html
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.c;
+
+import com.github.rharri.wabbitj.NodeVisitor;
+import com.github.rharri.wabbitj.TypeChecker;
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.interpreter.NumberFormatter;
+import com.github.rharri.wabbitj.interpreter.WabbitType;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+// Translates a type-checked tree into a C99 program: the runtime in runtime.c, followed by the statements. Each
+// operator becomes a temporary assigned once from a runtime call, so no C expression nests deeper than one call however
+// deep the tree is. Statements are split across functions, because C compilers take much longer to optimize one huge
+// function.
+public final class CGenerator implements NodeVisitor {
+
+    private static final int STATEMENTS_PER_FUNCTION = 1000;
+    private static final String RUNTIME = loadRuntime();
+
+    private final TypeChecker typeChecker;
+    private final StringBuilder functions = new StringBuilder();
+    // The temporaries of the statement being generated
+    private final StringBuilder block = new StringBuilder();
+    private int temporaryCount = 0;
+    private int functionCount = 0;
+    private int statementsInFunction = 0;
+    // The C text of the expression just visited: a literal or a temporary
+    private @Nullable String operand;
+
+    private CGenerator(TypeChecker typeChecker) {
+        this.typeChecker = typeChecker;
+    }
+
+    // The tree must already have been accepted by the type checker, without errors
+    public static String generate(AbstractSyntaxTree ast, TypeChecker typeChecker) {
+        Objects.requireNonNull(ast);
+        Objects.requireNonNull(typeChecker);
+
+        var generator = new CGenerator(typeChecker);
+        ast.accept(generator);
+        return generator.finish();
+    }
+
+    // The C source of the runtime that every generated program starts with. Floats are printed as Float.toString
+    // prints them on the JDK that generates the program, which is what the interpreter prints.
+    public static String runtime() {
+        return RUNTIME;
+    }
+
+    private static String loadRuntime() {
+        try (InputStream in = CGenerator.class.getResourceAsStream("runtime.c")) {
+            if (in == null)
+                throw new IllegalStateException("Cannot find runtime.c.");
+            return "#define WB_SHORTEST_FLOATS " + (NumberFormatter.SHORTEST_FLOATS ? 1 : 0) + "\n"
+                    + new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String finish() {
+        if (statementsInFunction > 0)
+            functions.append("}\n\n");
+
+        var program = new StringBuilder(RUNTIME.length() + functions.length() + 256);
+        program.append("/* Generated by wabbitj. Build with: cc -std=c99 -O2 -o program program.c */\n\n");
+        program.append(RUNTIME).append('\n');
+        program.append(functions);
+        program.append("int main(void) {\n");
+        for (int i = 0; i < functionCount; i++)
+            program.append("    wb_run_").append(i).append("();\n");
+        program.append("    wb_flush();\n");
+        program.append("    return 0;\n");
+        program.append("}\n");
+        return program.toString();
+    }
+
+    @Override
+    public void visitProgram(Program program) {
+        Objects.requireNonNull(program);
+        program.statements().accept(this);
+    }
+
+    @Override
+    public void visitStatements(Statements statements) {
+        Objects.requireNonNull(statements);
+        for (Statement statement : statements.statements())
+            statement.accept(this);
+    }
+
+    @Override
+    public void visitPrint(Print print) {
+        Objects.requireNonNull(print);
+
+        if (statementsInFunction == STATEMENTS_PER_FUNCTION) {
+            functions.append("}\n\n");
+            statementsInFunction = 0;
+        }
+        if (statementsInFunction == 0)
+            functions.append("WB_FUNCTION void wb_run_").append(functionCount++).append("(void) {\n");
+        statementsInFunction++;
+
+        block.setLength(0);
+        temporaryCount = 0;
+        String value = operand(print.expression());
+        String call = (isInt(print.expression()) ? "wb_print_int(" : "wb_print_float(") + value + ");\n";
+
+        if (block.length() == 0) {
+            functions.append("    ").append(call);
+        } else {
+            functions.append("    {\n").append(block).append("        ").append(call).append("    }\n");
+        }
+    }
+
+    @Override
+    public void visitIntLiteral(IntLiteral intLiteral) {
+        Objects.requireNonNull(intLiteral);
+        // -2147483648 is the negation of a constant too large for an int
+        operand = intLiteral.value() == Integer.MIN_VALUE ? "(-2147483647 - 1)" : Integer.toString(intLiteral.value());
+    }
+
+    // A hexadecimal literal is exact; infinities and NaN, which only folding produces, have none
+    @Override
+    public void visitFloatLiteral(FloatLiteral floatLiteral) {
+        Objects.requireNonNull(floatLiteral);
+
+        float value = floatLiteral.value();
+        operand = Float.isFinite(value)
+                ? Float.toHexString(value) + "f"
+                : "wb_float_bits(UINT32_C(0x" + Integer.toHexString(Float.floatToRawIntBits(value)) + "))";
+    }
+
+    @Override
+    public void visitBinaryOp(BinaryOp binaryOp) {
+        Objects.requireNonNull(binaryOp);
+        operand = operand(binaryOp);
+    }
+
+    // The operands are already generated
+    private String binaryOp(BinaryOp binaryOp, String lhs, String rhs) {
+        boolean isInt = isInt(binaryOp);
+        String function = switch (binaryOp.operator()) {
+            case PLUS -> isInt ? "wb_iadd" : "wb_fadd";
+            case MINUS -> isInt ? "wb_isub" : "wb_fsub";
+            case TIMES -> isInt ? "wb_imul" : "wb_fmul";
+            case DIVIDE -> isInt ? "wb_idiv" : "wb_fdiv";
+        };
+        return temporary(isInt, function + "(" + lhs + ", " + rhs + ")");
+    }
+
+    @Override
+    public void visitUnaryOp(UnaryOp unaryOp) {
+        Objects.requireNonNull(unaryOp);
+        operand = operand(unaryOp);
+    }
+
+    private String unaryOp(UnaryOp unaryOp, String value) {
+        boolean isInt = isInt(unaryOp);
+        String function = switch (unaryOp.operator()) {
+            case MINUS -> isInt ? "wb_ineg" : "wb_fneg";
+            case PLUS -> isInt ? "wb_iabs" : "wb_fabs";
+            default -> throw new IllegalArgumentException("Unsupported unary operator " + unaryOp.operator() + ".");
+        };
+        return temporary(isInt, function + "(" + value + ")");
+    }
+
+    @Override
+    public void visitGrouping(Grouping grouping) {
+        Objects.requireNonNull(grouping);
+        operand = operand(grouping);
+    }
+
+    // Generates an expression in post-order, with the nodes still to generate, and the operators waiting for their
+    // operands, on a stack in the heap rather than by recursion, since a long chain of operators is as deep as it is
+    // long. Literals are visited for their text.
+    private String operand(Expression expression) {
+        Deque<Object> pending = new ArrayDeque<>();
+        Deque<String> done = new ArrayDeque<>();
+
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Operation operation) {
+                if (operation.node() instanceof BinaryOp binaryOp) {
+                    String rhs = done.pop();
+                    String lhs = done.pop();
+                    done.push(binaryOp(binaryOp, lhs, rhs));
+                } else {
+                    done.push(unaryOp((UnaryOp) operation.node(), done.pop()));
+                }
+            } else if (next instanceof BinaryOp binaryOp) {
+                pending.push(new Operation(binaryOp));
+                pending.push(binaryOp.rhs());
+                pending.push(binaryOp.lhs());
+            } else if (next instanceof UnaryOp unaryOp) {
+                pending.push(new Operation(unaryOp));
+                pending.push(unaryOp.operand());
+            } else if (next instanceof Grouping grouping) {
+                pending.push(grouping.expression());
+            } else {
+                operand = null;
+                ((Expression) next).accept(this);
+                done.push(Objects.requireNonNull(operand));
+            }
+        }
+        return done.pop();
+    }
+
+    record Operation(Expression node) {
+    }
+
+    private String temporary(boolean isInt, String value) {
+        String name = "t" + temporaryCount++;
+        block.append("        ").append(isInt ? "int32_t " : "float ").append(name).append(" = ").append(value)
+                .append(";\n");
+        return name;
+    }
+
+    private boolean isInt(Expression expression) {
+        return typeChecker.typeOf(expression) == WabbitType.INT;
+    }
+
+    @Override
+    public String toString() {
+        return "CGenerator{" +
+                "functions=" + functionCount +
+                '}';
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.cache;
+
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.tokenizer.Source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+// Checked programs kept in a directory, one file per program, named by a hash of the source and of the version of
+// wabbitj that checked it. Processes share the directory without locks:
+//
+// - An entry is written to a temporary file and then renamed over the entry, so that readers see a whole entry or none.
+//   Processes that store the same program at once write the same bytes, so it does not matter which rename wins.
+// - Every entry repeats its key and carries a checksum, and an entry that does not match is treated as a miss.
+// - A hit updates the entry's modification time, and after a store the least recently used entries are deleted until
+//   the directory is under its size. An entry deleted by another process is a miss; an open one is still read whole.
+public final class CompilationCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    static final String ENTRY_SUFFIX = ".ast";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    // Temporary files this old were left behind by a process that died while writing
+    private static final Duration ABANDONED = Duration.ofHours(1);
+
+    private static final byte[] MAGIC = {'W', 'B', 'A', 'S'};
+    private static final int KEY_LENGTH = 32;
+    private static final int HEADER_LENGTH = MAGIC.length + 4 + KEY_LENGTH + 4;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public CompilationCache(Path directory, long maxBytes) {
+        Objects.requireNonNull(directory);
+
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes must be >= 1.");
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // SHA-256 of the version, the format of the entries and the source
+    public static String key(Source source, String version) throws IOException {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(version);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform has SHA-256.", e);
+        }
+
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        digest.update(ByteBuffer.allocate(5).put((byte) 0).putInt(ProgramCodec.FORMAT_VERSION).flip());
+
+        ByteBuffer window = ByteBuffer.allocate(64 * 1024);
+        try (ReadableByteChannel channel = source.newChannel()) {
+            while (channel.read(window.clear()) > 0)
+                digest.update(window.flip());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public Optional<Program> load(String key) throws IOException {
+        Path entry = entry(key);
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(entry);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+
+        Optional<Program> program = read(key, bytes);
+        if (program.isEmpty()) {
+            Files.deleteIfExists(entry);
+            return program;
+        }
+
+        try {
+            Files.setLastModifiedTime(entry, FileTime.from(Instant.now()));
+        } catch (NoSuchFileException e) {
+            // Evicted by another process since it was read
+        }
+        return program;
+    }
+
+    private static Optional<Program> read(String key, byte[] bytes) {
+        if (bytes.length < HEADER_LENGTH)
+            return Optional.empty();
+
+        ByteBuffer header = ByteBuffer.wrap(bytes, 0, HEADER_LENGTH);
+        byte[] magic = new byte[MAGIC.length];
+        byte[] storedKey = new byte[KEY_LENGTH];
+        header.get(magic);
+        int formatVersion = header.getInt();
+        header.get(storedKey);
+        int checksum = header.getInt();
+
+        if (!Arrays.equals(magic, MAGIC) || formatVersion != ProgramCodec.FORMAT_VERSION
+                || !Arrays.equals(storedKey, HexFormat.of().parseHex(key))
+                || checksum != checksum(bytes, HEADER_LENGTH))
+            return Optional.empty();
+
+        try {
+            return Optional.of(ProgramCodec.decode(Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length)));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    // The program must have checked without errors
+    public void store(String key, Program program) throws IOException {
+        Objects.requireNonNull(program);
+        Path entry = entry(key);
+
+        byte[] payload = ProgramCodec.encode(program);
+        if (HEADER_LENGTH + (long) payload.length > maxBytes)
+            return;
+
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_LENGTH + payload.length)
+                .put(MAGIC)
+                .putInt(ProgramCodec.FORMAT_VERSION)
+                .put(HexFormat.of().parseHex(key))
+                .putInt(0)
+                .put(payload);
+        bytes.putInt(MAGIC.length + 4 + KEY_LENGTH, checksum(bytes.array(), HEADER_LENGTH));
+
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, key, TEMPORARY_SUFFIX);
+        try {
+            Files.write(temporary, bytes.array());
+            Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        evict();
+    }
+
+    private void evict() throws IOException {
+        record Entry(Path path, long size, FileTime lastModified) {
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        FileTime abandoned = FileTime.from(Instant.now().minus(ABANDONED));
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (name.endsWith(ENTRY_SUFFIX)) {
+                        entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime()));
+                        total += attributes.size();
+                    } else if (name.endsWith(TEMPORARY_SUFFIX) && attributes.lastModifiedTime().compareTo(abandoned) < 0) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Deleted by another process while listing
+                }
+            }
+        }
+
+        if (total <= maxBytes)
+            return;
+
+        entries.sort(Comparator.comparing(Entry::lastModified));
+        for (Entry entry : entries) {
+            if (total <= maxBytes)
+                break;
+            Files.deleteIfExists(entry.path());
+            total -= entry.size();
+        }
+    }
+
+    private Path entry(String key) {
+        Objects.requireNonNull(key);
+
+        if (key.length() != KEY_LENGTH * 2 || !key.chars().allMatch(ch -> Character.digit(ch, 16) >= 0))
+            throw new IllegalArgumentException("key must be a SHA-256 hash in hexadecimal.");
+
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    private static int checksum(byte[] bytes, int offset) {
+        var crc = new CRC32();
+        crc.update(bytes, offset, bytes.length - offset);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "CompilationCache{" +
+                "directory=" + directory +
+                ", maxBytes=" + maxBytes +
+                '}';
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.cache;
+
+import com.github.rharri.wabbitj.ast.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Objects;
+
+// The compact binary form of a program. Each expression is written in post-order, as one tag per node that also holds
+// the operator, followed by the node's fields as variable-length integers, and each statement ends with a PRINT tag.
+// The program is therefore rebuilt with a single stack of operands and no recursion, however deeply it nests. Positions
+// are written relative to the previous one, which is usually on the same line a few columns away, so most take a byte.
+public final class ProgramCodec {
+
+    // Bumped whenever the encoding changes, so that older cache entries are never read
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int END = 0;
+    private static final int PRINT = 1;
+    private static final int INT = 2;
+    private static final int FLOAT = 3;
+    private static final int GROUPING = 4;
+    // Followed by one tag per operator
+    private static final int UNARY_OP = 5;
+    private static final int BINARY_OP = UNARY_OP + Operator.values().length;
+    private static final int TAG_COUNT = BINARY_OP + Operator.values().length;
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private ProgramCodec() {
+    }
+
+    public static byte[] encode(Program program) {
+        Objects.requireNonNull(program);
+
+        var out = new Output();
+        Deque<Object> pending = new ArrayDeque<>();
+        for (Statement statement : program.statements().statements()) {
+            if (!(statement instanceof Print print))
+                throw new IllegalArgumentException("Unsupported statement " + statement + ".");
+
+            // A node is pushed once to expand its operands, and again wrapped in Emit to be written after them
+            pending.push(new Emit(print));
+            pending.push(print.expression());
+            while (!pending.isEmpty()) {
+                Object next = pending.pop();
+                if (next instanceof Emit emit) {
+                    write(emit.node(), out);
+                } else if (next instanceof BinaryOp binaryOp) {
+                    pending.push(new Emit(binaryOp));
+                    pending.push(binaryOp.rhs());
+                    pending.push(binaryOp.lhs());
+                } else if (next instanceof UnaryOp unaryOp) {
+                    pending.push(new Emit(unaryOp));
+                    pending.push(unaryOp.operand());
+                } else if (next instanceof Grouping grouping) {
+                    pending.push(new Emit(grouping));
+                    pending.push(grouping.expression());
+                } else {
+                    write((AbstractSyntaxTree) next, out);
+                }
+            }
+        }
+        out.tag(END);
+        return out.toByteArray();
+    }
+
+    private static void write(AbstractSyntaxTree node, Output out) {
+        if (node instanceof IntLiteral intLiteral) {
+            out.tag(INT).signed(intLiteral.value()).position(intLiteral.line(), intLiteral.column());
+        } else if (node instanceof FloatLiteral floatLiteral) {
+            out.tag(FLOAT).fixed(Float.floatToRawIntBits(floatLiteral.value()))
+                    .position(floatLiteral.line(), floatLiteral.column());
+        } else if (node instanceof BinaryOp binaryOp) {
+            out.tag(BINARY_OP + binaryOp.operator().ordinal()).position(binaryOp.line(), binaryOp.column());
+        } else if (node instanceof UnaryOp unaryOp) {
+            out.tag(UNARY_OP + unaryOp.operator().ordinal());
+        } else if (node instanceof Grouping) {
+            out.tag(GROUPING);
+        } else if (node instanceof Print) {
+            out.tag(PRINT);
+        } else {
+            throw new IllegalArgumentException("Unsupported node " + node + ".");
+        }
+    }
+
+    // Throws IllegalArgumentException if the bytes are not a program written by encode
+    public static Program decode(byte[] bytes) {
+        Objects.requireNonNull(bytes);
+
+        var in = new Input(bytes);
+        var statements = new Statements();
+        Expression[] operands = new Expression[16];
+        int top = 0;
+
+        while (true) {
+            int tag = in.tag();
+            if (tag == END)
+                break;
+
+            if (tag == PRINT) {
+                if (top != 1)
+                    throw corrupt();
+                statements.add(new Print(operands[--top]));
+                operands[top] = null;
+                continue;
+            }
+
+            Expression expression;
+            if (tag == INT) {
+                int value = in.signed();
+                expression = new IntLiteral(value, in.line(), in.column());
+            } else if (tag == FLOAT) {
+                float value = Float.intBitsToFloat(in.fixed());
+                expression = new FloatLiteral(value, in.line(), in.column());
+            } else if (tag == GROUPING && top >= 1) {
+                expression = new Grouping(operands[--top]);
+            } else if (tag >= UNARY_OP && tag < BINARY_OP && top >= 1) {
+                expression = new UnaryOp(OPERATORS[tag - UNARY_OP], operands[--top]);
+            } else if (tag >= BINARY_OP && tag < TAG_COUNT && top >= 2) {
+                Expression rhs = operands[--top];
+                Expression lhs = operands[--top];
+                expression = new BinaryOp(OPERATORS[tag - BINARY_OP], lhs, rhs, in.line(), in.column());
+            } else {
+                throw corrupt();
+            }
+
+            if (top == operands.length)
+                operands = Arrays.copyOf(operands, top * 2);
+            operands[top++] = expression;
+        }
+
+        if (top != 0 || !in.isAtEnd())
+            throw corrupt();
+
+        return new Program(statements);
+    }
+
+    private static IllegalArgumentException corrupt() {
+        return new IllegalArgumentException("Not an encoded program.");
+    }
+
+    record Emit(AbstractSyntaxTree node) {
+    }
+
+    private static final class Output {
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        // The previous position
+        private int line = 1;
+        private int column = 1;
+
+        Output tag(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+            return this;
+        }
+
+        Output unsigned(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+            return this;
+        }
+
+        // Zigzag, so that small negative numbers stay short
+        Output signed(int value) {
+            return unsigned((value << 1) ^ (value >> 31));
+        }
+
+        Output position(int line, int column) {
+            signed(line - this.line);
+            signed(column - this.column);
+            this.line = line;
+            this.column = column;
+            return this;
+        }
+
+        Output fixed(int value) {
+            ensure(4);
+            bytes[length++] = (byte) (value >>> 24);
+            bytes[length++] = (byte) (value >>> 16);
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+            return this;
+        }
+
+        private void ensure(int count) {
+            if (length + count > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private int position = 0;
+        // The previous position
+        private int line = 1;
+        private int column = 1;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int tag() {
+            return next();
+        }
+
+        int unsigned() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = next();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw corrupt();
+        }
+
+        int signed() {
+            int value = unsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        // A line is always read before its column
+        int line() {
+            line += signed();
+            return line;
+        }
+
+        int column() {
+            column += signed();
+            return column;
+        }
+
+        int fixed() {
+            return (next() << 24) | (next() << 16) | (next() << 8) | next();
+        }
+
+        boolean isAtEnd() {
+            return position == bytes.length;
+        }
+
+        private int next() {
+            if (position == bytes.length)
+                throw corrupt();
+            return bytes[position++] & 0xFF;
+        }
+    }
+}
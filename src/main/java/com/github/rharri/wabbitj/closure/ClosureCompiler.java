@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.closure;
+
+import com.github.rharri.wabbitj.NodeVisitor;
+import com.github.rharri.wabbitj.TypeChecker;
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.interpreter.WabbitType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+// Converts a type-checked tree into executable nodes, once. The type of each operator node is looked up here, so the
+// nodes that run are already specialized: an int addition is an IntNode.Add of two IntNodes, or an AddConstant when
+// the right operand is a literal, and nothing is checked, boxed or pushed when it executes.
+//
+// Executing a node calls its children, so nodes nest only as deeply as a thread's stack allows. A long left-leaning
+// chain, the shape of a + b + c + ..., becomes a single Chain node that loops over its operands, and a statement whose
+// nodes would still nest too deeply is left to the interpreter.
+public final class ClosureCompiler implements NodeVisitor {
+
+    // An execute frame takes well under 100 bytes, so this fits in the smallest default thread stack, 512 KB
+    static final int MAX_DEPTH = 2_000;
+
+    // Shorter chains keep a specialized node per operator
+    static final int CHAIN_LENGTH = 8;
+
+    private final TypeChecker typeChecker;
+    private final List<StatementNode> statements = new ArrayList<>();
+
+    private ClosureCompiler(TypeChecker typeChecker) {
+        this.typeChecker = typeChecker;
+    }
+
+    // The tree must already have been accepted by the type checker, without errors
+    public static ClosureProgram compile(AbstractSyntaxTree ast, TypeChecker typeChecker) {
+        Objects.requireNonNull(ast);
+        Objects.requireNonNull(typeChecker);
+
+        var compiler = new ClosureCompiler(typeChecker);
+        ast.accept(compiler);
+        return new ClosureProgram(compiler.statements);
+    }
+
+    @Override
+    public void visitProgram(Program program) {
+        Objects.requireNonNull(program);
+        program.statements().accept(this);
+    }
+
+    @Override
+    public void visitStatements(Statements statements) {
+        Objects.requireNonNull(statements);
+        for (Statement statement : statements.statements())
+            statement.accept(this);
+    }
+
+    @Override
+    public void visitPrint(Print print) {
+        Objects.requireNonNull(print);
+
+        Built built = build(print.expression());
+        if (built.depth() > MAX_DEPTH)
+            statements.add(new StatementNode.Interpret(print));
+        else if (built.node() instanceof IntNode intNode)
+            statements.add(new StatementNode.PrintInt(intNode));
+        else
+            statements.add(new StatementNode.PrintFloat((FloatNode) built.node()));
+    }
+
+    // An expression on its own is converted whole, like the expression of a print, and evaluated only for its errors,
+    // such as a division by zero, as the other engines do
+
+    @Override
+    public void visitIntLiteral(IntLiteral intLiteral) {
+        Objects.requireNonNull(intLiteral);
+        evaluate(intLiteral);
+    }
+
+    @Override
+    public void visitFloatLiteral(FloatLiteral floatLiteral) {
+        Objects.requireNonNull(floatLiteral);
+        evaluate(floatLiteral);
+    }
+
+    @Override
+    public void visitBinaryOp(BinaryOp binaryOp) {
+        Objects.requireNonNull(binaryOp);
+        evaluate(binaryOp);
+    }
+
+    @Override
+    public void visitUnaryOp(UnaryOp unaryOp) {
+        Objects.requireNonNull(unaryOp);
+        evaluate(unaryOp);
+    }
+
+    @Override
+    public void visitGrouping(Grouping grouping) {
+        Objects.requireNonNull(grouping);
+        evaluate(grouping);
+    }
+
+    private void evaluate(Expression expression) {
+        Built built = build(expression);
+        if (built.depth() > MAX_DEPTH)
+            statements.add(new StatementNode.Interpret(expression));
+        else if (built.node() instanceof IntNode intNode)
+            statements.add(new StatementNode.EvaluateInt(intNode));
+        else
+            statements.add(new StatementNode.EvaluateFloat((FloatNode) built.node()));
+    }
+
+    // Converts an expression bottom up, with the nodes still to convert on a stack in the heap rather than by
+    // recursion. An operator is pushed once to expand its operands and again, wrapped, to be built from their nodes,
+    // which are then on top of the done stack in order.
+    private Built build(Expression expression) {
+        Deque<Object> pending = new ArrayDeque<>();
+        Deque<Built> done = new ArrayDeque<>();
+
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Operation operation) {
+                done.push(operation.node() instanceof BinaryOp binaryOp
+                        ? binaryOp(binaryOp, done)
+                        : unaryOp((UnaryOp) operation.node(), done));
+            } else if (next instanceof ChainOperation chain) {
+                done.push(chain(chain.operators(), done));
+            } else if (next instanceof BinaryOp binaryOp) {
+                List<BinaryOp> spine = spine(binaryOp);
+                if (spine.size() >= CHAIN_LENGTH) {
+                    // The operators innermost first, which is the order they are applied in
+                    Collections.reverse(spine);
+                    pending.push(new ChainOperation(spine));
+                    for (int i = spine.size() - 1; i >= 0; i--)
+                        pending.push(spine.get(i).rhs());
+                    pending.push(spine.get(0).lhs());
+                } else {
+                    pending.push(new Operation(binaryOp));
+                    pending.push(binaryOp.rhs());
+                    pending.push(binaryOp.lhs());
+                }
+            } else if (next instanceof UnaryOp unaryOp) {
+                pending.push(new Operation(unaryOp));
+                pending.push(unaryOp.operand());
+            } else if (next instanceof Grouping grouping) {
+                // A grouping only decides the shape of the tree; it leaves no node behind
+                pending.push(grouping.expression());
+            } else if (next instanceof IntLiteral intLiteral) {
+                done.push(new Built(new IntNode.Constant(intLiteral.value()), 1));
+            } else if (next instanceof FloatLiteral floatLiteral) {
+                done.push(new Built(new FloatNode.Constant(floatLiteral.value()), 1));
+            } else {
+                throw new IllegalArgumentException("Unsupported expression " + next + ".");
+            }
+        }
+        return done.pop();
+    }
+
+    // The binary operator and the ones down its left operands, outermost first. The type checker gives all of them
+    // the same type, since Wabbit has no implicit conversions.
+    private static List<BinaryOp> spine(BinaryOp binaryOp) {
+        List<BinaryOp> spine = new ArrayList<>();
+        Expression next = binaryOp;
+        while (next instanceof BinaryOp operator) {
+            spine.add(operator);
+            next = operator.lhs();
+            while (next instanceof Grouping grouping)
+                next = grouping.expression();
+        }
+        return spine;
+    }
+
+    private Built binaryOp(BinaryOp binaryOp, Deque<Built> done) {
+        Built rhs = done.pop();
+        Built lhs = done.pop();
+        int depth = Math.max(lhs.depth(), rhs.depth()) + 1;
+
+        if (isInt(binaryOp)) {
+            var lhsNode = (IntNode) lhs.node();
+            var rhsNode = (IntNode) rhs.node();
+            if (rhsNode instanceof IntNode.Constant constant) {
+                return new Built(switch (binaryOp.operator()) {
+                    case PLUS -> new IntNode.AddConstant(lhsNode, constant.value());
+                    case MINUS -> new IntNode.SubtractConstant(lhsNode, constant.value());
+                    case TIMES -> new IntNode.MultiplyConstant(lhsNode, constant.value());
+                    case DIVIDE -> new IntNode.DivideConstant(lhsNode, constant.value());
+                }, depth);
+            }
+
+            return new Built(switch (binaryOp.operator()) {
+                case PLUS -> new IntNode.Add(lhsNode, rhsNode);
+                case MINUS -> new IntNode.Subtract(lhsNode, rhsNode);
+                case TIMES -> new IntNode.Multiply(lhsNode, rhsNode);
+                case DIVIDE -> new IntNode.Divide(lhsNode, rhsNode);
+            }, depth);
+        }
+
+        var lhsNode = (FloatNode) lhs.node();
+        var rhsNode = (FloatNode) rhs.node();
+        if (rhsNode instanceof FloatNode.Constant constant) {
+            return new Built(switch (binaryOp.operator()) {
+                case PLUS -> new FloatNode.AddConstant(lhsNode, constant.value());
+                case MINUS -> new FloatNode.SubtractConstant(lhsNode, constant.value());
+                case TIMES -> new FloatNode.MultiplyConstant(lhsNode, constant.value());
+                case DIVIDE -> new FloatNode.DivideConstant(lhsNode, constant.value());
+            }, depth);
+        }
+
+        return new Built(switch (binaryOp.operator()) {
+            case PLUS -> new FloatNode.Add(lhsNode, rhsNode);
+            case MINUS -> new FloatNode.Subtract(lhsNode, rhsNode);
+            case TIMES -> new FloatNode.Multiply(lhsNode, rhsNode);
+            case DIVIDE -> new FloatNode.Divide(lhsNode, rhsNode);
+        }, depth);
+    }
+
+    private Built unaryOp(UnaryOp unaryOp, Deque<Built> done) {
+        boolean isPlus = switch (unaryOp.operator()) {
+            case PLUS -> true;
+            case MINUS -> false;
+            default -> throw new IllegalArgumentException("Unsupported unary operator " + unaryOp.operator() + ".");
+        };
+
+        Built operand = done.pop();
+        int depth = operand.depth() + 1;
+        if (isInt(unaryOp)) {
+            var operandNode = (IntNode) operand.node();
+            return new Built(isPlus ? new IntNode.Abs(operandNode) : new IntNode.Negate(operandNode), depth);
+        }
+
+        var operandNode = (FloatNode) operand.node();
+        return new Built(isPlus ? new FloatNode.Abs(operandNode) : new FloatNode.Negate(operandNode), depth);
+    }
+
+    // The right operands are on top of the done stack, the last one on top, and the first operand is below them
+    private Built chain(List<BinaryOp> spine, Deque<Built> done) {
+        int length = spine.size();
+        var operators = new Operator[length];
+        var operands = new Built[length];
+        for (int i = length - 1; i >= 0; i--) {
+            operators[i] = spine.get(i).operator();
+            operands[i] = done.pop();
+        }
+        Built first = done.pop();
+
+        int depth = first.depth();
+        for (Built operand : operands)
+            depth = Math.max(depth, operand.depth());
+        depth += 1;
+
+        if (isInt(spine.get(0))) {
+            var nodes = new IntNode[length];
+            for (int i = 0; i < length; i++)
+                nodes[i] = (IntNode) operands[i].node();
+            return new Built(new IntNode.Chain((IntNode) first.node(), operators, nodes), depth);
+        }
+
+        var nodes = new FloatNode[length];
+        for (int i = 0; i < length; i++)
+            nodes[i] = (FloatNode) operands[i].node();
+        return new Built(new FloatNode.Chain((FloatNode) first.node(), operators, nodes), depth);
+    }
+
+    private boolean isInt(Expression expression) {
+        return typeChecker.typeOf(expression) == WabbitType.INT;
+    }
+
+    // A converted expression, an IntNode or a FloatNode, and how deeply its nodes nest
+    record Built(Object node, int depth) {
+    }
+
+    record Operation(Expression node) {
+    }
+
+    record ChainOperation(List<BinaryOp> operators) {
+    }
+
+    @Override
+    public String toString() {
+        return "ClosureCompiler{" +
+                "statements=" + statements.size() +
+                '}';
+    }
+}
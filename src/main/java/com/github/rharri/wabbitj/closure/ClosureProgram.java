@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.closure;
+
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+
+import java.util.List;
+import java.util.Objects;
+
+// A program converted into executable nodes. It is immutable, so it can be run any number of times, on any thread.
+public final class ClosureProgram {
+
+    private final StatementNode[] statements;
+
+    ClosureProgram(List<StatementNode> statements) {
+        this.statements = statements.toArray(new StatementNode[0]);
+    }
+
+    public List<StatementNode> statements() {
+        return List.of(statements);
+    }
+
+    public void run(JavaRuntime runtime) {
+        Objects.requireNonNull(runtime);
+        for (StatementNode statement : statements)
+            statement.execute(runtime);
+    }
+
+    @Override
+    public String toString() {
+        return "ClosureProgram{" +
+                "statements=" + statements.length +
+                '}';
+    }
+}
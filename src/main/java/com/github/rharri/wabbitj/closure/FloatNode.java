@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.closure;
+
+import com.github.rharri.wabbitj.ast.Operator;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+
+import java.util.Objects;
+
+// An expression that evaluates to a float, mirroring IntNode
+public abstract sealed class FloatNode {
+
+    public abstract float execute();
+
+    public static final class Constant extends FloatNode {
+        private final float value;
+
+        public Constant(float value) {
+            this.value = value;
+        }
+
+        public float value() {
+            return value;
+        }
+
+        @Override
+        public float execute() {
+            return value;
+        }
+    }
+
+    public static final class Add extends FloatNode {
+        private final FloatNode lhs;
+        private final FloatNode rhs;
+
+        public Add(FloatNode lhs, FloatNode rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.add(lhs.execute(), rhs.execute());
+        }
+    }
+
+    public static final class Subtract extends FloatNode {
+        private final FloatNode lhs;
+        private final FloatNode rhs;
+
+        public Subtract(FloatNode lhs, FloatNode rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.subtract(lhs.execute(), rhs.execute());
+        }
+    }
+
+    public static final class Multiply extends FloatNode {
+        private final FloatNode lhs;
+        private final FloatNode rhs;
+
+        public Multiply(FloatNode lhs, FloatNode rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.multiply(lhs.execute(), rhs.execute());
+        }
+    }
+
+    public static final class Divide extends FloatNode {
+        private final FloatNode lhs;
+        private final FloatNode rhs;
+
+        public Divide(FloatNode lhs, FloatNode rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.divide(lhs.execute(), rhs.execute());
+        }
+    }
+
+    public static final class Negate extends FloatNode {
+        private final FloatNode operand;
+
+        public Negate(FloatNode operand) {
+            this.operand = Objects.requireNonNull(operand);
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.minus(operand.execute());
+        }
+    }
+
+    // Unary plus is the absolute value
+    public static final class Abs extends FloatNode {
+        private final FloatNode operand;
+
+        public Abs(FloatNode operand) {
+            this.operand = Objects.requireNonNull(operand);
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.plus(operand.execute());
+        }
+    }
+
+    // Specializations for a constant right operand
+
+    public static final class AddConstant extends FloatNode {
+        private final FloatNode lhs;
+        private final float rhs;
+
+        public AddConstant(FloatNode lhs, float rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = rhs;
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.add(lhs.execute(), rhs);
+        }
+    }
+
+    public static final class SubtractConstant extends FloatNode {
+        private final FloatNode lhs;
+        private final float rhs;
+
+        public SubtractConstant(FloatNode lhs, float rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = rhs;
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.subtract(lhs.execute(), rhs);
+        }
+    }
+
+    public static final class MultiplyConstant extends FloatNode {
+        private final FloatNode lhs;
+        private final float rhs;
+
+        public MultiplyConstant(FloatNode lhs, float rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = rhs;
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.multiply(lhs.execute(), rhs);
+        }
+    }
+
+    public static final class DivideConstant extends FloatNode {
+        private final FloatNode lhs;
+        private final float rhs;
+
+        public DivideConstant(FloatNode lhs, float rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = rhs;
+        }
+
+        @Override
+        public float execute() {
+            return JavaRuntime.divide(lhs.execute(), rhs);
+        }
+    }
+
+    // A left-leaning chain such as a + b - c * d, evaluated in a loop rather than as a node per operator, so that a
+    // long chain costs one frame of the thread's stack instead of one per operator
+    public static final class Chain extends FloatNode {
+        private final FloatNode first;
+        private final Operator[] operators;
+        private final FloatNode[] operands;
+
+        public Chain(FloatNode first, Operator[] operators, FloatNode[] operands) {
+            if (operators.length != operands.length)
+                throw new IllegalArgumentException("Every operator needs exactly one operand.");
+
+            this.first = Objects.requireNonNull(first);
+            this.operators = operators.clone();
+            this.operands = operands.clone();
+        }
+
+        @Override
+        public float execute() {
+            float value = first.execute();
+            for (int i = 0; i < operators.length; i++) {
+                float operand = operands[i].execute();
+                value = switch (operators[i]) {
+                    case PLUS -> JavaRuntime.add(value, operand);
+                    case MINUS -> JavaRuntime.subtract(value, operand);
+                    case TIMES -> JavaRuntime.multiply(value, operand);
+                    case DIVIDE -> JavaRuntime.divide(value, operand);
+                };
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.closure;
+
+import com.github.rharri.wabbitj.ast.Operator;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+
+import java.util.Objects;
+
+// An expression that evaluates to an int. Every node is a final class holding its children in final fields, so each
+// execute call is a plain virtual call the JIT can inline where the children's classes are known.
+public abstract sealed class IntNode {
+
+    public abstract int execute();
+
+    public static final class Constant extends IntNode {
+        private final int value;
+
+        public Constant(int value) {
+            this.value = value;
+        }
+
+        public int value() {
+            return value;
+        }
+
+        @Override
+        public int execute() {
+            return value;
+        }
+    }
+
+    public static final class Add extends IntNode {
+        private final IntNode lhs;
+        private final IntNode rhs;
+
+        public Add(IntNode lhs, IntNode rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.add(lhs.execute(), rhs.execute());
+        }
+    }
+
+    public static final class Subtract extends IntNode {
+        private final IntNode lhs;
+        private final IntNode rhs;
+
+        public Subtract(IntNode lhs, IntNode rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.subtract(lhs.execute(), rhs.execute());
+        }
+    }
+
+    public static final class Multiply extends IntNode {
+        private final IntNode lhs;
+        private final IntNode rhs;
+
+        public Multiply(IntNode lhs, IntNode rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.multiply(lhs.execute(), rhs.execute());
+        }
+    }
+
+    public static final class Divide extends IntNode {
+        private final IntNode lhs;
+        private final IntNode rhs;
+
+        public Divide(IntNode lhs, IntNode rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.divide(lhs.execute(), rhs.execute());
+        }
+    }
+
+    public static final class Negate extends IntNode {
+        private final IntNode operand;
+
+        public Negate(IntNode operand) {
+            this.operand = Objects.requireNonNull(operand);
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.minus(operand.execute());
+        }
+    }
+
+    // Unary plus is the absolute value
+    public static final class Abs extends IntNode {
+        private final IntNode operand;
+
+        public Abs(IntNode operand) {
+            this.operand = Objects.requireNonNull(operand);
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.plus(operand.execute());
+        }
+    }
+
+    // Specializations for a constant right operand, the common shape of chained arithmetic, which make one call to a
+    // child instead of two
+
+    public static final class AddConstant extends IntNode {
+        private final IntNode lhs;
+        private final int rhs;
+
+        public AddConstant(IntNode lhs, int rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = rhs;
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.add(lhs.execute(), rhs);
+        }
+    }
+
+    public static final class SubtractConstant extends IntNode {
+        private final IntNode lhs;
+        private final int rhs;
+
+        public SubtractConstant(IntNode lhs, int rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = rhs;
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.subtract(lhs.execute(), rhs);
+        }
+    }
+
+    public static final class MultiplyConstant extends IntNode {
+        private final IntNode lhs;
+        private final int rhs;
+
+        public MultiplyConstant(IntNode lhs, int rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = rhs;
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.multiply(lhs.execute(), rhs);
+        }
+    }
+
+    public static final class DivideConstant extends IntNode {
+        private final IntNode lhs;
+        private final int rhs;
+
+        public DivideConstant(IntNode lhs, int rhs) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = rhs;
+        }
+
+        @Override
+        public int execute() {
+            return JavaRuntime.divide(lhs.execute(), rhs);
+        }
+    }
+
+    // A left-leaning chain such as a + b - c * d, evaluated in a loop rather than as a node per operator, so that a
+    // long chain costs one frame of the thread's stack instead of one per operator
+    public static final class Chain extends IntNode {
+        private final IntNode first;
+        private final Operator[] operators;
+        private final IntNode[] operands;
+
+        public Chain(IntNode first, Operator[] operators, IntNode[] operands) {
+            if (operators.length != operands.length)
+                throw new IllegalArgumentException("Every operator needs exactly one operand.");
+
+            this.first = Objects.requireNonNull(first);
+            this.operators = operators.clone();
+            this.operands = operands.clone();
+        }
+
+        @Override
+        public int execute() {
+            int value = first.execute();
+            for (int i = 0; i < operators.length; i++) {
+                int operand = operands[i].execute();
+                value = switch (operators[i]) {
+                    case PLUS -> JavaRuntime.add(value, operand);
+                    case MINUS -> JavaRuntime.subtract(value, operand);
+                    case TIMES -> JavaRuntime.multiply(value, operand);
+                    case DIVIDE -> JavaRuntime.divide(value, operand);
+                };
+            }
+            return value;
+        }
+    }
+}
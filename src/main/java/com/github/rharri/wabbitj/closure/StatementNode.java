@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.closure;
+
+import com.github.rharri.wabbitj.ast.AbstractSyntaxTree;
+import com.github.rharri.wabbitj.interpreter.Interpreter;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+
+public sealed interface StatementNode {
+
+    void execute(JavaRuntime runtime);
+
+    record PrintInt(IntNode expression) implements StatementNode {
+
+        @Override
+        public void execute(JavaRuntime runtime) {
+            runtime.println(expression.execute());
+        }
+    }
+
+    record PrintFloat(FloatNode expression) implements StatementNode {
+
+        @Override
+        public void execute(JavaRuntime runtime) {
+            runtime.println(expression.execute());
+        }
+    }
+
+    // An expression compiled on its own, outside a print; the value is dropped
+    record EvaluateInt(IntNode expression) implements StatementNode {
+
+        @Override
+        public void execute(JavaRuntime runtime) {
+            expression.execute();
+        }
+    }
+
+    record EvaluateFloat(FloatNode expression) implements StatementNode {
+
+        @Override
+        public void execute(JavaRuntime runtime) {
+            expression.execute();
+        }
+    }
+
+    // A print, or an expression on its own, whose nodes would nest too deeply to execute on a thread's stack, run by
+    // the interpreter instead, which keeps its operands in the heap
+    record Interpret(AbstractSyntaxTree node) implements StatementNode {
+
+        @Override
+        public void execute(JavaRuntime runtime) {
+            node.accept(new Interpreter(runtime));
+        }
+    }
+}
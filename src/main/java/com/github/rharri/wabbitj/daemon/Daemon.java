@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Keeps one JVM warm and runs the programs that clients send over a Unix domain socket, so that a short script pays
+// for neither JVM startup nor a cold JIT. Each connection carries one Request and one Response. At most maxRuns
+// programs run at once; further connections wait to be accepted. Runs are on virtual threads when the JDK has them and
+// on a fixed pool of platform threads otherwise.
+public final class Daemon implements Closeable {
+
+    // Runs a program and returns what it printed; called concurrently, so it must not share mutable state
+    @FunctionalInterface
+    public interface Runner {
+        Response run(Request request);
+    }
+
+    private final Path socket;
+    private final Runner runner;
+    private final PrintStream log;
+    private final Semaphore runs;
+    private final ExecutorService executor;
+    private final ServerSocketChannel server;
+
+    private Daemon(Path socket, Runner runner, PrintStream log, int maxRuns, ServerSocketChannel server) {
+        this.socket = socket;
+        this.runner = runner;
+        this.log = log;
+        this.runs = new Semaphore(maxRuns);
+        this.executor = newExecutor(maxRuns);
+        this.server = server;
+    }
+
+    // In the temporary directory, and named per user so that the daemons of different users do not collide
+    public static Path defaultSocket() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "wabbitj-" + System.getProperty("user.name") + ".sock");
+    }
+
+    // Binds the socket, replacing the file of a daemon that did not shut down cleanly
+    public static Daemon bind(Path socket, Runner runner, PrintStream log, int maxRuns) throws IOException {
+        Objects.requireNonNull(socket);
+        Objects.requireNonNull(runner);
+        Objects.requireNonNull(log);
+
+        if (maxRuns <= 0)
+            throw new IllegalArgumentException("maxRuns must be >= 1.");
+
+        Files.deleteIfExists(socket);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            // Only the user who started the daemon may send it programs to run
+            if (socket.getFileSystem().supportedFileAttributeViews().contains("posix"))
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return new Daemon(socket, runner, log, maxRuns, server);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is looked up rather than called, since wabbitj is compiled for JDK 17
+    private static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                var thread = new Thread(runnable, "wabbitj-run");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Accepts connections until the daemon is closed
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                runs.acquireUninterruptibly();
+                SocketChannel connection;
+                try {
+                    connection = server.accept();
+                } catch (IOException e) {
+                    runs.release();
+                    throw e;
+                }
+
+                executor.execute(() -> {
+                    try (connection) {
+                        handle(connection);
+                    } catch (IOException e) {
+                        log.printf("Dropped a connection: %s%n", e.getMessage());
+                    } finally {
+                        runs.release();
+                    }
+                });
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by close()
+        }
+    }
+
+    private void handle(SocketChannel connection) throws IOException {
+        var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+        var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+        Request request = Request.readFrom(in);
+
+        long start = System.nanoTime();
+        Response response = runner.run(request);
+        long nanos = System.nanoTime() - start;
+
+        response = new Response(response.exitCode(), response.out(), response.err(), nanos);
+        response.writeTo(out);
+        log.printf("%s: %.1f ms, exit code %d%n", request.path(), nanos / 1_000_000.0, response.exitCode());
+    }
+
+    public Path socket() {
+        return socket;
+    }
+
+    // Stops accepting connections, and waits briefly for the runs that were accepted to finish; closing again does nothing
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Daemon{" +
+                "socket=" + socket +
+                '}';
+    }
+}
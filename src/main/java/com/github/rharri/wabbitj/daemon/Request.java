@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.daemon;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// A program for the daemon to run: the command line options to run it with, the absolute path of the file, and the
+// source text if the client sent it rather than have the daemon read the file. The path is then only used to name
+// the program in errors.
+public record Request(List<String> options, String path, @Nullable String text) {
+
+    public Request {
+        Objects.requireNonNull(options);
+        Objects.requireNonNull(path);
+        options = List.copyOf(options);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(Protocol.VERSION);
+        out.writeInt(options.size());
+        for (String option : options)
+            Protocol.writeString(out, option);
+        Protocol.writeString(out, path);
+        out.writeBoolean(text != null);
+        if (text != null)
+            Protocol.writeString(out, text);
+        out.flush();
+    }
+
+    static Request readFrom(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != Protocol.VERSION)
+            throw new IOException("Protocol version " + version + " is not supported; expected version "
+                    + Protocol.VERSION + ".");
+
+        int count = in.readInt();
+        if (count < 0 || count > Protocol.MAX_OPTIONS)
+            throw new IOException("A request cannot have " + count + " options.");
+
+        List<String> options = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            options.add(Protocol.readString(in));
+        String path = Protocol.readString(in);
+        @Nullable String text = in.readBoolean() ? Protocol.readString(in) : null;
+        return new Request(options, path, text);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+// What a run printed to standard output and standard error, how it exited, and how long the daemon took to run it
+public record Response(int exitCode, String out, String err, long nanos) {
+
+    public Response {
+        Objects.requireNonNull(out);
+        Objects.requireNonNull(err);
+    }
+
+    void writeTo(DataOutputStream stream) throws IOException {
+        stream.writeInt(exitCode);
+        Protocol.writeString(stream, out);
+        Protocol.writeString(stream, err);
+        stream.writeLong(nanos);
+        stream.flush();
+    }
+
+    static Response readFrom(DataInputStream stream) throws IOException {
+        int exitCode = stream.readInt();
+        String out = Protocol.readString(stream);
+        String err = Protocol.readString(stream);
+        long nanos = stream.readLong();
+        return new Response(exitCode, out, err, nanos);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.engine;
+
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.interpreter.OutputSink;
+import com.github.rharri.wabbitj.interpreter.PrintStreamSink;
+
+import java.io.PrintStream;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+// A program that checked without errors, compiled by a WabbitEngine. It is immutable and every run gets its own
+// runtime and stack, so it can be run any number of times, from any number of threads at once.
+public final class CompiledScript {
+
+    private final String name;
+    private final Consumer<JavaRuntime> program;
+    private final long weight;
+
+    CompiledScript(String name, Consumer<JavaRuntime> program, long weight) {
+        this.name = name;
+        this.program = program;
+        this.weight = weight;
+    }
+
+    // Prints to the sink, which is flushed when the program ends, including when it fails with a division by zero. The
+    // sink is not closed, and must not be shared with a run on another thread unless it is thread-safe.
+    public void run(OutputSink sink) {
+        Objects.requireNonNull(sink);
+
+        var runtime = new JavaRuntime(sink);
+        try {
+            program.accept(runtime);
+        } finally {
+            runtime.flush();
+        }
+    }
+
+    public void run(PrintStream out) {
+        Objects.requireNonNull(out);
+        run(new PrintStreamSink(out));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // An estimate of the bytes the compiled form keeps alive
+    public long weight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledScript{" +
+                "name='" + name + '\'' +
+                ", weight=" + weight +
+                '}';
+    }
+}
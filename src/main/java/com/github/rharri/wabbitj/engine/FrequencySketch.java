@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.engine;
+
+// How often each key was asked for recently, approximately and in constant space: a count-min sketch of 4-bit counters,
+// sixteen to a long, with four counters per key. The smallest of a key's counters is its frequency, which only
+// overestimates when every one of them is shared with other keys. Once there have been ten increments per counter
+// word, every counter is halved, so that keys that were popular long ago age out. Not thread-safe.
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long HALF = 0x7777_7777_7777_7777L;
+    private static final int MAX_COUNT = 15;
+
+    private long[] table = new long[16];
+    private int additions = 0;
+
+    // Widens the sketch to fit the number of keys being tracked, keeping what it counted. A counter's word in the wider
+    // table is its word in the old one plus a multiple of the old length, so each copy of the old table holds every
+    // key's counters where they are now looked up.
+    void ensureCapacity(int keys) {
+        int length = Math.max(16, Integer.highestOneBit(Math.min(keys, 1 << 28) - 1) << 1);
+        if (length <= table.length)
+            return;
+
+        long[] widened = new long[length];
+        for (int start = 0; start < length; start += table.length)
+            System.arraycopy(table, 0, widened, start, table.length);
+        table = widened;
+    }
+
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = index(hash, i);
+            frequency = Math.min(frequency, (int) (table[word(index)] >>> shift(index)) & MAX_COUNT);
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        boolean incremented = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = index(hash, i);
+            int word = word(index);
+            int shift = shift(index);
+            if (((table[word] >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                table[word] += 1L << shift;
+                incremented = true;
+            }
+        }
+
+        if (incremented && ++additions >= table.length * 10)
+            age();
+    }
+
+    private void age() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & HALF;
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int word(int index) {
+        return (index >>> 4) & (table.length - 1);
+    }
+
+    private static int shift(int index) {
+        return (index & 15) << 2;
+    }
+
+    @Override
+    public String toString() {
+        return "FrequencySketch{" +
+                "words=" + table.length +
+                ", additions=" + additions +
+                '}';
+    }
+}
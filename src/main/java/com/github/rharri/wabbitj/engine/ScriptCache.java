@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.engine;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compiled scripts kept for reuse, keyed by a SHA-256 hash of their source, up to a total weight as estimated by
+// CompiledScript.weight(). Scripts with the same source share one compiled form, named after the first to be compiled.
+//
+// Eviction follows W-TinyLFU. A new script enters a small LRU window, so that a burst of requests for it can be
+// served. When the window is full, its least recently used script becomes a candidate for the main LRU area, and is
+// only admitted if it has been asked for more often than each script it would evict, as counted by a frequency sketch
+// that also remembers scripts that are no longer cached. A scan of scripts that are asked for once therefore cannot
+// push out scripts that are asked for all the time, as it would with a plain LRU.
+//
+// Lookups and updates are under one lock and take constant time; compiles run outside of it, and concurrent requests
+// for a script that is not cached wait for a single compile.
+public final class ScriptCache {
+
+    // Percent of the weight given to the window
+    private static final int WINDOW_PERCENT = 1;
+
+    private final WabbitEngine engine;
+    private final long maxWeight;
+    private final long maxWindowWeight;
+    private final long maxMainWeight;
+
+    // Guarded by this
+    private final LinkedHashMap<String, CompiledScript> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, CompiledScript> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long windowWeight = 0;
+    private long mainWeight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long loads = 0;
+    private long loadFailures = 0;
+    private long loadNanos = 0;
+
+    private final ConcurrentHashMap<String, CompletableFuture<CompiledScript>> loading = new ConcurrentHashMap<>();
+
+    public ScriptCache(WabbitEngine engine, long maxWeight) {
+        Objects.requireNonNull(engine);
+
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("maxWeight must be >= 1.");
+
+        this.engine = engine;
+        this.maxWeight = maxWeight;
+        this.maxWindowWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.maxMainWeight = maxWeight - maxWindowWeight;
+    }
+
+    public record Stats(long hits, long misses, long evictions, long loads, long loadFailures, long loadNanos) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+
+        public double averageLoadMillis() {
+            long count = loads + loadFailures;
+            return count == 0 ? 0.0 : loadNanos / 1_000_000.0 / count;
+        }
+    }
+
+    public CompiledScript get(String programText) throws CompilationException {
+        return get("<script>", programText);
+    }
+
+    // The name is used in the errors of a script that does not compile
+    public CompiledScript get(String name, String programText) throws CompilationException {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(programText);
+
+        String key = key(programText);
+        synchronized (this) {
+            sketch.increment(key.hashCode());
+            CompiledScript script = cached(key);
+            if (script != null) {
+                hits += 1;
+                return script;
+            }
+            misses += 1;
+        }
+
+        var load = new CompletableFuture<CompiledScript>();
+        CompletableFuture<CompiledScript> existing = loading.putIfAbsent(key, load);
+        if (existing != null)
+            return await(existing);
+
+        // Another load of the script may have finished since it was looked up
+        CompiledScript added = cached(key);
+        if (added != null) {
+            load.complete(added);
+            loading.remove(key, load);
+            return added;
+        }
+
+        long start = System.nanoTime();
+        try {
+            CompiledScript script = engine.compile(name, programText);
+            long nanos = System.nanoTime() - start;
+            synchronized (this) {
+                loads += 1;
+                loadNanos += nanos;
+                add(key, script);
+            }
+            load.complete(script);
+            return script;
+        } catch (Throwable e) {
+            // Also an Error such as a StackOverflowError, so that the requests waiting for this load fail with it too
+            long nanos = System.nanoTime() - start;
+            synchronized (this) {
+                loadFailures += 1;
+                loadNanos += nanos;
+            }
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    private synchronized @Nullable CompiledScript cached(String key) {
+        CompiledScript script = window.get(key);
+        return script != null ? script : main.get(key);
+    }
+
+    private static CompiledScript await(CompletableFuture<CompiledScript> load) throws CompilationException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CompilationException compilationException)
+                throw compilationException;
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw e;
+        }
+    }
+
+    // Guarded by this
+    private void add(String key, CompiledScript script) {
+        // A script that could never fit in the main area would only empty it
+        if (script.weight() > maxMainWeight || window.containsKey(key) || main.containsKey(key))
+            return;
+
+        sketch.ensureCapacity(window.size() + main.size() + 1);
+        window.put(key, script);
+        windowWeight += script.weight();
+
+        while (windowWeight > maxWindowWeight) {
+            Map.Entry<String, CompiledScript> candidate = window.entrySet().iterator().next();
+            window.remove(candidate.getKey());
+            windowWeight -= candidate.getValue().weight();
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    // Guarded by this
+    private void admit(String key, CompiledScript candidate) {
+        int frequency = sketch.frequency(key.hashCode());
+
+        // Victims are only chosen, not evicted, until it is known that the candidate beats all of them and then fits
+        long freed = 0;
+        int victims = 0;
+        Iterator<Map.Entry<String, CompiledScript>> eldest = main.entrySet().iterator();
+        while (mainWeight - freed + candidate.weight() > maxMainWeight && eldest.hasNext()) {
+            Map.Entry<String, CompiledScript> victim = eldest.next();
+            if (sketch.frequency(victim.getKey().hashCode()) >= frequency) {
+                evictions += 1;
+                return;
+            }
+            freed += victim.getValue().weight();
+            victims += 1;
+        }
+
+        if (mainWeight - freed + candidate.weight() > maxMainWeight) {
+            evictions += 1;
+            return;
+        }
+
+        for (Iterator<Map.Entry<String, CompiledScript>> evicted = main.entrySet().iterator(); victims > 0; victims--) {
+            mainWeight -= evicted.next().getValue().weight();
+            evicted.remove();
+            evictions += 1;
+        }
+
+        main.put(key, candidate);
+        mainWeight += candidate.weight();
+    }
+
+    private static String key(String programText) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform has SHA-256.", e);
+        }
+        return HexFormat.of().formatHex(digest.digest(programText.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, loads, loadFailures, loadNanos);
+    }
+
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    public synchronized long weight() {
+        return windowWeight + mainWeight;
+    }
+
+    public long maxWeight() {
+        return maxWeight;
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptCache{" +
+                "engine=" + engine +
+                ", maxWeight=" + maxWeight +
+                '}';
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.engine;
+
+import com.github.rharri.wabbitj.Parser;
+import com.github.rharri.wabbitj.TypeChecker;
+import com.github.rharri.wabbitj.ast.BinaryOp;
+import com.github.rharri.wabbitj.ast.Expression;
+import com.github.rharri.wabbitj.ast.Grouping;
+import com.github.rharri.wabbitj.ast.Print;
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.ast.Statement;
+import com.github.rharri.wabbitj.ast.UnaryOp;
+import com.github.rharri.wabbitj.closure.ClosureCompiler;
+import com.github.rharri.wabbitj.closure.ClosureProgram;
+import com.github.rharri.wabbitj.jvm.JitProgram;
+import com.github.rharri.wabbitj.jvm.JvmCompiler;
+import com.github.rharri.wabbitj.optimizer.PassManager;
+import com.github.rharri.wabbitj.tokenizer.LineIndex;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import com.github.rharri.wabbitj.vm.Bytecode;
+import com.github.rharri.wabbitj.vm.BytecodeCompiler;
+import com.github.rharri.wabbitj.vm.VirtualMachine;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Optional;
+
+// The front end and a backend, for applications that embed wabbitj. A program is tokenized, parsed, type checked and
+// compiled once into a CompiledScript, which can then be run any number of times. The parser and type checker keep
+// state while they work, so each compile makes its own; an engine holds only its settings and is thread-safe.
+public final class WabbitEngine {
+
+    public enum Backend {
+        // Typed, executable nodes
+        CLOSURE,
+        // Bytecode, run on a stack machine made for each run
+        VM,
+        // A JVM class, or executable nodes for a program too large for one
+        JIT
+    }
+
+    // Estimates of the memory behind a compiled script, in bytes
+    private static final long SCRIPT_BYTES = 64;
+    private static final long JIT_CLASS_BYTES = 2048;
+    private static final long NODE_BYTES = 32;
+
+    private final Backend backend;
+    private final boolean optimize;
+
+    public WabbitEngine() {
+        this(Backend.CLOSURE, true);
+    }
+
+    public WabbitEngine(Backend backend, boolean optimize) {
+        Objects.requireNonNull(backend);
+        this.backend = backend;
+        this.optimize = optimize;
+    }
+
+    public CompiledScript compile(String programText) throws CompilationException {
+        return compile("<script>", programText);
+    }
+
+    // The name is the file name used in errors
+    public CompiledScript compile(String name, String programText) throws CompilationException {
+        Objects.requireNonNull(programText);
+        return compile(name, Source.of(programText));
+    }
+
+    public CompiledScript compile(String name, Source source) throws CompilationException {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(source);
+
+        var lines = new LineIndex();
+        Program program;
+        try {
+            program = new Parser(new Tokenizer(source, lines)).parse();
+        } catch (IllegalArgumentException e) {
+            throw new CompilationException(name + ": " + e.getMessage());
+        }
+
+        var typeChecker = new TypeChecker(name, source, lines);
+        program.accept(typeChecker);
+        if (!typeChecker.getDiagnostics().isEmpty())
+            throw new CompilationException(typeChecker.getDiagnostics(), typeChecker.getErrors());
+
+        if (optimize) {
+            // The rewritten nodes are typed again for the backends; a program that checked cannot fail here
+            program = PassManager.standard().run(program).program();
+            typeChecker = new TypeChecker(name, source);
+            program.accept(typeChecker);
+        }
+
+        return compiled(name, program, typeChecker);
+    }
+
+    // Without recursion, since expressions can nest more deeply than a stack allows
+    private static long nodeCount(Program program) {
+        long count = 0;
+        Deque<Expression> pending = new ArrayDeque<>();
+        for (Statement statement : program.statements().statements()) {
+            count += 1;
+            if (statement instanceof Print print)
+                pending.push(print.expression());
+
+            while (!pending.isEmpty()) {
+                Expression expression = pending.pop();
+                count += 1;
+                if (expression instanceof BinaryOp binaryOp) {
+                    pending.push(binaryOp.lhs());
+                    pending.push(binaryOp.rhs());
+                } else if (expression instanceof UnaryOp unaryOp) {
+                    pending.push(unaryOp.operand());
+                } else if (expression instanceof Grouping grouping) {
+                    pending.push(grouping.expression());
+                }
+            }
+        }
+        return count;
+    }
+
+    // Only immutable results of the compilers are captured, never the checker or the tree. The weight is roughly how
+    // many bytes the compiled form keeps alive, for caches that hold many scripts: bytecode is weighed by its code and
+    // constants, and executable nodes and JVM classes by the size of the tree.
+    private CompiledScript compiled(String name, Program program, TypeChecker typeChecker) {
+        if (backend == Backend.VM) {
+            Bytecode bytecode = BytecodeCompiler.compile(program, typeChecker);
+            return new CompiledScript(name, runtime -> new VirtualMachine(runtime).run(bytecode),
+                    SCRIPT_BYTES + (bytecode.codeLength() + bytecode.constantCount()) * (long) Integer.BYTES);
+        }
+
+        long treeBytes = nodeCount(program) * NODE_BYTES;
+        if (backend == Backend.JIT) {
+            Optional<JitProgram> jitProgram = JvmCompiler.compile(program, typeChecker);
+            if (jitProgram.isPresent()) {
+                JitProgram compiled = jitProgram.get();
+                return new CompiledScript(name, compiled::run, JIT_CLASS_BYTES + treeBytes);
+            }
+        }
+
+        // Also for a program too large for a JVM class
+        ClosureProgram closureProgram = ClosureCompiler.compile(program, typeChecker);
+        return new CompiledScript(name, closureProgram::run, SCRIPT_BYTES + treeBytes);
+    }
+
+    public Backend backend() {
+        return backend;
+    }
+
+    @Override
+    public String toString() {
+        return "WabbitEngine{" +
+                "backend=" + backend +
+                ", optimize=" + optimize +
+                '}';
+    }
+}
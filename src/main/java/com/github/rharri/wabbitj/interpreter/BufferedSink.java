@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.interpreter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+// Formats values straight into one byte array and writes it to a channel in large chunks. Printing an int or a float
+// does not allocate, take a lock or make a system call; the channel is only written when the flush policy says so.
+// Not thread-safe: a program prints from one thread.
+public final class BufferedSink implements OutputSink {
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final boolean ownsChannel;
+    private final long intervalNanos;
+    private final byte[] buffer;
+    // Wraps buffer, to hand it to the channel without copying
+    private final ByteBuffer byteBuffer;
+    private int position;
+    private long lastFlush;
+
+    private BufferedSink(WritableByteChannel channel, boolean ownsChannel, FlushPolicy policy) {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.intervalNanos = policy.intervalNanos();
+        this.buffer = new byte[policy.bufferSize()];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+        this.lastFlush = System.nanoTime();
+    }
+
+    // The channel is closed with the sink, as for a file opened to hold the output
+    public static BufferedSink owning(WritableByteChannel channel, FlushPolicy policy) {
+        Objects.requireNonNull(channel);
+        Objects.requireNonNull(policy);
+        return new BufferedSink(channel, true, policy);
+    }
+
+    // The stream is written a buffer at a time and is flushed, but not closed, with the sink
+    public static BufferedSink of(OutputStream out, FlushPolicy policy) {
+        Objects.requireNonNull(out);
+        Objects.requireNonNull(policy);
+        return new BufferedSink(new StreamChannel(out), false, policy);
+    }
+
+    @Override
+    public void println(int value) {
+        reserve(NumberFormatter.MAX_INT_LENGTH + LINE_SEPARATOR.length);
+        position = NumberFormatter.writeInt(value, buffer, position);
+        endLine();
+    }
+
+    @Override
+    public void println(float value) {
+        reserve(NumberFormatter.MAX_FLOAT_LENGTH + LINE_SEPARATOR.length);
+        position = NumberFormatter.writeFloat(value, buffer, position);
+        endLine();
+    }
+
+    @Override
+    public void println(Object object) {
+        Objects.requireNonNull(object);
+
+        byte[] bytes = String.valueOf(object).getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (position == buffer.length)
+                drain();
+            int length = Math.min(bytes.length - offset, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+            offset += length;
+        }
+        reserve(LINE_SEPARATOR.length);
+        endLine();
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        if (channel instanceof StreamChannel stream)
+            stream.flush();
+    }
+
+    @Override
+    public void close() {
+        if (!ownsChannel) {
+            flush();
+            return;
+        }
+
+        try (channel) {
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void reserve(int length) {
+        if (buffer.length - position < length)
+            drain();
+    }
+
+    private void endLine() {
+        for (byte b : LINE_SEPARATOR)
+            buffer[position++] = b;
+
+        if (intervalNanos > 0 && System.nanoTime() - lastFlush >= intervalNanos)
+            flush();
+    }
+
+    private void drain() {
+        byteBuffer.clear().limit(position);
+        try {
+            while (byteBuffer.hasRemaining())
+                channel.write(byteBuffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = 0;
+        lastFlush = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferedSink{" +
+                "channel=" + channel +
+                ", capacity=" + buffer.length +
+                ", buffered=" + position +
+                '}';
+    }
+
+    // Writes a heap buffer's array straight to a stream, which Channels.newChannel would copy through a small array
+    private static final class StreamChannel implements WritableByteChannel {
+
+        private final OutputStream out;
+        private boolean open = true;
+
+        StreamChannel(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int length = source.remaining();
+            out.write(source.array(), source.arrayOffset() + source.position(), length);
+            source.position(source.limit());
+            return length;
+        }
+
+        void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public String toString() {
+            return "StreamChannel{" +
+                    "out=" + out +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.interpreter;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+
+// When a BufferedSink writes what it has buffered. A full buffer is always written, so the buffer size is also the
+// largest amount of output that can be held back; a nonzero interval additionally writes the buffer once that much time
+// has passed since the last write, checked as each line is printed.
+public record FlushPolicy(int bufferSize, long intervalNanos) {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // Room for the longest formatted int or float and a line separator
+    static final int MIN_BUFFER_SIZE = 64;
+
+    public FlushPolicy {
+        if (bufferSize < MIN_BUFFER_SIZE)
+            throw new IllegalArgumentException("bufferSize must be >= " + MIN_BUFFER_SIZE + ".");
+
+        if (intervalNanos < 0)
+            throw new IllegalArgumentException("intervalNanos must be >= 0.");
+    }
+
+    // Writes only when the buffer is full, and when the program ends
+    public static FlushPolicy onExit() {
+        return new FlushPolicy(DEFAULT_BUFFER_SIZE, 0);
+    }
+
+    public static FlushPolicy bySize(int bytes) {
+        return new FlushPolicy(bytes, 0);
+    }
+
+    public static FlushPolicy byInterval(Duration interval) {
+        Objects.requireNonNull(interval);
+        return new FlushPolicy(DEFAULT_BUFFER_SIZE, interval.toNanos());
+    }
+
+    // Parses "exit", "size:<bytes>" or "interval:<milliseconds>"
+    public static FlushPolicy parse(String policy) {
+        Objects.requireNonNull(policy);
+
+        String[] parts = policy.toLowerCase(Locale.ROOT).split(":", 2);
+        try {
+            return switch (parts[0]) {
+                case "exit" -> {
+                    if (parts.length != 1)
+                        throw new IllegalArgumentException("exit takes no value.");
+                    yield onExit();
+                }
+                case "size" -> bySize(Integer.parseInt(value(parts)));
+                case "interval" -> byInterval(Duration.ofMillis(Long.parseLong(value(parts))));
+                default -> throw new IllegalArgumentException("Unknown flush policy " + policy + ".");
+            };
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid flush policy " + policy + ".", e);
+        }
+    }
+
+    private static String value(String[] parts) {
+        if (parts.length != 2)
+            throw new IllegalArgumentException(parts[0] + " needs a value, as in " + parts[0] + ":<n>.");
+        return parts[1];
+    }
+}
@@ -25,14 +25,57 @@ package com.github.rharri.wabbitj.interpreter;
 import com.github.rharri.wabbitj.NodeVisitor;
 import com.github.rharri.wabbitj.ast.*;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
+// The first time a tree is visited, its operators and prints are resolved, in post-order, into an array of operations
+// specialized for the types of their operands; running it is one switch over that array. The array is kept for the
+// last tree visited, so running the same program again does not visit it again.
 public class Interpreter implements NodeVisitor {
 
+    // Each operation takes its operands from the top of the stack and leaves its result there. PUSH is followed by the
+    // bits of its value.
+    private static final int PUSH = 0;
+    private static final int IADD = 1;
+    private static final int ISUB = 2;
+    private static final int IMUL = 3;
+    private static final int IDIV = 4;
+    private static final int FADD = 5;
+    private static final int FSUB = 6;
+    private static final int FMUL = 7;
+    private static final int FDIV = 8;
+    private static final int INEG = 9;
+    private static final int IABS = 10;
+    private static final int FNEG = 11;
+    private static final int FABS = 12;
+    private static final int PRINT_I = 13;
+    private static final int PRINT_F = 14;
+    // Replaces a statement whose operands have different types, so the statements before it still run
+    private static final int REJECT = 15;
+
     private final JavaRuntime runtime;
-    private final Deque<WabbitValue> stack = new ArrayDeque<>();
+
+    // The tree the operations were resolved from
+    private AbstractSyntaxTree resolved;
+    private int[] operations = new int[16];
+    private int length = 0;
+
+    // Operands are kept unboxed as the bits of each int or float; the operations know which. The stack is sized for
+    // the deepest expression when it is resolved, so running it allocates nothing.
+    private int[] values = new int[16];
+
+    // Whether each operand on the stack is a float, while resolving
+    private boolean[] floats = new boolean[16];
+    private int depth = 0;
+    private int statementStart = 0;
+    private boolean rejected = false;
+
+    // Nodes waiting to be visited, or to be completed once their operands are resolved when the flag is set
+    private AbstractSyntaxTree[] work = new AbstractSyntaxTree[16];
+    private boolean[] completes = new boolean[16];
+    private int pending = 0;
+    private boolean walking = false;
 
     public Interpreter(JavaRuntime runtime) {
         Objects.requireNonNull(runtime);
@@ -42,69 +85,274 @@ public class Interpreter implements NodeVisitor {
     @Override
     public void visitProgram(Program program) {
         Objects.requireNonNull(program);
-        program.statements().accept(this);
+        if (reran(program))
+            return;
+
+        schedule(program.statements(), false);
+        walk(program);
     }
 
     @Override
     public void visitStatements(Statements statements) {
         Objects.requireNonNull(statements);
-        for (AbstractSyntaxTree statement : statements.statements()) {
-            statement.accept(this);
-        }
+        if (reran(statements))
+            return;
+
+        List<Statement> list = statements.statements();
+        for (int i = list.size() - 1; i >= 0; i--)
+            schedule(list.get(i), false);
+        walk(statements);
     }
 
     @Override
     public void visitPrint(Print print) {
         Objects.requireNonNull(print);
-        print.expression().accept(this);
-        WabbitValue wabbitValue = stack.pop();
-        runtime.println(wabbitValue.javaObject());
+        if (reran(print))
+            return;
+
+        statementStart = length;
+        schedule(print, true);
+        schedule(print.expression(), false);
+        walk(print);
     }
 
     @Override
     public void visitIntLiteral(IntLiteral intLiteral) {
         Objects.requireNonNull(intLiteral);
-        int value = intLiteral.value();
-        stack.push(new WabbitValue(WabbitType.INT, value));
+        if (reran(intLiteral))
+            return;
+
+        push(intLiteral.value(), false);
+        walk(intLiteral);
     }
 
     @Override
     public void visitFloatLiteral(FloatLiteral floatLiteral) {
         Objects.requireNonNull(floatLiteral);
-        float value = floatLiteral.value();
-        stack.push(new WabbitValue(WabbitType.FLOAT, value));
+        if (reran(floatLiteral))
+            return;
+
+        push(Float.floatToRawIntBits(floatLiteral.value()), true);
+        walk(floatLiteral);
     }
 
+    // Only schedules the operands and the operation; see walk()
     @Override
     public void visitBinaryOp(BinaryOp binaryOp) {
         Objects.requireNonNull(binaryOp);
+        if (reran(binaryOp))
+            return;
 
-        binaryOp.lhs().accept(this);
-        binaryOp.rhs().accept(this);
-
-        WabbitValue rhs = stack.pop();
-        WabbitValue lhs = stack.pop();
-
-        Object result = runtime.binaryOp(binaryOp.operator(), lhs.javaObject(), rhs.javaObject());
-        stack.add(new WabbitValue(WabbitType.ANY, result));
+        schedule(binaryOp, true);
+        schedule(binaryOp.rhs(), false);
+        schedule(binaryOp.lhs(), false);
+        walk(binaryOp);
     }
 
     @Override
     public void visitUnaryOp(UnaryOp unaryOp) {
         Objects.requireNonNull(unaryOp);
+        if (reran(unaryOp))
+            return;
 
-        unaryOp.operand().accept(this);
-
-        WabbitValue operand = stack.pop();
-
-        Object result = runtime.unaryOp(unaryOp.operator(), operand.javaObject());
-        stack.add(new WabbitValue(WabbitType.ANY, result));
+        schedule(unaryOp, true);
+        schedule(unaryOp.operand(), false);
+        walk(unaryOp);
     }
 
     @Override
     public void visitGrouping(Grouping grouping) {
         Objects.requireNonNull(grouping);
-        grouping.expression().accept(this);
+        if (reran(grouping))
+            return;
+
+        schedule(grouping.expression(), false);
+        walk(grouping);
+    }
+
+    // Runs the operations again if they were resolved from this tree. Otherwise, unless a tree is being resolved now,
+    // starts resolving this one.
+    private boolean reran(AbstractSyntaxTree node) {
+        if (walking)
+            return false;
+
+        if (node == resolved) {
+            run();
+            return true;
+        }
+
+        resolved = null;
+        length = 0;
+        depth = 0;
+        statementStart = 0;
+        rejected = false;
+        return false;
+    }
+
+    private void schedule(AbstractSyntaxTree node, boolean complete) {
+        if (pending == work.length) {
+            work = Arrays.copyOf(work, pending * 2);
+            completes = Arrays.copyOf(completes, pending * 2);
+        }
+
+        work[pending] = node;
+        completes[pending] = complete;
+        pending += 1;
+    }
+
+    // Nodes are visited in the same order as by recursion, but the nodes still to visit, and the operators that are
+    // waiting for their operands, are kept in an array instead of on the thread's stack, so expressions can nest as
+    // deeply as memory allows. The visit of the outermost node walks until everything it scheduled is resolved, then
+    // runs it; nested visits only schedule.
+    private void walk(AbstractSyntaxTree root) {
+        if (walking)
+            return;
+
+        walking = true;
+        try {
+            while (pending > 0) {
+                pending -= 1;
+                AbstractSyntaxTree node = work[pending];
+                work[pending] = null;
+
+                if (completes[pending])
+                    complete(node);
+                else
+                    node.accept(this);
+            }
+
+            // An expression visited on its own is one statement
+            if (rejected)
+                reject();
+        } finally {
+            walking = false;
+            // Nothing is left after an exception either
+            Arrays.fill(work, 0, pending, null);
+            pending = 0;
+        }
+
+        resolved = root;
+        run();
+    }
+
+    // Wabbit does not do implicit conversions, so the operands of every operator must have the same type, and the
+    // type of a result is the type of its operands
+    private void complete(AbstractSyntaxTree node) {
+        if (node instanceof BinaryOp binaryOp) {
+            depth -= 1;
+            boolean isFloat = floats[depth - 1];
+            if (floats[depth] != isFloat)
+                rejected = true;
+
+            append(switch (binaryOp.operator()) {
+                case PLUS -> isFloat ? FADD : IADD;
+                case MINUS -> isFloat ? FSUB : ISUB;
+                case TIMES -> isFloat ? FMUL : IMUL;
+                case DIVIDE -> isFloat ? FDIV : IDIV;
+            });
+        } else if (node instanceof UnaryOp unaryOp) {
+            boolean isFloat = floats[depth - 1];
+            append(switch (unaryOp.operator()) {
+                case MINUS -> isFloat ? FNEG : INEG;
+                case PLUS -> isFloat ? FABS : IABS;
+                default -> throw new IllegalArgumentException("Cannot perform operation with provided operand.");
+            });
+        } else {
+            depth -= 1;
+            if (rejected)
+                reject();
+            else
+                append(floats[depth] ? PRINT_F : PRINT_I);
+            statementStart = length;
+        }
+    }
+
+    private void reject() {
+        length = statementStart;
+        append(REJECT);
+        rejected = false;
+    }
+
+    private void push(int value, boolean isFloat) {
+        append(PUSH);
+        append(value);
+
+        if (depth == floats.length)
+            floats = Arrays.copyOf(floats, depth * 2);
+        floats[depth] = isFloat;
+        depth += 1;
+        // The stack only gets deeper on a push
+        if (values.length < depth)
+            values = new int[values.length * 2];
+    }
+
+    private void append(int operation) {
+        if (length == operations.length)
+            operations = Arrays.copyOf(operations, length * 2);
+
+        operations[length] = operation;
+        length += 1;
+    }
+
+    private void run() {
+        final int[] operations = this.operations;
+        final int[] stack = values;
+        int sp = 0;
+        int pc = 0;
+
+        while (pc < length) {
+            switch (operations[pc++]) {
+                case PUSH -> stack[sp++] = operations[pc++];
+                case IADD -> {
+                    sp -= 1;
+                    stack[sp - 1] = JavaRuntime.add(stack[sp - 1], stack[sp]);
+                }
+                case ISUB -> {
+                    sp -= 1;
+                    stack[sp - 1] = JavaRuntime.subtract(stack[sp - 1], stack[sp]);
+                }
+                case IMUL -> {
+                    sp -= 1;
+                    stack[sp - 1] = JavaRuntime.multiply(stack[sp - 1], stack[sp]);
+                }
+                case IDIV -> {
+                    sp -= 1;
+                    stack[sp - 1] = JavaRuntime.divide(stack[sp - 1], stack[sp]);
+                }
+                case FADD -> {
+                    sp -= 1;
+                    stack[sp - 1] = bits(JavaRuntime.add(real(stack[sp - 1]), real(stack[sp])));
+                }
+                case FSUB -> {
+                    sp -= 1;
+                    stack[sp - 1] = bits(JavaRuntime.subtract(real(stack[sp - 1]), real(stack[sp])));
+                }
+                case FMUL -> {
+                    sp -= 1;
+                    stack[sp - 1] = bits(JavaRuntime.multiply(real(stack[sp - 1]), real(stack[sp])));
+                }
+                case FDIV -> {
+                    sp -= 1;
+                    stack[sp - 1] = bits(JavaRuntime.divide(real(stack[sp - 1]), real(stack[sp])));
+                }
+                case INEG -> stack[sp - 1] = JavaRuntime.minus(stack[sp - 1]);
+                case IABS -> stack[sp - 1] = JavaRuntime.plus(stack[sp - 1]);
+                case FNEG -> stack[sp - 1] = bits(JavaRuntime.minus(real(stack[sp - 1])));
+                case FABS -> stack[sp - 1] = bits(JavaRuntime.plus(real(stack[sp - 1])));
+                case PRINT_I -> runtime.println(stack[--sp]);
+                case PRINT_F -> runtime.println(real(stack[--sp]));
+                case REJECT -> throw new IllegalArgumentException("Cannot perform operation with provided operands.");
+                default -> throw new IllegalStateException("Unknown operation " + operations[pc - 1] + ".");
+            }
+        }
+    }
+
+    private static float real(int bits) {
+        return Float.intBitsToFloat(bits);
+    }
+
+    private static int bits(float value) {
+        return Float.floatToRawIntBits(value);
     }
 
     @Override
@@ -22,32 +22,18 @@
 
 package com.github.rharri.wabbitj.interpreter;
 
-import com.github.rharri.wabbitj.ast.Operator;
-
 import java.io.PrintStream;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
-import java.util.function.BiFunction;
-import java.util.function.UnaryOperator;
 
 public class JavaRuntime {
 
-    private final PrintStream out;
-    private static final Map<Operator, BiFunction<Object, Object, Object>> binaryOperations = new HashMap<>();
-    private static final Map<Operator, UnaryOperator<Object>> unaryOperations = new HashMap<>();
-
-    static {
-        binaryOperations.put(Operator.PLUS, JavaRuntime::add);
-        binaryOperations.put(Operator.MINUS, JavaRuntime::subtract);
-        binaryOperations.put(Operator.TIMES, JavaRuntime::multiply);
-        binaryOperations.put(Operator.DIVIDE, JavaRuntime::divide);
+    private final OutputSink out;
 
-        unaryOperations.put(Operator.MINUS, JavaRuntime::minus);
-        unaryOperations.put(Operator.PLUS, JavaRuntime::plus);
+    public JavaRuntime(PrintStream out) {
+        this(new PrintStreamSink(out));
     }
 
-    public JavaRuntime(PrintStream out) {
+    public JavaRuntime(OutputSink out) {
         Objects.requireNonNull(out);
         this.out = out;
     }
@@ -57,119 +43,70 @@ public class JavaRuntime {
         out.println(object);
     }
 
-    public Object binaryOp(Operator operator, Object lhs, Object rhs) {
-        Objects.requireNonNull(lhs);
-        Objects.requireNonNull(rhs);
-        return binaryOperations.get(operator).apply(lhs, rhs);
+    public void println(int value) {
+        out.println(value);
     }
 
-    public Object unaryOp(Operator operator, Object operand) {
-        Objects.requireNonNull(operand);
-        return unaryOperations.get(operator).apply(operand);
+    public void println(float value) {
+        out.println(value);
     }
 
-    private static Object add(Object lhs, Object rhs) {
-        assert lhs != null;
-        assert rhs != null;
-
-        // Assume right hand side is of the same type
-        // Wabbit does not do implicit conversions
-        // This is guaranteed by the type checker?
-
-        if (lhs instanceof Integer)
-            return (int) lhs + (int) rhs;
-
-        if (lhs instanceof Float)
-            return (float) lhs + (float) rhs;
-
-        throw new IllegalArgumentException("Cannot perform operation with provided operands.");
+    // Output may be buffered until this is called
+    public void flush() {
+        out.flush();
     }
 
-    private static Object subtract(Object lhs, Object rhs) {
-        assert lhs != null;
-        assert rhs != null;
-
-        // Assume right hand side is of the same type
-        // Wabbit does not do implicit conversions
-        // This is guaranteed by the type checker?
-
-        if (lhs instanceof Integer)
-            return (int) lhs - (int) rhs;
-
-        if (lhs instanceof Float)
-            return (float) lhs - (float) rhs;
+    // Wabbit does not do implicit conversions, so the type checker guarantees both operands of an operator have the
+    // same type. Each operation is a separate static method per type, so a caller that knows the types of a node
+    // makes a direct call to exactly one of them.
 
-        throw new IllegalArgumentException("Cannot perform operation with provided operands.");
+    public static int add(int lhs, int rhs) {
+        return lhs + rhs;
     }
 
-    private static Object multiply(Object lhs, Object rhs) {
-        assert lhs != null;
-        assert rhs != null;
-
-        // Assume right hand side is of the same type
-        // Wabbit does not do implicit conversions
-        // This is guaranteed by the type checker?
-
-        if (lhs instanceof Integer)
-            return (int) lhs * (int) rhs;
-
-        if (lhs instanceof Float)
-            return (float) lhs * (float) rhs;
-
-        throw new IllegalArgumentException("Cannot perform operation with provided operands.");
+    public static float add(float lhs, float rhs) {
+        return lhs + rhs;
     }
 
-    private static Object divide(Object lhs, Object rhs) {
-        assert lhs != null;
-        assert rhs != null;
-
-        // Assume right hand side is of the same type
-        // Wabbit does not do implicit conversions
-        // This is guaranteed by the type checker?
-
-        if (lhs instanceof Integer)
-            return (int) lhs / (int) rhs;
-
-        if (lhs instanceof Float)
-            return (float) lhs / (float) rhs;
-
-        throw new IllegalArgumentException("Cannot perform operation with provided operands.");
+    public static int subtract(int lhs, int rhs) {
+        return lhs - rhs;
     }
 
-    private static Object minus(Object operand) {
-        assert operand != null;
-
-        // Assume right hand side is of the same type
-        // Wabbit does not do implicit conversions
-        // This is guaranteed by the type checker?
+    public static float subtract(float lhs, float rhs) {
+        return lhs - rhs;
+    }
 
-        if (operand instanceof Integer)
-            return -1 * (int) operand;
+    public static int multiply(int lhs, int rhs) {
+        return lhs * rhs;
+    }
 
-        if (operand instanceof Float)
-            return -1 * (float) operand;
+    public static float multiply(float lhs, float rhs) {
+        return lhs * rhs;
+    }
 
-        throw new IllegalArgumentException("Cannot perform operation with provided operands.");
+    public static int divide(int lhs, int rhs) {
+        return lhs / rhs;
     }
 
-    private static Object plus(Object operand) {
-        assert operand != null;
+    public static float divide(float lhs, float rhs) {
+        return lhs / rhs;
+    }
 
-        // Assume right hand side is of the same type
-        // Wabbit does not do implicit conversions
-        // This is guaranteed by the type checker?
+    public static int minus(int operand) {
+        return -1 * operand;
+    }
 
-        if (operand instanceof Integer) {
-            int op = (int) operand;
-            return op >= 0 ? op : -1 * op;
-        }
+    public static float minus(float operand) {
+        return -1 * operand;
+    }
 
-        if (operand instanceof Float) {
-            float op = (float) operand;
-            return op >= 0 ? op : -1.0f * op;
-        }
+    // Unary plus is the absolute value
+    public static int plus(int operand) {
+        return operand >= 0 ? operand : -1 * operand;
+    }
 
-        throw new IllegalArgumentException("Cannot perform operation with provided operand.");
+    public static float plus(float operand) {
+        return operand >= 0 ? operand : -1.0f * operand;
     }
 
     @Override
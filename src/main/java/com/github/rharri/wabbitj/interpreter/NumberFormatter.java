@@ -0,0 +1,634 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.interpreter;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+// Writes ints and floats as ASCII digits straight into a byte array, with the text Integer.toString and Float.toString
+// produce on the running JDK. Since JDK 19, Float.toString prints the shortest decimal that rounds back to the same
+// float, which is found with the Schubfach algorithm (R. Giulietti, "The Schubfach way to render doubles", 2020).
+// Older JDKs generate digits until they are within half an ulp, and sometimes print more than needed; their algorithm
+// (FloatingDecimal.dtoa) is reproduced exactly, with 128-bit arithmetic in pairs of longs instead of big integers.
+public final class NumberFormatter {
+
+    // "-2147483648"
+    public static final int MAX_INT_LENGTH = 11;
+    // A sign, nine significant digits, a point and a two-digit negative exponent, as in "-1.23456789E-38"
+    public static final int MAX_FLOAT_LENGTH = 15;
+
+    // Whether floats are written as the shortest decimal, as Float.toString does since JDK 19. Other backends must
+    // print what the interpreter prints, so they ask which text the running JDK expects.
+    public static final boolean SHORTEST_FLOATS = Runtime.version().feature() >= 19;
+
+    // "00", "01", ..., "99", so two digits are written per division
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+
+    // Float layout
+    private static final int PRECISION = 24;
+    private static final int EXPONENT_MASK = 0xFF;
+    private static final int SIGNIFICAND_MASK = (1 << (PRECISION - 1)) - 1;
+    private static final int MIN_EXPONENT = -149;
+    private static final int HIDDEN_BIT = 1 << (PRECISION - 1);
+    // Subnormal significands below this are scaled by 10 first, so that they still have two digits to choose from
+    private static final int TINY_SIGNIFICAND = 8;
+
+    // The upper 63 bits of 10^e normalized to [2^125, 2^126), for each power the float range needs
+    private static final int MIN_POWER = -31;
+    private static final int MAX_POWER = 45;
+    private static final long[] POWERS_OF_TEN = new long[MAX_POWER - MIN_POWER + 1];
+
+    private static final int[] INT_POWERS_OF_TEN = {
+            1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000
+    };
+
+    // Before JDK 19: 5^i, the approximate bit length of each, and the number of decimal digits below 2^i that do not
+    // matter
+    private static final long[] LONG_POWERS_OF_FIVE = new long[27];
+    private static final int[] POWER_OF_FIVE_BITS = {
+            0, 3, 5, 7, 10, 12, 14, 17, 19, 21, 24, 26, 28, 31, 33, 35, 38, 40, 42, 45, 47, 49, 52, 54, 56, 59, 61
+    };
+    private static final int[] INSIGNIFICANT_DIGITS = {
+            0, 0, 0, 0, 1, 1, 1, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 5, 5, 5, 6, 6, 6, 6, 7, 7, 7, 8, 8, 8, 9, 9, 9, 9,
+            10, 10, 10, 11, 11, 11, 12, 12, 12, 12, 13, 13, 13, 14, 14, 14, 15, 15, 15, 15, 16, 16, 16, 17, 17, 17,
+            18, 18, 18, 19
+    };
+    // 5^i as 128-bit integers, for the values whose digits do not fit in a long
+    private static final int MAX_WIDE_POWER = 50;
+    private static final long[] WIDE_POWERS_OF_FIVE_HIGH = new long[MAX_WIDE_POWER + 1];
+    private static final long[] WIDE_POWERS_OF_FIVE_LOW = new long[MAX_WIDE_POWER + 1];
+
+    private static final byte[] NAN = {'N', 'a', 'N'};
+    private static final byte[] INFINITY = {'I', 'n', 'f', 'i', 'n', 'i', 't', 'y'};
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
+
+        for (int e = MIN_POWER; e <= MAX_POWER; e++) {
+            // g = floor(10^e 2^-r) + 1, with r chosen so that 2^125 <= 10^e 2^-r < 2^126
+            BigInteger g;
+            if (e >= 0) {
+                BigInteger power = BigInteger.TEN.pow(e);
+                int r = power.bitLength() - 126;
+                g = r >= 0 ? power.shiftRight(r) : power.shiftLeft(-r);
+            } else {
+                BigInteger power = BigInteger.TEN.pow(-e);
+                g = BigInteger.ONE.shiftLeft(125 + power.bitLength()).divide(power);
+            }
+            POWERS_OF_TEN[e - MIN_POWER] = g.add(BigInteger.ONE).shiftRight(63).longValueExact();
+        }
+
+        for (int i = 0; i <= MAX_WIDE_POWER; i++) {
+            BigInteger power = BigInteger.valueOf(5).pow(i);
+            if (i < LONG_POWERS_OF_FIVE.length)
+                LONG_POWERS_OF_FIVE[i] = power.longValueExact();
+            WIDE_POWERS_OF_FIVE_HIGH[i] = power.shiftRight(64).longValueExact();
+            WIDE_POWERS_OF_FIVE_LOW[i] = power.longValue();
+        }
+    }
+
+    private NumberFormatter() {
+    }
+
+    // Returns the offset after the last byte written; MAX_INT_LENGTH bytes must be available
+    public static int writeInt(int value, byte[] buffer, int offset) {
+        // Digits are produced from the negative value, which also covers Integer.MIN_VALUE
+        int negative = value < 0 ? value : -value;
+        int end = offset + digitCount(negative) + (value < 0 ? 1 : 0);
+        int index = end;
+
+        while (negative <= -100) {
+            int quotient = negative / 100;
+            int pair = (quotient * 100 - negative) << 1;
+            negative = quotient;
+            buffer[--index] = DIGIT_PAIRS[pair + 1];
+            buffer[--index] = DIGIT_PAIRS[pair];
+        }
+        if (negative <= -10) {
+            int pair = -negative << 1;
+            buffer[--index] = DIGIT_PAIRS[pair + 1];
+            buffer[--index] = DIGIT_PAIRS[pair];
+        } else {
+            buffer[--index] = (byte) ('0' - negative);
+        }
+
+        if (value < 0)
+            buffer[--index] = '-';
+        return end;
+    }
+
+    // For callers that print text rather than bytes
+    public static String toString(float value) {
+        byte[] buffer = new byte[MAX_FLOAT_LENGTH];
+        int length = writeFloat(value, buffer, 0);
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    // Returns the offset after the last byte written; MAX_FLOAT_LENGTH bytes must be available
+    public static int writeFloat(float value, byte[] buffer, int offset) {
+        int bits = Float.floatToRawIntBits(value);
+        int significand = bits & SIGNIFICAND_MASK;
+        int biasedExponent = (bits >>> (PRECISION - 1)) & EXPONENT_MASK;
+
+        if (biasedExponent == EXPONENT_MASK) {
+            if (significand != 0)
+                return copy(NAN, buffer, offset);
+            if (bits < 0)
+                buffer[offset++] = '-';
+            return copy(INFINITY, buffer, offset);
+        }
+
+        if (bits < 0)
+            buffer[offset++] = '-';
+
+        if (biasedExponent != 0) {
+            int exponent = MIN_EXPONENT - 1 + biasedExponent;
+            int c = HIDDEN_BIT | significand;
+
+            if (!SHORTEST_FLOATS)
+                return halfUlpDigits(exponent, c, PRECISION, buffer, offset);
+
+            // A float holding an integer below 2^24 is printed as that integer
+            if (-PRECISION < exponent && exponent < 0) {
+                int integer = c >> -exponent;
+                if (integer << -exponent == c)
+                    return writeDecimal(integer, 0, buffer, offset);
+            }
+            return shortest(exponent, c, 0, buffer, offset);
+        }
+
+        if (significand != 0) {
+            if (!SHORTEST_FLOATS)
+                return halfUlpDigits(MIN_EXPONENT, significand, 32 - Integer.numberOfLeadingZeros(significand), buffer,
+                        offset);
+
+            return significand < TINY_SIGNIFICAND
+                    ? shortest(MIN_EXPONENT, 10 * significand, -1, buffer, offset)
+                    : shortest(MIN_EXPONENT, significand, 0, buffer, offset);
+        }
+
+        buffer[offset++] = '0';
+        buffer[offset++] = '.';
+        buffer[offset++] = '0';
+        return offset;
+    }
+
+    // Finds the shortest decimal in the rounding interval of c 2^q, and the closest one when there is a choice
+    private static int shortest(int q, int c, int dk, byte[] buffer, int offset) {
+        int out = c & 1;
+        long cb = (long) c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        // The interval below a power of two is half as wide, unless the float is the smallest normal
+        if (c != HIDDEN_BIT || q == MIN_EXPONENT) {
+            cbl = cb - 2;
+            k = floorLog10Pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = floorLog10ThreeQuartersPow2(q);
+        }
+        int h = q + floorLog2Pow10(-k) + 33;
+
+        long g = POWERS_OF_TEN[-k - MIN_POWER] + 1;
+        int vb = roundToOdd(g, cb << h);
+        int vbl = roundToOdd(g, cbl << h);
+        int vbr = roundToOdd(g, cbr << h);
+
+        int s = vb >> 2;
+        if (s >= 100) {
+            // s / 10 * 10, then the next multiple of ten; one digit fewer if exactly one of them is in the interval
+            int sp10 = 10 * (int) ((s * 1_717_986_919L) >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin)
+                return writeDecimal(upin ? sp10 : tp10, k, buffer, offset);
+        }
+
+        int t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win)
+            return writeDecimal(uin ? s : t, k + dk, buffer, offset);
+
+        // Both are in the interval: take the closer, or the even one on a tie
+        int cmp = vb - ((s + t) << 1);
+        return writeDecimal(cmp < 0 || (cmp == 0 && (s & 1) == 0) ? s : t, k + dk, buffer, offset);
+    }
+
+    // Writes f 10^e as Float.toString does: plainly from 10^-3 up to 10^7, in computerized scientific notation otherwise,
+    // and with at least one digit after the point
+    private static int writeDecimal(int f, int e, byte[] buffer, int offset) {
+        // Drop trailing zeros, so f holds exactly the significant digits
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+
+        int length = digitCount(-f);
+        // The value is 0.d1d2...dn 10^point
+        int point = e + length;
+
+        if (0 < point && point <= 7) {
+            int end = writeInt(f, buffer, offset);
+            if (length <= point) {
+                for (int i = length; i < point; i++)
+                    buffer[end++] = '0';
+                buffer[end++] = '.';
+                buffer[end++] = '0';
+                return end;
+            }
+            // Move the fraction one place right to make room for the point
+            System.arraycopy(buffer, offset + point, buffer, offset + point + 1, length - point);
+            buffer[offset + point] = '.';
+            return end + 1;
+        }
+
+        if (-3 < point && point <= 0) {
+            buffer[offset++] = '0';
+            buffer[offset++] = '.';
+            for (int i = point; i < 0; i++)
+                buffer[offset++] = '0';
+            return writeInt(f, buffer, offset);
+        }
+
+        // Write the digits one place right, then move the first one in front of the point
+        int end = writeInt(f, buffer, offset + 1);
+        buffer[offset] = buffer[offset + 1];
+        buffer[offset + 1] = '.';
+        if (length == 1)
+            buffer[end++] = '0';
+        buffer[end++] = 'E';
+        return writeInt(point - 1, buffer, end);
+    }
+
+    // Float.toString before JDK 19, for c 2^q with the given number of significant bits. The digits are those of
+    // FloatingDecimal.dtoa, generated one at a time until the rest is within half an ulp and rounded on the last digit,
+    // or of the value itself when it is an integer below 2^63. The arithmetic, down to where int and long overflow, is
+    // the same.
+    private static int halfUlpDigits(int q, int c, int significantBits, byte[] buffer, int offset) {
+        // dtoa takes the value as 1.f 2^binaryExponent, with f in the 52 bits of a double's fraction
+        int fractionShift = Integer.numberOfLeadingZeros(c) - 8;
+        int binaryExponent = q + PRECISION - 1 - fractionShift;
+        long fraction = (long) c << (fractionShift + 29);
+
+        int tailZeros = Long.numberOfTrailingZeros(fraction);
+        int fractionBits = 53 - tailZeros;
+        int tinyBits = Math.max(0, fractionBits - binaryExponent - 1);
+
+        // An integer is written whole, less the digits that are below its ulp
+        if (tinyBits == 0 && binaryExponent <= 62 && binaryExponent >= -21) {
+            int insignificant = 0;
+            int p2 = binaryExponent - significantBits - 1;
+            if (binaryExponent > significantBits && p2 > 1 && p2 < INSIGNIFICANT_DIGITS.length)
+                insignificant = INSIGNIFICANT_DIGITS[p2];
+            long value = binaryExponent >= 52 ? fraction << (binaryExponent - 52) : fraction >>> (52 - binaryExponent);
+            return integerDigits(value, insignificant, buffer, offset);
+        }
+
+        // Digits of B / S 10^decimalExponent, stopping once the remainder is within M, half an ulp, of either end
+        int decimalExponent = estimateDecimalExponent(fraction, binaryExponent);
+        int b5 = Math.max(0, -decimalExponent);
+        int b2 = b5 + tinyBits + binaryExponent;
+        int s5 = Math.max(0, decimalExponent);
+        int s2 = s5 + tinyBits;
+        int m5 = b5;
+        int m2 = b2 - significantBits;
+
+        fraction >>>= tailZeros;
+        b2 -= fractionBits - 1;
+        int common2 = Math.min(b2, s2);
+        b2 -= common2;
+        s2 -= common2;
+        m2 -= common2;
+        // The float below a power of two is only half as far away
+        if (fractionBits == 1)
+            m2 -= 1;
+        if (m2 < 0) {
+            b2 -= m2;
+            s2 -= m2;
+            m2 = 0;
+        }
+
+        int bBits = fractionBits + b2 + (b5 < POWER_OF_FIVE_BITS.length ? POWER_OF_FIVE_BITS[b5] : b5 * 3);
+        int tenSBits = s2 + 1 + (s5 + 1 < POWER_OF_FIVE_BITS.length ? POWER_OF_FIVE_BITS[s5 + 1] : (s5 + 1) * 3);
+
+        long digits = 0;
+        int digitCount = 0;
+        boolean low;
+        boolean high;
+        long lowDigitDifference;
+        int digit;
+        if (bBits < 32 && tenSBits < 32) {
+            int b = ((int) fraction * (int) LONG_POWERS_OF_FIVE[b5]) << b2;
+            int s = (int) LONG_POWERS_OF_FIVE[s5] << s2;
+            int m = (int) LONG_POWERS_OF_FIVE[m5] << m2;
+            int tens = s * 10;
+
+            digit = b / s;
+            b = 10 * (b % s);
+            m *= 10;
+            low = b < m;
+            high = b + m > tens;
+            // A first digit of zero means the estimate of the exponent was one too high
+            if (digit == 0 && !high) {
+                decimalExponent--;
+            } else {
+                digits = digit;
+                digitCount = 1;
+            }
+            // Scientific notation has at least two digits
+            if (decimalExponent < -3 || decimalExponent >= 8)
+                high = low = false;
+            while (!low && !high) {
+                digit = b / s;
+                b = 10 * (b % s);
+                m *= 10;
+                if (m > 0) {
+                    low = b < m;
+                    high = b + m > tens;
+                } else {
+                    // m overflowed, so it is larger than both
+                    low = true;
+                    high = true;
+                }
+                digits = digits * 10 + digit;
+                digitCount++;
+            }
+            // In int arithmetic, as dtoa does
+            int difference = (b << 1) - tens;
+            lowDigitDifference = difference;
+        } else if (bBits < 64 && tenSBits < 64) {
+            long b = (fraction * LONG_POWERS_OF_FIVE[b5]) << b2;
+            long s = LONG_POWERS_OF_FIVE[s5] << s2;
+            long m = LONG_POWERS_OF_FIVE[m5] << m2;
+            long tens = s * 10L;
+
+            digit = (int) (b / s);
+            b = 10L * (b % s);
+            m *= 10L;
+            low = b < m;
+            high = b + m > tens;
+            if (digit == 0 && !high) {
+                decimalExponent--;
+            } else {
+                digits = digit;
+                digitCount = 1;
+            }
+            if (decimalExponent < -3 || decimalExponent >= 8)
+                high = low = false;
+            while (!low && !high) {
+                digit = (int) (b / s);
+                b = 10 * (b % s);
+                m *= 10;
+                if (m > 0L) {
+                    low = b < m;
+                    high = b + m > tens;
+                } else {
+                    low = true;
+                    high = true;
+                }
+                digits = digits * 10 + digit;
+                digitCount++;
+            }
+            lowDigitDifference = (b << 1) - tens;
+        } else {
+            // Exact, in at most 122 bits: B < 10 S, and M stops growing once it is larger than 10 S
+            long sHigh = shiftLeftHigh(WIDE_POWERS_OF_FIVE_HIGH[s5], WIDE_POWERS_OF_FIVE_LOW[s5], s2);
+            long sLow = shiftLeftLow(WIDE_POWERS_OF_FIVE_LOW[s5], s2);
+            long bHigh = multiplyHigh(WIDE_POWERS_OF_FIVE_HIGH[b5], WIDE_POWERS_OF_FIVE_LOW[b5], fraction);
+            long bLow = WIDE_POWERS_OF_FIVE_LOW[b5] * fraction;
+            long high2 = shiftLeftHigh(bHigh, bLow, b2);
+            bLow = shiftLeftLow(bLow, b2);
+            bHigh = high2;
+            long mHigh = shiftLeftHigh(WIDE_POWERS_OF_FIVE_HIGH[m5], WIDE_POWERS_OF_FIVE_LOW[m5], m2);
+            long mLow = shiftLeftLow(WIDE_POWERS_OF_FIVE_LOW[m5], m2);
+            long tenSHigh = multiplyHigh(sHigh, sLow, 10);
+            long tenSLow = sLow * 10;
+
+            boolean first = true;
+            do {
+                // B = 10 (B mod S), with the quotient as the digit
+                digit = 0;
+                while (compare(bHigh, bLow, sHigh, sLow) >= 0) {
+                    long difference = bLow - sLow;
+                    bHigh = bHigh - sHigh - (Long.compareUnsigned(difference, bLow) > 0 ? 1 : 0);
+                    bLow = difference;
+                    digit++;
+                }
+                high2 = multiplyHigh(bHigh, bLow, 10);
+                bLow *= 10;
+                bHigh = high2;
+                high2 = multiplyHigh(mHigh, mLow, 10);
+                mLow *= 10;
+                mHigh = high2;
+
+                long sumLow = bLow + mLow;
+                long sumHigh = bHigh + mHigh + (Long.compareUnsigned(sumLow, bLow) < 0 ? 1 : 0);
+                low = compare(bHigh, bLow, mHigh, mLow) < 0;
+                high = compare(tenSHigh, tenSLow, sumHigh, sumLow) <= 0;
+
+                if (first && digit == 0 && !high) {
+                    decimalExponent--;
+                } else {
+                    digits = digits * 10 + digit;
+                    digitCount++;
+                }
+                if (first && (decimalExponent < -3 || decimalExponent >= 8))
+                    high = low = false;
+                first = false;
+            } while (!low && !high);
+
+            lowDigitDifference = high && low
+                    ? compare((bHigh << 1) | (bLow >>> 63), bLow << 1, tenSHigh, tenSLow)
+                    : 0L;
+        }
+
+        decimalExponent += 1;
+        // The last digit is rounded up when the rest is nearer to the next one, or to make it even on a tie
+        if (high && (!low || lowDigitDifference > 0 || (lowDigitDifference == 0 && (digits & 1) != 0))) {
+            digits++;
+            if (digits == LONG_POWERS_OF_FIVE[digitCount] << digitCount) {
+                digits /= 10;
+                decimalExponent++;
+            }
+        }
+        return writeDigits(digits, digitCount, decimalExponent, buffer, offset);
+    }
+
+    // The digits of an integer, less the insignificant ones, which only round the last digit
+    private static int integerDigits(long value, int insignificant, byte[] buffer, int offset) {
+        int decimalExponent = 0;
+        if (insignificant != 0) {
+            long power = LONG_POWERS_OF_FIVE[insignificant] << insignificant;
+            long residue = value % power;
+            value /= power;
+            decimalExponent += insignificant;
+            if (residue >= (power >> 1))
+                value++;
+        }
+
+        while (value % 10 == 0) {
+            value /= 10;
+            decimalExponent++;
+        }
+        int digitCount = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digitCount++;
+            decimalExponent++;
+        }
+        return writeDigits(value, digitCount, decimalExponent + 1, buffer, offset);
+    }
+
+    // floor(log10(1.f 2^binaryExponent)), estimated in double arithmetic, and sometimes one too high
+    private static int estimateDecimalExponent(long fraction, int binaryExponent) {
+        double d2 = Double.longBitsToDouble(0x3FF0_0000_0000_0000L | (fraction & 0x000F_FFFF_FFFF_FFFFL));
+        double d = (d2 - 1.5D) * 0.289529654D + 0.176091259 + (double) binaryExponent * 0.301029995663981;
+        long dBits = Double.doubleToRawLongBits(d);
+        int exponent = (int) ((dBits >>> 52) & 0x7FF) - 1023;
+        boolean isNegative = dBits < 0;
+        if (exponent >= 0 && exponent < 52) {
+            long mask = 0x000F_FFFF_FFFF_FFFFL >> exponent;
+            int r = (int) (((dBits & 0x000F_FFFF_FFFF_FFFFL) | (1L << 52)) >> (52 - exponent));
+            return isNegative ? ((mask & dBits) == 0L ? -r : -r - 1) : r;
+        } else if (exponent < 0) {
+            return (dBits & ~(1L << 63)) == 0 ? 0 : (isNegative ? -1 : 0);
+        } else {
+            return (int) d;
+        }
+    }
+
+    // Writes 0.d1d2...dn 10^point as Float.toString does, keeping any trailing zeros among the digits
+    private static int writeDigits(long digits, int digitCount, int point, byte[] buffer, int offset) {
+        if (0 < point && point < 8) {
+            int integerCount = Math.min(digitCount, point);
+            putDigits(digits / pow10(digitCount - integerCount), integerCount, buffer, offset);
+            offset += integerCount;
+            if (integerCount < point) {
+                for (int i = integerCount; i < point; i++)
+                    buffer[offset++] = '0';
+                buffer[offset++] = '.';
+                buffer[offset++] = '0';
+            } else {
+                buffer[offset++] = '.';
+                if (integerCount < digitCount) {
+                    putDigits(digits, digitCount - integerCount, buffer, offset);
+                    offset += digitCount - integerCount;
+                } else {
+                    buffer[offset++] = '0';
+                }
+            }
+            return offset;
+        }
+
+        if (point <= 0 && point > -3) {
+            buffer[offset++] = '0';
+            buffer[offset++] = '.';
+            for (int i = point; i < 0; i++)
+                buffer[offset++] = '0';
+            putDigits(digits, digitCount, buffer, offset);
+            return offset + digitCount;
+        }
+
+        putDigits(digits / pow10(digitCount - 1), 1, buffer, offset);
+        buffer[offset + 1] = '.';
+        offset += 2;
+        if (digitCount > 1) {
+            putDigits(digits, digitCount - 1, buffer, offset);
+            offset += digitCount - 1;
+        } else {
+            buffer[offset++] = '0';
+        }
+        buffer[offset++] = 'E';
+        return writeInt(point - 1, buffer, offset);
+    }
+
+    // Writes the lowest count digits of value, with leading zeros
+    private static void putDigits(long value, int count, byte[] buffer, int offset) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static long pow10(int e) {
+        return LONG_POWERS_OF_FIVE[e] << e;
+    }
+
+    // 128-bit unsigned arithmetic on (high, low) pairs, for values that cannot overflow it
+
+    private static long shiftLeftHigh(long high, long low, int n) {
+        if (n == 0)
+            return high;
+        return n >= 64 ? low << (n - 64) : (high << n) | (low >>> (64 - n));
+    }
+
+    private static long shiftLeftLow(long low, int n) {
+        return n >= 64 ? 0 : low << n;
+    }
+
+    // The high half of (high, low) times a factor below 2^32
+    private static long multiplyHigh(long high, long low, long factor) {
+        long carry = ((low >>> 32) * factor + (((low & 0xFFFF_FFFFL) * factor) >>> 32)) >>> 32;
+        return high * factor + carry;
+    }
+
+    private static int compare(long aHigh, long aLow, long bHigh, long bLow) {
+        return aHigh != bHigh ? Long.compareUnsigned(aHigh, bHigh) : Long.compareUnsigned(aLow, bLow);
+    }
+
+    // The number of digits in a value <= 0
+    private static int digitCount(int negative) {
+        int count = 1;
+        for (int i = 1; i < INT_POWERS_OF_TEN.length && negative <= -INT_POWERS_OF_TEN[i]; i++)
+            count++;
+        return count;
+    }
+
+    private static int copy(byte[] text, byte[] buffer, int offset) {
+        System.arraycopy(text, 0, buffer, offset, text.length);
+        return offset + text.length;
+    }
+
+    // The upper 32 bits of g cp / 2^64, rounded to odd in the lowest bit
+    private static int roundToOdd(long g, long cp) {
+        long x = Math.multiplyHigh(g, cp);
+        long truncated = x >>> 31;
+        return (int) (truncated | (((x & 0xFFFF_FFFFL) + 0xFFFF_FFFFL) >>> 32));
+    }
+
+    private static int floorLog10Pow2(int e) {
+        return (int) ((e * 661_971_961_083L) >> 41);
+    }
+
+    private static int floorLog10ThreeQuartersPow2(int e) {
+        return (int) ((e * 661_971_961_083L - 274_743_187_321L) >> 41);
+    }
+
+    private static int floorLog2Pow10(int e) {
+        return (int) ((e * 913_124_641_741L) >> 38);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.interpreter;
+
+import java.io.PrintStream;
+import java.util.Objects;
+
+// Prints each value with its own PrintStream call, so output appears as soon as the stream's own buffering allows
+public final class PrintStreamSink implements OutputSink {
+
+    private final PrintStream out;
+
+    public PrintStreamSink(PrintStream out) {
+        Objects.requireNonNull(out);
+        this.out = out;
+    }
+
+    @Override
+    public void println(int value) {
+        out.println(value);
+    }
+
+    @Override
+    public void println(float value) {
+        out.println(value);
+    }
+
+    @Override
+    public void println(Object object) {
+        Objects.requireNonNull(object);
+        out.println(object);
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        out.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "PrintStreamSink{" +
+                "out=" + out +
+                '}';
+    }
+}
@@ -23,5 +23,5 @@
 package com.github.rharri.wabbitj.interpreter;
 
 public enum WabbitType {
-    ANY, INT, FLOAT
+    INT, FLOAT
 }
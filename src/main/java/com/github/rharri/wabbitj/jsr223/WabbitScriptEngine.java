@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.jsr223;
+
+import com.github.rharri.wabbitj.Diagnostic;
+import com.github.rharri.wabbitj.engine.CompilationException;
+import com.github.rharri.wabbitj.engine.CompiledScript;
+import com.github.rharri.wabbitj.engine.WabbitEngine;
+import com.github.rharri.wabbitj.interpreter.WriterSink;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+
+// A JSR-223 view of a WabbitEngine. Print statements write to the context's writer. Wabbit has no variables, so
+// bindings are accepted but never read, and every script evaluates to null.
+public final class WabbitScriptEngine extends AbstractScriptEngine implements Compilable {
+
+    private final ScriptEngineFactory factory;
+    private final WabbitEngine engine;
+
+    WabbitScriptEngine(ScriptEngineFactory factory, WabbitEngine engine) {
+        this.factory = factory;
+        this.engine = engine;
+    }
+
+    @Override
+    public @Nullable Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script, context).eval(context);
+    }
+
+    @Override
+    public @Nullable Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public javax.script.CompiledScript compile(String script) throws ScriptException {
+        return compile(script, getContext());
+    }
+
+    @Override
+    public javax.script.CompiledScript compile(Reader reader) throws ScriptException {
+        return compile(read(reader));
+    }
+
+    private WabbitCompiledScript compile(String script, ScriptContext context) throws ScriptException {
+        Objects.requireNonNull(script);
+
+        String name = Objects.toString(context.getAttribute(ScriptEngine.FILENAME), "<script>");
+        try {
+            return new WabbitCompiledScript(this, engine.compile(name, script));
+        } catch (CompilationException e) {
+            List<Diagnostic> diagnostics = e.diagnostics();
+            if (diagnostics.isEmpty())
+                throw new ScriptException(e.getMessage());
+
+            Diagnostic first = diagnostics.get(0);
+            var scriptException = new ScriptException(e.getMessage(), name, first.line(), first.column());
+            scriptException.initCause(e);
+            throw scriptException;
+        }
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        Objects.requireNonNull(reader);
+
+        var script = new StringWriter();
+        try {
+            reader.transferTo(script);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return script.toString();
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public String toString() {
+        return "WabbitScriptEngine{" +
+                "engine=" + engine +
+                '}';
+    }
+
+    static final class WabbitCompiledScript extends javax.script.CompiledScript {
+
+        private final ScriptEngine scriptEngine;
+        private final CompiledScript compiled;
+
+        WabbitCompiledScript(ScriptEngine scriptEngine, CompiledScript compiled) {
+            this.scriptEngine = scriptEngine;
+            this.compiled = compiled;
+        }
+
+        @Override
+        public @Nullable Object eval(ScriptContext context) throws ScriptException {
+            Objects.requireNonNull(context);
+
+            try {
+                compiled.run(new WriterSink(context.getWriter()));
+            } catch (ArithmeticException | UncheckedIOException e) {
+                throw new ScriptException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return scriptEngine;
+        }
+
+        @Override
+        public String toString() {
+            return "WabbitCompiledScript{" +
+                    "compiled=" + compiled +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.jsr223;
+
+import com.github.rharri.wabbitj.engine.WabbitEngine;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Found by javax.script.ScriptEngineManager through META-INF/services, under the names "wabbit" and "wabbitj" and the
+// extension "wb"
+public final class WabbitScriptEngineFactory implements ScriptEngineFactory {
+
+    private static final List<String> NAMES = List.of("wabbit", "wabbitj");
+    private static final List<String> EXTENSIONS = List.of("wb");
+
+    @Override
+    public String getEngineName() {
+        return "wabbitj";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return String.valueOf(WabbitEngine.class.getPackage().getImplementationVersion());
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of();
+    }
+
+    @Override
+    public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Wabbit";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return getEngineVersion();
+    }
+
+    @Override
+    public @Nullable Object getParameter(String key) {
+        Objects.requireNonNull(key);
+
+        return switch (key) {
+            case ScriptEngine.ENGINE -> getEngineName();
+            case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+            case ScriptEngine.NAME -> NAMES.get(0);
+            case ScriptEngine.LANGUAGE -> getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+            // Compiled scripts share no state, but the engine's context is shared by every eval
+            case "THREADING" -> "MULTITHREADED";
+            default -> null;
+        };
+    }
+
+    // Wabbit has no functions or methods to call
+    @Override
+    public String getMethodCallSyntax(String object, String method, String... args) {
+        throw new UnsupportedOperationException("Wabbit does not have methods.");
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        Objects.requireNonNull(toDisplay);
+        return "print " + toDisplay + ";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return Stream.of(statements).map(statement -> statement + ";\n").collect(Collectors.joining());
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new WabbitScriptEngine(this, new WabbitEngine());
+    }
+
+    @Override
+    public String toString() {
+        return "WabbitScriptEngineFactory{}";
+    }
+}
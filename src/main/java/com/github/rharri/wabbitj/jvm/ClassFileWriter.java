@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.jvm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the class file format (JVMS chapter 4) for straight-line static methods: a constant pool of names,
+// method references, ints and floats, and methods with a Code attribute. Straight-line code needs no stack map frames.
+final class ClassFileWriter {
+    static final int JAVA_17 = 61;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // Limits of the format, in constant pool entries and bytes of code per method
+    static final int MAX_CONSTANTS = 65535;
+    static final int MAX_CODE_LENGTH = 65535;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    record Method(int access, int name, int descriptor, int code, ByteVector bytecode, int maxStack,
+                          int maxLocals) {
+    }
+
+    private final ByteVector pool = new ByteVector();
+    private int poolCount = 1;
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private final List<Method> methods = new ArrayList<>();
+    private final int thisClass;
+    private final int superClass;
+
+    ClassFileWriter(String internalName) {
+        this.thisClass = classRef(internalName);
+        this.superClass = classRef("java/lang/Object");
+    }
+
+    int constantCount() {
+        return poolCount - 1;
+    }
+
+    // Names are ASCII, where modified UTF-8 and UTF-8 agree
+    int utf8(String value) {
+        return entry("U" + value, () -> {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            pool.u1(CONSTANT_UTF8).u2(bytes.length).append(bytes);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, () -> pool.u1(CONSTANT_CLASS).u2(name));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ' ' + descriptor,
+                () -> pool.u1(CONSTANT_NAME_AND_TYPE).u2(nameIndex).u2(descriptorIndex));
+        return entry("M" + owner + '.' + name + descriptor,
+                () -> pool.u1(CONSTANT_METHODREF).u2(ownerIndex).u2(nameAndType));
+    }
+
+    int integer(int value) {
+        return entry("I" + value, () -> pool.u1(CONSTANT_INTEGER).u4(value));
+    }
+
+    int floatBits(int bits) {
+        return entry("F" + bits, () -> pool.u1(CONSTANT_FLOAT).u4(bits));
+    }
+
+    private int entry(String key, Runnable write) {
+        Integer index = poolIndexes.get(key);
+        if (index != null)
+            return index;
+
+        write.run();
+        int added = poolCount;
+        poolCount += 1;
+        poolIndexes.put(key, added);
+        return added;
+    }
+
+    void addMethod(int access, String name, String descriptor, ByteVector bytecode, int maxStack, int maxLocals) {
+        methods.add(new Method(access, utf8(name), utf8(descriptor), utf8("Code"), bytecode, maxStack, maxLocals));
+    }
+
+    // Whether the constant pool still fits; checked once everything has been added
+    boolean fits() {
+        return poolCount <= MAX_CONSTANTS;
+    }
+
+    byte[] toByteArray() {
+        var out = new ByteVector();
+        out.u4(0xCAFEBABE).u2(0).u2(JAVA_17);
+        out.u2(poolCount).append(pool);
+        out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER).u2(thisClass).u2(superClass);
+        // No interfaces and no fields
+        out.u2(0).u2(0);
+
+        out.u2(methods.size());
+        for (Method method : methods) {
+            out.u2(method.access()).u2(method.name()).u2(method.descriptor());
+            // One attribute, Code: max_stack, max_locals, code, no exception table, no attributes
+            out.u2(1).u2(method.code()).u4(12 + method.bytecode().length());
+            out.u2(method.maxStack()).u2(method.maxLocals());
+            out.u4(method.bytecode().length()).append(method.bytecode());
+            out.u2(0).u2(0);
+        }
+
+        // No class attributes
+        out.u2(0);
+        return out.toByteArray();
+    }
+}
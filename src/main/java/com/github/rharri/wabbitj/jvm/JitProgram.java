@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.jvm;
+
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Objects;
+
+// A program compiled to a hidden class. It holds the only strong reference to the class, which can be unloaded once
+// this is unreachable. Running it is thread-safe as long as the runtime is.
+public final class JitProgram {
+
+    private final MethodHandle run;
+
+    JitProgram(MethodHandle run) {
+        this.run = run;
+    }
+
+    public void run(JavaRuntime runtime) {
+        Objects.requireNonNull(runtime);
+
+        try {
+            run.invokeExact(runtime);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JitProgram{" +
+                "run=" + run +
+                '}';
+    }
+}
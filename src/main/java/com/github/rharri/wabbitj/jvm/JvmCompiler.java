@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.jvm;
+
+import com.github.rharri.wabbitj.NodeVisitor;
+import com.github.rharri.wabbitj.TypeChecker;
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.interpreter.WabbitType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Optional;
+
+// Compiles a type-checked tree to JVM bytecode and loads it as a hidden class, so HotSpot optimizes Wabbit programs
+// like any other Java code. The class is only weakly reachable from its loader and is unloaded once the compiled
+// program is no longer used.
+//
+// Statements are packed into static methods called in turn by run. Each is kept under HotSpot's 8000 byte limit for
+// methods it will compile, unless a single statement is larger. A program that cannot fit the class file format, a
+// statement over 64 KB of code or more than 65535 constants, is not compiled and the caller falls back to the
+// interpreter.
+public final class JvmCompiler implements NodeVisitor {
+
+    static final String CLASS_NAME = "com/github/rharri/wabbitj/jvm/WabbitProgram";
+    private static final String RUNTIME = "com/github/rharri/wabbitj/interpreter/JavaRuntime";
+    private static final String RUN_DESCRIPTOR = "(L" + RUNTIME + ";)V";
+
+    // HotSpot's HugeMethodLimit: longer methods are only ever interpreted
+    private static final int CHUNK_CODE_LENGTH = 8000;
+
+    // The instructions used, from JVMS chapter 6
+    private static final int ICONST_0 = 0x03;
+    private static final int FCONST_0 = 0x0b;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int IADD = 0x60;
+    private static final int FADD = 0x62;
+    private static final int ISUB = 0x64;
+    private static final int FSUB = 0x66;
+    private static final int IMUL = 0x68;
+    private static final int FMUL = 0x6a;
+    private static final int IDIV = 0x6c;
+    private static final int FDIV = 0x6e;
+    private static final int INEG = 0x74;
+    private static final int FNEG = 0x76;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESTATIC = 0xb8;
+
+    private static final class TooLarge extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private TooLarge(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final TypeChecker typeChecker;
+    private final ClassFileWriter writer = new ClassFileWriter(CLASS_NAME);
+    private final ByteVector statement = new ByteVector();
+    private int depth = 0;
+    private int maxDepth = 0;
+    private ByteVector chunk = new ByteVector();
+    private int chunkMaxStack = 0;
+    private int chunkCount = 0;
+
+    private JvmCompiler(TypeChecker typeChecker) {
+        this.typeChecker = typeChecker;
+    }
+
+    // The class file for a tree that has been accepted by the type checker without errors, or empty if the program
+    // does not fit in one
+    public static Optional<byte[]> emit(AbstractSyntaxTree ast, TypeChecker typeChecker) {
+        Objects.requireNonNull(ast);
+        Objects.requireNonNull(typeChecker);
+
+        var compiler = new JvmCompiler(typeChecker);
+        try {
+            ast.accept(compiler);
+            return Optional.of(compiler.finish());
+        } catch (TooLarge e) {
+            return Optional.empty();
+        }
+    }
+
+    // Compile and load the program, or empty if it does not fit in a class file
+    public static Optional<JitProgram> compile(AbstractSyntaxTree ast, TypeChecker typeChecker) {
+        return emit(ast, typeChecker).map(JvmCompiler::load);
+    }
+
+    private static JitProgram load(byte[] classFile) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            MethodHandle run = lookup.findStatic(lookup.lookupClass(), "run",
+                    MethodType.methodType(void.class, JavaRuntime.class));
+            return new JitProgram(run);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Cannot load the compiled program.", e);
+        }
+    }
+
+    private byte[] finish() {
+        flushChunk();
+
+        var run = new ByteVector();
+        for (int i = 0; i < chunkCount; i++) {
+            run.u1(ALOAD_0);
+            run.u1(INVOKESTATIC).u2(writer.methodRef(CLASS_NAME, "run$" + i, RUN_DESCRIPTOR));
+        }
+        run.u1(RETURN);
+
+        if (run.length() > ClassFileWriter.MAX_CODE_LENGTH)
+            throw new TooLarge("Too many statements.");
+
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "run", RUN_DESCRIPTOR, run,
+                chunkCount > 0 ? 1 : 0, 1);
+
+        if (!writer.fits())
+            throw new TooLarge("Too many constants.");
+
+        return writer.toByteArray();
+    }
+
+    private void flushChunk() {
+        if (chunk.length() == 0)
+            return;
+
+        chunk.u1(RETURN);
+        writer.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, "run$" + chunkCount,
+                RUN_DESCRIPTOR, chunk, chunkMaxStack, 1);
+
+        chunkCount += 1;
+        chunk = new ByteVector();
+        chunkMaxStack = 0;
+    }
+
+    @Override
+    public void visitProgram(Program program) {
+        Objects.requireNonNull(program);
+        program.statements().accept(this);
+    }
+
+    @Override
+    public void visitStatements(Statements statements) {
+        Objects.requireNonNull(statements);
+        for (Statement statement : statements.statements())
+            statement.accept(this);
+    }
+
+    @Override
+    public void visitPrint(Print print) {
+        Objects.requireNonNull(print);
+
+        statement.clear();
+        depth = 0;
+        maxDepth = 0;
+
+        // runtime.println(expression)
+        statement.u1(ALOAD_0);
+        push();
+        expression(print.expression());
+        String descriptor = isInt(print.expression()) ? "(I)V" : "(F)V";
+        statement.u1(INVOKEVIRTUAL).u2(writer.methodRef(RUNTIME, "println", descriptor));
+
+        // Leave room for the return that ends the method
+        if (statement.length() + 1 > ClassFileWriter.MAX_CODE_LENGTH || maxDepth > 65535)
+            throw new TooLarge("Statement is too large.");
+
+        if (chunk.length() + statement.length() + 1 > CHUNK_CODE_LENGTH)
+            flushChunk();
+
+        chunk.append(statement);
+        chunkMaxStack = Math.max(chunkMaxStack, maxDepth);
+    }
+
+    @Override
+    public void visitIntLiteral(IntLiteral intLiteral) {
+        Objects.requireNonNull(intLiteral);
+        expression(intLiteral);
+    }
+
+    @Override
+    public void visitFloatLiteral(FloatLiteral floatLiteral) {
+        Objects.requireNonNull(floatLiteral);
+        expression(floatLiteral);
+    }
+
+    @Override
+    public void visitBinaryOp(BinaryOp binaryOp) {
+        Objects.requireNonNull(binaryOp);
+        expression(binaryOp);
+    }
+
+    @Override
+    public void visitUnaryOp(UnaryOp unaryOp) {
+        Objects.requireNonNull(unaryOp);
+        expression(unaryOp);
+    }
+
+    @Override
+    public void visitGrouping(Grouping grouping) {
+        Objects.requireNonNull(grouping);
+        expression(grouping);
+    }
+
+    // Generates the code of an expression in post-order, with the nodes still to generate, and the operators waiting
+    // for the code of their operands, on a stack in the heap rather than by recursion, since a long chain of
+    // operators is as deep as it is long
+    private void expression(Expression expression) {
+        Deque<Object> pending = new ArrayDeque<>();
+
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Operation operation) {
+                operator(operation.node());
+            } else if (next instanceof BinaryOp binaryOp) {
+                pending.push(new Operation(binaryOp));
+                pending.push(binaryOp.rhs());
+                pending.push(binaryOp.lhs());
+            } else if (next instanceof UnaryOp unaryOp) {
+                pending.push(new Operation(unaryOp));
+                pending.push(unaryOp.operand());
+            } else if (next instanceof Grouping grouping) {
+                pending.push(grouping.expression());
+            } else if (next instanceof IntLiteral intLiteral) {
+                intLiteral(intLiteral.value());
+            } else if (next instanceof FloatLiteral floatLiteral) {
+                floatLiteral(floatLiteral.value());
+            } else {
+                throw new IllegalArgumentException("Unsupported expression " + next + ".");
+            }
+        }
+    }
+
+    private void intLiteral(int value) {
+        if (value >= -1 && value <= 5)
+            statement.u1(ICONST_0 + value);
+        else if (value == (byte) value)
+            statement.u1(BIPUSH).u1(value);
+        else if (value == (short) value)
+            statement.u1(SIPUSH).u2(value);
+        else
+            loadConstant(writer.integer(value));
+
+        push();
+    }
+
+    private void floatLiteral(float value) {
+        // fconst_<f> only for +0.0, 1.0 and 2.0 exactly; -0.0 has to come from the pool
+        int bits = Float.floatToRawIntBits(value);
+        if (bits == Float.floatToRawIntBits(0.0f))
+            statement.u1(FCONST_0);
+        else if (bits == Float.floatToRawIntBits(1.0f))
+            statement.u1(FCONST_0 + 1);
+        else if (bits == Float.floatToRawIntBits(2.0f))
+            statement.u1(FCONST_0 + 2);
+        else
+            loadConstant(writer.floatBits(bits));
+
+        push();
+    }
+
+    private void loadConstant(int index) {
+        if (index < 256)
+            statement.u1(LDC).u1(index);
+        else
+            statement.u1(LDC_W).u2(index);
+    }
+
+    // The code of the operands is already generated
+    private void operator(Expression node) {
+        boolean isInt = isInt(node);
+
+        if (node instanceof BinaryOp binaryOp) {
+            statement.u1(switch (binaryOp.operator()) {
+                case PLUS -> isInt ? IADD : FADD;
+                case MINUS -> isInt ? ISUB : FSUB;
+                case TIMES -> isInt ? IMUL : FMUL;
+                case DIVIDE -> isInt ? IDIV : FDIV;
+            });
+            depth -= 1;
+            return;
+        }
+
+        var unaryOp = (UnaryOp) node;
+        switch (unaryOp.operator()) {
+            case MINUS -> statement.u1(isInt ? INEG : FNEG);
+            // Unary plus is the runtime's absolute value
+            case PLUS -> statement.u1(INVOKESTATIC).u2(writer.methodRef(RUNTIME, "plus", isInt ? "(I)I" : "(F)F"));
+            default -> throw new IllegalArgumentException("Unsupported unary operator " + unaryOp.operator() + ".");
+        }
+    }
+
+    record Operation(Expression node) {
+    }
+
+    private boolean isInt(Expression expression) {
+        return typeChecker.typeOf(expression) == WabbitType.INT;
+    }
+
+    private void push() {
+        depth += 1;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    @Override
+    public String toString() {
+        return "JvmCompiler{" +
+                "chunkCount=" + chunkCount +
+                '}';
+    }
+}
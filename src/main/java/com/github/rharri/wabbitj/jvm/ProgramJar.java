@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.jvm;
+
+import com.github.rharri.wabbitj.ast.Operator;
+import com.github.rharri.wabbitj.interpreter.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+// Writes a runnable jar holding a compiled program, ProgramMain, and the runtime classes the program calls, copied
+// from this one. Nothing of the front end is included, so running the jar only loads what executing needs.
+public final class ProgramJar {
+
+    // With their nested classes, such as the switch maps javac generates
+    private static final List<Class<?>> RUNTIME_CLASSES = List.of(ProgramMain.class, JavaRuntime.class,
+            OutputSink.class, PrintStreamSink.class, BufferedSink.class, FlushPolicy.class, NumberFormatter.class,
+            Operator.class);
+
+    private ProgramJar() {
+    }
+
+    // The class file must come from JvmCompiler.emit
+    public static void write(byte[] programClass, Path jar) throws IOException {
+        Objects.requireNonNull(programClass);
+        Objects.requireNonNull(jar);
+
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, ProgramMain.class.getName());
+
+        try (OutputStream file = Files.newOutputStream(jar);
+             var out = new JarOutputStream(file, manifest)) {
+            writeEntry(out, JvmCompiler.CLASS_NAME + ".class", programClass);
+            for (Class<?> runtimeClass : RUNTIME_CLASSES) {
+                for (Class<?> member : runtimeClass.getNestMembers())
+                    writeEntry(out, member.getName().replace('.', '/') + ".class", classFile(member));
+            }
+        }
+    }
+
+    private static byte[] classFile(Class<?> type) throws IOException {
+        String resource = "/" + type.getName().replace('.', '/') + ".class";
+        try (InputStream in = type.getResourceAsStream(resource)) {
+            if (in == null)
+                throw new IOException("Cannot find the class file of " + type.getName() + ".");
+            return in.readAllBytes();
+        }
+    }
+
+    private static void writeEntry(JarOutputStream out, String name, byte[] bytes) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        out.write(bytes);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.jvm;
+
+import com.github.rharri.wabbitj.interpreter.BufferedSink;
+import com.github.rharri.wabbitj.interpreter.FlushPolicy;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.interpreter.OutputSink;
+
+import java.lang.reflect.InvocationTargetException;
+
+// The entry point of a jar written by ProgramJar. The compiled program is found by name, since it does not exist when
+// this class is compiled, and called through plain reflection, which is cheaper to start than a method handle.
+public final class ProgramMain {
+
+    private ProgramMain() {
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Class<?> program = Class.forName(JvmCompiler.CLASS_NAME.replace('/', '.'));
+
+        // Output printed before a division by zero is still written
+        try (OutputSink sink = BufferedSink.of(System.out, FlushPolicy.onExit())) {
+            program.getMethod("run", JavaRuntime.class).invoke(null, new JavaRuntime(sink));
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
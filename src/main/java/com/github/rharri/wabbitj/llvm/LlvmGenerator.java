@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.llvm;
+
+import com.github.rharri.wabbitj.NodeVisitor;
+import com.github.rharri.wabbitj.TypeChecker;
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.c.CGenerator;
+import com.github.rharri.wabbitj.interpreter.WabbitType;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+// Translates a type-checked tree into a textual LLVM IR module (.ll), for clang to optimize and build into a native
+// program. Int operations are plain i32 instructions, which wrap around, and float operations are float instructions
+// without fast-math flags, so both keep the JVM's results. Only division needs a helper, because sdiv is undefined for
+// a zero divisor and for -2^31 / -1.
+//
+// Ints are printed with printf. Floats are first formatted by the C runtime, which writes the same text as
+// NumberFormatter, and then printed with printf too, so that all output goes through one stream in order. The module
+// must therefore be linked with RUNTIME_FILE_NAME, the contents of which are returned by runtime().
+public final class LlvmGenerator implements NodeVisitor {
+
+    public static final String RUNTIME_FILE_NAME = "wabbit_runtime.c";
+
+    private static final int STATEMENTS_PER_FUNCTION = 1000;
+
+    // The printf formats, the runtime functions, and an int division that fails on a zero divisor as the JVM does
+    private static final String DECLARATIONS = """
+            @.int_format = private unnamed_addr constant [4 x i8] c"%d\\0A\\00"
+            @.string_format = private unnamed_addr constant [4 x i8] c"%s\\0A\\00"
+
+            declare i32 @printf(ptr, ...)
+            declare ptr @wb_write_float(float, ptr)
+            declare void @wb_divide_by_zero() noreturn
+
+            define internal i32 @wb_idiv(i32 %lhs, i32 %rhs) {
+            entry:
+              %is_zero = icmp eq i32 %rhs, 0
+              br i1 %is_zero, label %zero, label %nonzero
+            zero:
+              call void @wb_divide_by_zero()
+              unreachable
+            nonzero:
+              %is_minus_one = icmp eq i32 %rhs, -1
+              br i1 %is_minus_one, label %minus_one, label %divide
+            minus_one:
+              %negated = sub i32 0, %lhs
+              ret i32 %negated
+            divide:
+              %quotient = sdiv i32 %lhs, %rhs
+              ret i32 %quotient
+            }
+            """;
+
+    // Room for the longest float that wb_write_float writes and a terminating NUL
+    private static final int FLOAT_BUFFER_SIZE = 16;
+
+    private final TypeChecker typeChecker;
+    private final String sourceFileName;
+    private final StringBuilder functions = new StringBuilder();
+    private int temporaryCount = 0;
+    private int functionCount = 0;
+    private int statementsInFunction = 0;
+    // The IR operand of the expression just visited: a constant or a temporary
+    private @Nullable String operand;
+
+    private LlvmGenerator(TypeChecker typeChecker, String sourceFileName) {
+        this.typeChecker = typeChecker;
+        this.sourceFileName = sourceFileName;
+    }
+
+    // The tree must already have been accepted by the type checker, without errors
+    public static String generate(AbstractSyntaxTree ast, TypeChecker typeChecker, String sourceFileName) {
+        Objects.requireNonNull(ast);
+        Objects.requireNonNull(typeChecker);
+        Objects.requireNonNull(sourceFileName);
+
+        if (sourceFileName.contains("\"") || sourceFileName.contains("\\"))
+            throw new IllegalArgumentException("sourceFileName must not contain '\"' or '\\'.");
+
+        var generator = new LlvmGenerator(typeChecker, sourceFileName);
+        ast.accept(generator);
+        return generator.finish();
+    }
+
+    // The C runtime that a generated module links against, with its functions exported
+    public static String runtime() {
+        return "/* Generated by wabbitj: the runtime that programs compiled to LLVM IR link against */\n"
+                + "#define WB_FUNCTION\n\n"
+                + CGenerator.runtime();
+    }
+
+    private String finish() {
+        if (statementsInFunction > 0)
+            endFunction();
+
+        var module = new StringBuilder(DECLARATIONS.length() + functions.length() + 256);
+        module.append("; Generated by wabbitj. Build with: clang -O2 -o program program.ll ")
+                .append(RUNTIME_FILE_NAME).append('\n');
+        module.append("source_filename = \"").append(sourceFileName).append("\"\n\n");
+        module.append(DECLARATIONS).append('\n');
+        module.append(functions);
+        module.append("define i32 @main() {\n");
+        module.append("entry:\n");
+        for (int i = 0; i < functionCount; i++)
+            module.append("  call void @wb_run_").append(i).append("()\n");
+        module.append("  ret i32 0\n");
+        module.append("}\n");
+        return module.toString();
+    }
+
+    private void endFunction() {
+        functions.append("  ret void\n");
+        functions.append("}\n\n");
+        statementsInFunction = 0;
+    }
+
+    @Override
+    public void visitProgram(Program program) {
+        Objects.requireNonNull(program);
+        program.statements().accept(this);
+    }
+
+    @Override
+    public void visitStatements(Statements statements) {
+        Objects.requireNonNull(statements);
+        for (Statement statement : statements.statements())
+            statement.accept(this);
+    }
+
+    @Override
+    public void visitPrint(Print print) {
+        Objects.requireNonNull(print);
+
+        if (statementsInFunction == STATEMENTS_PER_FUNCTION)
+            endFunction();
+        if (statementsInFunction == 0) {
+            functions.append("define internal void @wb_run_").append(functionCount++).append("() {\n");
+            functions.append("entry:\n");
+            functions.append("  %buffer = alloca [").append(FLOAT_BUFFER_SIZE).append(" x i8]\n");
+            temporaryCount = 0;
+        }
+        statementsInFunction++;
+
+        String value = operand(print.expression());
+        if (isInt(print.expression())) {
+            functions.append("  call i32 (ptr, ...) @printf(ptr @.int_format, i32 ").append(value).append(")\n");
+        } else {
+            String end = temporary("call ptr @wb_write_float(float " + value + ", ptr %buffer)");
+            functions.append("  store i8 0, ptr ").append(end).append('\n');
+            functions.append("  call i32 (ptr, ...) @printf(ptr @.string_format, ptr %buffer)\n");
+        }
+    }
+
+    @Override
+    public void visitIntLiteral(IntLiteral intLiteral) {
+        Objects.requireNonNull(intLiteral);
+        operand = Integer.toString(intLiteral.value());
+    }
+
+    // Float constants are written as the hexadecimal bits of the same value as a double, which is exact and also
+    // covers the infinities and NaN that folding can produce
+    @Override
+    public void visitFloatLiteral(FloatLiteral floatLiteral) {
+        Objects.requireNonNull(floatLiteral);
+        operand = floatConstant(floatLiteral.value());
+    }
+
+    static String floatConstant(float value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (Float.isNaN(value))
+            bits = Double.doubleToRawLongBits(Double.NaN);
+        return String.format("0x%016X", bits);
+    }
+
+    @Override
+    public void visitBinaryOp(BinaryOp binaryOp) {
+        Objects.requireNonNull(binaryOp);
+        operand = operand(binaryOp);
+    }
+
+    // The operands are already generated
+    private String binaryOp(BinaryOp binaryOp, String lhs, String rhs) {
+        if (isInt(binaryOp)) {
+            return switch (binaryOp.operator()) {
+                case PLUS -> temporary("add i32 " + lhs + ", " + rhs);
+                case MINUS -> temporary("sub i32 " + lhs + ", " + rhs);
+                case TIMES -> temporary("mul i32 " + lhs + ", " + rhs);
+                case DIVIDE -> temporary("call i32 @wb_idiv(i32 " + lhs + ", i32 " + rhs + ")");
+            };
+        } else {
+            String instruction = switch (binaryOp.operator()) {
+                case PLUS -> "fadd";
+                case MINUS -> "fsub";
+                case TIMES -> "fmul";
+                case DIVIDE -> "fdiv";
+            };
+            return temporary(instruction + " float " + lhs + ", " + rhs);
+        }
+    }
+
+    @Override
+    public void visitUnaryOp(UnaryOp unaryOp) {
+        Objects.requireNonNull(unaryOp);
+        operand = operand(unaryOp);
+    }
+
+    // Minus multiplies by -1 and plus is x >= 0 ? x : -1 * x, as in the interpreter
+    private String unaryOp(UnaryOp unaryOp, String value) {
+        boolean isInt = isInt(unaryOp);
+        String negated = temporary(isInt ? "mul i32 -1, " + value : "fmul float -1.0, " + value);
+        return switch (unaryOp.operator()) {
+            case MINUS -> negated;
+            case PLUS -> {
+                String isPositive = temporary(isInt
+                        ? "icmp sge i32 " + value + ", 0"
+                        : "fcmp oge float " + value + ", 0.0");
+                String type = isInt ? "i32 " : "float ";
+                yield temporary("select i1 " + isPositive + ", " + type + value + ", " + type + negated);
+            }
+            default -> throw new IllegalArgumentException("Unsupported unary operator " + unaryOp.operator() + ".");
+        };
+    }
+
+    @Override
+    public void visitGrouping(Grouping grouping) {
+        Objects.requireNonNull(grouping);
+        operand = operand(grouping);
+    }
+
+    // Generates an expression in post-order, with the nodes still to generate, and the operators waiting for their
+    // operands, on a stack in the heap rather than by recursion, since a long chain of operators is as deep as it is
+    // long. Literals are visited for their text.
+    private String operand(Expression expression) {
+        Deque<Object> pending = new ArrayDeque<>();
+        Deque<String> done = new ArrayDeque<>();
+
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Operation operation) {
+                if (operation.node() instanceof BinaryOp binaryOp) {
+                    String rhs = done.pop();
+                    String lhs = done.pop();
+                    done.push(binaryOp(binaryOp, lhs, rhs));
+                } else {
+                    done.push(unaryOp((UnaryOp) operation.node(), done.pop()));
+                }
+            } else if (next instanceof BinaryOp binaryOp) {
+                pending.push(new Operation(binaryOp));
+                pending.push(binaryOp.rhs());
+                pending.push(binaryOp.lhs());
+            } else if (next instanceof UnaryOp unaryOp) {
+                pending.push(new Operation(unaryOp));
+                pending.push(unaryOp.operand());
+            } else if (next instanceof Grouping grouping) {
+                pending.push(grouping.expression());
+            } else {
+                operand = null;
+                ((Expression) next).accept(this);
+                done.push(Objects.requireNonNull(operand));
+            }
+        }
+        return done.pop();
+    }
+
+    record Operation(Expression node) {
+    }
+
+    private String temporary(String instruction) {
+        String name = "%t" + temporaryCount++;
+        functions.append("  ").append(name).append(" = ").append(instruction).append('\n');
+        return name;
+    }
+
+    private boolean isInt(Expression expression) {
+        return typeChecker.typeOf(expression) == WabbitType.INT;
+    }
+
+    @Override
+    public String toString() {
+        return "LlvmGenerator{" +
+                "functions=" + functionCount +
+                '}';
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.optimizer;
+
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+
+// Evaluates operators whose operands are literals, with the same JavaRuntime operations the interpreter uses, so an int
+// result wraps and an int division truncates toward zero exactly as it would when the program runs. An int division by
+// zero is left in place to fail at run time, after the statements before it have printed.
+public final class ConstantFolding extends RewritePass {
+
+    @Override
+    public String name() {
+        return "fold";
+    }
+
+    @Override
+    protected Expression rewriteBinaryOp(BinaryOp binaryOp) {
+        int line = binaryOp.line();
+        int column = binaryOp.column();
+
+        if (binaryOp.lhs() instanceof IntLiteral lhs && binaryOp.rhs() instanceof IntLiteral rhs) {
+            if (binaryOp.operator() == Operator.DIVIDE && rhs.value() == 0)
+                return binaryOp;
+
+            int value = switch (binaryOp.operator()) {
+                case PLUS -> JavaRuntime.add(lhs.value(), rhs.value());
+                case MINUS -> JavaRuntime.subtract(lhs.value(), rhs.value());
+                case TIMES -> JavaRuntime.multiply(lhs.value(), rhs.value());
+                case DIVIDE -> JavaRuntime.divide(lhs.value(), rhs.value());
+            };
+            return rewrote(new IntLiteral(value, line, column));
+        }
+
+        if (binaryOp.lhs() instanceof FloatLiteral lhs && binaryOp.rhs() instanceof FloatLiteral rhs) {
+            float value = switch (binaryOp.operator()) {
+                case PLUS -> JavaRuntime.add(lhs.value(), rhs.value());
+                case MINUS -> JavaRuntime.subtract(lhs.value(), rhs.value());
+                case TIMES -> JavaRuntime.multiply(lhs.value(), rhs.value());
+                case DIVIDE -> JavaRuntime.divide(lhs.value(), rhs.value());
+            };
+            return rewrote(new FloatLiteral(value, line, column));
+        }
+
+        return binaryOp;
+    }
+
+    @Override
+    protected Expression rewriteUnaryOp(UnaryOp unaryOp) {
+        boolean isPlus = switch (unaryOp.operator()) {
+            case PLUS -> true;
+            case MINUS -> false;
+            default -> throw new IllegalArgumentException("Unsupported unary operator " + unaryOp.operator() + ".");
+        };
+
+        if (unaryOp.operand() instanceof IntLiteral operand) {
+            int value = isPlus ? JavaRuntime.plus(operand.value()) : JavaRuntime.minus(operand.value());
+            return rewrote(new IntLiteral(value, operand.line(), operand.column()));
+        }
+
+        if (unaryOp.operand() instanceof FloatLiteral operand) {
+            float value = isPlus ? JavaRuntime.plus(operand.value()) : JavaRuntime.minus(operand.value());
+            return rewrote(new FloatLiteral(value, operand.line(), operand.column()));
+        }
+
+        return unaryOp;
+    }
+
+    // A literal in parentheses is still a literal, so the operator around it can be folded next
+    @Override
+    protected Expression rewriteGrouping(Grouping grouping) {
+        if (grouping.expression() instanceof IntLiteral || grouping.expression() instanceof FloatLiteral)
+            return rewrote(grouping.expression());
+        return grouping;
+    }
+}
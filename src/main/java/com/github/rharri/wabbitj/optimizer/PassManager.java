@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.optimizer;
+
+import com.github.rharri.wabbitj.ast.Program;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Runs passes in the order they were added, each on the program the one before it returned, and times each of them.
+// The optimized program has new nodes, so it needs to be type checked again before a backend that looks up types can
+// compile it.
+public final class PassManager {
+
+    private final List<Pass> passes = new ArrayList<>();
+
+    // Groupings go first so that folding sees literal operands directly; strength reduction only has the operators
+    // left that folding could not evaluate
+    public static PassManager standard() {
+        return new PassManager()
+                .add(new RedundantNodeRemoval())
+                .add(new ConstantFolding())
+                .add(new StrengthReduction());
+    }
+
+    public PassManager add(Pass pass) {
+        Objects.requireNonNull(pass);
+        passes.add(pass);
+        return this;
+    }
+
+    public List<Pass> passes() {
+        return List.copyOf(passes);
+    }
+
+    public Optimization run(Program program) {
+        Objects.requireNonNull(program);
+
+        List<PassReport> reports = new ArrayList<>(passes.size());
+        for (Pass pass : passes) {
+            long start = System.nanoTime();
+            PassResult result = pass.run(program);
+            long nanos = System.nanoTime() - start;
+
+            program = result.program();
+            reports.add(new PassReport(pass.name(), result.rewrites(), nanos));
+        }
+        return new Optimization(program, reports);
+    }
+
+    @Override
+    public String toString() {
+        return "PassManager{" +
+                "passes=" + passes.size() +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.optimizer;
+
+import java.util.Locale;
+import java.util.Objects;
+
+public record PassReport(String pass, int rewrites, long nanos) {
+
+    public PassReport {
+        Objects.requireNonNull(pass);
+
+        if (rewrites < 0)
+            throw new IllegalArgumentException("rewrites must be >= 0.");
+
+        if (nanos < 0)
+            throw new IllegalArgumentException("nanos must be >= 0.");
+    }
+
+    // For example, "fold: 12 rewrites in 0.041 ms"
+    public String format() {
+        return String.format(Locale.ROOT, "%s: %d rewrites in %.3f ms", pass, rewrites, nanos / 1_000_000.0);
+    }
+}
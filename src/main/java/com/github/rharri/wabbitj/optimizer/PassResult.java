@@ -19,14 +19,18 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
+package com.github.rharri.wabbitj.optimizer;
 
-package com.github.rharri.wabbitj.interpreter;
+import com.github.rharri.wabbitj.ast.Program;
 
 import java.util.Objects;
 
-public record WabbitValue(WabbitType wabbitType, Object javaObject) {
+public record PassResult(Program program, int rewrites) {
 
-    public WabbitValue {
-        Objects.requireNonNull(javaObject);
+    public PassResult {
+        Objects.requireNonNull(program);
+
+        if (rewrites < 0)
+            throw new IllegalArgumentException("rewrites must be >= 0.");
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.optimizer;
+
+import com.github.rharri.wabbitj.ast.Expression;
+import com.github.rharri.wabbitj.ast.Grouping;
+import com.github.rharri.wabbitj.ast.Operator;
+import com.github.rharri.wabbitj.ast.UnaryOp;
+
+// Removes nodes that do not change a value. A grouping has already decided the shape of the tree, so it can always go.
+// Unary plus is an absolute value in Wabbit, not a no-op, so only the repeated forms are removed: +(+x) is +x, and -(-x)
+// is x, including for the smallest int and for -0.0, where negating is exact.
+public final class RedundantNodeRemoval extends RewritePass {
+
+    @Override
+    public String name() {
+        return "simplify";
+    }
+
+    @Override
+    protected Expression rewriteGrouping(Grouping grouping) {
+        return rewrote(grouping.expression());
+    }
+
+    @Override
+    protected Expression rewriteUnaryOp(UnaryOp unaryOp) {
+        if (unaryOp.operand() instanceof UnaryOp operand && operand.operator() == unaryOp.operator()) {
+            if (unaryOp.operator() == Operator.PLUS)
+                return rewrote(operand);
+            if (unaryOp.operator() == Operator.MINUS)
+                return rewrote(operand.operand());
+        }
+        return unaryOp;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.optimizer;
+
+import com.github.rharri.wabbitj.ast.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+// Rebuilds a program bottom up. The operands of a node are rewritten before the node is offered to the pass, and a
+// node is only copied when one of its operands changed, so a pass that finds nothing to do returns the same program.
+// The tree is walked with a stack in the heap rather than by recursion, since expressions can nest more deeply than a
+// thread's stack allows.
+abstract class RewritePass implements Pass {
+
+    private int rewrites;
+
+    @Override
+    public final PassResult run(Program program) {
+        Objects.requireNonNull(program);
+
+        rewrites = 0;
+        var statements = new Statements();
+        for (Statement statement : program.statements().statements()) {
+            if (!(statement instanceof Print print))
+                throw new IllegalArgumentException("Unsupported statement " + statement + ".");
+
+            Expression expression = rewrite(print.expression());
+            statements.add(expression == print.expression() ? print : new Print(expression));
+        }
+        return new PassResult(rewrites == 0 ? program : new Program(statements), rewrites);
+    }
+
+    // The replacement for a binary operator whose operands have already been rewritten
+    protected Expression rewriteBinaryOp(BinaryOp binaryOp) {
+        return binaryOp;
+    }
+
+    protected Expression rewriteUnaryOp(UnaryOp unaryOp) {
+        return unaryOp;
+    }
+
+    protected Expression rewriteGrouping(Grouping grouping) {
+        return grouping;
+    }
+
+    // Counts a replacement made by the pass
+    protected final Expression rewrote(Expression expression) {
+        rewrites++;
+        return expression;
+    }
+
+    // A node is pushed once to expand its operands, and again wrapped in Rebuild to be rewritten from the rewritten
+    // operands, which are then on top of the done stack in order
+    private Expression rewrite(Expression expression) {
+        Deque<Object> pending = new ArrayDeque<>();
+        Deque<Expression> done = new ArrayDeque<>();
+
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Rebuild rebuild) {
+                done.push(rebuild(rebuild.node(), done));
+            } else if (next instanceof BinaryOp binaryOp) {
+                pending.push(new Rebuild(binaryOp));
+                pending.push(binaryOp.rhs());
+                pending.push(binaryOp.lhs());
+            } else if (next instanceof UnaryOp unaryOp) {
+                pending.push(new Rebuild(unaryOp));
+                pending.push(unaryOp.operand());
+            } else if (next instanceof Grouping grouping) {
+                pending.push(new Rebuild(grouping));
+                pending.push(grouping.expression());
+            } else {
+                // A literal
+                done.push((Expression) next);
+            }
+        }
+        return done.pop();
+    }
+
+    private Expression rebuild(Expression node, Deque<Expression> done) {
+        if (node instanceof BinaryOp binaryOp) {
+            Expression rhs = done.pop();
+            Expression lhs = done.pop();
+            if (lhs != binaryOp.lhs() || rhs != binaryOp.rhs())
+                binaryOp = new BinaryOp(binaryOp.operator(), lhs, rhs, binaryOp.line(), binaryOp.column());
+            return rewriteBinaryOp(binaryOp);
+        }
+
+        if (node instanceof UnaryOp unaryOp) {
+            Expression operand = done.pop();
+            if (operand != unaryOp.operand())
+                unaryOp = new UnaryOp(unaryOp.operator(), operand);
+            return rewriteUnaryOp(unaryOp);
+        }
+
+        var grouping = (Grouping) node;
+        Expression expression = done.pop();
+        if (expression != grouping.expression())
+            grouping = new Grouping(expression);
+        return rewriteGrouping(grouping);
+    }
+
+    record Rebuild(Expression node) {
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+                "rewrites=" + rewrites +
+                '}';
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.optimizer;
+
+import com.github.rharri.wabbitj.ast.*;
+
+// Replaces an operator with a literal operand by a cheaper one that gives the same result for every value of the other
+// operand. Float identities are only used where they also hold for -0.0 and NaN: x + 0.0 is not x when x is -0.0, but
+// x - 0.0 and x + -0.0 are. A float division by a power of two becomes a multiplication by its reciprocal, which is exact.
+// Multiplying by zero is not removed, because the other operand may divide by zero.
+public final class StrengthReduction extends RewritePass {
+
+    @Override
+    public String name() {
+        return "strength-reduce";
+    }
+
+    @Override
+    protected Expression rewriteBinaryOp(BinaryOp binaryOp) {
+        Expression lhs = binaryOp.lhs();
+        Expression rhs = binaryOp.rhs();
+
+        if (rhs instanceof IntLiteral literal) {
+            int value = literal.value();
+            switch (binaryOp.operator()) {
+                case PLUS, MINUS -> {
+                    if (value == 0)
+                        return rewrote(lhs);
+                }
+                case TIMES, DIVIDE -> {
+                    if (value == 1)
+                        return rewrote(lhs);
+                    if (value == -1)
+                        return rewrote(new UnaryOp(Operator.MINUS, lhs));
+                }
+            }
+        } else if (lhs instanceof IntLiteral literal) {
+            int value = literal.value();
+            if (binaryOp.operator() == Operator.PLUS && value == 0)
+                return rewrote(rhs);
+            if (binaryOp.operator() == Operator.TIMES && value == 1)
+                return rewrote(rhs);
+            if (binaryOp.operator() == Operator.TIMES && value == -1)
+                return rewrote(new UnaryOp(Operator.MINUS, rhs));
+        } else if (rhs instanceof FloatLiteral literal) {
+            float value = literal.value();
+            int bits = Float.floatToRawIntBits(value);
+            switch (binaryOp.operator()) {
+                case PLUS -> {
+                    if (bits == Float.floatToRawIntBits(-0.0f))
+                        return rewrote(lhs);
+                }
+                case MINUS -> {
+                    if (bits == 0)
+                        return rewrote(lhs);
+                }
+                case TIMES -> {
+                    if (value == 1.0f)
+                        return rewrote(lhs);
+                    if (value == -1.0f)
+                        return rewrote(new UnaryOp(Operator.MINUS, lhs));
+                }
+                case DIVIDE -> {
+                    if (value == 1.0f)
+                        return rewrote(lhs);
+                    if (value == -1.0f)
+                        return rewrote(new UnaryOp(Operator.MINUS, lhs));
+                    if (isPowerOfTwo(value)) {
+                        var reciprocal = new FloatLiteral(1.0f / value, literal.line(), literal.column());
+                        return rewrote(new BinaryOp(Operator.TIMES, lhs, reciprocal, binaryOp.line(),
+                                binaryOp.column()));
+                    }
+                }
+            }
+        } else if (lhs instanceof FloatLiteral literal) {
+            float value = literal.value();
+            if (binaryOp.operator() == Operator.PLUS && Float.floatToRawIntBits(value) == Float.floatToRawIntBits(-0.0f))
+                return rewrote(rhs);
+            if (binaryOp.operator() == Operator.TIMES && value == 1.0f)
+                return rewrote(rhs);
+            if (binaryOp.operator() == Operator.TIMES && value == -1.0f)
+                return rewrote(new UnaryOp(Operator.MINUS, rhs));
+        }
+
+        return binaryOp;
+    }
+
+    // A normal power of two has an empty significand, and its reciprocal is a power of two that a float can represent
+    private static boolean isPowerOfTwo(float value) {
+        return Float.isFinite(value) && Math.abs(value) >= Float.MIN_NORMAL
+                && (Float.floatToRawIntBits(value) & 0x007F_FFFF) == 0;
+    }
+}
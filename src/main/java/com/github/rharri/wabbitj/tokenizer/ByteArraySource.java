@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+final class ByteArraySource implements Source {
+    private final byte[] bytes;
+
+    ByteArraySource(byte[] bytes) {
+        Objects.requireNonNull(bytes);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public long length() {
+        return bytes.length;
+    }
+
+    @Override
+    public byte byteAt(long offset) {
+        return bytes[Math.toIntExact(offset)];
+    }
+
+    @Override
+    public String decode(long offset, int length) {
+        return new String(bytes, Math.toIntExact(offset), length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ReadableByteChannel newChannel(long from, long to) {
+        Objects.checkFromToIndex(from, to, bytes.length);
+        return Channels.newChannel(new ByteArrayInputStream(bytes, (int) from, (int) (to - from)));
+    }
+
+    @Override
+    public String toString() {
+        return "ByteArraySource{" +
+                "length=" + bytes.length +
+                '}';
+    }
+}
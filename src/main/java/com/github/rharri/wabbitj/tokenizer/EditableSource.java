@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+// A source that can be edited in place, kept as a gap buffer: the bytes before the gap sit at the front of the array
+// and the bytes after it at the back. An edit first moves the gap to where it happens, so a run of nearby edits only
+// copies the bytes between them rather than the whole program.
+public final class EditableSource implements Source {
+    private byte[] bytes;
+    private int gapStart;
+    private int gapEnd;
+
+    private EditableSource(byte[] programBytes) {
+        this.bytes = Arrays.copyOf(programBytes, programBytes.length + 64);
+        this.gapStart = programBytes.length;
+        this.gapEnd = bytes.length;
+    }
+
+    public static EditableSource of(String programText) {
+        Objects.requireNonNull(programText);
+        return new EditableSource(programText.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Replace the removedLength bytes at offset with the given bytes
+    public void replace(long offset, int removedLength, byte[] inserted) {
+        Objects.requireNonNull(inserted);
+        Objects.checkFromIndexSize(offset, removedLength, length());
+
+        moveGap((int) offset);
+        gapEnd += removedLength;
+
+        if (gapEnd - gapStart < inserted.length)
+            grow(inserted.length);
+
+        System.arraycopy(inserted, 0, bytes, gapStart, inserted.length);
+        gapStart += inserted.length;
+    }
+
+    private void moveGap(int offset) {
+        if (offset < gapStart) {
+            int count = gapStart - offset;
+            System.arraycopy(bytes, offset, bytes, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (offset > gapStart) {
+            int count = offset - gapStart;
+            System.arraycopy(bytes, gapEnd, bytes, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void grow(int needed) {
+        int tail = bytes.length - gapEnd;
+        int capacity = Math.max(bytes.length + (bytes.length >> 1), gapStart + tail + needed + 64);
+
+        var grown = new byte[capacity];
+        System.arraycopy(bytes, 0, grown, 0, gapStart);
+        System.arraycopy(bytes, gapEnd, grown, capacity - tail, tail);
+
+        bytes = grown;
+        gapEnd = capacity - tail;
+    }
+
+    @Override
+    public long length() {
+        return (long) bytes.length - gapEnd + gapStart;
+    }
+
+    @Override
+    public byte byteAt(long offset) {
+        Objects.checkIndex(offset, length());
+        return offset < gapStart ? bytes[(int) offset] : bytes[(int) offset + gapEnd - gapStart];
+    }
+
+    @Override
+    public String decode(long offset, int length) {
+        Objects.checkFromIndexSize(offset, length, length());
+
+        int from = (int) offset;
+        if (from + length <= gapStart)
+            return new String(bytes, from, length, StandardCharsets.UTF_8);
+        if (from >= gapStart)
+            return new String(bytes, from + gapEnd - gapStart, length, StandardCharsets.UTF_8);
+
+        var copy = new byte[length];
+        copyTo(from, copy, 0, length);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    private void copyTo(int from, byte[] dst, int at, int length) {
+        int front = Math.max(Math.min(gapStart - from, length), 0);
+        System.arraycopy(bytes, from, dst, at, front);
+        System.arraycopy(bytes, from + front + gapEnd - gapStart, dst, at + front, length - front);
+    }
+
+    // The channel reads the source as it is when each read happens, so it should not outlive the next edit
+    @Override
+    public ReadableByteChannel newChannel(long from, long to) {
+        Objects.checkFromToIndex(from, to, length());
+        return new GapChannel((int) from, (int) to);
+    }
+
+    @Override
+    public String toString() {
+        return "EditableSource{" +
+                "length=" + length() +
+                '}';
+    }
+
+    private final class GapChannel implements ReadableByteChannel {
+        private int position;
+        private final int end;
+        private boolean open = true;
+
+        private GapChannel(int from, int to) {
+            this.position = from;
+            this.end = to;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws ClosedChannelException {
+            if (!open)
+                throw new ClosedChannelException();
+            if (position == end)
+                return -1;
+
+            int count = Math.min(dst.remaining(), end - position);
+            if (dst.hasArray()) {
+                copyTo(position, dst.array(), dst.arrayOffset() + dst.position(), count);
+                dst.position(dst.position() + count);
+            } else {
+                var copy = new byte[count];
+                copyTo(position, copy, 0, count);
+                dst.put(copy);
+            }
+
+            position += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
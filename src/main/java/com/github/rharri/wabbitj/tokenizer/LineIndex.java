@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Objects;
+
+// The byte offset at which each line of a source starts, recorded once while tokenizing. Line numbers for any offset
+// are then found with a binary search instead of rescanning the source.
+//
+// The starts are kept in a gap buffer so an edited source can be reindexed where it changed. Starts after the gap are
+// stored relative to tailShift, which lets an edit move every later line by adding to a single field.
+public final class LineIndex {
+    private long[] lineStarts;
+    private int gapStart;
+    private int gapEnd;
+    private long tailShift;
+
+    public LineIndex() {
+        this.lineStarts = new long[64];
+        this.lineStarts[0] = 0;
+        this.gapStart = 1;
+        this.gapEnd = lineStarts.length;
+        this.tailShift = 0;
+    }
+
+    // Index a source that was not tokenized with a line index, e.g. one parsed in chunks
+    public static LineIndex of(Source source) {
+        Objects.requireNonNull(source);
+
+        var lines = new LineIndex();
+        var buffer = ByteBuffer.allocate(64 * 1024);
+        long offset = 0;
+
+        try (ReadableByteChannel channel = source.newChannel()) {
+            while (channel.read(buffer.clear()) > 0) {
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < buffer.position(); i++) {
+                    if (bytes[i] == '\n')
+                        lines.add(offset + i + 1);
+                }
+                offset += buffer.position();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines;
+    }
+
+    // Record that a new line starts at the given offset, i.e. just after a newline
+    void add(long offset) {
+        moveGap(lineCount());
+        assert offset > lineStarts[gapStart - 1];
+        insert(offset);
+    }
+
+    // Reindex after the removedLength bytes at offset were replaced with the given bytes
+    void replace(long offset, int removedLength, byte[] inserted) {
+        int first = upperBound(offset);
+        int last = upperBound(offset + removedLength);
+
+        moveGap(last);
+        tailShift += inserted.length - removedLength;
+        gapStart = first;
+
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i] == '\n')
+                insert(offset + i + 1);
+        }
+    }
+
+    private void insert(long offset) {
+        if (gapStart == gapEnd) {
+            int tail = lineStarts.length - gapEnd;
+            int capacity = lineStarts.length * 2;
+            var grown = Arrays.copyOf(lineStarts, capacity);
+            System.arraycopy(lineStarts, gapEnd, grown, capacity - tail, tail);
+            lineStarts = grown;
+            gapEnd = capacity - tail;
+        }
+
+        lineStarts[gapStart] = offset;
+        gapStart += 1;
+    }
+
+    private void moveGap(int index) {
+        while (gapStart > index) {
+            gapStart -= 1;
+            gapEnd -= 1;
+            lineStarts[gapEnd] = lineStarts[gapStart] - tailShift;
+        }
+        while (gapStart < index) {
+            lineStarts[gapStart] = lineStarts[gapEnd] + tailShift;
+            gapStart += 1;
+            gapEnd += 1;
+        }
+    }
+
+    private long get(int index) {
+        return index < gapStart ? lineStarts[index] : lineStarts[index + gapEnd - gapStart] + tailShift;
+    }
+
+    // How many lines start at or before the given offset
+    private int upperBound(long offset) {
+        int low = 0;
+        int high = lineCount();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (get(middle) <= offset)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    public int lineCount() {
+        return lineStarts.length - (gapEnd - gapStart);
+    }
+
+    // The 1-based line containing the given offset
+    public int lineOf(long offset) {
+        if (offset < 0)
+            throw new IllegalArgumentException("offset must be >= 0.");
+
+        return upperBound(offset);
+    }
+
+    // The offset of the first byte of the given 1-based line
+    public long lineStart(int line) {
+        int count = lineCount();
+        if (line <= 0 || line > count)
+            throw new IllegalArgumentException("line must be between 1 and " + count + ".");
+
+        return get(line - 1);
+    }
+
+    // The 1-based column of the given offset, counting characters rather than bytes
+    public int columnOf(Source source, long offset) {
+        long start = lineStart(lineOf(offset));
+        int column = 1;
+
+        for (long at = start; at < offset; at++) {
+            if ((source.byteAt(at) & 0xC0) != 0x80)
+                column += 1;
+        }
+        return column;
+    }
+
+    @Override
+    public String toString() {
+        return "LineIndex{" +
+                "lineCount=" + lineCount() +
+                '}';
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.util.List;
+import java.util.Objects;
+
+final class ListTokenCursor implements TokenCursor {
+    private final List<Token> tokens;
+    private int index;
+
+    ListTokenCursor(List<Token> tokens) {
+        Objects.requireNonNull(tokens);
+
+        this.tokens = List.copyOf(tokens);
+        this.index = -1;
+    }
+
+    private Token current() {
+        return tokens.get(index);
+    }
+
+    @Override
+    public TokenType advance() {
+        index += 1;
+        return current().type();
+    }
+
+    @Override
+    public TokenType type() {
+        return current().type();
+    }
+
+    @Override
+    public String text() {
+        return current().representation();
+    }
+
+    @Override
+    public int line() {
+        return current().position().line();
+    }
+
+    @Override
+    public int column() {
+        return current().position().column();
+    }
+
+    @Override
+    public String toString() {
+        return "ListTokenCursor{" +
+                "index=" + index +
+                '}';
+    }
+}
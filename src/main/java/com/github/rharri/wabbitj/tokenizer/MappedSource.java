@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+// A source file mapped into memory. A single mapping is limited to 2 GB, so larger files are mapped as a sequence of
+// fixed-size segments and addressed with long offsets. The tokenizer's window is filled straight from the mapping,
+// without a read system call per window or any character decoding.
+public final class MappedSource implements Source {
+    static final int SEGMENT_SHIFT = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long length;
+
+    private MappedSource(MappedByteBuffer[] segments, long length) {
+        this.segments = segments;
+        this.length = length;
+    }
+
+    public static MappedSource map(Path path) throws IOException {
+        Objects.requireNonNull(path);
+
+        // The mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            int count = (int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            var segments = new MappedByteBuffer[count];
+
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+            }
+            return new MappedSource(segments, length);
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public byte byteAt(long offset) {
+        Objects.checkIndex(offset, length);
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].get((int) (offset & SEGMENT_MASK));
+    }
+
+    // Decode a range of the source, which may cross a segment boundary, as UTF-8
+    @Override
+    public String decode(long offset, int count) {
+        Objects.checkFromIndexSize(offset, count, length);
+
+        var bytes = new byte[count];
+        int copied = 0;
+
+        while (copied < count) {
+            long at = offset + copied;
+            MappedByteBuffer segment = segments[(int) (at >>> SEGMENT_SHIFT)];
+            int from = (int) (at & SEGMENT_MASK);
+            int chunk = Math.min(count - copied, segment.limit() - from);
+            segment.get(from, bytes, copied, chunk);
+            copied += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ReadableByteChannel newChannel(long from, long to) {
+        Objects.checkFromToIndex(from, to, length);
+        return new MappedChannel(from, to);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedSource{" +
+                "length=" + length +
+                ", segments=" + segments.length +
+                '}';
+    }
+
+    // Reading copies straight out of the mapping into the caller's buffer
+    private final class MappedChannel implements ReadableByteChannel {
+        private final long end;
+        private long position;
+        private boolean open;
+
+        private MappedChannel(long from, long to) {
+            this.position = from;
+            this.end = to;
+            this.open = true;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open)
+                throw new ClosedChannelException();
+
+            if (position == end)
+                return -1;
+
+            int read = 0;
+
+            while (dst.hasRemaining() && position < end) {
+                MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+                int from = (int) (position & SEGMENT_MASK);
+                int chunk = (int) Math.min(Math.min(dst.remaining(), segment.limit() - from), end - position);
+                dst.put(dst.position(), segment, from, chunk);
+                dst.position(dst.position() + chunk);
+                position += chunk;
+                read += chunk;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        // The mapping itself is released when the source becomes unreachable
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
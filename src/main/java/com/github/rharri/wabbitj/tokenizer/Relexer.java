@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+// Brings a token buffer up to date after an edit by relexing only the tokens the edit can have changed.
+//
+// Relexing starts at the last token that begins before the edit, since typing onto the end of a token can extend it
+// (12 becoming 123, / becoming /*). The tokenizer carries no state from one token to the next, so as soon as it starts
+// a token past the edit at the same place an old token started, shifted by the change in length, every token from
+// there on is unchanged and relexing stops. Opening or closing a comment just makes that point further away. Those
+// later tokens, and the lines, are moved by adjusting an offset at a gap in the buffer, so the cost of an edit depends
+// on the size of the damage and the distance from the previous edit, not on the size of the program.
+public final class Relexer {
+
+    // Tokens [from, from + removed) of the old buffer were replaced with tokens [from, from + inserted)
+    public record Damage(int from, int removed, int inserted) {
+    }
+
+    private Relexer() {
+    }
+
+    // Apply the edit to the buffer's source, which must be an EditableSource, and update the buffer in place
+    public static Damage relex(TokenBuffer tokens, TextEdit edit) {
+        Objects.requireNonNull(tokens);
+        Objects.requireNonNull(edit);
+
+        if (!(tokens.source() instanceof EditableSource source))
+            throw new IllegalArgumentException("tokens must be over an EditableSource.");
+
+        long offset = edit.offset();
+        int removedLength = edit.removedLength();
+        Objects.checkFromIndexSize(offset, removedLength, source.length());
+
+        byte[] inserted = edit.insertedText().getBytes(StandardCharsets.UTF_8);
+        long shift = (long) inserted.length - removedLength;
+        long newEditEnd = offset + inserted.length;
+
+        source.replace(offset, removedLength, inserted);
+        tokens.lines().replace(offset, removedLength, inserted);
+
+        // Tokens starting before the edit are where they were
+        int from = Math.max(tokensBefore(tokens, offset) - 1, 0);
+        long restart = from > 0 || tokens.start(0) < offset ? tokens.start(from) : 0;
+        // and so is their line and column, which the tokenizer carries on from
+        int line = restart > 0 ? tokens.line(from) : 1;
+        int column = restart > 0 ? tokens.column(from) : 1;
+        var tokenizer = new Tokenizer(source, restart, source.length(), line, column);
+        var scratch = new TokenBuffer.Scratch();
+
+        // The old tokens are still in the buffer, at their old offsets and columns, while the new ones are found
+        int old = from;
+        int columnShift = 0;
+        while (true) {
+            TokenType type = tokenizer.advance();
+            long start = tokenizer.offset();
+
+            if (start >= newEditEnd) {
+                while (old < tokens.size() && tokens.start(old) + shift < start)
+                    old += 1;
+
+                if (old < tokens.size() && tokens.start(old) + shift == start) {
+                    // The rest of the tokens on this line move along with the first unchanged one
+                    columnShift = tokenizer.column() - tokens.column(old);
+                    break;
+                }
+            }
+
+            scratch.add(type, start, tokenizer.length(), tokenizer.column());
+
+            if (type == TokenType.EOF) {
+                old = tokens.size();
+                break;
+            }
+        }
+
+        tokens.splice(from, old, scratch, shift, columnShift);
+        return new Damage(from, old - from, scratch.size());
+    }
+
+    // How many tokens start before offset
+    private static int tokensBefore(TokenBuffer tokens, long offset) {
+        int low = 0;
+        int high = tokens.size();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.start(middle) < offset)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
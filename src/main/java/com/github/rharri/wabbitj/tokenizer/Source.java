@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// Random access to the UTF-8 bytes of a program, addressed by long offsets so that sources larger than 2 GB can be
+// represented. Tokens that only record where they start and how long they are read their text back from here.
+public interface Source {
+    long length();
+
+    byte byteAt(long offset);
+
+    String decode(long offset, int length);
+
+    // A channel that reads the bytes in [from, to), for the tokenizer
+    ReadableByteChannel newChannel(long from, long to);
+
+    default ReadableByteChannel newChannel() {
+        return newChannel(0, length());
+    }
+
+    static Source of(String programText) {
+        return new ByteArraySource(programText.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.util.Objects;
+
+// Replace removedLength bytes at offset with insertedText. Offsets and lengths are in UTF-8 bytes, like token starts.
+public record TextEdit(long offset, int removedLength, String insertedText) {
+
+    public TextEdit {
+        Objects.requireNonNull(insertedText);
+
+        if (offset < 0)
+            throw new IllegalArgumentException("offset must be >= 0.");
+
+        if (removedLength < 0)
+            throw new IllegalArgumentException("removedLength must be >= 0.");
+    }
+
+    public static TextEdit insert(long offset, String text) {
+        return new TextEdit(offset, 0, text);
+    }
+
+    public static TextEdit delete(long offset, int length) {
+        return new TextEdit(offset, length, "");
+    }
+}
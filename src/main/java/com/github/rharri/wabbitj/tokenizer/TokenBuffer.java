@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.rharri.wabbitj.tokenizer;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// Tokens stored as parallel primitive arrays: a type, a start offset, a length and a column per token, about 17 bytes
+// each instead of a Token, a Position and a String. Text is only materialized from the source when it is asked for and
+// lines are derived from the line index. Columns are recorded by the tokenizer, since finding one from the line index
+// means rescanning the line up to the token.
+public final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Source source;
+    private final LineIndex lines;
+
+    // The arrays share one gap, at the end while tokenizing and wherever the last edit was afterwards. Starts after
+    // the gap are stored relative to tailShift so that an edit can move every later token at once.
+    private byte[] types;
+    private long[] starts;
+    private int[] lengths;
+    private int[] columns;
+    private int gapStart;
+    private int gapEnd;
+    private long tailShift;
+
+    private TokenBuffer(Source source, LineIndex lines, int capacity) {
+        this.source = source;
+        this.lines = lines;
+        this.types = new byte[capacity];
+        this.starts = new long[capacity];
+        this.lengths = new int[capacity];
+        this.columns = new int[capacity];
+        this.gapStart = 0;
+        this.gapEnd = capacity;
+        this.tailShift = 0;
+    }
+
+    public static TokenBuffer tokenize(Source source) {
+        Objects.requireNonNull(source);
+
+        var lines = new LineIndex();
+        var tokenizer = new Tokenizer(source.newChannel(), lines);
+
+        // Roughly one token every four bytes in typical programs; very large sources grow from there
+        int capacity = (int) Math.min(Math.max(source.length() / 4, 16), 1 << 20);
+        var buffer = new TokenBuffer(source, lines, capacity);
+
+        TokenType type;
+        do {
+            type = tokenizer.advance();
+            buffer.add(type, tokenizer.offset(), tokenizer.length(), tokenizer.column());
+        } while (type != TokenType.EOF);
+
+        return buffer;
+    }
+
+    // Insert a token just before the gap
+    private void add(TokenType type, long start, int length, int column) {
+        if (gapStart == gapEnd)
+            grow();
+
+        types[gapStart] = (byte) type.ordinal();
+        starts[gapStart] = start;
+        lengths[gapStart] = length;
+        columns[gapStart] = column;
+        gapStart += 1;
+    }
+
+    private void grow() {
+        int tail = types.length - gapEnd;
+        int capacity = types.length + (types.length >> 1) + 1;
+
+        var grownTypes = Arrays.copyOf(types, capacity);
+        var grownStarts = Arrays.copyOf(starts, capacity);
+        var grownLengths = Arrays.copyOf(lengths, capacity);
+        var grownColumns = Arrays.copyOf(columns, capacity);
+        System.arraycopy(types, gapEnd, grownTypes, capacity - tail, tail);
+        System.arraycopy(starts, gapEnd, grownStarts, capacity - tail, tail);
+        System.arraycopy(lengths, gapEnd, grownLengths, capacity - tail, tail);
+        System.arraycopy(columns, gapEnd, grownColumns, capacity - tail, tail);
+
+        types = grownTypes;
+        starts = grownStarts;
+        lengths = grownLengths;
+        columns = grownColumns;
+        gapEnd = capacity - tail;
+    }
+
+    private void moveGap(int index) {
+        while (gapStart > index) {
+            gapStart -= 1;
+            gapEnd -= 1;
+            types[gapEnd] = types[gapStart];
+            starts[gapEnd] = starts[gapStart] - tailShift;
+            lengths[gapEnd] = lengths[gapStart];
+            columns[gapEnd] = columns[gapStart];
+        }
+        while (gapStart < index) {
+            types[gapStart] = types[gapEnd];
+            starts[gapStart] = starts[gapEnd] + tailShift;
+            lengths[gapStart] = lengths[gapEnd];
+            columns[gapStart] = columns[gapEnd];
+            gapStart += 1;
+            gapEnd += 1;
+        }
+    }
+
+    // Replace the tokens in [from, to) with those in the scratch buffer and move every token after them by shift.
+    // Only the tokens between this edit and the previous one are copied. The tokens after them that share a line with
+    // the end of the edit also move along that line by columnShift; those on later lines keep their columns.
+    void splice(int from, int to, Scratch replacement, long shift, int columnShift) {
+        moveGap(to);
+        tailShift += shift;
+        gapStart = from;
+
+        for (int i = 0; i < replacement.size; i++)
+            add(TYPES[replacement.types[i]], replacement.starts[i], replacement.lengths[i], replacement.columns[i]);
+
+        if (columnShift != 0 && gapStart < size()) {
+            int line = line(gapStart);
+            for (int i = gapStart; i < size() && line(i) == line; i++)
+                columns[physical(i)] += columnShift;
+        }
+    }
+
+    private int physical(int index) {
+        return index < gapStart ? index : index + gapEnd - gapStart;
+    }
+
+    public int size() {
+        return types.length - (gapEnd - gapStart);
+    }
+
+    public Source source() {
+        return source;
+    }
+
+    public LineIndex lines() {
+        return lines;
+    }
+
+    public TokenType type(int index) {
+        Objects.checkIndex(index, size());
+        return TYPES[types[physical(index)]];
+    }
+
+    public long start(int index) {
+        Objects.checkIndex(index, size());
+        return index < gapStart ? starts[index] : starts[physical(index)] + tailShift;
+    }
+
+    public int length(int index) {
+        Objects.checkIndex(index, size());
+        return lengths[physical(index)];
+    }
+
+    public String text(int index) {
+        TokenType type = type(index);
+
+        if (type == TokenType.EOF)
+            return "EOF";
+
+        return source.decode(start(index), length(index));
+    }
+
+    public int line(int index) {
+        return lines.lineOf(start(index));
+    }
+
+    public int column(int index) {
+        Objects.checkIndex(index, size());
+        return columns[physical(index)];
+    }
+
+    public Token token(int index) {
+        return new Token(type(index), text(index), new Position(line(index), column(index)));
+    }
+
+    public TokenCursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBuffer{" +
+                "size=" + size() +
+                '}';
+    }
+
+    // Tokens produced while relexing an edit, collected before they are spliced in
+    static final class Scratch {
+        private byte[] types = new byte[16];
+        private long[] starts = new long[16];
+        private int[] lengths = new int[16];
+        private int[] columns = new int[16];
+        private int size;
+
+        void add(TokenType type, long start, int length, int column) {
+            if (size == types.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+            }
+
+            types[size] = (byte) type.ordinal();
+            starts[size] = start;
+            lengths[size] = length;
+            columns[size] = column;
+            size += 1;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private final class Cursor implements TokenCursor {
+        private int index = -1;
+
+        @Override
+        public TokenType advance() {
+            index += 1;
+            return TokenBuffer.this.type(index);
+        }
+
+        @Override
+        public TokenType type() {
+            return TokenBuffer.this.type(index);
+        }
+
+        @Override
+        public String text() {
+            return TokenBuffer.this.text(index);
+        }
+
+        @Override
+        public int line() {
+            return TokenBuffer.this.line(index);
+        }
+
+        @Override
+        public int column() {
+            return TokenBuffer.this.column(index);
+        }
+    }
+}
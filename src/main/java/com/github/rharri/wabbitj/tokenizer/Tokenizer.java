@@ -22,48 +22,139 @@
 
 package com.github.rharri.wabbitj.tokenizer;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.function.BiFunction;
-import java.util.function.Predicate;
 
-public class Tokenizer {
-    private static final Map<String, TokenType> keywords;
+public class Tokenizer implements TokenCursor {
+    private static final byte[] PRINT = "print".getBytes(StandardCharsets.US_ASCII);
+
+    // Input is read from the channel in windows of this size; the window only grows when a single token
+    // (e.g. a long comment) does not fit
+    static final int WINDOW_SIZE = 8 * 1024;
+
+    // Character classes, indexed by byte value; characters without a class (0) are skipped
+    private static final byte WHITESPACE = 1;
+    private static final byte NEWLINE = 2;
+    private static final byte ALPHA = 3;
+    private static final byte DIGIT = 4;
+    private static final byte DOT = 5;
+    private static final byte SLASH = 6;
+    private static final byte PLUS = 7;
+    private static final byte MINUS = 8;
+    private static final byte TIMES = 9;
+    private static final byte LPAREN = 10;
+    private static final byte RPAREN = 11;
+    private static final byte SEMI = 12;
+    private static final byte NON_ASCII = 13;
+
+    private static final byte[] CHAR_CLASS = new byte[256];
 
     static {
-        keywords = new HashMap<>();
-        keywords.put("print", TokenType.PRINT);
+        for (int ch = 'a'; ch <= 'z'; ch++)
+            CHAR_CLASS[ch] = ALPHA;
+        for (int ch = 'A'; ch <= 'Z'; ch++)
+            CHAR_CLASS[ch] = ALPHA;
+        for (int ch = '0'; ch <= '9'; ch++)
+            CHAR_CLASS[ch] = DIGIT;
+        for (int ch = 0x80; ch <= 0xFF; ch++)
+            CHAR_CLASS[ch] = NON_ASCII;
+
+        CHAR_CLASS[' '] = WHITESPACE;
+        CHAR_CLASS['\t'] = WHITESPACE;
+        CHAR_CLASS['\r'] = WHITESPACE;
+        CHAR_CLASS['\n'] = NEWLINE;
+        CHAR_CLASS['.'] = DOT;
+        CHAR_CLASS['/'] = SLASH;
+        CHAR_CLASS['+'] = PLUS;
+        CHAR_CLASS['-'] = MINUS;
+        CHAR_CLASS['*'] = TIMES;
+        CHAR_CLASS['('] = LPAREN;
+        CHAR_CLASS[')'] = RPAREN;
+        CHAR_CLASS[';'] = SEMI;
     }
 
-    private static final Predicate<Character> isDigit = Character::isDigit;
-    private static final Predicate<Character> isAlpha = Character::isAlphabetic;
-    private static final Predicate<Character> isDecimalPoint = Tokenizer::isDecimalPoint;
-    private static final Predicate<Character> isFloatingPoint = isDigit.or(isDecimalPoint);
-
-    private static boolean isDecimalPoint(Character ch) {
-        return ch == '.';
-    }
-
-    private final String programText;
-    private final char[] programTextChars;
+    private final ReadableByteChannel channel;
+    private final @Nullable LineIndex lines;
+    private final List<Token> tokens;
+    private byte[] window;
+    private ByteBuffer windowBuffer;
     private int index;
+    private int limit;
+    private int tokenStart;
+    private boolean endOfInput;
     private int lineNumber;
-    private int column;
-    private final List<Token> tokens;
-    private int lastNewLineIndex;
+    private int columnNumber;
+    private long windowOffset;
+    private TokenType type;
+    private int tokenLine;
+    private int tokenColumn;
 
     public Tokenizer(String programText) {
+        this(channelOf(programText));
+    }
+
+    public Tokenizer(ReadableByteChannel channel) {
+        this(channel, null);
+    }
+
+    public Tokenizer(Source source) {
+        this(source.newChannel(), null);
+    }
+
+    // Record where every line of the source starts while tokenizing it, for reporting errors later
+    public Tokenizer(Source source, LineIndex lines) {
+        this(source.newChannel(), Objects.requireNonNull(lines));
+    }
+
+    // Tokenize the bytes in [from, to) of the source as if they started at the given line and column, so that the
+    // positions reported match those of the whole source
+    public Tokenizer(Source source, long from, long to, int line, int column) {
+        this(source.newChannel(from, to), null);
+
+        if (line <= 0)
+            throw new IllegalArgumentException("line must be >= 1.");
+
+        if (column <= 0)
+            throw new IllegalArgumentException("column must be >= 1.");
+
+        this.windowOffset = from;
+        this.lineNumber = line;
+        this.columnNumber = column;
+    }
+
+    // When given a line index, the tokenizer records where every line starts as it goes
+    Tokenizer(ReadableByteChannel channel, @Nullable LineIndex lines) {
+        Objects.requireNonNull(channel);
+
+        this.channel = channel;
+        this.lines = lines;
+        this.tokens = new ArrayList<>();
+        this.window = new byte[WINDOW_SIZE];
+        this.windowBuffer = ByteBuffer.wrap(window);
+        this.index = 0;
+        this.limit = 0;
+        this.tokenStart = 0;
+        this.endOfInput = false;
+        this.lineNumber = 1;
+        this.columnNumber = 1;
+    }
+
+    private static ReadableByteChannel channelOf(String programText) {
         Objects.requireNonNull(programText);
 
         if (programText.isEmpty() || programText.isBlank())
             throw new IllegalArgumentException("programText cannot be empty or blank.");
 
-        this.programText = programText;
-        this.programTextChars = programText.toCharArray();
-        this.index = 0;
-        this.lineNumber = 1;
-        this.column = 1;
-        this.tokens = new ArrayList<>();
-        this.lastNewLineIndex = 0;
+        byte[] bytes = programText.getBytes(StandardCharsets.UTF_8);
+        return Channels.newChannel(new ByteArrayInputStream(bytes));
     }
 
     public static List<Token> tokenize(String programText) {
@@ -72,200 +163,327 @@ public class Tokenizer {
         return tokenizer.getTokens();
     }
 
-    private boolean peek(String token) {
-        assert token != null;
-        assert !token.isEmpty();
-        return slice(index, index + token.length()).equals(token);
+    public List<Token> getTokens() {
+        return Collections.unmodifiableList(tokens);
     }
 
-    private boolean tryNext(Predicate<Character> predicate) {
-        assert predicate != null;
-        return predicate.test(programText.charAt(index));
-    }
+    // Make at least `count` unread bytes available in the window. Bytes before the start of the current token are
+    // discarded to make room; the window is only grown when the current token itself fills it.
+    private boolean fill(int count) {
+        assert count > 0;
+
+        while (limit - index < count && !endOfInput) {
+            if (tokenStart > 0) {
+                System.arraycopy(window, tokenStart, window, 0, limit - tokenStart);
+                windowOffset += tokenStart;
+                index -= tokenStart;
+                limit -= tokenStart;
+                tokenStart = 0;
+            }
 
-    private String slice(int startIndex, int endIndex) {
-        assert startIndex >= 0;
-        assert endIndex >= 0;
+            if (limit == window.length) {
+                window = Arrays.copyOf(window, window.length * 2);
+                windowBuffer = ByteBuffer.wrap(window);
+            }
 
-        if (endIndex > programText.length())
-            endIndex = programText.length() - 1;
+            try {
+                windowBuffer.limit(window.length).position(limit);
+                int read = channel.read(windowBuffer);
 
-        return programText.substring(startIndex, endIndex);
+                if (read < 0)
+                    endOfInput = true;
+                else
+                    limit += read;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return limit - index >= count;
+    }
+
+    private boolean hasNext() {
+        return index < limit || fill(1);
     }
 
-    private FindEndResult findEnd(int start, String endToken) {
-        assert start >= 0;
-        assert !endToken.isEmpty();
+    private int peek(int ahead) {
+        assert ahead >= 0;
+        return index + ahead < limit || fill(ahead + 1) ? window[index + ahead] & 0xFF : -1;
+    }
 
-        int endTokenIndex = programText.indexOf(endToken, start);
+    // The number of bytes in the UTF-8 sequence starting with the given lead byte
+    private static int sequenceLength(int lead) {
+        return lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+    }
 
-        if (endTokenIndex == -1) { // Handle endTokens that do not exist
-            endTokenIndex = programText.length();
-            return new FindEndResult(start, endTokenIndex, slice(start, endTokenIndex));
-        } else {
-            // If the endToken length is greater than 1, add it to the endTokenIndex
-            // to get the index where the token actually ends
+    // Decode the code point at the current index without materializing a String
+    private int codePointAt(int length) {
+        int lead = window[index] & 0xFF;
 
-            // Example:
-            //
-            // 0123456
-            // /* x */
-            //      ^---- indexOf returns 5
-            //
-            // However, to properly capture the token and continue processing, the index needs to be 6
-            //
-            if (endToken.length() > 1)
-                endTokenIndex += endToken.length();
+        if (length == 1)
+            return lead;
 
-            return new FindEndResult(start, endTokenIndex, slice(start, endTokenIndex));
-        }
+        int codePoint = lead & (0xFF >> (length + 1));
+        for (int i = 1; i < length; i++)
+            codePoint = (codePoint << 6) | (window[index + i] & 0x3F);
+        return codePoint;
     }
 
-    private FindEndResult findEnd(int start,
-                                  Predicate<Character> predicate,
-                                  BiFunction<Integer, Predicate<Character>, Integer> finder) {
+    // The number of bytes occupied by the character at the current index if it can be part of a name, or 0 if it
+    // cannot
+    private int nameCharLength() {
+        if (!hasNext())
+            return 0;
 
-        assert start >= 0;
-        assert predicate != null;
-        assert finder != null;
+        int ch = window[index] & 0xFF;
 
-        int endTokenIndex = finder.apply(start, predicate);
-        return new FindEndResult(start, endTokenIndex, slice(start, endTokenIndex));
+        if (CHAR_CLASS[ch] == ALPHA)
+            return 1;
+
+        if (CHAR_CLASS[ch] != NON_ASCII)
+            return 0;
+
+        int length = sequenceLength(ch);
+        return fill(length) && Character.isAlphabetic(codePointAt(length)) ? length : 0;
     }
 
-    private void addToken(TokenType type, int start, String representation) {
-        assert start >= 0;
-        assert !representation.isEmpty();
+    private TokenType scanName() {
+        int length;
+        while ((length = nameCharLength()) > 0) {
+            index += length;
+            columnNumber += 1;
+        }
 
-        if (lastNewLineIndex > 0)
-            column = start - lastNewLineIndex;
-        else
-            column = start + 1;
+        if (Arrays.equals(window, tokenStart, index, PRINT, 0, PRINT.length))
+            return TokenType.PRINT;
 
-        Token token = new Token(type, representation, new Position(lineNumber, column));
-        tokens.add(token);
+        return TokenType.NAME;
     }
 
-    public List<Token> getTokens() {
-        return Collections.unmodifiableList(tokens);
+    // Scan a numeric literal in a single pass: digits, optionally followed by a decimal point and more digits. The
+    // literal is a float if and only if it contains the decimal point; a second decimal point starts a new token.
+    private TokenType scanNumber() {
+        boolean decimalPoint = false;
+
+        while (hasNext()) {
+            byte charClass = CHAR_CLASS[window[index] & 0xFF];
+
+            if (charClass == DOT && !decimalPoint)
+                decimalPoint = true;
+            else if (charClass != DIGIT)
+                break;
+
+            index += 1;
+            columnNumber += 1;
+        }
+
+        return decimalPoint ? TokenType.FLOAT : TokenType.INTEGER;
     }
 
-    private int find(int start, Predicate<Character> predicate) {
-        assert start >= 0;
-        assert predicate != null;
+    // Scan a /* */ comment, which may span lines and contain any UTF-8 text. An unterminated comment runs to the end
+    // of the input.
+    private TokenType scanMultilineComment() {
+        index += 2;
+        columnNumber += 2;
 
-        int endIndex = start;
-        int index = start;
+        while (hasNext()) {
+            int ch = window[index] & 0xFF;
 
-        while (index < programText.length()) {
-            if (predicate.test(programText.charAt(index))) {
-                endIndex += 1;
-                index += 1;
-            } else {
+            if (ch == '*' && peek(1) == '/') {
+                index += 2;
+                columnNumber += 2;
                 break;
             }
+
+            index += 1;
+
+            if (ch == '\n') {
+                newLine();
+            } else if ((ch & 0xC0) != 0x80) {
+                columnNumber += 1;
+            }
         }
-        return endIndex;
+        return TokenType.COMMENT;
     }
 
-    private boolean isDecimalInExpression(int start) {
-        assert start >= 0;
+    // Scan a // comment up to, but not including, the end of the line
+    private TokenType scanLineComment() {
+        while (hasNext()) {
+            int ch = window[index] & 0xFF;
 
-        int decimalIndex = programText.indexOf(".", start);
+            if (ch == '\n')
+                break;
 
-        if (decimalIndex < 0)
-            return false;
+            index += 1;
 
-        int endOfNumberIndex = programText.indexOf(" ", start);
+            if ((ch & 0xC0) != 0x80)
+                columnNumber += 1;
+        }
+        return TokenType.COMMENT;
+    }
 
-        if (endOfNumberIndex < 0)
-            endOfNumberIndex = programText.indexOf(";", start);
+    // Called after consuming a newline
+    private void newLine() {
+        lineNumber += 1;
+        columnNumber = 1;
 
-        return decimalIndex < endOfNumberIndex;
+        if (lines != null)
+            lines.add(windowOffset + index);
     }
 
-    public void tokenize() {
-        while (index < programTextChars.length) {
-            if (peek("/*")) {
-                FindEndResult endToken = findEnd(index, "*/");
-                addToken(TokenType.COMMENT, endToken.startIndex, endToken.found);
-                index = endToken.endIndex;
-                // Handle newlines within multiline comments
-                lineNumber += (int) endToken.found.chars().filter(ch -> ch == '\n').count();
-            } else if (peek("//")) {
-                FindEndResult endToken = findEnd(index, "\n");
-                addToken(TokenType.COMMENT, endToken.startIndex, endToken.found);
-                index = endToken.endIndex;
-            } else if (tryNext(isAlpha)) {
-                FindEndResult nameOrKeyword = findEnd(index, isAlpha, this::find);
-                TokenType type = keywords.getOrDefault(nameOrKeyword.found, TokenType.NAME);
-                addToken(type, nameOrKeyword.startIndex, nameOrKeyword.found);
-                index = nameOrKeyword.endIndex;
-            } else if (tryNext(isDigit) || peek(".")) {
-                boolean decimalInExpression = isDecimalInExpression(index);
-                if (!decimalInExpression) {
-                    FindEndResult integer = findEnd(index, isDigit, this::find);
-                    addToken(TokenType.INTEGER, integer.startIndex, integer.found);
-                    index = integer.endIndex;
-                } else {
-                    FindEndResult floatingPoint = findEnd(index, isFloatingPoint, this::find);
-                    addToken(TokenType.FLOAT, floatingPoint.startIndex, floatingPoint.found);
-                    index = floatingPoint.endIndex;
+    private TokenType punctuation(TokenType type) {
+        index += 1;
+        columnNumber += 1;
+        return type;
+    }
+
+    // Advance to the next token and return its type. The token's text and position can then be read from the
+    // cursor until the next call to advance().
+    @Override
+    public TokenType advance() {
+        type = scan();
+        return type;
+    }
+
+    private TokenType scan() {
+        while (hasNext()) {
+            tokenStart = index;
+            tokenLine = lineNumber;
+            tokenColumn = columnNumber;
+
+            int ch = window[index] & 0xFF;
+
+            switch (CHAR_CLASS[ch]) {
+                case WHITESPACE -> {
+                    index += 1;
+                    columnNumber += 1;
+                }
+                case NEWLINE -> {
+                    index += 1;
+                    newLine();
+                }
+                case ALPHA -> {
+                    return scanName();
+                }
+                case DIGIT -> {
+                    return scanNumber();
+                }
+                case DOT -> {
+                    // A decimal point only starts a number when a digit follows, as in .15
+                    int next = peek(1);
+                    if (next >= 0 && CHAR_CLASS[next] == DIGIT)
+                        return scanNumber();
+                    index += 1;
+                    columnNumber += 1;
+                }
+                case SLASH -> {
+                    int next = peek(1);
+                    if (next == '*')
+                        return scanMultilineComment();
+                    if (next == '/')
+                        return scanLineComment();
+                    return punctuation(TokenType.DIVIDE);
+                }
+                case PLUS -> {
+                    return punctuation(TokenType.PLUS);
+                }
+                case MINUS -> {
+                    return punctuation(TokenType.MINUS);
+                }
+                case TIMES -> {
+                    return punctuation(TokenType.TIMES);
+                }
+                case LPAREN -> {
+                    return punctuation(TokenType.LPAREN);
+                }
+                case RPAREN -> {
+                    return punctuation(TokenType.RPAREN);
+                }
+                case SEMI -> {
+                    return punctuation(TokenType.SEMI);
+                }
+                case NON_ASCII -> {
+                    if (nameCharLength() > 0)
+                        return scanName();
+                    // Skip the whole character
+                    index += Math.min(sequenceLength(ch), limit - index);
+                    columnNumber += 1;
+                }
+                default -> {
+                    // Unknown characters
+                    index += 1;
+                    columnNumber += 1;
                 }
-            } else if (peek("+")) {
-                addToken(TokenType.PLUS, index, "+");
-                index += 1;
-            } else if (peek("-")) {
-                addToken(TokenType.MINUS, index, "-");
-                index += 1;
-            } else if (peek("*")) {
-                addToken(TokenType.TIMES, index, "*");
-                index += 1;
-            } else if (peek("/")) {
-                addToken(TokenType.DIVIDE, index, "/");
-                index += 1;
-            } else if (peek("(")) {
-                addToken(TokenType.LPAREN, index, "(");
-                index += 1;
-            } else if (peek(")")) {
-                addToken(TokenType.RPAREN, index, ")");
-                index += 1;
-            } else if (peek(";")) {
-                addToken(TokenType.SEMI, index, ";");
-                index += 1;
-            } else if (peek("\n")) {
-                lineNumber += 1;
-                lastNewLineIndex = index;
-                index += 1;
-            } else {
-                index += 1;
             }
         }
-        addToken(TokenType.EOF, programText.length(), "EOF");
+
+        tokenStart = index;
+        tokenLine = lineNumber;
+        tokenColumn = columnNumber;
+        return TokenType.EOF;
     }
 
     @Override
-    public String toString() {
-        return "Tokenizer{" +
-                "index=" + index +
-                ", lineNumber=" + lineNumber +
-                ", column=" + column +
-                '}';
+    public TokenType type() {
+        return type;
     }
 
-    private record FindEndResult(int startIndex, int endIndex, String found) {
+    // The text of the current token. Keywords and punctuation share constant strings; everything else is decoded
+    // from the UTF-8 input on request.
+    @Override
+    public String text() {
+        return switch (type) {
+            case PRINT -> "print";
+            case PLUS -> "+";
+            case MINUS -> "-";
+            case TIMES -> "*";
+            case DIVIDE -> "/";
+            case LPAREN -> "(";
+            case RPAREN -> ")";
+            case SEMI -> ";";
+            case EOF -> "EOF";
+            default -> new String(window, tokenStart, index - tokenStart, StandardCharsets.UTF_8);
+        };
+    }
 
-        public FindEndResult {
-            if (startIndex < 0)
-                throw new IllegalArgumentException("startIndex must be >= 0.");
+    @Override
+    public int line() {
+        return tokenLine;
+    }
 
-            if (endIndex < 0)
-                throw new IllegalArgumentException("endIndex must be >= 0.");
+    @Override
+    public int column() {
+        return tokenColumn;
+    }
 
-            Objects.requireNonNull(found);
+    // The byte offset of the current token from the start of the input
+    public long offset() {
+        return windowOffset + tokenStart;
+    }
 
-            if (found.isEmpty() || found.isBlank())
-                throw new IllegalArgumentException("found cannot be empty or blank.");
-        }
+    // The length of the current token in bytes
+    public int length() {
+        return index - tokenStart;
+    }
+
+    public Token nextToken() {
+        advance();
+        return new Token(type, text(), new Position(tokenLine, tokenColumn));
+    }
+
+    public void tokenize() {
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type() != TokenType.EOF);
+    }
+
+    @Override
+    public String toString() {
+        return "Tokenizer{" +
+                "index=" + index +
+                ", lineNumber=" + lineNumber +
+                ", columnNumber=" + columnNumber +
+                '}';
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.vm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+// A compiled program in a file, so that programs can be shipped without their source. The file is mapped into memory
+// and the machine reads instructions and constants straight out of the mapping, so nothing is decoded or copied before
+// the program starts, however large it is. The layout, in little-endian order since that is the order of the machines
+// it runs on, is:
+//
+//   magic          'W' 'B' 'C' 0
+//   major, minor   u16 each; a reader rejects another major version and ignores what a later minor version adds
+//   max stack      u32
+//   section count  u32
+//   sections       u32 tag, u32 offset and u32 length in bytes of each section, which starts at a multiple of 4
+//
+// CNST holds the constant pool and CODE the instructions, each as 32-bit ints laid out as in Bytecode. The optional
+// LINE section is the line table, as pairs of a code index and a source line. Sections with other tags are skipped.
+// Only the header and the section bounds are checked when a file is mapped; the machine stops with an
+// IllegalStateException if the instructions refer outside of the file.
+public final class Artifact {
+
+    public static final String EXTENSION = ".wbc";
+
+    static final int MAJOR_VERSION = 1;
+    static final int MINOR_VERSION = 0;
+
+    private static final int MAGIC = 'W' | 'B' << 8 | 'C' << 16;
+    private static final int CONSTANTS = tag("CNST");
+    private static final int CODE = tag("CODE");
+    private static final int LINES = tag("LINE");
+    private static final int HEADER_LENGTH = 16;
+    private static final int SECTION_LENGTH = 12;
+
+    private final IntBuffer code;
+    private final IntBuffer constants;
+    private final IntBuffer lines;
+    private final int maxStack;
+
+    private Artifact(IntBuffer code, IntBuffer constants, IntBuffer lines, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.lines = lines;
+        this.maxStack = maxStack;
+    }
+
+    // Without the line table, a division by zero is reported without its line
+    public static byte[] toBytes(Bytecode bytecode, boolean lineTable) {
+        Objects.requireNonNull(bytecode);
+
+        int[][] sections = lineTable
+                ? new int[][] {bytecode.constants(), bytecode.code(), bytecode.lines()}
+                : new int[][] {bytecode.constants(), bytecode.code()};
+        int[] tags = {CONSTANTS, CODE, LINES};
+
+        int offset = HEADER_LENGTH + sections.length * SECTION_LENGTH;
+        int length = offset;
+        for (int[] section : sections)
+            length += section.length * 4;
+
+        ByteBuffer bytes = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC)
+                .putShort((short) MAJOR_VERSION)
+                .putShort((short) MINOR_VERSION)
+                .putInt(bytecode.maxStack())
+                .putInt(sections.length);
+        for (int i = 0; i < sections.length; i++) {
+            bytes.putInt(tags[i]).putInt(offset).putInt(sections[i].length * 4);
+            offset += sections[i].length * 4;
+        }
+        for (int[] section : sections) {
+            bytes.asIntBuffer().put(section);
+            bytes.position(bytes.position() + section.length * 4);
+        }
+        return bytes.array();
+    }
+
+    public static void write(Bytecode bytecode, boolean lineTable, Path path) throws IOException {
+        Objects.requireNonNull(path);
+        Files.write(path, toBytes(bytecode, lineTable));
+    }
+
+    public static Artifact map(Path path) throws IOException {
+        Objects.requireNonNull(path);
+
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IllegalArgumentException(path + " is too large to be an artifact.");
+
+            return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Throws IllegalArgumentException if the buffer does not hold an artifact this version can run
+    public static Artifact of(ByteBuffer buffer) {
+        Objects.requireNonNull(buffer);
+
+        ByteBuffer bytes = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.remaining() < HEADER_LENGTH || bytes.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a Wabbit artifact.");
+
+        int major = Short.toUnsignedInt(bytes.getShort(4));
+        if (major != MAJOR_VERSION)
+            throw new IllegalArgumentException("Artifact version " + major + " is not supported; expected version "
+                    + MAJOR_VERSION + ".");
+
+        int maxStack = bytes.getInt(8);
+        int sectionCount = bytes.getInt(12);
+        if (sectionCount < 0 || sectionCount > (bytes.remaining() - HEADER_LENGTH) / SECTION_LENGTH)
+            throw corrupt();
+
+        IntBuffer code = null;
+        IntBuffer constants = null;
+        IntBuffer lines = IntBuffer.allocate(0);
+        for (int i = 0; i < sectionCount; i++) {
+            int at = HEADER_LENGTH + i * SECTION_LENGTH;
+            int tag = bytes.getInt(at);
+            int offset = bytes.getInt(at + 4);
+            int length = bytes.getInt(at + 8);
+
+            if (offset < 0 || length < 0 || offset % 4 != 0 || length % 4 != 0 || offset > bytes.remaining() - length)
+                throw corrupt();
+
+            IntBuffer section = bytes.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN)
+                    .asIntBuffer();
+            if (tag == CODE)
+                code = section;
+            else if (tag == CONSTANTS)
+                constants = section;
+            else if (tag == LINES && length % 8 == 0)
+                lines = section;
+        }
+
+        // Every value on the stack was pushed by an instruction
+        if (code == null || constants == null || maxStack < 0 || maxStack > code.limit())
+            throw corrupt();
+
+        return new Artifact(code, constants, lines, maxStack);
+    }
+
+    private static IllegalArgumentException corrupt() {
+        return new IllegalArgumentException("The artifact is damaged.");
+    }
+
+    private static int tag(String name) {
+        return name.charAt(0) | name.charAt(1) << 8 | name.charAt(2) << 16 | name.charAt(3) << 24;
+    }
+
+    // Views of the mapping, read with absolute indexes only
+    IntBuffer code() {
+        return code;
+    }
+
+    IntBuffer constants() {
+        return constants;
+    }
+
+    public int codeLength() {
+        return code.limit();
+    }
+
+    public int constantCount() {
+        return constants.limit();
+    }
+
+    public int maxStack() {
+        return maxStack;
+    }
+
+    public boolean hasLineTable() {
+        return lines.limit() > 0;
+    }
+
+    // The source line of the instruction at a code index, or 0 if there is no line table
+    public int lineAt(int pc) {
+        return Bytecode.lineAt(lines, pc);
+    }
+
+    @Override
+    public String toString() {
+        return "Artifact{" +
+                "codeLength=" + code.limit() +
+                ", constantCount=" + constants.limit() +
+                ", maxStack=" + maxStack +
+                ", lineCount=" + lines.limit() / 2 +
+                '}';
+    }
+}
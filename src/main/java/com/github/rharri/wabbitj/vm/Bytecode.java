@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.vm;
+
+import java.nio.IntBuffer;
+import java.util.Objects;
+
+// A compiled program: a flat array of opcodes and their operands, a pool of int and float constants (floats stored as
+// their raw bits), and the deepest the operand stack gets, so the machine can size it once.
+public final class Bytecode {
+    private final int[] code;
+    private final int[] constants;
+    private final int maxStack;
+    // Pairs of the code index where a source line starts and the line, in order of index
+    private final int[] lines;
+
+    public Bytecode(int[] code, int[] constants, int maxStack) {
+        this(code, constants, maxStack, new int[0]);
+    }
+
+    public Bytecode(int[] code, int[] constants, int maxStack, int[] lines) {
+        Objects.requireNonNull(code);
+        Objects.requireNonNull(constants);
+        Objects.requireNonNull(lines);
+
+        if (maxStack < 0)
+            throw new IllegalArgumentException("maxStack must be >= 0.");
+
+        if (lines.length % 2 != 0)
+            throw new IllegalArgumentException("lines must hold pairs of a code index and a line.");
+
+        this.code = code.clone();
+        this.constants = constants.clone();
+        this.maxStack = maxStack;
+        this.lines = lines.clone();
+    }
+
+    // Shared, not copied, with the machine; callers must not modify them
+    int[] code() {
+        return code;
+    }
+
+    int[] constants() {
+        return constants;
+    }
+
+    int[] lines() {
+        return lines;
+    }
+
+    public int codeLength() {
+        return code.length;
+    }
+
+    public int constantCount() {
+        return constants.length;
+    }
+
+    public int maxStack() {
+        return maxStack;
+    }
+
+    // The source line of the instruction at a code index, or 0 if there is no line table
+    public int lineAt(int pc) {
+        return lineAt(IntBuffer.wrap(lines), pc);
+    }
+
+    // Shared with the mapped artifact, whose line table has the same layout
+    static int lineAt(IntBuffer lines, int pc) {
+        // The last entry that starts at or before pc
+        int low = 0;
+        int high = lines.limit() / 2 - 1;
+        int line = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (lines.get(middle * 2) <= pc) {
+                line = lines.get(middle * 2 + 1);
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return line;
+    }
+
+    // One instruction per line, with constants resolved
+    public String disassemble() {
+        var listing = new StringBuilder();
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc];
+            listing.append(String.format("%04d %s", pc, Opcode.name(opcode)));
+
+            if (opcode == Opcode.ICONST)
+                listing.append(' ').append(constants[code[pc + 1]]);
+            else if (opcode == Opcode.FCONST)
+                listing.append(' ').append(Float.intBitsToFloat(constants[code[pc + 1]]));
+
+            listing.append('\n');
+            pc += 1 + Opcode.operandCount(opcode);
+        }
+        return listing.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Bytecode{" +
+                "codeLength=" + code.length +
+                ", constantCount=" + constants.length +
+                ", maxStack=" + maxStack +
+                ", lineCount=" + lines.length / 2 +
+                '}';
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.vm;
+
+import com.github.rharri.wabbitj.NodeVisitor;
+import com.github.rharri.wabbitj.TypeChecker;
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.interpreter.WabbitType;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// Compiles a type-checked tree into bytecode in a single pass. Expressions become postfix code for the operand stack;
+// the type of every node is looked up once, here, so the machine never inspects a value's type.
+public final class BytecodeCompiler implements NodeVisitor {
+
+    private final TypeChecker typeChecker;
+    private int[] code = new int[64];
+    private int length = 0;
+    private int[] constants = new int[16];
+    private int constantCount = 0;
+    // Pool indexes keyed by type in the high bits and the value's bits in the low bits
+    private final Map<Long, Integer> constantIndexes = new HashMap<>();
+    private int depth = 0;
+    private int maxDepth = 0;
+    private int[] lines = new int[16];
+    private int lineLength = 0;
+
+    private BytecodeCompiler(TypeChecker typeChecker) {
+        this.typeChecker = typeChecker;
+    }
+
+    // The tree must already have been accepted by the type checker, without errors
+    public static Bytecode compile(AbstractSyntaxTree ast, TypeChecker typeChecker) {
+        Objects.requireNonNull(ast);
+        Objects.requireNonNull(typeChecker);
+
+        var compiler = new BytecodeCompiler(typeChecker);
+        ast.accept(compiler);
+        compiler.emit(Opcode.HALT);
+
+        return new Bytecode(Arrays.copyOf(compiler.code, compiler.length),
+                Arrays.copyOf(compiler.constants, compiler.constantCount),
+                compiler.maxDepth,
+                Arrays.copyOf(compiler.lines, compiler.lineLength));
+    }
+
+    @Override
+    public void visitProgram(Program program) {
+        Objects.requireNonNull(program);
+        program.statements().accept(this);
+    }
+
+    @Override
+    public void visitStatements(Statements statements) {
+        Objects.requireNonNull(statements);
+        for (Statement statement : statements.statements())
+            statement.accept(this);
+    }
+
+    @Override
+    public void visitPrint(Print print) {
+        Objects.requireNonNull(print);
+        expression(print.expression());
+        emit(isInt(print.expression()) ? Opcode.PRINT_I : Opcode.PRINT_F);
+        pop();
+    }
+
+    @Override
+    public void visitIntLiteral(IntLiteral intLiteral) {
+        Objects.requireNonNull(intLiteral);
+        expression(intLiteral);
+    }
+
+    @Override
+    public void visitFloatLiteral(FloatLiteral floatLiteral) {
+        Objects.requireNonNull(floatLiteral);
+        expression(floatLiteral);
+    }
+
+    @Override
+    public void visitBinaryOp(BinaryOp binaryOp) {
+        Objects.requireNonNull(binaryOp);
+        expression(binaryOp);
+    }
+
+    @Override
+    public void visitUnaryOp(UnaryOp unaryOp) {
+        Objects.requireNonNull(unaryOp);
+        expression(unaryOp);
+    }
+
+    @Override
+    public void visitGrouping(Grouping grouping) {
+        Objects.requireNonNull(grouping);
+        expression(grouping);
+    }
+
+    // Emits the code of an expression in post-order. The nodes still to compile, and the operators waiting for the
+    // code of their operands, are kept on a stack in the heap rather than by recursion, since a long chain of
+    // operators is as deep as it is long.
+    private void expression(Expression expression) {
+        Deque<Object> pending = new ArrayDeque<>();
+
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Operation operation) {
+                operator(operation.node());
+            } else if (next instanceof BinaryOp binaryOp) {
+                pending.push(new Operation(binaryOp));
+                pending.push(binaryOp.rhs());
+                pending.push(binaryOp.lhs());
+            } else if (next instanceof UnaryOp unaryOp) {
+                pending.push(new Operation(unaryOp));
+                pending.push(unaryOp.operand());
+            } else if (next instanceof Grouping grouping) {
+                pending.push(grouping.expression());
+            } else if (next instanceof IntLiteral intLiteral) {
+                line(intLiteral.line());
+                emit(Opcode.ICONST, constant(WabbitType.INT, intLiteral.value()));
+                push();
+            } else if (next instanceof FloatLiteral floatLiteral) {
+                line(floatLiteral.line());
+                emit(Opcode.FCONST, constant(WabbitType.FLOAT, Float.floatToRawIntBits(floatLiteral.value())));
+                push();
+            } else {
+                throw new IllegalArgumentException("Unsupported expression " + next + ".");
+            }
+        }
+    }
+
+    // The code of the operands is already emitted
+    private void operator(Expression node) {
+        boolean isInt = isInt(node);
+
+        if (node instanceof BinaryOp binaryOp) {
+            // A division by zero is reported on the line of its operator
+            line(binaryOp.line());
+            emit(switch (binaryOp.operator()) {
+                case PLUS -> isInt ? Opcode.IADD : Opcode.FADD;
+                case MINUS -> isInt ? Opcode.ISUB : Opcode.FSUB;
+                case TIMES -> isInt ? Opcode.IMUL : Opcode.FMUL;
+                case DIVIDE -> isInt ? Opcode.IDIV : Opcode.FDIV;
+            });
+            pop();
+            return;
+        }
+
+        var unaryOp = (UnaryOp) node;
+        emit(switch (unaryOp.operator()) {
+            case MINUS -> isInt ? Opcode.INEG : Opcode.FNEG;
+            case PLUS -> isInt ? Opcode.IABS : Opcode.FABS;
+            default -> throw new IllegalArgumentException("Unsupported unary operator " + unaryOp.operator() + ".");
+        });
+    }
+
+    record Operation(Expression node) {
+    }
+
+    private boolean isInt(Expression expression) {
+        return typeChecker.typeOf(expression) == WabbitType.INT;
+    }
+
+    private int constant(WabbitType type, int bits) {
+        long key = ((long) type.ordinal() << 32) | (bits & 0xFFFF_FFFFL);
+        return constantIndexes.computeIfAbsent(key, unused -> {
+            if (constantCount == constants.length)
+                constants = Arrays.copyOf(constants, constantCount * 2);
+
+            constants[constantCount] = bits;
+            return constantCount++;
+        });
+    }
+
+    private void emit(int opcode) {
+        if (length == code.length)
+            code = Arrays.copyOf(code, length * 2);
+
+        code[length] = opcode;
+        length += 1;
+    }
+
+    private void emit(int opcode, int operand) {
+        emit(opcode);
+        emit(operand);
+    }
+
+    // The instructions emitted from here on come from the line, until another one is given
+    private void line(int line) {
+        if (lineLength > 0 && lines[lineLength - 1] == line)
+            return;
+
+        if (lineLength == lines.length)
+            lines = Arrays.copyOf(lines, lineLength * 2);
+
+        // A line that starts at the same index replaces the previous one, which has no instructions
+        if (lineLength > 0 && lines[lineLength - 2] == length)
+            lineLength -= 2;
+
+        lines[lineLength] = length;
+        lines[lineLength + 1] = line;
+        lineLength += 2;
+    }
+
+    private void push() {
+        depth += 1;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void pop() {
+        depth -= 1;
+    }
+
+    @Override
+    public String toString() {
+        return "BytecodeCompiler{" +
+                "length=" + length +
+                ", constantCount=" + constantCount +
+                '}';
+    }
+}
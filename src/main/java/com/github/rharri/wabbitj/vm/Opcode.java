@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.vm;
+
+// The instruction set of the virtual machine. Opcodes are int constants rather than an enum so the interpreter loop
+// switches directly on the code array. Every instruction is typed; the compiler chooses the type from the checker.
+public final class Opcode {
+    // Push the constant at the pool index that follows
+    public static final int ICONST = 0;
+    public static final int FCONST = 1;
+
+    public static final int IADD = 2;
+    public static final int ISUB = 3;
+    public static final int IMUL = 4;
+    public static final int IDIV = 5;
+    public static final int FADD = 6;
+    public static final int FSUB = 7;
+    public static final int FMUL = 8;
+    public static final int FDIV = 9;
+
+    public static final int INEG = 10;
+    public static final int FNEG = 11;
+    // Unary plus is the absolute value
+    public static final int IABS = 12;
+    public static final int FABS = 13;
+
+    public static final int PRINT_I = 14;
+    public static final int PRINT_F = 15;
+    public static final int HALT = 16;
+
+    private static final String[] NAMES = {
+            "ICONST", "FCONST", "IADD", "ISUB", "IMUL", "IDIV", "FADD", "FSUB", "FMUL", "FDIV",
+            "INEG", "FNEG", "IABS", "FABS", "PRINT_I", "PRINT_F", "HALT"
+    };
+
+    private Opcode() {
+    }
+
+    public static String name(int opcode) {
+        if (opcode < 0 || opcode >= NAMES.length)
+            throw new IllegalArgumentException("Unknown opcode " + opcode + ".");
+
+        return NAMES[opcode];
+    }
+
+    // How many operands follow the opcode in the code array
+    public static int operandCount(int opcode) {
+        return opcode == ICONST || opcode == FCONST ? 1 : 0;
+    }
+}
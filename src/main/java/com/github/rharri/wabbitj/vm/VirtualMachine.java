@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj.vm;
+
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+
+import java.nio.IntBuffer;
+import java.util.Objects;
+
+// Executes bytecode with one switch over the code array. The operand stack is an int[] sized by the compiler; float
+// operands are kept as their raw bits, which is safe because every instruction already knows the type it expects.
+public final class VirtualMachine {
+
+    private final JavaRuntime runtime;
+
+    public VirtualMachine(JavaRuntime runtime) {
+        Objects.requireNonNull(runtime);
+        this.runtime = runtime;
+    }
+
+    public void run(Bytecode bytecode) {
+        Objects.requireNonNull(bytecode);
+
+        final int[] code = bytecode.code();
+        final int[] constants = bytecode.constants();
+        final int[] stack = new int[bytecode.maxStack()];
+        int sp = 0;
+        int pc = 0;
+
+        try {
+            while (true) {
+                switch (code[pc++]) {
+                    case Opcode.ICONST, Opcode.FCONST -> stack[sp++] = constants[code[pc++]];
+                    case Opcode.IADD -> {
+                        sp -= 1;
+                        stack[sp - 1] = JavaRuntime.add(stack[sp - 1], stack[sp]);
+                    }
+                    case Opcode.ISUB -> {
+                        sp -= 1;
+                        stack[sp - 1] = JavaRuntime.subtract(stack[sp - 1], stack[sp]);
+                    }
+                    case Opcode.IMUL -> {
+                        sp -= 1;
+                        stack[sp - 1] = JavaRuntime.multiply(stack[sp - 1], stack[sp]);
+                    }
+                    case Opcode.IDIV -> {
+                        sp -= 1;
+                        stack[sp - 1] = JavaRuntime.divide(stack[sp - 1], stack[sp]);
+                    }
+                    case Opcode.FADD -> {
+                        sp -= 1;
+                        stack[sp - 1] = bits(JavaRuntime.add(real(stack[sp - 1]), real(stack[sp])));
+                    }
+                    case Opcode.FSUB -> {
+                        sp -= 1;
+                        stack[sp - 1] = bits(JavaRuntime.subtract(real(stack[sp - 1]), real(stack[sp])));
+                    }
+                    case Opcode.FMUL -> {
+                        sp -= 1;
+                        stack[sp - 1] = bits(JavaRuntime.multiply(real(stack[sp - 1]), real(stack[sp])));
+                    }
+                    case Opcode.FDIV -> {
+                        sp -= 1;
+                        stack[sp - 1] = bits(JavaRuntime.divide(real(stack[sp - 1]), real(stack[sp])));
+                    }
+                    case Opcode.INEG -> stack[sp - 1] = JavaRuntime.minus(stack[sp - 1]);
+                    case Opcode.FNEG -> stack[sp - 1] = bits(JavaRuntime.minus(real(stack[sp - 1])));
+                    case Opcode.IABS -> stack[sp - 1] = JavaRuntime.plus(stack[sp - 1]);
+                    case Opcode.FABS -> stack[sp - 1] = bits(JavaRuntime.plus(real(stack[sp - 1])));
+                    case Opcode.PRINT_I -> runtime.println(stack[--sp]);
+                    case Opcode.PRINT_F -> runtime.println(real(stack[--sp]));
+                    case Opcode.HALT -> {
+                        return;
+                    }
+                    default -> throw new IllegalStateException("Unknown opcode " + code[pc - 1] + " at " + (pc - 1)
+                            + ".");
+                }
+            }
+        } catch (ArithmeticException e) {
+            // pc is just past the division, which has no operands
+            throw located(e, bytecode.lineAt(pc - 1));
+        }
+    }
+
+    // The same loop as for Bytecode, reading the code and constants from the artifact's mapping instead of arrays, so
+    // a program starts without its code being copied or decoded, however large it is
+    public void run(Artifact artifact) {
+        Objects.requireNonNull(artifact);
+
+        final IntBuffer code = artifact.code();
+        final IntBuffer constants = artifact.constants();
+        final int[] stack = new int[artifact.maxStack()];
+        int sp = 0;
+        int pc = 0;
+
+        try {
+            while (true) {
+                switch (code.get(pc++)) {
+                    case Opcode.ICONST, Opcode.FCONST -> stack[sp++] = constants.get(code.get(pc++));
+                    case Opcode.IADD -> {
+                        sp -= 1;
+                        stack[sp - 1] = JavaRuntime.add(stack[sp - 1], stack[sp]);
+                    }
+                    case Opcode.ISUB -> {
+                        sp -= 1;
+                        stack[sp - 1] = JavaRuntime.subtract(stack[sp - 1], stack[sp]);
+                    }
+                    case Opcode.IMUL -> {
+                        sp -= 1;
+                        stack[sp - 1] = JavaRuntime.multiply(stack[sp - 1], stack[sp]);
+                    }
+                    case Opcode.IDIV -> {
+                        sp -= 1;
+                        stack[sp - 1] = JavaRuntime.divide(stack[sp - 1], stack[sp]);
+                    }
+                    case Opcode.FADD -> {
+                        sp -= 1;
+                        stack[sp - 1] = bits(JavaRuntime.add(real(stack[sp - 1]), real(stack[sp])));
+                    }
+                    case Opcode.FSUB -> {
+                        sp -= 1;
+                        stack[sp - 1] = bits(JavaRuntime.subtract(real(stack[sp - 1]), real(stack[sp])));
+                    }
+                    case Opcode.FMUL -> {
+                        sp -= 1;
+                        stack[sp - 1] = bits(JavaRuntime.multiply(real(stack[sp - 1]), real(stack[sp])));
+                    }
+                    case Opcode.FDIV -> {
+                        sp -= 1;
+                        stack[sp - 1] = bits(JavaRuntime.divide(real(stack[sp - 1]), real(stack[sp])));
+                    }
+                    case Opcode.INEG -> stack[sp - 1] = JavaRuntime.minus(stack[sp - 1]);
+                    case Opcode.FNEG -> stack[sp - 1] = bits(JavaRuntime.minus(real(stack[sp - 1])));
+                    case Opcode.IABS -> stack[sp - 1] = JavaRuntime.plus(stack[sp - 1]);
+                    case Opcode.FABS -> stack[sp - 1] = bits(JavaRuntime.plus(real(stack[sp - 1])));
+                    case Opcode.PRINT_I -> runtime.println(stack[--sp]);
+                    case Opcode.PRINT_F -> runtime.println(real(stack[--sp]));
+                    case Opcode.HALT -> {
+                        return;
+                    }
+                    default -> throw new IllegalStateException("Unknown opcode " + code.get(pc - 1) + " at " + (pc - 1)
+                            + ".");
+                }
+            }
+        } catch (ArithmeticException e) {
+            throw located(e, artifact.lineAt(pc - 1));
+        } catch (IndexOutOfBoundsException e) {
+            // The code was not checked when it was mapped
+            throw new IllegalStateException("The artifact refers outside of itself at " + (pc - 1) + ".", e);
+        }
+    }
+
+    // Without a line table, errors are reported as the JVM reports them
+    private static ArithmeticException located(ArithmeticException e, int line) {
+        if (line == 0)
+            return e;
+
+        var located = new ArithmeticException(e.getMessage() + " on line " + line);
+        located.initCause(e);
+        return located;
+    }
+
+    private static float real(int bits) {
+        return Float.intBitsToFloat(bits);
+    }
+
+    private static int bits(float value) {
+        return Float.floatToRawIntBits(value);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualMachine{" +
+                "runtime=" + runtime +
+                '}';
+    }
+}
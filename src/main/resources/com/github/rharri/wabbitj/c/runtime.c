@@ -0,0 +1,862 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/*
+ * The runtime included at the top of every C file generated by wabbitj. Its operations follow JavaRuntime exactly:
+ * int arithmetic wraps around in 32 bits, division truncates toward zero with the smallest int divided by -1 being
+ * itself, a division by zero ends the program, and unary plus is an absolute value. Floats are printed as NumberFormatter
+ * prints them, which is Java's Float.toString: the shortest decimal that rounds back to the same float since JDK 19, or
+ * the digits of JDK 17's FloatingDecimal when WB_SHORTEST_FLOATS is 0.
+ *
+ * Float arithmetic must be done in single precision: compile with a C99 compiler for which FLT_EVAL_METHOD is 0, and
+ * without contracting a multiplication and an addition into one (gcc and clang: -std=c99 or -ffp-contract=off).
+ */
+#include <float.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#if defined(FLT_EVAL_METHOD) && FLT_EVAL_METHOD != 0
+#error "Float expressions must be evaluated in single precision (FLT_EVAL_METHOD 0); on x86 use -msse2 -mfpmath=sse"
+#endif
+
+#ifdef __clang__
+#pragma STDC FP_CONTRACT OFF
+#endif
+
+/* The generators define this for the JDK they run on, so that a native program prints what the interpreter prints */
+#ifndef WB_SHORTEST_FLOATS
+#define WB_SHORTEST_FLOATS 0
+#endif
+
+/* A program only calls some of these, which is not worth a warning. Defining WB_FUNCTION as nothing beforehand
+   exports them instead, for programs that are compiled separately and linked against this file. */
+#ifndef WB_FUNCTION
+#if defined(__GNUC__)
+#define WB_FUNCTION static __attribute__((unused))
+#else
+#define WB_FUNCTION static
+#endif
+#endif
+
+/* Output */
+
+static char wb_out[1 << 16];
+static size_t wb_out_length;
+
+WB_FUNCTION void wb_flush(void) {
+    if (wb_out_length > 0 && fwrite(wb_out, 1, wb_out_length, stdout) != wb_out_length)
+        exit(1);
+    wb_out_length = 0;
+    fflush(stdout);
+}
+
+/* Room for the longest int or float and a newline */
+WB_FUNCTION char *wb_reserve(void) {
+    if (sizeof wb_out - wb_out_length < 32)
+        wb_flush();
+    return wb_out + wb_out_length;
+}
+
+WB_FUNCTION void wb_divide_by_zero(void) {
+    wb_flush();
+    fputs("Exception in thread \"main\" java.lang.ArithmeticException: / by zero\n", stderr);
+    exit(1);
+}
+
+/* Int arithmetic, done on unsigned ints so that it wraps around instead of overflowing */
+
+WB_FUNCTION int32_t wb_wrap(uint32_t x) {
+    return x <= UINT32_C(0x7FFFFFFF) ? (int32_t) x : (int32_t) (x - UINT32_C(0x80000000)) - INT32_C(0x7FFFFFFF) - 1;
+}
+
+WB_FUNCTION int64_t wb_wrap64(uint64_t x) {
+    return x <= UINT64_C(0x7FFFFFFFFFFFFFFF)
+            ? (int64_t) x
+            : (int64_t) (x - UINT64_C(0x8000000000000000)) - INT64_C(0x7FFFFFFFFFFFFFFF) - 1;
+}
+
+WB_FUNCTION int32_t wb_iadd(int32_t lhs, int32_t rhs) {
+    return wb_wrap((uint32_t) lhs + (uint32_t) rhs);
+}
+
+WB_FUNCTION int32_t wb_isub(int32_t lhs, int32_t rhs) {
+    return wb_wrap((uint32_t) lhs - (uint32_t) rhs);
+}
+
+WB_FUNCTION int32_t wb_imul(int32_t lhs, int32_t rhs) {
+    return wb_wrap((uint32_t) ((uint64_t) (uint32_t) lhs * (uint32_t) rhs));
+}
+
+WB_FUNCTION int32_t wb_ineg(int32_t operand) {
+    return wb_wrap(UINT32_C(0) - (uint32_t) operand);
+}
+
+WB_FUNCTION int32_t wb_idiv(int32_t lhs, int32_t rhs) {
+    if (rhs == 0)
+        wb_divide_by_zero();
+    /* The only quotient that does not fit; C leaves it undefined */
+    if (rhs == -1)
+        return wb_ineg(lhs);
+    /* C99 truncates toward zero, as Java does */
+    return lhs / rhs;
+}
+
+WB_FUNCTION int32_t wb_iabs(int32_t operand) {
+    return operand >= 0 ? operand : wb_ineg(operand);
+}
+
+/* Float arithmetic; each operation is a function so that none is fused with another */
+
+WB_FUNCTION float wb_fadd(float lhs, float rhs) {
+    return lhs + rhs;
+}
+
+WB_FUNCTION float wb_fsub(float lhs, float rhs) {
+    return lhs - rhs;
+}
+
+WB_FUNCTION float wb_fmul(float lhs, float rhs) {
+    return lhs * rhs;
+}
+
+WB_FUNCTION float wb_fdiv(float lhs, float rhs) {
+    return lhs / rhs;
+}
+
+WB_FUNCTION float wb_fneg(float operand) {
+    return -1.0f * operand;
+}
+
+WB_FUNCTION float wb_fabs(float operand) {
+    return operand >= 0 ? operand : -1.0f * operand;
+}
+
+/* For infinities and NaN, which have no literal */
+WB_FUNCTION float wb_float_bits(uint32_t bits) {
+    float value;
+    memcpy(&value, &bits, sizeof value);
+    return value;
+}
+
+/* Printing ints */
+
+static const char wb_digit_pairs[] =
+    "00010203040506070809101112131415161718192021222324252627282930313233343536373839"
+    "40414243444546474849505152535455565758596061626364656667686970717273747576777879"
+    "8081828384858687888990919293949596979899";
+
+/* Writes the digits of a value > 0 ending just before end, and returns where they start */
+WB_FUNCTION char *wb_write_digits(uint32_t value, char *end) {
+    while (value >= 100) {
+        uint32_t pair = value % 100 * 2;
+        value /= 100;
+        *--end = wb_digit_pairs[pair + 1];
+        *--end = wb_digit_pairs[pair];
+    }
+    if (value >= 10) {
+        *--end = wb_digit_pairs[value * 2 + 1];
+        *--end = wb_digit_pairs[value * 2];
+    } else {
+        *--end = (char) ('0' + value);
+    }
+    return end;
+}
+
+WB_FUNCTION int wb_digit_count(uint32_t value) {
+    int count = 1;
+    uint32_t bound = 10;
+    while (count < 10 && value >= bound) {
+        count++;
+        bound *= 10;
+    }
+    return count;
+}
+
+/* Returns the position after the last character written */
+WB_FUNCTION char *wb_write_int(int32_t value, char *out) {
+    uint32_t magnitude = value < 0 ? UINT32_C(0) - (uint32_t) value : (uint32_t) value;
+    if (value < 0)
+        *out++ = '-';
+    out += wb_digit_count(magnitude);
+    wb_write_digits(magnitude, out);
+    return out;
+}
+
+WB_FUNCTION void wb_print_int(int32_t value) {
+    char *out = wb_write_int(value, wb_reserve());
+    *out++ = '\n';
+    wb_out_length = (size_t) (out - wb_out);
+}
+
+/* Printing floats, with the Schubfach algorithm (R. Giulietti, "The Schubfach way to render doubles", 2020) */
+
+#define WB_MIN_EXPONENT (-149)
+#define WB_HIDDEN_BIT (UINT32_C(1) << 23)
+#define WB_MIN_POWER (-31)
+
+/* The upper 63 bits of 10^e normalized to [2^125, 2^126), plus one, for e from -31 to 45 */
+static const uint64_t wb_powers_of_ten[] = {
+    UINT64_C(0x40e7599625a1fe7a), /* -31 */
+    UINT64_C(0x51212ffbaf0a7e18), /* -30 */
+    UINT64_C(0x65697bfa9acd1d9f), /* -29 */
+    UINT64_C(0x7ec3daf941806506), /* -28 */
+    UINT64_C(0x4f3a68dbc8f03f24), /* -27 */
+    UINT64_C(0x63090312bb2c4eed), /* -26 */
+    UINT64_C(0x7bcb43d769f762a8), /* -25 */
+    UINT64_C(0x4d5f0a66a23a9da9), /* -24 */
+    UINT64_C(0x60b6cd004ac94513), /* -23 */
+    UINT64_C(0x78e480405d7b9658), /* -22 */
+    UINT64_C(0x4b8ed0283a6d3df7), /* -21 */
+    UINT64_C(0x5e72843249088d75), /* -20 */
+    UINT64_C(0x760f253edb4ab0d2), /* -19 */
+    UINT64_C(0x49c97747490eae83), /* -18 */
+    UINT64_C(0x5c3bd5191b525a24), /* -17 */
+    UINT64_C(0x734aca5f6226f0ad), /* -16 */
+    UINT64_C(0x480ebe7b9d58566c), /* -15 */
+    UINT64_C(0x5a126e1a84ae6c07), /* -14 */
+    UINT64_C(0x709709a125da0709), /* -13 */
+    UINT64_C(0x465e6604b7a84465), /* -12 */
+    UINT64_C(0x57f5ff85e592557f), /* -11 */
+    UINT64_C(0x6df37f675ef6eadf), /* -10 */
+    UINT64_C(0x44b82fa09b5a52cb), /* -9 */
+    UINT64_C(0x55e63b88c230e77e), /* -8 */
+    UINT64_C(0x6b5fca6af2bd215e), /* -7 */
+    UINT64_C(0x431bde82d7b634da), /* -6 */
+    UINT64_C(0x53e2d6238da3c211), /* -5 */
+    UINT64_C(0x68db8bac710cb295), /* -4 */
+    UINT64_C(0x4189374bc6a7ef9d), /* -3 */
+    UINT64_C(0x51eb851eb851eb85), /* -2 */
+    UINT64_C(0x6666666666666666), /* -1 */
+    UINT64_C(0x4000000000000000), /* 0 */
+    UINT64_C(0x5000000000000000), /* 1 */
+    UINT64_C(0x6400000000000000), /* 2 */
+    UINT64_C(0x7d00000000000000), /* 3 */
+    UINT64_C(0x4e20000000000000), /* 4 */
+    UINT64_C(0x61a8000000000000), /* 5 */
+    UINT64_C(0x7a12000000000000), /* 6 */
+    UINT64_C(0x4c4b400000000000), /* 7 */
+    UINT64_C(0x5f5e100000000000), /* 8 */
+    UINT64_C(0x7735940000000000), /* 9 */
+    UINT64_C(0x4a817c8000000000), /* 10 */
+    UINT64_C(0x5d21dba000000000), /* 11 */
+    UINT64_C(0x746a528800000000), /* 12 */
+    UINT64_C(0x48c2739500000000), /* 13 */
+    UINT64_C(0x5af3107a40000000), /* 14 */
+    UINT64_C(0x71afd498d0000000), /* 15 */
+    UINT64_C(0x470de4df82000000), /* 16 */
+    UINT64_C(0x58d15e1762800000), /* 17 */
+    UINT64_C(0x6f05b59d3b200000), /* 18 */
+    UINT64_C(0x4563918244f40000), /* 19 */
+    UINT64_C(0x56bc75e2d6310000), /* 20 */
+    UINT64_C(0x6c6b935b8bbd4000), /* 21 */
+    UINT64_C(0x43c33c1937564800), /* 22 */
+    UINT64_C(0x54b40b1f852bda00), /* 23 */
+    UINT64_C(0x69e10de76676d080), /* 24 */
+    UINT64_C(0x422ca8b0a00a4250), /* 25 */
+    UINT64_C(0x52b7d2dcc80cd2e4), /* 26 */
+    UINT64_C(0x6765c793fa10079d), /* 27 */
+    UINT64_C(0x409f9cbc7c4a04c2), /* 28 */
+    UINT64_C(0x50c783eb9b5c85f2), /* 29 */
+    UINT64_C(0x64f964e68233a76f), /* 30 */
+    UINT64_C(0x7e37be2022c0914b), /* 31 */
+    UINT64_C(0x4ee2d6d415b85ace), /* 32 */
+    UINT64_C(0x629b8c891b267182), /* 33 */
+    UINT64_C(0x7b426fab61f00de3), /* 34 */
+    UINT64_C(0x4d0985cb1d3608ae), /* 35 */
+    UINT64_C(0x604be73de4838ad9), /* 36 */
+    UINT64_C(0x785ee10d5da46d90), /* 37 */
+    UINT64_C(0x4b3b4ca85a86c47a), /* 38 */
+    UINT64_C(0x5e0a1fd271287598), /* 39 */
+    UINT64_C(0x758ca7c70d7292fe), /* 40 */
+    UINT64_C(0x4977e8dc68679bdf), /* 41 */
+    UINT64_C(0x5bd5e313828182d6), /* 42 */
+    UINT64_C(0x72cb5bd86321e38c), /* 43 */
+    UINT64_C(0x47bf19673df52e37), /* 44 */
+    UINT64_C(0x59aedfc10d7279c5), /* 45 */
+};
+
+/* The upper 64 bits of the 128-bit product */
+WB_FUNCTION uint64_t wb_multiply_high(uint64_t a, uint64_t b) {
+    uint64_t a0 = a & UINT32_MAX, a1 = a >> 32;
+    uint64_t b0 = b & UINT32_MAX, b1 = b >> 32;
+    uint64_t p00 = a0 * b0, p01 = a0 * b1, p10 = a1 * b0, p11 = a1 * b1;
+    uint64_t middle = (p00 >> 32) + (p01 & UINT32_MAX) + (p10 & UINT32_MAX);
+    return p11 + (p01 >> 32) + (p10 >> 32) + (middle >> 32);
+}
+
+/* The upper 32 bits of g cp / 2^64, rounded to odd in the lowest bit */
+WB_FUNCTION int64_t wb_round_to_odd(uint64_t g, uint64_t cp) {
+    uint64_t x = wb_multiply_high(g, cp);
+    return (int64_t) (uint32_t) ((x >> 31) | (((x & UINT32_MAX) + UINT32_MAX) >> 32));
+}
+
+/* floor(x / 2^shift), which >> does not promise for negative values in C */
+WB_FUNCTION int wb_floor_shift(int64_t x, int shift) {
+    return (int) (x >= 0 ? x >> shift : ~(~x >> shift));
+}
+
+WB_FUNCTION int wb_floor_log10_pow2(int e) {
+    return wb_floor_shift((int64_t) e * INT64_C(661971961083), 41);
+}
+
+WB_FUNCTION int wb_floor_log10_three_quarters_pow2(int e) {
+    return wb_floor_shift((int64_t) e * INT64_C(661971961083) - INT64_C(274743187321), 41);
+}
+
+WB_FUNCTION int wb_floor_log2_pow10(int e) {
+    return wb_floor_shift((int64_t) e * INT64_C(913124641741), 38);
+}
+
+/* Writes f 10^e plainly from 10^-3 up to 10^7 and in computerized scientific notation otherwise */
+WB_FUNCTION char *wb_write_decimal(uint32_t f, int e, char *out) {
+    int length, point, i;
+    char *end;
+
+    while (f % 10 == 0) {
+        f /= 10;
+        e++;
+    }
+    length = wb_digit_count(f);
+    /* The value is 0.d1d2...dn 10^point */
+    point = e + length;
+
+    if (0 < point && point <= 7) {
+        end = out + length;
+        wb_write_digits(f, end);
+        if (length <= point) {
+            for (i = length; i < point; i++)
+                *end++ = '0';
+            *end++ = '.';
+            *end++ = '0';
+            return end;
+        }
+        memmove(out + point + 1, out + point, (size_t) (length - point));
+        out[point] = '.';
+        return end + 1;
+    }
+
+    if (-3 < point && point <= 0) {
+        *out++ = '0';
+        *out++ = '.';
+        for (i = point; i < 0; i++)
+            *out++ = '0';
+        end = out + length;
+        wb_write_digits(f, end);
+        return end;
+    }
+
+    end = out + 1 + length;
+    wb_write_digits(f, end);
+    out[0] = out[1];
+    out[1] = '.';
+    if (length == 1)
+        *end++ = '0';
+    *end++ = 'E';
+    return wb_write_int(point - 1, end);
+}
+
+WB_FUNCTION char *wb_shortest(int q, uint32_t c, int dk, char *out) {
+    int64_t out_bit = c & 1;
+    uint64_t cb = (uint64_t) c << 2;
+    uint64_t cbr = cb + 2;
+    uint64_t cbl;
+    int k, h;
+    uint64_t g;
+    int64_t vb, vbl, vbr, s, t, cmp;
+
+    /* The interval below a power of two is half as wide, unless the float is the smallest normal */
+    if (c != WB_HIDDEN_BIT || q == WB_MIN_EXPONENT) {
+        cbl = cb - 2;
+        k = wb_floor_log10_pow2(q);
+    } else {
+        cbl = cb - 1;
+        k = wb_floor_log10_three_quarters_pow2(q);
+    }
+    h = q + wb_floor_log2_pow10(-k) + 33;
+
+    g = wb_powers_of_ten[-k - WB_MIN_POWER] + 1;
+    vb = wb_round_to_odd(g, cb << h);
+    vbl = wb_round_to_odd(g, cbl << h);
+    vbr = wb_round_to_odd(g, cbr << h);
+
+    s = vb >> 2;
+    if (s >= 100) {
+        int64_t sp10 = 10 * (int64_t) (((uint64_t) s * UINT64_C(1717986919)) >> 34);
+        int64_t tp10 = sp10 + 10;
+        int upin = vbl + out_bit <= sp10 * 4;
+        int wpin = tp10 * 4 + out_bit <= vbr;
+        if (upin != wpin)
+            return wb_write_decimal((uint32_t) (upin ? sp10 : tp10), k, out);
+    }
+
+    t = s + 1;
+    {
+        int uin = vbl + out_bit <= s * 4;
+        int win = t * 4 + out_bit <= vbr;
+        if (uin != win)
+            return wb_write_decimal((uint32_t) (uin ? s : t), k + dk, out);
+    }
+
+    /* Both are in the interval: take the closer, or the even one on a tie */
+    cmp = vb - (s + t) * 2;
+    return wb_write_decimal((uint32_t) (cmp < 0 || (cmp == 0 && (s & 1) == 0) ? s : t), k + dk, out);
+}
+
+/* Printing floats as Float.toString does before JDK 19, with the digits of FloatingDecimal.dtoa: generated one at a
+   time until the rest is within half an ulp and rounded on the last digit, or those of the value itself when it is an
+   integer below 2^63. The arithmetic is the same as Java's, down to where its ints and longs overflow. */
+
+static const int wb_power_of_five_bits[] = {
+    0, 3, 5, 7, 10, 12, 14, 17, 19, 21, 24, 26, 28, 31, 33, 35, 38, 40, 42, 45, 47, 49, 52, 54, 56, 59, 61
+};
+
+/* The number of decimal digits below 2^i that do not matter */
+static const int wb_insignificant_digits[] = {
+    0, 0, 0, 0, 1, 1, 1, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 5, 5, 5, 6, 6, 6, 6, 7, 7, 7, 8, 8, 8, 9, 9, 9, 9,
+    10, 10, 10, 11, 11, 11, 12, 12, 12, 12, 13, 13, 13, 14, 14, 14, 15, 15, 15, 15, 16, 16, 16, 17, 17, 17,
+    18, 18, 18, 19
+};
+
+/* 5^i, up to where it still fits in 128 bits with room to spare */
+#define WB_MAX_WIDE_POWER 50
+
+/* An unsigned 128-bit integer, for the digits of values far from 1 */
+typedef struct {
+    uint64_t high;
+    uint64_t low;
+} wb_u128;
+
+WB_FUNCTION wb_u128 wb_u128_multiply(wb_u128 a, uint64_t factor) {
+    /* factor < 2^32, and the product fits */
+    uint64_t low0 = (a.low & UINT32_MAX) * factor;
+    uint64_t low1 = (a.low >> 32) * factor + (low0 >> 32);
+    wb_u128 product;
+    product.low = (low1 << 32) | (low0 & UINT32_MAX);
+    product.high = a.high * factor + (low1 >> 32);
+    return product;
+}
+
+WB_FUNCTION wb_u128 wb_u128_shift_left(wb_u128 a, int n) {
+    wb_u128 shifted;
+    if (n == 0)
+        return a;
+    if (n >= 64) {
+        shifted.high = a.low << (n - 64);
+        shifted.low = 0;
+    } else {
+        shifted.high = (a.high << n) | (a.low >> (64 - n));
+        shifted.low = a.low << n;
+    }
+    return shifted;
+}
+
+WB_FUNCTION wb_u128 wb_u128_add(wb_u128 a, wb_u128 b) {
+    wb_u128 sum;
+    sum.low = a.low + b.low;
+    sum.high = a.high + b.high + (sum.low < a.low);
+    return sum;
+}
+
+WB_FUNCTION wb_u128 wb_u128_subtract(wb_u128 a, wb_u128 b) {
+    wb_u128 difference;
+    difference.low = a.low - b.low;
+    difference.high = a.high - b.high - (a.low < b.low);
+    return difference;
+}
+
+WB_FUNCTION int wb_u128_compare(wb_u128 a, wb_u128 b) {
+    if (a.high != b.high)
+        return a.high < b.high ? -1 : 1;
+    return a.low < b.low ? -1 : a.low > b.low;
+}
+
+WB_FUNCTION wb_u128 wb_u128_power_of_five(int e) {
+    wb_u128 power;
+    power.high = 0;
+    power.low = 1;
+    while (e-- > 0)
+        power = wb_u128_multiply(power, 5);
+    return power;
+}
+
+WB_FUNCTION int64_t wb_long_power_of_five(int e) {
+    int64_t power = 1;
+    while (e-- > 0)
+        power *= 5;
+    return power;
+}
+
+WB_FUNCTION int64_t wb_long_power_of_ten(int e) {
+    int64_t power = 1;
+    while (e-- > 0)
+        power *= 10;
+    return power;
+}
+
+/* Writes the lowest count digits of value, with leading zeros */
+WB_FUNCTION void wb_put_digits(int64_t value, int count, char *out) {
+    char *digit;
+    for (digit = out + count - 1; digit >= out; digit--) {
+        *digit = (char) ('0' + value % 10);
+        value /= 10;
+    }
+}
+
+/* Writes 0.d1d2...dn 10^point as Float.toString does, keeping any trailing zeros among the digits */
+WB_FUNCTION char *wb_write_digits_at(int64_t digits, int digit_count, int point, char *out) {
+    int i;
+
+    if (0 < point && point < 8) {
+        int integer_count = digit_count < point ? digit_count : point;
+        wb_put_digits(digits / wb_long_power_of_ten(digit_count - integer_count), integer_count, out);
+        out += integer_count;
+        if (integer_count < point) {
+            for (i = integer_count; i < point; i++)
+                *out++ = '0';
+            *out++ = '.';
+            *out++ = '0';
+        } else {
+            *out++ = '.';
+            if (integer_count < digit_count) {
+                wb_put_digits(digits, digit_count - integer_count, out);
+                out += digit_count - integer_count;
+            } else {
+                *out++ = '0';
+            }
+        }
+        return out;
+    }
+
+    if (point <= 0 && point > -3) {
+        *out++ = '0';
+        *out++ = '.';
+        for (i = point; i < 0; i++)
+            *out++ = '0';
+        wb_put_digits(digits, digit_count, out);
+        return out + digit_count;
+    }
+
+    wb_put_digits(digits / wb_long_power_of_ten(digit_count - 1), 1, out);
+    out[1] = '.';
+    out += 2;
+    if (digit_count > 1) {
+        wb_put_digits(digits, digit_count - 1, out);
+        out += digit_count - 1;
+    } else {
+        *out++ = '0';
+    }
+    *out++ = 'E';
+    return wb_write_int(point - 1, out);
+}
+
+/* The digits of an integer, less the insignificant ones, which only round the last digit */
+WB_FUNCTION char *wb_integer_digits(int64_t value, int insignificant, char *out) {
+    int decimal_exponent = 0;
+    int digit_count = 1;
+    int64_t rest;
+
+    if (insignificant != 0) {
+        int64_t power = wb_long_power_of_ten(insignificant);
+        int64_t residue = value % power;
+        value /= power;
+        decimal_exponent += insignificant;
+        if (residue >= power / 2)
+            value++;
+    }
+
+    while (value % 10 == 0) {
+        value /= 10;
+        decimal_exponent++;
+    }
+    for (rest = value / 10; rest != 0; rest /= 10) {
+        digit_count++;
+        decimal_exponent++;
+    }
+    return wb_write_digits_at(value, digit_count, decimal_exponent + 1, out);
+}
+
+/* floor(log10(1.f 2^binary_exponent)), estimated in double arithmetic, and sometimes one too high */
+WB_FUNCTION int wb_estimate_decimal_exponent(uint64_t fraction, int binary_exponent) {
+    uint64_t d2_bits = UINT64_C(0x3FF0000000000000) | (fraction & UINT64_C(0x000FFFFFFFFFFFFF));
+    double d2, d;
+    uint64_t d_bits;
+    int exponent, negative;
+
+    memcpy(&d2, &d2_bits, sizeof d2);
+    d = (d2 - 1.5) * 0.289529654 + 0.176091259 + (double) binary_exponent * 0.301029995663981;
+    memcpy(&d_bits, &d, sizeof d_bits);
+    exponent = (int) ((d_bits >> 52) & 0x7FF) - 1023;
+    negative = (int) (d_bits >> 63);
+    if (exponent >= 0 && exponent < 52) {
+        uint64_t mask = UINT64_C(0x000FFFFFFFFFFFFF) >> exponent;
+        int r = (int) (((d_bits & UINT64_C(0x000FFFFFFFFFFFFF)) | (UINT64_C(1) << 52)) >> (52 - exponent));
+        return negative ? ((mask & d_bits) == 0 ? -r : -r - 1) : r;
+    }
+    if (exponent < 0)
+        return (d_bits & ~(UINT64_C(1) << 63)) == 0 ? 0 : (negative ? -1 : 0);
+    return (int) d;
+}
+
+/* Float.toString before JDK 19, for c 2^q with the given number of significant bits */
+WB_FUNCTION char *wb_half_ulp_digits(int q, uint32_t c, int significant_bits, char *out) {
+    int fraction_shift = 0;
+    int binary_exponent, tail_zeros, fraction_bits, tiny_bits;
+    int decimal_exponent, b5, b2, s5, s2, m5, m2, common2, b_bits, ten_s_bits;
+    uint64_t fraction;
+    int64_t digits = 0;
+    int digit_count = 0;
+    int low, high, digit;
+    int64_t low_digit_difference;
+
+    /* dtoa takes the value as 1.f 2^binary_exponent, with f in the 52 bits of a double's fraction */
+    while ((c << fraction_shift) < WB_HIDDEN_BIT)
+        fraction_shift++;
+    binary_exponent = q + 23 - fraction_shift;
+    fraction = (uint64_t) c << (fraction_shift + 29);
+
+    tail_zeros = 0;
+    while (!((fraction >> tail_zeros) & 1))
+        tail_zeros++;
+    fraction_bits = 53 - tail_zeros;
+    tiny_bits = fraction_bits - binary_exponent - 1 > 0 ? fraction_bits - binary_exponent - 1 : 0;
+
+    /* An integer is written whole, less the digits that are below its ulp */
+    if (tiny_bits == 0 && binary_exponent <= 62 && binary_exponent >= -21) {
+        int insignificant = 0;
+        int p2 = binary_exponent - significant_bits - 1;
+        if (binary_exponent > significant_bits && p2 > 1
+                && p2 < (int) (sizeof wb_insignificant_digits / sizeof wb_insignificant_digits[0]))
+            insignificant = wb_insignificant_digits[p2];
+        fraction = binary_exponent >= 52 ? fraction << (binary_exponent - 52) : fraction >> (52 - binary_exponent);
+        return wb_integer_digits((int64_t) fraction, insignificant, out);
+    }
+
+    /* Digits of B / S 10^decimal_exponent, stopping once the remainder is within M, half an ulp, of either end */
+    decimal_exponent = wb_estimate_decimal_exponent(fraction, binary_exponent);
+    b5 = decimal_exponent < 0 ? -decimal_exponent : 0;
+    b2 = b5 + tiny_bits + binary_exponent;
+    s5 = decimal_exponent > 0 ? decimal_exponent : 0;
+    s2 = s5 + tiny_bits;
+    m5 = b5;
+    m2 = b2 - significant_bits;
+
+    fraction >>= tail_zeros;
+    b2 -= fraction_bits - 1;
+    common2 = b2 < s2 ? b2 : s2;
+    b2 -= common2;
+    s2 -= common2;
+    m2 -= common2;
+    /* The float below a power of two is only half as far away */
+    if (fraction_bits == 1)
+        m2 -= 1;
+    if (m2 < 0) {
+        b2 -= m2;
+        s2 -= m2;
+        m2 = 0;
+    }
+
+    b_bits = fraction_bits + b2 + (b5 < 27 ? wb_power_of_five_bits[b5] : b5 * 3);
+    ten_s_bits = s2 + 1 + (s5 + 1 < 27 ? wb_power_of_five_bits[s5 + 1] : (s5 + 1) * 3);
+
+    if (b_bits < 32 && ten_s_bits < 32) {
+        /* Java int arithmetic, which wraps around */
+        int32_t b = wb_wrap((uint32_t) ((uint32_t) fraction * (uint32_t) wb_long_power_of_five(b5)) << b2);
+        int32_t s = wb_wrap((uint32_t) wb_long_power_of_five(s5) << s2);
+        int32_t m = wb_wrap((uint32_t) wb_long_power_of_five(m5) << m2);
+        int32_t tens = wb_imul(s, 10);
+
+        digit = b / s;
+        b = wb_imul(b % s, 10);
+        m = wb_imul(m, 10);
+        low = b < m;
+        high = wb_iadd(b, m) > tens;
+        /* A first digit of zero means the estimate of the exponent was one too high */
+        if (digit == 0 && !high) {
+            decimal_exponent--;
+        } else {
+            digits = digit;
+            digit_count = 1;
+        }
+        /* Scientific notation has at least two digits */
+        if (decimal_exponent < -3 || decimal_exponent >= 8)
+            high = low = 0;
+        while (!low && !high) {
+            digit = b / s;
+            b = wb_imul(b % s, 10);
+            m = wb_imul(m, 10);
+            if (m > 0) {
+                low = b < m;
+                high = wb_iadd(b, m) > tens;
+            } else {
+                /* m overflowed, so it is larger than both */
+                low = 1;
+                high = 1;
+            }
+            digits = digits * 10 + digit;
+            digit_count++;
+        }
+        low_digit_difference = wb_isub(wb_wrap((uint32_t) b << 1), tens);
+    } else if (b_bits < 64 && ten_s_bits < 64) {
+        /* Java long arithmetic, which wraps around */
+        int64_t b = wb_wrap64((fraction * (uint64_t) wb_long_power_of_five(b5)) << b2);
+        int64_t s = wb_wrap64((uint64_t) wb_long_power_of_five(s5) << s2);
+        int64_t m = wb_wrap64((uint64_t) wb_long_power_of_five(m5) << m2);
+        int64_t tens = wb_wrap64((uint64_t) s * 10);
+
+        digit = (int) (b / s);
+        b = wb_wrap64((uint64_t) (b % s) * 10);
+        m = wb_wrap64((uint64_t) m * 10);
+        low = b < m;
+        high = wb_wrap64((uint64_t) b + (uint64_t) m) > tens;
+        if (digit == 0 && !high) {
+            decimal_exponent--;
+        } else {
+            digits = digit;
+            digit_count = 1;
+        }
+        if (decimal_exponent < -3 || decimal_exponent >= 8)
+            high = low = 0;
+        while (!low && !high) {
+            digit = (int) (b / s);
+            b = wb_wrap64((uint64_t) (b % s) * 10);
+            m = wb_wrap64((uint64_t) m * 10);
+            if (m > 0) {
+                low = b < m;
+                high = wb_wrap64((uint64_t) b + (uint64_t) m) > tens;
+            } else {
+                low = 1;
+                high = 1;
+            }
+            digits = digits * 10 + digit;
+            digit_count++;
+        }
+        low_digit_difference = wb_wrap64(((uint64_t) b << 1) - (uint64_t) tens);
+    } else {
+        /* Exact, in at most 122 bits: B < 10 S, and M stops growing once it is larger than 10 S */
+        wb_u128 s = wb_u128_shift_left(wb_u128_power_of_five(s5), s2);
+        wb_u128 b = wb_u128_shift_left(wb_u128_multiply(wb_u128_power_of_five(b5), fraction), b2);
+        wb_u128 m = wb_u128_shift_left(wb_u128_power_of_five(m5), m2);
+        wb_u128 ten_s = wb_u128_multiply(s, 10);
+        int first = 1;
+
+        do {
+            /* B = 10 (B mod S), with the quotient as the digit */
+            digit = 0;
+            while (wb_u128_compare(b, s) >= 0) {
+                b = wb_u128_subtract(b, s);
+                digit++;
+            }
+            b = wb_u128_multiply(b, 10);
+            m = wb_u128_multiply(m, 10);
+            low = wb_u128_compare(b, m) < 0;
+            high = wb_u128_compare(ten_s, wb_u128_add(b, m)) <= 0;
+
+            if (first && digit == 0 && !high) {
+                decimal_exponent--;
+            } else {
+                digits = digits * 10 + digit;
+                digit_count++;
+            }
+            if (first && (decimal_exponent < -3 || decimal_exponent >= 8))
+                high = low = 0;
+            first = 0;
+        } while (!low && !high);
+
+        low_digit_difference = high && low ? wb_u128_compare(wb_u128_shift_left(b, 1), ten_s) : 0;
+    }
+
+    decimal_exponent += 1;
+    /* The last digit is rounded up when the rest is nearer to the next one, or to make it even on a tie */
+    if (high && (!low || low_digit_difference > 0 || (low_digit_difference == 0 && (digits & 1) != 0))) {
+        digits++;
+        if (digits == wb_long_power_of_ten(digit_count)) {
+            digits /= 10;
+            decimal_exponent++;
+        }
+    }
+    return wb_write_digits_at(digits, digit_count, decimal_exponent, out);
+}
+
+WB_FUNCTION char *wb_write_float(float value, char *out) {
+    uint32_t bits;
+    uint32_t significand;
+    int biased_exponent;
+
+    memcpy(&bits, &value, sizeof bits);
+    significand = bits & (WB_HIDDEN_BIT - 1);
+    biased_exponent = (int) ((bits >> 23) & 0xFF);
+
+    if (biased_exponent == 0xFF) {
+        if (significand != 0) {
+            memcpy(out, "NaN", 3);
+            return out + 3;
+        }
+        if (bits >> 31)
+            *out++ = '-';
+        memcpy(out, "Infinity", 8);
+        return out + 8;
+    }
+
+    if (bits >> 31)
+        *out++ = '-';
+
+    if (biased_exponent != 0) {
+        int exponent = WB_MIN_EXPONENT - 1 + biased_exponent;
+        uint32_t c = WB_HIDDEN_BIT | significand;
+
+        if (!WB_SHORTEST_FLOATS)
+            return wb_half_ulp_digits(exponent, c, 24, out);
+
+        /* A float holding an integer below 2^24 is printed as that integer */
+        if (-24 < exponent && exponent < 0) {
+            uint32_t integer = c >> -exponent;
+            if (integer << -exponent == c)
+                return wb_write_decimal(integer, 0, out);
+        }
+        return wb_shortest(exponent, c, 0, out);
+    }
+
+    if (significand != 0) {
+        if (!WB_SHORTEST_FLOATS) {
+            int significant_bits = 0;
+            while (significant_bits < 32 && (significand >> significant_bits) != 0)
+                significant_bits++;
+            return wb_half_ulp_digits(WB_MIN_EXPONENT, significand, significant_bits, out);
+        }
+
+        /* Too few digits to choose from: scale by ten first */
+        return significand < 8
+                ? wb_shortest(WB_MIN_EXPONENT, 10 * significand, -1, out)
+                : wb_shortest(WB_MIN_EXPONENT, significand, 0, out);
+    }
+
+    memcpy(out, "0.0", 3);
+    return out + 3;
+}
+
+WB_FUNCTION void wb_print_float(float value) {
+    char *out = wb_write_float(value, wb_reserve());
+    *out++ = '\n';
+    wb_out_length = (size_t) (out - wb_out);
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import com.github.rharri.wabbitj.vm.Artifact;
+import com.github.rharri.wabbitj.vm.Bytecode;
+import com.github.rharri.wabbitj.vm.BytecodeCompiler;
+import com.github.rharri.wabbitj.vm.VirtualMachine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ArtifactTest {
+
+    private static final String PROGRAM = """
+            print 2147483647 + 1;
+            print 7 / -2;
+            print +-0.0;
+            print 0.1 + 0.2;
+            print (1.5 * 4.0) / 3.0;
+            """;
+
+    @TempDir
+    private Path directory;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private PrintStream originalOut = System.out;
+
+    @BeforeEach
+    public void captureOutput() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    public void restoreOutput() {
+        System.setOut(originalOut);
+    }
+
+    private static int wabbitj(String... args) {
+        return new CommandLine(new WabbitJ()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
+    }
+
+    private String takeOutput() {
+        String text = out.toString(StandardCharsets.UTF_8);
+        out.reset();
+        return text;
+    }
+
+    private static Bytecode compile(String programText) {
+        Program program = new Parser(Tokenizer.tokenize(programText)).parse();
+        var typeChecker = new TypeChecker("test.wb", programText);
+        program.accept(typeChecker);
+        return BytecodeCompiler.compile(program, typeChecker);
+    }
+
+    private static String run(Artifact artifact) {
+        var output = new ByteArrayOutputStream();
+        new VirtualMachine(new JavaRuntime(new PrintStream(output))).run(artifact);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldRunABuiltArtifactLikeTheInterpreter() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+
+        assertThat(wabbitj(file.toString())).isZero();
+        String interpreted = takeOutput();
+
+        assertThat(wabbitj("build", file.toString())).isZero();
+        Path artifact = directory.resolve("program.wbc");
+        assertThat(takeOutput()).isEqualTo("Wrote " + artifact + System.lineSeparator());
+
+        assertThat(wabbitj("run", artifact.toString())).isZero();
+        assertThat(takeOutput()).isEqualTo(interpreted);
+    }
+
+    @Test
+    public void shouldRunAnArtifactToTheGivenStream() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), "print 6 * 7;\n");
+        assertThat(wabbitj("build", file.toString())).isZero();
+        takeOutput();
+
+        var given = new ByteArrayOutputStream();
+        var command = new RunCommand(new PrintStream(given, true, StandardCharsets.UTF_8));
+        assertThat(new CommandLine(command).execute(directory.resolve("program.wbc").toString())).isZero();
+
+        assertThat(given.toString(StandardCharsets.UTF_8)).isEqualTo("42" + System.lineSeparator());
+        assertThat(takeOutput()).isEmpty();
+    }
+
+    @Test
+    public void shouldNotBuildAProgramWithTypeErrors() throws IOException {
+        Path file = Files.writeString(directory.resolve("bad.wb"), "print 1 + 2.0;\n");
+
+        assertThat(wabbitj("build", "-o", directory.resolve("bad.wbc").toString(), file.toString())).isEqualTo(1);
+
+        assertThat(takeOutput()).contains("Type Error");
+        assertThat(directory.resolve("bad.wbc")).doesNotExist();
+    }
+
+    @Test
+    public void shouldReportTheLineOfADivisionByZeroFromTheLineTable() {
+        Bytecode bytecode = compile("print 1;\nprint 2 +\n 3 / 0;\n");
+
+        Artifact artifact = Artifact.of(ByteBuffer.wrap(Artifact.toBytes(bytecode, true)));
+        assertThat(artifact.hasLineTable()).isTrue();
+        assertThatThrownBy(() -> run(artifact))
+                .isInstanceOf(ArithmeticException.class)
+                .hasMessage("/ by zero on line 3");
+
+        Artifact stripped = Artifact.of(ByteBuffer.wrap(Artifact.toBytes(bytecode, false)));
+        assertThat(stripped.hasLineTable()).isFalse();
+        assertThatThrownBy(() -> run(stripped))
+                .isInstanceOf(ArithmeticException.class)
+                .hasMessage("/ by zero");
+    }
+
+    @Test
+    public void shouldMapTheSameProgramThatWasCompiled() throws IOException {
+        Bytecode bytecode = compile(PROGRAM);
+        Path file = directory.resolve("program.wbc");
+        Artifact.write(bytecode, true, file);
+
+        Artifact artifact = Artifact.map(file);
+
+        assertThat(artifact.codeLength()).isEqualTo(bytecode.codeLength());
+        assertThat(artifact.constantCount()).isEqualTo(bytecode.constantCount());
+        assertThat(artifact.maxStack()).isEqualTo(bytecode.maxStack());
+        assertThat(artifact.lineAt(0)).isEqualTo(1);
+        assertThat(artifact.lineAt(artifact.codeLength() - 1)).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldRejectAnotherMajorVersion() {
+        byte[] bytes = Artifact.toBytes(compile(PROGRAM), true);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putShort(4, (short) 2);
+
+        assertThatThrownBy(() -> Artifact.of(ByteBuffer.wrap(bytes)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Artifact version 2 is not supported; expected version 1.");
+    }
+
+    @Test
+    public void shouldRejectWhatIsNotAnArtifact() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wbc"), PROGRAM);
+
+        assertThat(wabbitj("run", file.toString())).isEqualTo(1);
+
+        assertThat(takeOutput()).isEqualTo(file + ": Not a Wabbit artifact." + System.lineSeparator());
+    }
+
+    @Test
+    public void shouldStopWhenTheCodeRefersOutsideOfTheArtifact() {
+        byte[] bytes = Artifact.toBytes(compile("print 1;"), false);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        // The pool index of the ICONST, after the header and the two section entries
+        int code = buffer.getInt(16 + 12 + 4);
+        buffer.putInt(code + 4, 99);
+
+        assertThatThrownBy(() -> run(Artifact.of(buffer)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("The artifact refers outside of itself at 1.");
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.AbstractSyntaxTree;
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.c.CGenerator;
+import com.github.rharri.wabbitj.interpreter.Interpreter;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.optimizer.PassManager;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Generated C must print exactly what the tree-walking interpreter prints. Tests that build the C are skipped when
+// there is no C compiler on the path.
+public class CGeneratorTest {
+
+    private static final String EDGE_CASES = """
+            print 2147483647 + 1;
+            print (0 - 2147483647 - 1) / -1;
+            print (0 - 2147483647 - 1) * -1;
+            print 7 / -2;
+            print -7 / 2;
+            print -7 * 3;
+            print +-0.0;
+            print -0.0;
+            print -(0.0 - 0.0);
+            print 1.0 / 0.0;
+            print 0.0 / 0.0;
+            print -(0.0 / 0.0);
+            print .1 + .2;
+            print 100000 * 100000;
+            print 340282350000000000000000000000000000000.0 * 10.0;
+            print 0.0000000000000000000000000000000000000000000014 / 2.0;
+            print 0.0000000000000000000000000000000000000000000028 / 2.0;
+            print 16777216.0 + 1.0;
+            print 0.001;
+            print 10000000.0;
+            print 1234567.0;
+            """;
+
+    private static boolean compilerFound;
+
+    @TempDir
+    private Path directory;
+
+    @BeforeAll
+    public static void findCompiler() {
+        try {
+            Process process = new ProcessBuilder(List.of("cc", "--version")).redirectErrorStream(true).start();
+            process.getInputStream().readAllBytes();
+            compilerFound = process.waitFor() == 0;
+        } catch (IOException e) {
+            compilerFound = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            compilerFound = false;
+        }
+    }
+
+    record Result(int status, String out, String err) {
+    }
+
+    static Stream<Path> examples() throws IOException {
+        return EngineConformanceTest.examples();
+    }
+
+    private static Program parse(String programText) {
+        return new Parser(Tokenizer.tokenize(programText)).parse();
+    }
+
+    private static TypeChecker check(AbstractSyntaxTree ast) {
+        var typeChecker = new TypeChecker("test.wb", "");
+        ast.accept(typeChecker);
+        assertThat(typeChecker.getDiagnostics()).isEmpty();
+        return typeChecker;
+    }
+
+    private static String interpret(AbstractSyntaxTree ast) {
+        var out = new ByteArrayOutputStream();
+        ast.accept(new Interpreter(new JavaRuntime(new PrintStream(out, true, StandardCharsets.UTF_8))));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String run(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(process.waitFor()).as(output).isZero();
+        return output;
+    }
+
+    // Builds with warnings enabled, so that the generated code also has to compile cleanly
+    private Result compileAndRun(AbstractSyntaxTree ast) throws IOException, InterruptedException {
+        assumeTrue(compilerFound, "no C compiler on the path");
+
+        Path source = Files.writeString(directory.resolve("program.c"), CGenerator.generate(ast, check(ast)));
+        Path executable = directory.resolve("program");
+        String warnings = run(List.of("cc", "-std=c99", "-O2", "-Wall", "-Wextra", "-pedantic", "-o",
+                executable.toString(), source.toString()));
+        assertThat(warnings).isEmpty();
+
+        Process process = new ProcessBuilder(List.of(executable.toString())).start();
+        byte[] out = process.getInputStream().readAllBytes();
+        byte[] err = process.getErrorStream().readAllBytes();
+        return new Result(process.waitFor(), new String(out, StandardCharsets.UTF_8),
+                new String(err, StandardCharsets.UTF_8));
+    }
+
+    private void assertPrintsWhatTheInterpreterPrints(AbstractSyntaxTree ast) throws IOException, InterruptedException {
+        Result result = compileAndRun(ast);
+        assertThat(result.err()).isEmpty();
+        assertThat(result.status()).isZero();
+        assertThat(result.out()).isEqualTo(interpret(ast));
+    }
+
+    @Test
+    public void shouldPrintFloatsAsFloatToStringDoesOnThisJdk() throws IOException, InterruptedException {
+        // JDK 17 prints 3.3871888E7 and 1.17549435E-38, one digit more than the shortest that JDK 19 prints
+        Program program = parse("print 33871888.0; print 0.000000000000000000000000000000000000011754943508222875;");
+        String expected = Float.toString(33871888.0f) + "\n" + Float.toString(Float.MIN_NORMAL) + "\n";
+
+        assertThat(interpret(program)).isEqualTo(expected);
+        assertThat(compileAndRun(program).out()).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldGenerateOneStandaloneSourceFile() {
+        Program program = parse("print 1 + 2; print 0.5 * 3.0;");
+
+        String source = CGenerator.generate(program, check(program));
+
+        assertThat(source).contains("int main(void)")
+                .contains("#include <stdint.h>")
+                .contains("wb_iadd(1, 2)")
+                .contains("wb_fmul(0x1.0p-1f, 0x1.8p1f)")
+                .doesNotContain("#include \"");
+    }
+
+    @Test
+    public void shouldGenerateExpressionsDeeperThanTheStackAllows() {
+        Program program = parse("print 0" + " + 1".repeat(100_000) + ";");
+
+        String source = CGenerator.generate(program, check(program));
+
+        assertThat(source).contains("        int32_t t0 = wb_iadd(0, 1);\n")
+                .contains("        int32_t t99999 = wb_iadd(t99998, 1);\n        wb_print_int(t99999);\n");
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
+    public void shouldPrintWhatTheInterpreterPrintsForEveryExample(Path example)
+            throws IOException, InterruptedException {
+        String programText = Files.readString(example);
+        Program program = parse(programText);
+        var typeChecker = new TypeChecker(example.toString(), programText);
+        program.accept(typeChecker);
+
+        // Examples that are meant to fail type checking are never compiled
+        if (typeChecker.getDiagnostics().isEmpty())
+            assertPrintsWhatTheInterpreterPrints(program);
+    }
+
+    @Test
+    public void shouldAgreeOnOverflowDivisionAndFloatEdgeCases() throws IOException, InterruptedException {
+        assertPrintsWhatTheInterpreterPrints(parse(EDGE_CASES));
+    }
+
+    @Test
+    public void shouldWriteInfinityAndNaNLiteralsOfAnOptimizedProgram() throws IOException, InterruptedException {
+        Program program = parse("print 340282350000000000000000000000000000000.0 * 10.0; print 0.0 / 0.0;"
+                + " print -(1.0 / 0.0);");
+        Program optimized = PassManager.standard().run(program).program();
+
+        assertThat(CGenerator.generate(optimized, check(optimized))).contains("wb_float_bits(UINT32_C(0x7f800000))");
+        assertPrintsWhatTheInterpreterPrints(optimized);
+    }
+
+    @Test
+    public void shouldCompileDeeplyNestedExpressionsAndLongPrograms() throws IOException, InterruptedException {
+        var programText = new StringBuilder("print 1");
+        for (int i = 0; i < 400; i++)
+            programText.append(i % 2 == 0 ? " * 3" : " - 7");
+        programText.append(";\n");
+        for (int i = 0; i < 2_500; i++)
+            programText.append("print ").append(i).append(" * ").append(i).append(";\n");
+
+        assertPrintsWhatTheInterpreterPrints(parse(programText.toString()));
+    }
+
+    @Test
+    public void shouldStopAtAnIntDivisionByZeroLikeTheJvm() throws IOException, InterruptedException {
+        Result result = compileAndRun(parse("print 1; print 2 / (3 - 3); print 4;"));
+
+        assertThat(result.status()).isEqualTo(1);
+        assertThat(result.out()).isEqualTo("1\n");
+        assertThat(result.err()).contains("java.lang.ArithmeticException: / by zero");
+    }
+
+    @Test
+    public void shouldPrintWhatTheInterpreterPrintsForRandomPrograms() throws IOException, InterruptedException {
+        var random = new Random(18);
+        List<String> statements = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            if (random.nextBoolean())
+                statements.add("print " + floatExpression(random, 5) + ";");
+            else
+                statements.add("print " + intExpression(random, 5) + ";");
+        }
+
+        assertPrintsWhatTheInterpreterPrints(parse(String.join("\n", statements)));
+    }
+
+    // Every operand is parenthesized, because a unary minus takes the whole expression after it
+    private static String intExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            int[] interesting = {0, 1, 2, 7, 65_536, 2_147_483_647};
+            return Integer.toString(random.nextBoolean()
+                    ? interesting[random.nextInt(interesting.length)]
+                    : random.nextInt(100_000));
+        }
+
+        return switch (random.nextInt(6)) {
+            case 0 -> "(" + intExpression(random, depth - 1) + " + " + intExpression(random, depth - 1) + ")";
+            case 1 -> "(" + intExpression(random, depth - 1) + " - " + intExpression(random, depth - 1) + ")";
+            case 2 -> "(" + intExpression(random, depth - 1) + " * " + intExpression(random, depth - 1) + ")";
+            // Division by a nonzero literal, since a division by zero stops the program
+            case 3 -> "(" + intExpression(random, depth - 1) + " / " + (random.nextBoolean() ? "-" : "")
+                    + (random.nextInt(9) + 1) + ")";
+            case 4 -> "-(" + intExpression(random, depth - 1) + ")";
+            default -> "+(" + intExpression(random, depth - 1) + ")";
+        };
+    }
+
+    private static String floatExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            String[] interesting = {"0.0", "-0.0", "1.0", "0.1", "3.0", "1000000.0", "0.000001",
+                    "340282350000000000000000000000000000000.0"};
+            return random.nextBoolean()
+                    ? "(" + interesting[random.nextInt(interesting.length)] + ")"
+                    : random.nextInt(1_000) + "." + random.nextInt(1_000);
+        }
+
+        String operator = switch (random.nextInt(4)) {
+            case 0 -> " + ";
+            case 1 -> " - ";
+            case 2 -> " * ";
+            default -> " / ";
+        };
+        return switch (random.nextInt(5)) {
+            case 0 -> "-(" + floatExpression(random, depth - 1) + ")";
+            case 1 -> "+(" + floatExpression(random, depth - 1) + ")";
+            default -> "(" + floatExpression(random, depth - 1) + operator + floatExpression(random, depth - 1) + ")";
+        };
+    }
+}
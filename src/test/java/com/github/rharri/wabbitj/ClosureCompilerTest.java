@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.AbstractSyntaxTree;
+import com.github.rharri.wabbitj.ast.Expression;
+import com.github.rharri.wabbitj.ast.Print;
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.closure.ClosureCompiler;
+import com.github.rharri.wabbitj.closure.ClosureProgram;
+import com.github.rharri.wabbitj.closure.FloatNode;
+import com.github.rharri.wabbitj.closure.IntNode;
+import com.github.rharri.wabbitj.closure.StatementNode;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClosureCompilerTest {
+
+    private static ClosureProgram compile(String programText) {
+        AbstractSyntaxTree ast = new Parser(Tokenizer.tokenize(programText)).parse();
+        var typeChecker = new TypeChecker("test.wb", programText);
+        ast.accept(typeChecker);
+        return ClosureCompiler.compile(ast, typeChecker);
+    }
+
+    @Test
+    public void shouldSpecializeNodesByTypeAndConstantOperands() {
+        ClosureProgram program = compile("print (1 + 2) * 3; print 4 - (5 * 6); print -(1.5 / 2.5);");
+
+        assertThat(program.statements()).hasSize(3);
+
+        var first = (StatementNode.PrintInt) program.statements().get(0);
+        assertThat(first.expression()).isInstanceOf(IntNode.MultiplyConstant.class);
+        assertThat(first.expression().execute()).isEqualTo(9);
+
+        var second = (StatementNode.PrintInt) program.statements().get(1);
+        assertThat(second.expression()).isInstanceOf(IntNode.Subtract.class);
+        assertThat(second.expression().execute()).isEqualTo(-26);
+
+        // Unary minus takes the whole expression after it
+        var third = (StatementNode.PrintFloat) program.statements().get(2);
+        assertThat(third.expression()).isInstanceOf(FloatNode.Negate.class);
+        assertThat(third.expression().execute()).isEqualTo(-0.6f);
+    }
+
+    private static String run(ClosureProgram program) {
+        var out = new ByteArrayOutputStream();
+        program.run(new JavaRuntime(new PrintStream(out, true, StandardCharsets.UTF_8)));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldLoopOverLongLeftLeaningChains() {
+        ClosureProgram program = compile("print 0" + " + 1 * 2".repeat(100_000) + "; print (((1.5 - 1.0) - 1.0) - 1.0);");
+
+        var first = (StatementNode.PrintInt) program.statements().get(0);
+        assertThat(first.expression()).isInstanceOf(IntNode.Chain.class);
+        var second = (StatementNode.PrintFloat) program.statements().get(1);
+        assertThat(second.expression()).isInstanceOf(FloatNode.SubtractConstant.class);
+
+        assertThat(run(program)).isEqualTo("200000\n-1.5\n");
+    }
+
+    @Test
+    public void shouldInterpretStatementsNestedTooDeeplyToExecute() {
+        ClosureProgram program = compile("print " + "1 - (".repeat(100_000) + "1" + ")".repeat(100_000) + ";\n"
+                + "print " + "-".repeat(100_001) + "2.5;");
+
+        assertThat(program.statements()).allSatisfy(statement ->
+                assertThat(statement).isInstanceOf(StatementNode.Interpret.class));
+        assertThat(run(program)).isEqualTo("1\n-2.5\n");
+    }
+
+    @Test
+    public void shouldEvaluateAnExpressionOnItsOwn() {
+        String programText = "print 6 / (3 - 3);";
+        Program program = new Parser(Tokenizer.tokenize(programText)).parse();
+        var typeChecker = new TypeChecker("test.wb", programText);
+        program.accept(typeChecker);
+        Expression expression = ((Print) program.statements().statements().get(0)).expression();
+
+        ClosureProgram evaluated = ClosureCompiler.compile(expression, typeChecker);
+
+        assertThat(evaluated.statements()).singleElement().isInstanceOf(StatementNode.EvaluateInt.class);
+        assertThatThrownBy(() -> run(evaluated)).isInstanceOf(ArithmeticException.class);
+    }
+}
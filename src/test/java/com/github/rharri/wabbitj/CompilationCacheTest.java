@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.cache.CompilationCache;
+import com.github.rharri.wabbitj.cache.ProgramCodec;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompilationCacheTest {
+
+    private static final String PROGRAM = """
+            print 2147483647 + 1;
+            print -(7 / -2);
+            print +-0.0;
+            print (1.5 * 4.0) / 3.0;
+            """;
+
+    @TempDir
+    private Path directory;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private PrintStream originalOut = System.out;
+
+    @BeforeEach
+    public void captureOutput() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    public void restoreOutput() {
+        System.setOut(originalOut);
+    }
+
+    private static int wabbitj(String... args) {
+        return new CommandLine(new WabbitJ()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
+    }
+
+    private String takeOutput() {
+        String text = out.toString(StandardCharsets.UTF_8);
+        out.reset();
+        return text;
+    }
+
+    private static Program parse(String programText) {
+        return new Parser(new Tokenizer(programText)).parse();
+    }
+
+    private static List<Path> entries(Path cacheDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    public void shouldDecodeWhatItEncodes() {
+        Program program = parse(PROGRAM);
+
+        assertThat(ProgramCodec.decode(ProgramCodec.encode(program))).hasToString(program.toString());
+    }
+
+    @Test
+    public void shouldMissUntilAProgramIsStored() throws IOException {
+        var cache = new CompilationCache(directory, CompilationCache.DEFAULT_MAX_BYTES);
+        String key = CompilationCache.key(Source.of(PROGRAM), "1.0");
+
+        assertThat(cache.load(key)).isEmpty();
+
+        cache.store(key, parse(PROGRAM));
+
+        assertThat(cache.load(key)).map(Program::toString).contains(parse(PROGRAM).toString());
+    }
+
+    @Test
+    public void shouldKeyBySourceAndVersion() throws IOException {
+        String key = CompilationCache.key(Source.of(PROGRAM), "1.0");
+
+        assertThat(CompilationCache.key(Source.of(PROGRAM), "1.0")).isEqualTo(key);
+        assertThat(CompilationCache.key(Source.of(PROGRAM), "1.1")).isNotEqualTo(key);
+        assertThat(CompilationCache.key(Source.of(PROGRAM + "print 1;"), "1.0")).isNotEqualTo(key);
+    }
+
+    @Test
+    public void shouldTreatACorruptEntryAsAMiss() throws IOException {
+        var cache = new CompilationCache(directory, CompilationCache.DEFAULT_MAX_BYTES);
+        String key = CompilationCache.key(Source.of(PROGRAM), "1.0");
+        cache.store(key, parse(PROGRAM));
+
+        Path entry = entries(directory).get(0);
+        byte[] bytes = Files.readAllBytes(entry);
+        bytes[bytes.length - 2] ^= 1;
+        Files.write(entry, bytes);
+
+        assertThat(cache.load(key)).isEmpty();
+        assertThat(entry).doesNotExist();
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedPrograms() throws IOException {
+        var unbounded = new CompilationCache(directory, CompilationCache.DEFAULT_MAX_BYTES);
+        String first = CompilationCache.key(Source.of("print 1;"), "1.0");
+        String second = CompilationCache.key(Source.of("print 2;"), "1.0");
+        unbounded.store(first, parse("print 1;"));
+        unbounded.store(second, parse("print 2;"));
+
+        long entrySize = Files.size(entries(directory).get(0));
+        for (Path entry : entries(directory))
+            Files.setLastModifiedTime(entry, FileTime.from(Instant.now().minusSeconds(60)));
+        // A hit makes the first program the most recently used
+        assertThat(unbounded.load(first)).isPresent();
+
+        var bounded = new CompilationCache(directory, entrySize * 2);
+        String third = CompilationCache.key(Source.of("print 3;"), "1.0");
+        bounded.store(third, parse("print 3;"));
+
+        assertThat(bounded.load(first)).isPresent();
+        assertThat(bounded.load(second)).isEmpty();
+        assertThat(bounded.load(third)).isPresent();
+    }
+
+    @Test
+    public void shouldRunTheSameProgramFromTheCache() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+        Path cacheDirectory = directory.resolve("cache");
+
+        assertThat(wabbitj(file.toString())).isZero();
+        String uncached = takeOutput();
+
+        assertThat(wabbitj("--cache", "--cache-dir=" + cacheDirectory, file.toString())).isZero();
+        assertThat(takeOutput()).isEqualTo(uncached);
+        assertThat(entries(cacheDirectory)).hasSize(1);
+
+        for (String engine : List.of("interpreter", "vm", "jit", "closure")) {
+            assertThat(wabbitj("--cache", "--cache-dir=" + cacheDirectory, "--engine=" + engine, file.toString()))
+                    .isZero();
+            assertThat(takeOutput()).as(engine).isEqualTo(uncached);
+        }
+    }
+
+    @Test
+    public void shouldNotCacheAProgramWithTypeErrors() throws IOException {
+        Path file = Files.writeString(directory.resolve("bad.wb"), "print 1 + 2.0;\n");
+        Path cacheDirectory = directory.resolve("cache");
+
+        assertThat(wabbitj("--cache", "--cache-dir=" + cacheDirectory, file.toString())).isEqualTo(1);
+
+        assertThat(takeOutput()).contains("Type Error");
+        assertThat(cacheDirectory).doesNotExist();
+    }
+}
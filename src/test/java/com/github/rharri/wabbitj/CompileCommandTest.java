@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompileCommandTest {
+
+    private static final String PROGRAM = """
+            print 2147483647 + 1;
+            print 7 / -2;
+            print +-0.0;
+            print 0.1 + 0.2;
+            print (1.5 * 4.0) / 3.0;
+            """;
+
+    @TempDir
+    private Path directory;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private PrintStream originalOut = System.out;
+
+    @BeforeEach
+    public void captureOutput() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    public void restoreOutput() {
+        System.setOut(originalOut);
+    }
+
+    private static int wabbitj(String... args) {
+        return new CommandLine(new WabbitJ()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
+    }
+
+    private String takeOutput() {
+        String text = out.toString(StandardCharsets.UTF_8);
+        out.reset();
+        return text;
+    }
+
+    private static String runJar(Path jar) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(List.of(java, "-jar", jar.toString()))
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(process.waitFor()).as(output).isZero();
+        return output;
+    }
+
+    @Test
+    public void shouldWriteAJarThatPrintsWhatTheInterpreterPrints() throws IOException, InterruptedException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+
+        assertThat(wabbitj(file.toString())).isZero();
+        String interpreted = takeOutput();
+
+        assertThat(wabbitj("compile", "--runs=0", file.toString())).isZero();
+        Path jar = directory.resolve("program.jar");
+        assertThat(takeOutput()).isEqualTo("Wrote " + jar + System.lineSeparator());
+
+        assertThat(runJar(jar)).isEqualTo(interpreted);
+
+        // Only the runtime goes into the jar
+        try (var jarFile = new JarFile(jar.toFile())) {
+            List<String> names = jarFile.stream().map(JarEntry::getName).toList();
+            assertThat(names).contains("com/github/rharri/wabbitj/jvm/WabbitProgram.class",
+                    "com/github/rharri/wabbitj/interpreter/JavaRuntime.class");
+            assertThat(names).noneMatch(name -> name.contains("/tokenizer/") || name.contains("Parser")
+                    || name.contains("TypeChecker") || name.contains("picocli"));
+        }
+    }
+
+    @Test
+    public void shouldCompareTheLatencyOfBothWaysOfRunning() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+        Path jar = directory.resolve("out.jar");
+
+        assertThat(wabbitj("compile", "--runs=1", "-o", jar.toString(), file.toString())).isZero();
+
+        assertThat(takeOutput()).containsPattern("wabbitj program.wb: \\d+\\.\\d ms \\(median of 1 runs\\)")
+                .containsPattern("java -jar out.jar: \\d+\\.\\d ms \\(median of 1 runs\\)")
+                .containsPattern("Saved per run: -?\\d+\\.\\d ms");
+        assertThat(jar).exists();
+    }
+
+    @Test
+    public void shouldCompareTheLatencyOfAProgramThatDividesByZero() throws IOException {
+        Path file = Files.writeString(directory.resolve("div.wb"), "print 1;\nprint 1 / 0;\n");
+        Path jar = directory.resolve("div.jar");
+
+        assertThat(wabbitj("compile", "--runs=1", file.toString())).isZero();
+
+        assertThat(takeOutput()).startsWith("Wrote " + jar + System.lineSeparator())
+                .containsPattern("java -jar div.jar: \\d+\\.\\d ms \\(median of 1 runs\\)");
+        assertThat(jar).exists();
+    }
+
+    @Test
+    public void shouldWriteCSourceForTheCTarget() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+
+        assertThat(wabbitj("compile", "--target=c", file.toString())).isZero();
+
+        Path source = directory.resolve("program.c");
+        assertThat(takeOutput()).isEqualTo("Wrote " + source + System.lineSeparator());
+        assertThat(Files.readString(source)).contains("int main(void)");
+        assertThat(directory.resolve("program.jar")).doesNotExist();
+    }
+
+    @Test
+    public void shouldWriteLlvmIrAndItsRuntimeForTheLlvmTarget() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+
+        assertThat(wabbitj("compile", "--target=llvm", file.toString())).isZero();
+
+        Path module = directory.resolve("program.ll");
+        Path runtime = directory.resolve("wabbit_runtime.c");
+        assertThat(takeOutput()).isEqualTo("Wrote " + module + " and " + runtime + System.lineSeparator());
+        assertThat(Files.readString(module)).contains("define i32 @main()");
+        assertThat(Files.readString(runtime)).contains("#define WB_FUNCTION\n");
+    }
+
+    @Test
+    public void shouldNotCompileAProgramWithTypeErrors() throws IOException {
+        Path file = Files.writeString(directory.resolve("bad.wb"), "print 1 + 2.0;\n");
+
+        assertThat(wabbitj("compile", "--runs=0", file.toString())).isEqualTo(1);
+
+        assertThat(takeOutput()).contains("File 'bad.wb', line 1, col 9").contains("Type Error");
+        assertThat(directory.resolve("bad.jar")).doesNotExist();
+    }
+
+    @Test
+    public void shouldStillNeedAFileWithoutASubcommand() {
+        assertThat(wabbitj()).isEqualTo(2);
+    }
+}
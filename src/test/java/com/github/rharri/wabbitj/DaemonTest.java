@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.daemon.Daemon;
+import com.github.rharri.wabbitj.daemon.DaemonClient;
+import com.github.rharri.wabbitj.daemon.Request;
+import com.github.rharri.wabbitj.daemon.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DaemonTest {
+
+    private static final String PROGRAM = """
+            print 2147483647 + 1;
+            print 7 / -2;
+            print +-0.0;
+            print 0.1 + 0.2;
+            print (1.5 * 4.0) / 3.0;
+            """;
+
+    @TempDir
+    private Path directory;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private PrintStream originalOut = System.out;
+    private Daemon daemon;
+    private Thread serving;
+
+    @BeforeEach
+    public void startDaemon() throws IOException {
+        originalOut = System.out;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+
+        daemon = Daemon.bind(directory.resolve("wabbitj.sock"), ServeCommand::run,
+                new PrintStream(log, true, StandardCharsets.UTF_8), 2);
+        serving = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        serving.start();
+    }
+
+    @AfterEach
+    public void stopDaemon() throws IOException, InterruptedException {
+        daemon.close();
+        serving.join();
+        System.setOut(originalOut);
+    }
+
+    private static int wabbitj(String... args) {
+        return new CommandLine(new WabbitJ()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
+    }
+
+    private String takeOutput() {
+        String text = out.toString(StandardCharsets.UTF_8);
+        out.reset();
+        return text;
+    }
+
+    @Test
+    public void shouldPrintWhatARunHerePrints() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+
+        for (String engine : List.of("interpreter", "vm", "jit", "closure")) {
+            assertThat(wabbitj("--engine=" + engine, file.toString())).isZero();
+            String local = takeOutput();
+
+            assertThat(wabbitj("--daemon", "--socket=" + daemon.socket(), "--engine=" + engine, file.toString()))
+                    .isZero();
+            assertThat(takeOutput()).as(engine).isEqualTo(local);
+        }
+        assertThat(log.toString(StandardCharsets.UTF_8))
+                .containsPattern(".*program\\.wb: \\d+\\.\\d ms, exit code 0");
+    }
+
+    @Test
+    public void shouldSendEveryOptionThatChangesTheRun() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+        Path cache = directory.resolve("cache");
+
+        assertThat(wabbitj("--engine=vm", file.toString())).isZero();
+        String local = takeOutput();
+
+        assertThat(wabbitj("--daemon", "--socket=" + daemon.socket(), "--engine=vm", "--cache",
+                "--cache-dir=" + cache, "--parallel-frontend", "--frontend-threads=2", "--flush=size:64",
+                file.toString())).isZero();
+
+        assertThat(takeOutput()).isEqualTo(local);
+        // The daemon checked the program and kept it in the cache that was asked for
+        try (var entries = Files.list(cache)) {
+            assertThat(entries).isNotEmpty();
+        }
+    }
+
+    @Test
+    public void shouldPrintTheDaemonsMessagesToTheGivenStreams() {
+        var given = new ByteArrayOutputStream();
+        var command = new ServeCommand(new PrintStream(given, true, StandardCharsets.UTF_8), System.err);
+
+        assertThat(new CommandLine(command).execute("--max-runs=0")).isEqualTo(1);
+
+        assertThat(given.toString(StandardCharsets.UTF_8)).isEqualTo("max-runs must be >= 1." + System.lineSeparator());
+        assertThat(takeOutput()).isEmpty();
+    }
+
+    @Test
+    public void shouldRunSourceSentAsText() throws IOException {
+        Path file = Files.writeString(directory.resolve("bad.wb"), "print 1 + 2.0;\n");
+
+        assertThat(wabbitj("--daemon", "--socket=" + daemon.socket(), "--send-source", file.toString())).isEqualTo(1);
+
+        assertThat(takeOutput()).contains("File 'bad.wb', line 1, col 9").contains("Type Error");
+    }
+
+    @Test
+    public void shouldReturnTheExitCodeAndErrorsOfAFailedRun() throws IOException {
+        Response response = DaemonClient.send(daemon.socket(),
+                new Request(List.of(), directory.resolve("zero.wb").toString(), "print 1;\nprint 1 / 0;\n"));
+
+        assertThat(response.exitCode()).isEqualTo(1);
+        assertThat(response.out()).isEqualTo("1\n");
+        assertThat(response.err()).contains("java.lang.ArithmeticException: / by zero");
+    }
+
+    @Test
+    public void shouldNotSendARunBackToTheDaemon() throws IOException {
+        Response response = DaemonClient.send(daemon.socket(),
+                new Request(List.of("--daemon"), directory.resolve("program.wb").toString(), PROGRAM));
+
+        assertThat(response.exitCode()).isEqualTo(2);
+        assertThat(response.err()).contains("--daemon cannot be sent to the daemon.");
+    }
+
+    @Test
+    public void shouldRunManyRequestsAtOnce() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Response>> responses = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                String text = "print " + i + " * 2;\n";
+                responses.add(clients.submit(() -> DaemonClient.send(daemon.socket(),
+                        new Request(List.of("--engine=vm"), directory.resolve("program.wb").toString(), text))));
+            }
+
+            for (int i = 0; i < responses.size(); i++)
+                assertThat(responses.get(i).get().out()).isEqualTo(i * 2 + "\n");
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldReportADaemonThatIsNotRunning() throws IOException {
+        Path file = Files.writeString(directory.resolve("program.wb"), PROGRAM);
+
+        assertThat(wabbitj("--daemon", "--socket=" + directory.resolve("missing.sock"), file.toString()))
+                .isEqualTo(1);
+
+        assertThat(takeOutput()).startsWith("Cannot run " + file + " on the daemon at ");
+    }
+}
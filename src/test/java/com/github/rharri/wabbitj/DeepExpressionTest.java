@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.interpreter.Interpreter;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Machine-generated programs can nest far deeper than any thread's stack allows recursion
+public class DeepExpressionTest {
+
+    private static final int DEPTH = 1_000_000;
+
+    private static Program parse(String programText) {
+        return new Parser(new Tokenizer(programText)).parse();
+    }
+
+    private static TypeChecker check(Program program, String programText) {
+        var typeChecker = new TypeChecker("deep.wb", programText);
+        program.accept(typeChecker);
+        return typeChecker;
+    }
+
+    private static String run(String programText) {
+        Program program = parse(programText);
+        assertThat(check(program, programText).getDiagnostics()).isEmpty();
+
+        var out = new ByteArrayOutputStream();
+        program.accept(new Interpreter(new JavaRuntime(new PrintStream(out, true, StandardCharsets.UTF_8))));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldRunDeeplyNestedParentheses() {
+        assertThat(run("print " + "(".repeat(DEPTH) + "2.5" + ")".repeat(DEPTH) + ";")).isEqualTo("2.5\n");
+    }
+
+    @Test
+    public void shouldRunLongChainsOfUnaryOperators() {
+        assertThat(run("print " + "-".repeat(DEPTH) + "7;")).isEqualTo("7\n");
+        // Each +- pair takes the absolute value of the negation
+        assertThat(run("print " + "+-".repeat(DEPTH / 2) + "7;")).isEqualTo("7\n");
+    }
+
+    @Test
+    public void shouldRunDeeplyNestedOperands() {
+        // 1 - (1 - (1 - ... (1 - 1))), which alternates between 0 and 1
+        assertThat(run("print " + "1 - (".repeat(DEPTH) + "1" + ")".repeat(DEPTH) + ";")).isEqualTo("1\n");
+        // ((((1 + 1) + 1) + 1) ... + 1)
+        assertThat(run("print 0" + " + 1".repeat(DEPTH) + ";")).isEqualTo(DEPTH + "\n");
+    }
+
+    @Test
+    public void shouldReportATypeErrorDeepInsideAnExpression() {
+        String programText = "print " + "(".repeat(DEPTH) + "1 + 2.0" + ")".repeat(DEPTH) + ";";
+        TypeChecker typeChecker = check(parse(programText), programText);
+
+        assertThat(typeChecker.getDiagnostics()).singleElement()
+                .satisfies(diagnostic -> assertThat(diagnostic.column()).isEqualTo(DEPTH + 9));
+    }
+
+    @Test
+    public void shouldRecoverFromAnErrorInTheMiddleOfAnExpression() {
+        var out = new ByteArrayOutputStream();
+        var interpreter = new Interpreter(new JavaRuntime(new PrintStream(out, true, StandardCharsets.UTF_8)));
+
+        assertThatThrownBy(() -> parse("print (1 + (2 / (3 - 3)) * 4);").accept(interpreter))
+                .isInstanceOf(ArithmeticException.class);
+        parse("print 5;").accept(interpreter);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("5\n");
+    }
+
+    @Test
+    public void shouldReportAMissingParenthesisAtAnyDepth() {
+        assertThatThrownBy(() -> parse("print " + "(".repeat(DEPTH) + "1" + ")".repeat(DEPTH - 1) + ";"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected RPAREN. Got SEMI.");
+    }
+}
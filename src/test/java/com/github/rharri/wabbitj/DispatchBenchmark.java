@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.interpreter.Interpreter;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import com.github.rharri.wabbitj.tokenizer.TokenBuffer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+// Compares the interpreter with a tree-walking interpreter that dispatches operators through a map of functions over
+// boxed operands, as the runtime used to, both running the same program over and over. Run with:
+// mvn test -Pbench -Dtest=DispatchBenchmark
+@Tag("benchmark")
+public class DispatchBenchmark {
+
+    private static final int STATEMENTS = 50;
+    private static final int OPERATORS_PER_STATEMENT = 400;
+    private static final int ROUNDS = 2_000;
+
+    private static final Map<Operator, BiFunction<Object, Object, Object>> BOXED = new EnumMap<>(Operator.class);
+
+    static {
+        BOXED.put(Operator.PLUS, (lhs, rhs) -> lhs instanceof Integer ? (Object) ((int) lhs + (int) rhs)
+                : (Object) ((float) lhs + (float) rhs));
+        BOXED.put(Operator.MINUS, (lhs, rhs) -> lhs instanceof Integer ? (Object) ((int) lhs - (int) rhs)
+                : (Object) ((float) lhs - (float) rhs));
+        BOXED.put(Operator.TIMES, (lhs, rhs) -> lhs instanceof Integer ? (Object) ((int) lhs * (int) rhs)
+                : (Object) ((float) lhs * (float) rhs));
+        BOXED.put(Operator.DIVIDE, (lhs, rhs) -> lhs instanceof Integer ? (Object) ((int) lhs / (int) rhs)
+                : (Object) ((float) lhs / (float) rhs));
+    }
+
+    // The interpreter as it was: recursive, with every operand boxed and every operator looked up in BOXED
+    private static final class BoxedInterpreter implements NodeVisitor {
+        private final Deque<Object> stack = new ArrayDeque<>();
+        private final EngineBenchmark.DiscardingRuntime runtime;
+
+        BoxedInterpreter(EngineBenchmark.DiscardingRuntime runtime) {
+            this.runtime = runtime;
+        }
+
+        @Override
+        public void visitProgram(Program program) {
+            program.statements().accept(this);
+        }
+
+        @Override
+        public void visitStatements(Statements statements) {
+            for (AbstractSyntaxTree statement : statements.statements())
+                statement.accept(this);
+        }
+
+        @Override
+        public void visitPrint(Print print) {
+            print.expression().accept(this);
+            Object value = stack.pop();
+            if (value instanceof Integer integer)
+                runtime.println((int) integer);
+            else
+                runtime.println((float) value);
+        }
+
+        @Override
+        public void visitIntLiteral(IntLiteral intLiteral) {
+            stack.push(intLiteral.value());
+        }
+
+        @Override
+        public void visitFloatLiteral(FloatLiteral floatLiteral) {
+            stack.push(floatLiteral.value());
+        }
+
+        @Override
+        public void visitBinaryOp(BinaryOp binaryOp) {
+            binaryOp.lhs().accept(this);
+            binaryOp.rhs().accept(this);
+            Object rhs = stack.pop();
+            Object lhs = stack.pop();
+            stack.push(BOXED.get(binaryOp.operator()).apply(lhs, rhs));
+        }
+
+        @Override
+        public void visitUnaryOp(UnaryOp unaryOp) {
+            unaryOp.operand().accept(this);
+            Object operand = stack.pop();
+            boolean minus = unaryOp.operator() == Operator.MINUS;
+            if (operand instanceof Integer integer)
+                stack.push(minus ? JavaRuntime.minus((int) integer) : JavaRuntime.plus((int) integer));
+            else
+                stack.push(minus ? JavaRuntime.minus((float) operand) : JavaRuntime.plus((float) operand));
+        }
+
+        @Override
+        public void visitGrouping(Grouping grouping) {
+            grouping.expression().accept(this);
+        }
+    }
+
+    @Test
+    public void compareBoxedAndTypedDispatch() {
+        String programText = EngineBenchmark.arithmeticProgram(STATEMENTS, OPERATORS_PER_STATEMENT);
+        AbstractSyntaxTree ast = new Parser(TokenBuffer.tokenize(Source.of(programText))).parse();
+
+        var runtime = new EngineBenchmark.DiscardingRuntime();
+        var boxed = new BoxedInterpreter(runtime);
+        var typed = new Interpreter(runtime);
+        long operations = (long) STATEMENTS * OPERATORS_PER_STATEMENT;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            ast.accept(boxed);
+            long boxedTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ast.accept(typed);
+            long typedTime = System.nanoTime() - start;
+
+            if (round % 200 == 199)
+                System.out.printf("boxed: %.2f ns/op, typed: %.2f ns/op (%d)%n",
+                        (double) boxedTime / operations, (double) typedTime / operations, runtime.checksum);
+        }
+    }
+}
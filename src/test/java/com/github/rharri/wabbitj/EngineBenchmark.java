@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.AbstractSyntaxTree;
+import com.github.rharri.wabbitj.closure.ClosureCompiler;
+import com.github.rharri.wabbitj.closure.ClosureProgram;
+import com.github.rharri.wabbitj.interpreter.Interpreter;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.jvm.JitProgram;
+import com.github.rharri.wabbitj.jvm.JvmCompiler;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import com.github.rharri.wabbitj.tokenizer.TokenBuffer;
+import com.github.rharri.wabbitj.vm.Bytecode;
+import com.github.rharri.wabbitj.vm.BytecodeCompiler;
+import com.github.rharri.wabbitj.vm.VirtualMachine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+// Execution throughput of each engine running an arithmetic-heavy program over and over, as an embedding would,
+// excluding parsing and type checking. Run with: mvn test -Pbench -Dtest=EngineBenchmark
+@Tag("benchmark")
+public class EngineBenchmark {
+
+    private static final int STATEMENTS = 50;
+    private static final int OPERATORS_PER_STATEMENT = 400;
+    private static final int ROUNDS = 2_000;
+
+    static String arithmeticProgram(int statements, int operatorsPerStatement) {
+        var random = new Random(42);
+        var programText = new StringBuilder();
+        String[] operators = {" + ", " - ", " * ", " / "};
+
+        for (int statement = 0; statement < statements; statement++) {
+            boolean isFloat = statement % 2 == 1;
+            programText.append("print ");
+            for (int operand = 0; operand <= operatorsPerStatement; operand++) {
+                // Integer division could divide by zero
+                if (operand > 0)
+                    programText.append(operators[random.nextInt(isFloat ? 4 : 3)]);
+
+                // Parenthesize pairs so the trees are not a single left-leaning spine
+                if (operand % 4 == 0 && operand < operatorsPerStatement)
+                    programText.append('(');
+                programText.append(isFloat ? (1 + random.nextInt(9)) + ".5" : Integer.toString(1 + random.nextInt(9)));
+                if (operand % 4 == 1)
+                    programText.append(')');
+            }
+            programText.append(";\n");
+        }
+        return programText.toString();
+    }
+
+    // Consumes printed values without formatting them, so the engines' own work is what gets measured
+    static final class DiscardingRuntime extends JavaRuntime {
+        long checksum;
+
+        DiscardingRuntime() {
+            super(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        @Override
+        public void println(int value) {
+            checksum += value;
+        }
+
+        @Override
+        public void println(float value) {
+            checksum += Float.floatToRawIntBits(value);
+        }
+    }
+
+    @Test
+    public void compareEngines() {
+        String programText = arithmeticProgram(STATEMENTS, OPERATORS_PER_STATEMENT);
+        Source source = Source.of(programText);
+        AbstractSyntaxTree ast = new Parser(TokenBuffer.tokenize(source)).parse();
+        var typeChecker = new TypeChecker("bench.wb", source);
+        ast.accept(typeChecker);
+
+        var runtime = new DiscardingRuntime();
+        Bytecode bytecode = BytecodeCompiler.compile(ast, typeChecker);
+        JitProgram program = JvmCompiler.compile(ast, typeChecker).orElseThrow();
+        ClosureProgram closures = ClosureCompiler.compile(ast, typeChecker);
+        var interpreter = new Interpreter(runtime);
+        long operations = (long) STATEMENTS * OPERATORS_PER_STATEMENT;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            ast.accept(interpreter);
+            long interpreterTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new VirtualMachine(runtime).run(bytecode);
+            long vmTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            program.run(runtime);
+            long jitTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            closures.run(runtime);
+            long closureTime = System.nanoTime() - start;
+
+            if (round % 200 == 199)
+                    System.out.printf("interpreter: %.2f ns/op, vm: %.2f ns/op, jit: %.2f ns/op, closure: %.2f ns/op"
+                                + " (%d)%n",
+                        (double) interpreterTime / operations, (double) vmTime / operations,
+                        (double) jitTime / operations, (double) closureTime / operations, runtime.checksum);
+        }
+    }
+}
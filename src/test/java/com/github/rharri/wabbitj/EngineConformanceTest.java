@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.closure.ClosureCompiler;
+import com.github.rharri.wabbitj.interpreter.Interpreter;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.jvm.JitProgram;
+import com.github.rharri.wabbitj.jvm.JvmCompiler;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import com.github.rharri.wabbitj.vm.BytecodeCompiler;
+import com.github.rharri.wabbitj.vm.VirtualMachine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Every engine must print exactly what the tree-walking interpreter prints
+public class EngineConformanceTest {
+
+    private static final String EDGE_CASES = """
+            print 2147483647 + 1;
+            print (0 - 2147483647 - 1) / -1;
+            print 7 / -2;
+            print -7 * 3;
+            print +-0.0;
+            print -0.0;
+            print 1.0 / 0.0;
+            print 0.0 / 0.0;
+            print .1 + .2;
+            print 100000 * 100000;
+            print 340282350000000000000000000000000000000.0 * 10.0;
+            print 0.0000000000000000000000000000000000000000000014 / 2.0;
+            """;
+
+    record Engine(String name, BiConsumer<Checked, JavaRuntime> run) {
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    record Checked(AbstractSyntaxTree ast, TypeChecker typeChecker) {
+    }
+
+    private static final List<Engine> ENGINES = List.of(
+            new Engine("closure", (checked, runtime) -> ClosureCompiler.compile(checked.ast(), checked.typeChecker())
+                    .run(runtime)),
+            new Engine("vm", (checked, runtime) -> new VirtualMachine(runtime)
+                    .run(BytecodeCompiler.compile(checked.ast(), checked.typeChecker()))),
+            new Engine("jit", (checked, runtime) -> JvmCompiler.compile(checked.ast(), checked.typeChecker())
+                    .orElseThrow()
+                    .run(runtime)));
+
+    static Stream<Path> examples() throws IOException {
+        List<Path> examples;
+        try (Stream<Path> files = Files.list(Path.of("examples"))) {
+            examples = files.filter(path -> path.toString().endsWith(".wb")).sorted().toList();
+        }
+        assertThat(examples).isNotEmpty();
+        return examples.stream();
+    }
+
+    private static Checked check(AbstractSyntaxTree ast, String programText) {
+        var typeChecker = new TypeChecker("test.wb", programText);
+        ast.accept(typeChecker);
+        return new Checked(ast, typeChecker);
+    }
+
+    private static Checked check(String programText) {
+        return check(new Parser(Tokenizer.tokenize(programText)).parse(), programText);
+    }
+
+    private static String run(BiConsumer<Checked, JavaRuntime> engine, Checked checked) {
+        var out = new ByteArrayOutputStream();
+        engine.accept(checked, new JavaRuntime(new PrintStream(out, true, StandardCharsets.UTF_8)));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String interpret(Checked checked) {
+        return run((program, runtime) -> program.ast().accept(new Interpreter(runtime)), checked);
+    }
+
+    private static void assertConforms(Checked checked, String name) {
+        String expected = interpret(checked);
+        for (Engine engine : ENGINES)
+            assertThat(run(engine.run(), checked)).as(engine + " on " + name).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
+    public void shouldPrintWhatTheInterpreterPrintsForEveryExample(Path example) throws IOException {
+        Checked checked = check(Files.readString(example));
+
+        // Examples that are meant to fail type checking are never run
+        if (checked.typeChecker().getDiagnostics().isEmpty())
+            assertConforms(checked, example.toString());
+    }
+
+    @Test
+    public void shouldAgreeOnOverflowDivisionAndFloatEdgeCases() {
+        assertConforms(check(EDGE_CASES), "edge cases");
+    }
+
+    @Test
+    public void shouldAgreeOnProgramsWithManyConstants() {
+        // More constants than an ldc instruction can index, and enough statements to span several methods
+        var programText = new StringBuilder();
+        for (int i = 0; i < 6_000; i++) {
+            programText.append("print ").append(100_000 + i).append(" - ").append(i).append(";\n");
+            programText.append("print ").append(i).append(".25 * 1.5;\n");
+        }
+
+        assertConforms(check(programText.toString()), "many constants");
+    }
+
+    @Test
+    public void shouldAgreeOnLongAndDeeplyNestedExpressions() {
+        // Every engine walks expressions without recursion; the JIT only up to what fits in a method
+        assertConforms(check("print 0" + " + 1".repeat(10_000) + ";\n"
+                + "print " + "1 - (".repeat(10_000) + "1" + ")".repeat(10_000) + ";\n"
+                + "print " + "(".repeat(10_000) + "-".repeat(10_001) + "0.5" + ")".repeat(10_000) + ";\n"
+                + "print 1.0" + " * 1.5 / 1.5".repeat(5_000) + ";\n"), "deep expressions");
+    }
+
+    @Test
+    public void shouldCompileLongAndDeeplyNestedExpressionsToJvmCode() {
+        // Deeper than the compiler could recurse, but still within a method's 64 KB of code
+        Checked checked = check("print 0" + " + 1".repeat(10_000) + ";\n"
+                + "print " + "1 - (".repeat(10_000) + "1" + ")".repeat(10_000) + ";\n");
+
+        Optional<JitProgram> program = JvmCompiler.compile(checked.ast(), checked.typeChecker());
+        assertThat(program).isPresent();
+        assertThat(run((unused, runtime) -> program.get().run(runtime), checked)).isEqualTo("10000\n1\n");
+    }
+
+    @Test
+    public void shouldNotCompileAStatementTooLargeForAMethod() {
+        // 2^15 literals and 2^15 - 1 additions need more than 64 KB of code in a single method
+        var statements = new Statements();
+        statements.add(new Print(balancedSum(15)));
+        Checked checked = check(new Program(statements), "print 1;");
+
+        assertThat(JvmCompiler.compile(checked.ast(), checked.typeChecker())).isEmpty();
+        assertThat(interpret(checked)).isEqualTo("32768\n");
+    }
+
+    private static Expression balancedSum(int depth) {
+        if (depth == 0)
+            return new IntLiteral(1, 1, 1);
+
+        return new BinaryOp(Operator.PLUS, balancedSum(depth - 1), balancedSum(depth - 1), 1, 1);
+    }
+
+    @Test
+    public void shouldUnloadCompiledProgramsThatAreNoLongerUsed() throws InterruptedException {
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        long unloaded = classLoading.getUnloadedClassCount();
+
+        compileRunAndForget();
+
+        // The hidden class has no strong reference from any class loader, so a full collection can unload it
+        for (int attempt = 0; attempt < 20 && classLoading.getUnloadedClassCount() == unloaded; attempt++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        assertThat(classLoading.getUnloadedClassCount()).isGreaterThan(unloaded);
+    }
+
+    private static void compileRunAndForget() {
+        Checked checked = check("print 1 + 2;");
+        Optional<JitProgram> program = JvmCompiler.compile(checked.ast(), checked.typeChecker());
+        assertThat(program).isPresent();
+        assertThat(run((unused, runtime) -> program.get().run(runtime), checked)).isEqualTo("3\n");
+    }
+}
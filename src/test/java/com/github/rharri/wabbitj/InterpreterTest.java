@@ -25,13 +25,18 @@ package com.github.rharri.wabbitj;
 import com.github.rharri.wabbitj.ast.*;
 import com.github.rharri.wabbitj.interpreter.Interpreter;
 import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class InterpreterTest {
 
@@ -198,4 +203,114 @@ public class InterpreterTest {
         // Assert on the underlying byte[] stream
         assertEquals("20", streamOutputPrintable.out.toString().trim());
     }
+
+    @Test
+    public void shouldKeepTheOperandOrderOfNestedSubtractionAndDivision() {
+        // print 5 - 3; print 10 - (5 - 3); print 12 / (6 / 2);
+        var statements = new Statements();
+        statements.add(new Print(new BinaryOp(Operator.MINUS, new IntLiteral(5, 1, 1), new IntLiteral(3, 1, 1), 1, 1)));
+        var difference = new BinaryOp(Operator.MINUS, new IntLiteral(5, 1, 1), new IntLiteral(3, 1, 1), 1, 1);
+        var ten = new IntLiteral(10, 1, 1);
+        statements.add(new Print(new BinaryOp(Operator.MINUS, ten, new Grouping(difference), 1, 1)));
+        var quotient = new BinaryOp(Operator.DIVIDE, new IntLiteral(6, 1, 1), new IntLiteral(2, 1, 1), 1, 1);
+        var twelve = new IntLiteral(12, 1, 1);
+        statements.add(new Print(new BinaryOp(Operator.DIVIDE, twelve, new Grouping(quotient), 1, 1)));
+        var program = new Program(statements);
+
+        OutputPrintable streamOutputPrintable = printableByteArrayStream();
+        var runtime = new JavaRuntime(streamOutputPrintable.printable);
+        program.accept(new Interpreter(runtime));
+
+        // The boxed stack appended results at the wrong end, so a nested result became the left operand: -8 and 0
+        assertEquals("2\n8\n4", streamOutputPrintable.out.toString().trim().replace("\r", ""));
+    }
+
+    @Test
+    public void shouldPrintMixedUnaryAndFloatExpression() {
+        // print -(1.5 * +(-2.0)) + 0.25;
+        var unaryPlus = new UnaryOp(Operator.PLUS, new FloatLiteral(-2.0f, 1, 1));
+        var binaryOp1 = new BinaryOp(Operator.TIMES, new FloatLiteral(1.5f, 1, 1), unaryPlus, 1, 1);
+        var unaryMinus = new UnaryOp(Operator.MINUS, new Grouping(binaryOp1));
+        var binaryOp2 = new BinaryOp(Operator.PLUS, unaryMinus, new FloatLiteral(0.25f, 1, 1), 1, 1);
+        var statements = new Statements();
+        statements.add(new Print(binaryOp2));
+        statements.add(new Print(new UnaryOp(Operator.MINUS, new IntLiteral(Integer.MIN_VALUE, 1, 1))));
+        var program = new Program(statements);
+
+        OutputPrintable streamOutputPrintable = printableByteArrayStream();
+        var runtime = new JavaRuntime(streamOutputPrintable.printable);
+        program.accept(new Interpreter(runtime));
+
+        assertEquals("-2.75\n-2147483648", streamOutputPrintable.out.toString().trim().replace("\r", ""));
+    }
+
+    @Test
+    public void shouldRunAProgramAgain() {
+        var program = new Parser(Tokenizer.tokenize("print 7 / -2; print 1.5 * +-2.0;")).parse();
+
+        OutputPrintable streamOutputPrintable = printableByteArrayStream();
+        var interpreter = new Interpreter(new JavaRuntime(streamOutputPrintable.printable));
+        program.accept(interpreter);
+        program.accept(interpreter);
+
+        assertEquals("-3\n3.0\n-3\n3.0", streamOutputPrintable.out.toString().trim().replace("\r", ""));
+    }
+
+    @Test
+    public void shouldRejectOperandsOfDifferentTypesAfterTheFirstLine() {
+        var program = new Parser(Tokenizer.tokenize("print 1;\nprint 2;\nprint 3 * (4 - 5.0);\nprint 6;")).parse();
+
+        OutputPrintable streamOutputPrintable = printableByteArrayStream();
+        var interpreter = new Interpreter(new JavaRuntime(streamOutputPrintable.printable));
+
+        var exception = assertThrows(IllegalArgumentException.class, () -> program.accept(interpreter));
+        assertEquals("Cannot perform operation with provided operands.", exception.getMessage());
+        assertEquals("1\n2", streamOutputPrintable.out.toString().trim().replace("\r", ""));
+    }
+
+    @Test
+    public void shouldRejectOperandsOfDifferentTypes() {
+        // print 1 + 2.0;
+        var statements = new Statements();
+        statements.add(new Print(new BinaryOp(Operator.PLUS, new IntLiteral(1, 1, 1), new FloatLiteral(2.0f, 1, 1), 1, 1)));
+        var program = new Program(statements);
+
+        OutputPrintable streamOutputPrintable = printableByteArrayStream();
+        var interpreter = new Interpreter(new JavaRuntime(streamOutputPrintable.printable));
+
+        var exception = assertThrows(IllegalArgumentException.class, () -> program.accept(interpreter));
+        assertEquals("Cannot perform operation with provided operands.", exception.getMessage());
+        assertEquals("", streamOutputPrintable.out.toString());
+    }
+
+    @Test
+    public void shouldEvaluateArithmeticWithoutAllocating() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        // A balanced tree of 2^14 literals; evaluating it boxed would allocate well over a megabyte
+        Expression expression = balancedSum(14);
+        var statements = new Statements();
+        statements.add(new Print(expression));
+        var program = new Program(statements);
+
+        var runtime = new JavaRuntime(new PrintStream(OutputStream.nullOutputStream()));
+        var interpreter = new Interpreter(runtime);
+        program.accept(interpreter);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        program.accept(interpreter);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // Only printing the result allocates
+        assertTrue(allocated < 4096, "allocated " + allocated + " bytes");
+    }
+
+    private static Expression balancedSum(int depth) {
+        if (depth == 0)
+            return new FloatLiteral(0.5f, 1, 1);
+
+        var operator = depth % 2 == 0 ? Operator.PLUS : Operator.TIMES;
+        return new BinaryOp(operator, balancedSum(depth - 1), balancedSum(depth - 1), 1, 1);
+    }
 }
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.AbstractSyntaxTree;
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.interpreter.Interpreter;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.llvm.LlvmGenerator;
+import com.github.rharri.wabbitj.optimizer.PassManager;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// The structure of the generated IR is checked without LLVM. Tests that build it with clang are skipped when clang is
+// not on the path.
+public class LlvmGeneratorTest {
+
+    private static final Pattern DEFINITION = Pattern.compile("^ {2}(%t\\d+) = ");
+    private static final Pattern TEMPORARY = Pattern.compile("%t\\d+");
+
+    private static boolean clangFound;
+
+    @TempDir
+    private Path directory;
+
+    @BeforeAll
+    public static void findClang() {
+        try {
+            Process process = new ProcessBuilder(List.of("clang", "--version")).redirectErrorStream(true).start();
+            process.getInputStream().readAllBytes();
+            clangFound = process.waitFor() == 0;
+        } catch (IOException e) {
+            clangFound = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            clangFound = false;
+        }
+    }
+
+    record Result(int status, String out, String err) {
+    }
+
+    static Stream<Path> examples() throws IOException {
+        return EngineConformanceTest.examples();
+    }
+
+    private static Program parse(String programText) {
+        return new Parser(Tokenizer.tokenize(programText)).parse();
+    }
+
+    private static TypeChecker check(AbstractSyntaxTree ast) {
+        var typeChecker = new TypeChecker("test.wb", "");
+        ast.accept(typeChecker);
+        assertThat(typeChecker.getDiagnostics()).isEmpty();
+        return typeChecker;
+    }
+
+    private static String generate(AbstractSyntaxTree ast) {
+        return LlvmGenerator.generate(ast, check(ast), "test.wb");
+    }
+
+    private static String interpret(AbstractSyntaxTree ast) {
+        var out = new ByteArrayOutputStream();
+        ast.accept(new Interpreter(new JavaRuntime(new PrintStream(out, true, StandardCharsets.UTF_8))));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // Every temporary is assigned once in its function, before it is used
+    private static void assertWellFormed(String module) {
+        Set<String> defined = new HashSet<>();
+        int functions = 0;
+        for (String line : module.lines().toList()) {
+            if (line.startsWith("define ")) {
+                defined.clear();
+                functions++;
+                continue;
+            }
+
+            Matcher definition = DEFINITION.matcher(line);
+            String uses = line;
+            if (definition.find()) {
+                uses = line.substring(definition.end());
+                assertThat(defined.add(definition.group(1))).as(line).isTrue();
+            }
+
+            Matcher use = TEMPORARY.matcher(uses);
+            // Checked with the set's own lookup, which stays fast for functions with many temporaries
+            while (use.find())
+                assertThat(defined.contains(use.group())).as(line).isTrue();
+        }
+
+        assertThat(functions).isGreaterThanOrEqualTo(2);
+        assertThat(module).contains("define i32 @main() {").endsWith("  ret i32 0\n}\n");
+    }
+
+    private Result buildAndRun(AbstractSyntaxTree ast) throws IOException, InterruptedException {
+        assumeTrue(clangFound, "clang is not on the path");
+
+        Path module = Files.writeString(directory.resolve("program.ll"), generate(ast));
+        Path runtime = Files.writeString(directory.resolve(LlvmGenerator.RUNTIME_FILE_NAME), LlvmGenerator.runtime());
+        Path executable = directory.resolve("program");
+        Process clang = new ProcessBuilder(List.of("clang", "-O2", "-o", executable.toString(), module.toString(),
+                runtime.toString())).redirectErrorStream(true).start();
+        String diagnostics = new String(clang.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(clang.waitFor()).as(diagnostics).isZero();
+
+        Process process = new ProcessBuilder(List.of(executable.toString())).start();
+        byte[] out = process.getInputStream().readAllBytes();
+        byte[] err = process.getErrorStream().readAllBytes();
+        return new Result(process.waitFor(), new String(out, StandardCharsets.UTF_8),
+                new String(err, StandardCharsets.UTF_8));
+    }
+
+    private void assertPrintsWhatTheInterpreterPrints(AbstractSyntaxTree ast) throws IOException, InterruptedException {
+        Result result = buildAndRun(ast);
+        assertThat(result.err()).isEmpty();
+        assertThat(result.status()).isZero();
+        assertThat(result.out()).isEqualTo(interpret(ast));
+    }
+
+    @Test
+    public void shouldPrintFloatsAsFloatToStringDoesOnThisJdk() throws IOException, InterruptedException {
+        // JDK 17 prints 3.3871888E7 and 1.17549435E-38, one digit more than the shortest that JDK 19 prints
+        Program program = parse("print 33871888.0; print 0.000000000000000000000000000000000000011754943508222875;");
+        String expected = Float.toString(33871888.0f) + "\n" + Float.toString(Float.MIN_NORMAL) + "\n";
+
+        assertThat(interpret(program)).isEqualTo(expected);
+        assertThat(buildAndRun(program).out()).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldGenerateTypedInstructionsForEachStatement() {
+        String module = generate(parse("print 7 / -2; print -(0.5 * 3.0); print +(1 - 4);"));
+
+        assertThat(module).startsWith("; Generated by wabbitj.")
+                .contains("source_filename = \"test.wb\"")
+                .contains("declare i32 @printf(ptr, ...)")
+                .contains("define internal i32 @wb_idiv(i32 %lhs, i32 %rhs) {")
+                .contains("""
+                        define internal void @wb_run_0() {
+                        entry:
+                          %buffer = alloca [16 x i8]
+                          %t0 = mul i32 -1, 2
+                          %t1 = call i32 @wb_idiv(i32 7, i32 %t0)
+                          call i32 (ptr, ...) @printf(ptr @.int_format, i32 %t1)
+                          %t2 = fmul float 0x3FE0000000000000, 0x4008000000000000
+                          %t3 = fmul float -1.0, %t2
+                          %t4 = call ptr @wb_write_float(float %t3, ptr %buffer)
+                          store i8 0, ptr %t4
+                          call i32 (ptr, ...) @printf(ptr @.string_format, ptr %buffer)
+                          %t5 = sub i32 1, 4
+                          %t6 = mul i32 -1, %t5
+                          %t7 = icmp sge i32 %t5, 0
+                          %t8 = select i1 %t7, i32 %t5, i32 %t6
+                          call i32 (ptr, ...) @printf(ptr @.int_format, i32 %t8)
+                          ret void
+                        }
+
+                        define i32 @main() {
+                        entry:
+                          call void @wb_run_0()
+                          ret i32 0
+                        }
+                        """);
+        assertWellFormed(module);
+    }
+
+    @Test
+    public void shouldWriteFloatConstantsExactly() {
+        Program program = parse("print -0.0; print 0.1; print 340282350000000000000000000000000000000.0 * 10.0;"
+                + " print 0.0 / 0.0; print 0.0000000000000000000000000000000000000000000014;");
+        Program optimized = PassManager.standard().run(program).program();
+
+        // Each float as the double with the same value
+        assertThat(generate(optimized)).contains("float 0x8000000000000000,")
+                .contains("float 0x3FB99999A0000000,")
+                .contains("float 0x7FF0000000000000,")
+                .contains("float 0x7FF8000000000000,")
+                .contains("float 0x36A0000000000000,");
+    }
+
+    @Test
+    public void shouldSplitLongProgramsIntoFunctions() {
+        var programText = new StringBuilder();
+        for (int i = 0; i < 2_500; i++)
+            programText.append("print ").append(i).append(i % 2 == 0 ? " * 2;\n" : ";\n");
+
+        String module = generate(parse(programText.toString()));
+
+        assertThat(module).contains("  call void @wb_run_0()\n  call void @wb_run_1()\n  call void @wb_run_2()\n")
+                .doesNotContain("@wb_run_3");
+        assertWellFormed(module);
+    }
+
+    @Test
+    public void shouldGenerateExpressionsDeeperThanTheStackAllows() {
+        String module = generate(parse("print 0" + " + 1".repeat(100_000) + ";\n"
+                + "print " + "-".repeat(100_001) + "2.5;\n"));
+
+        assertThat(module).contains("  %t0 = add i32 0, 1\n")
+                .contains("  %t99999 = add i32 %t99998, 1\n");
+        assertWellFormed(module);
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
+    public void shouldPrintWhatTheInterpreterPrintsForEveryExample(Path example)
+            throws IOException, InterruptedException {
+        String programText = Files.readString(example);
+        Program program = parse(programText);
+        var typeChecker = new TypeChecker(example.toString(), programText);
+        program.accept(typeChecker);
+
+        // Examples that are meant to fail type checking are never compiled
+        if (typeChecker.getDiagnostics().isEmpty()) {
+            assertWellFormed(generate(program));
+            assertPrintsWhatTheInterpreterPrints(program);
+        }
+    }
+
+    @Test
+    public void shouldAgreeOnOverflowDivisionAndFloatEdgeCases() throws IOException, InterruptedException {
+        Program program = parse("""
+                print 2147483647 + 1;
+                print (0 - 2147483647 - 1) / -1;
+                print 7 / -2;
+                print +(0 - 5);
+                print +-0.0;
+                print -(0.0 - 0.0);
+                print 1.0 / 0.0;
+                print 0.0 / 0.0;
+                print .1 + .2;
+                print 100000 * 100000;
+                print 340282350000000000000000000000000000000.0 * 10.0;
+                print 0.0000000000000000000000000000000000000000000014 / 2.0;
+                """);
+
+        assertWellFormed(generate(program));
+        assertPrintsWhatTheInterpreterPrints(program);
+    }
+
+    @Test
+    public void shouldStopAtAnIntDivisionByZeroLikeTheJvm() throws IOException, InterruptedException {
+        Result result = buildAndRun(parse("print 1; print 2 / (3 - 3); print 4;"));
+
+        assertThat(result.status()).isEqualTo(1);
+        assertThat(result.out()).isEqualTo("1\n");
+        assertThat(result.err()).contains("java.lang.ArithmeticException: / by zero");
+    }
+
+    @Test
+    public void shouldPrintWhatTheInterpreterPrintsForRandomPrograms() throws IOException, InterruptedException {
+        var random = new Random(19);
+        var programText = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            String expression = random.nextBoolean()
+                    ? floatExpression(random, 5)
+                    : intExpression(random, 5);
+            programText.append("print ").append(expression).append(";\n");
+        }
+        Program program = parse(programText.toString());
+
+        assertWellFormed(generate(program));
+        assertPrintsWhatTheInterpreterPrints(program);
+    }
+
+    // Every operand is parenthesized, because a unary minus takes the whole expression after it
+    private static String intExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            int[] interesting = {0, 1, 2, 7, 65_536, 2_147_483_647};
+            return Integer.toString(random.nextBoolean()
+                    ? interesting[random.nextInt(interesting.length)]
+                    : random.nextInt(100_000));
+        }
+
+        return switch (random.nextInt(6)) {
+            case 0 -> "(" + intExpression(random, depth - 1) + " + " + intExpression(random, depth - 1) + ")";
+            case 1 -> "(" + intExpression(random, depth - 1) + " - " + intExpression(random, depth - 1) + ")";
+            case 2 -> "(" + intExpression(random, depth - 1) + " * " + intExpression(random, depth - 1) + ")";
+            // Division by a nonzero literal, since a division by zero stops the program
+            case 3 -> "(" + intExpression(random, depth - 1) + " / " + (random.nextBoolean() ? "-" : "")
+                    + (random.nextInt(9) + 1) + ")";
+            case 4 -> "-(" + intExpression(random, depth - 1) + ")";
+            default -> "+(" + intExpression(random, depth - 1) + ")";
+        };
+    }
+
+    private static String floatExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            String[] interesting = {"0.0", "-0.0", "1.0", "0.1", "3.0", "0.000001",
+                    "340282350000000000000000000000000000000.0"};
+            return random.nextBoolean()
+                    ? "(" + interesting[random.nextInt(interesting.length)] + ")"
+                    : random.nextInt(1_000) + "." + random.nextInt(1_000);
+        }
+
+        String operator = switch (random.nextInt(4)) {
+            case 0 -> " + ";
+            case 1 -> " - ";
+            case 2 -> " * ";
+            default -> " / ";
+        };
+        return switch (random.nextInt(5)) {
+            case 0 -> "-(" + floatExpression(random, depth - 1) + ")";
+            case 1 -> "+(" + floatExpression(random, depth - 1) + ")";
+            default -> "(" + floatExpression(random, depth - 1) + operator + floatExpression(random, depth - 1) + ")";
+        };
+    }
+}
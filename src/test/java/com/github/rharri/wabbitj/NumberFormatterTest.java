@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.interpreter.NumberFormatter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NumberFormatterTest {
+
+    private static final byte[] BUFFER = new byte[32];
+
+    private static String format(int value) {
+        int end = NumberFormatter.writeInt(value, BUFFER, 3);
+        assertThat(end - 3).isLessThanOrEqualTo(NumberFormatter.MAX_INT_LENGTH);
+        return new String(BUFFER, 3, end - 3, StandardCharsets.US_ASCII);
+    }
+
+    private static String format(float value) {
+        int end = NumberFormatter.writeFloat(value, BUFFER, 3);
+        assertThat(end - 3).isLessThanOrEqualTo(NumberFormatter.MAX_FLOAT_LENGTH);
+        return new String(BUFFER, 3, end - 3, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void shouldFormatIntsAsIntegerToStringDoes() {
+        int[] values = {0, 1, -1, 9, 10, -10, 99, 100, -100, 101, 12345, 999999999, 1000000000, -1000000000,
+                Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1};
+        for (int value : values)
+            assertThat(format(value)).isEqualTo(Integer.toString(value));
+
+        var random = new Random(16);
+        for (int i = 0; i < 1_000_000; i++) {
+            int value = random.nextInt() >> random.nextInt(32);
+            assertThat(format(value)).isEqualTo(Integer.toString(value));
+        }
+    }
+
+    @Test
+    public void shouldFormatFloatsAsFloatToStringDoes() {
+        assertThat(format(0.0f)).isEqualTo("0.0");
+        assertThat(format(-0.0f)).isEqualTo("-0.0");
+        assertThat(format(Float.NaN)).isEqualTo("NaN");
+        assertThat(format(Float.POSITIVE_INFINITY)).isEqualTo("Infinity");
+        assertThat(format(Float.NEGATIVE_INFINITY)).isEqualTo("-Infinity");
+        assertThat(format(1.0f)).isEqualTo("1.0");
+        assertThat(format(-2.5f)).isEqualTo("-2.5");
+        assertThat(format(0.1f)).isEqualTo("0.1");
+        assertThat(format(0.1f + 0.2f)).isEqualTo("0.3");
+        assertThat(format(100.0f)).isEqualTo("100.0");
+        assertThat(format(1234567.0f)).isEqualTo("1234567.0");
+        assertThat(format(9999999.0f)).isEqualTo("9999999.0");
+        assertThat(format(1.0e7f)).isEqualTo("1.0E7");
+        assertThat(format(16777216.0f)).isEqualTo("1.6777216E7");
+        assertThat(format(0.001f)).isEqualTo("0.001");
+        assertThat(format(0.00123f)).isEqualTo("0.00123");
+        assertThat(format(9.999999e-4f)).isEqualTo("9.999999E-4");
+        assertThat(format(1.0e-10f)).isEqualTo("1.0E-10");
+        assertThat(format(Float.MAX_VALUE)).isEqualTo("3.4028235E38");
+        // JDK 17 prints one digit more than the shortest that JDK 19 prints
+        assertThat(format(Float.MIN_NORMAL))
+                .isEqualTo(NumberFormatter.SHORTEST_FLOATS ? "1.1754944E-38" : "1.17549435E-38");
+        assertThat(format(33871888.0f)).isEqualTo(NumberFormatter.SHORTEST_FLOATS ? "3.387189E7" : "3.3871888E7");
+        assertThat(format(Float.MIN_VALUE)).isEqualTo("1.4E-45");
+        assertThat(format(2 * Float.MIN_VALUE)).isEqualTo("2.8E-45");
+    }
+
+    @Test
+    public void shouldFormatRandomFloatsAsFloatToStringDoes() {
+        var random = new Random(16);
+        for (int i = 0; i < 1_000_000; i++)
+            assertFormatsLikeFloatToString(Float.intBitsToFloat(random.nextInt()));
+    }
+
+    // Every float; takes minutes. Run with: mvn test -Pexhaustive -Dtest=NumberFormatterTest
+    @Test
+    @Tag("exhaustive")
+    public void shouldFormatEveryFloatLikeFloatToString() {
+        long bits = 0;
+        do {
+            assertFormatsLikeFloatToString(Float.intBitsToFloat((int) bits));
+        } while (++bits <= 0xFFFF_FFFFL);
+    }
+
+    private static void assertFormatsLikeFloatToString(float value) {
+        String text = format(value);
+        if (!text.equals(Float.toString(value)))
+            assertThat(text).as("bits %08x", Float.floatToRawIntBits(value)).isEqualTo(Float.toString(value));
+    }
+
+    @Test
+    public void shouldFormatFloatsAsTextTheSameAsBytes() {
+        assertThat(NumberFormatter.toString(33871888.0f)).isEqualTo(Float.toString(33871888.0f));
+        assertThat(NumberFormatter.toString(Float.MIN_NORMAL)).isEqualTo(format(Float.MIN_NORMAL));
+        assertThat(NumberFormatter.toString(-0.0f)).isEqualTo("-0.0");
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.interpreter.Interpreter;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.interpreter.WabbitType;
+import com.github.rharri.wabbitj.optimizer.*;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OptimizerTest {
+
+    private static Program parse(String programText) {
+        return new Parser(Tokenizer.tokenize(programText)).parse();
+    }
+
+    private static Expression expression(Program program, int index) {
+        return ((Print) program.statements().statements().get(index)).expression();
+    }
+
+    private static Program program(Expression expression) {
+        var statements = new Statements();
+        statements.add(new Print(expression));
+        return new Program(statements);
+    }
+
+    private static String interpret(Program program) {
+        var out = new ByteArrayOutputStream();
+        program.accept(new Interpreter(new JavaRuntime(new PrintStream(out, true, StandardCharsets.UTF_8))));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldFoldWithWabbitIntAndFloatSemantics() {
+        Program program = parse("""
+                print 2147483647 + 1;
+                print 7 / -2;
+                print (0 - 7) / 2;
+                print +(0 - 5);
+                print +-0.0;
+                print 1.0 / 0.0;
+                print 1 / 0;
+                """);
+
+        PassResult result = new ConstantFolding().run(program);
+
+        assertThat(expression(result.program(), 0)).isEqualTo(new IntLiteral(Integer.MIN_VALUE, 1, 18));
+        assertThat(((IntLiteral) expression(result.program(), 1)).value()).isEqualTo(-3);
+        assertThat(((IntLiteral) expression(result.program(), 2)).value()).isEqualTo(-3);
+        // Unary plus is an absolute value
+        assertThat(((IntLiteral) expression(result.program(), 3)).value()).isEqualTo(5);
+        assertThat(Float.floatToRawIntBits(((FloatLiteral) expression(result.program(), 4)).value()))
+                .isEqualTo(Float.floatToRawIntBits(-0.0f));
+        assertThat(((FloatLiteral) expression(result.program(), 5)).value()).isEqualTo(Float.POSITIVE_INFINITY);
+        // An int division by zero must still fail when the program runs
+        assertThat(expression(result.program(), 6)).isEqualTo(expression(program, 6));
+    }
+
+    @Test
+    public void shouldRemoveGroupingsAndRepeatedUnaryOperators() {
+        Program program = parse("print (1 / 0); print +(+(1 / 0)); print -(-(1 / 0)); print +(1 / 0);");
+
+        PassResult result = new RedundantNodeRemoval().run(program);
+
+        assertThat(expression(result.program(), 0)).isEqualTo(((Grouping) expression(program, 0)).expression());
+        assertThat(expression(result.program(), 1)).isInstanceOfSatisfying(UnaryOp.class, unaryOp -> {
+            assertThat(unaryOp.operator()).isEqualTo(Operator.PLUS);
+            assertThat(unaryOp.operand()).isInstanceOf(BinaryOp.class);
+        });
+        assertThat(expression(result.program(), 2)).isInstanceOf(BinaryOp.class);
+        // A single unary plus changes the value, so it stays
+        assertThat(expression(result.program(), 3)).isInstanceOfSatisfying(UnaryOp.class,
+                unaryOp -> assertThat(unaryOp.operand()).isInstanceOf(BinaryOp.class));
+        assertThat(result.rewrites()).isEqualTo(8);
+    }
+
+    @Test
+    public void shouldReduceOnlyWhereTheResultIsTheSameForEveryOperand() {
+        Expression x = new BinaryOp(Operator.DIVIDE, new FloatLiteral(1.0f, 1, 7), new FloatLiteral(0.0f, 1, 13), 1, 11);
+        var pass = new StrengthReduction();
+
+        assertThat(expression(pass.run(program(new BinaryOp(Operator.MINUS, x, new FloatLiteral(0.0f, 1, 1), 1, 1)))
+                .program(), 0)).isEqualTo(x);
+        assertThat(expression(pass.run(program(new BinaryOp(Operator.TIMES, x, new FloatLiteral(-1.0f, 1, 1), 1, 1)))
+                .program(), 0)).isEqualTo(new UnaryOp(Operator.MINUS, x));
+        assertThat(expression(pass.run(program(new BinaryOp(Operator.DIVIDE, x, new FloatLiteral(4.0f, 1, 1), 1, 1)))
+                .program(), 0)).isEqualTo(new BinaryOp(Operator.TIMES, x, new FloatLiteral(0.25f, 1, 1), 1, 1));
+
+        // -0.0 + 0.0 is 0.0, and a reciprocal of 3.0 is not exact
+        Program plusZero = program(new BinaryOp(Operator.PLUS, x, new FloatLiteral(0.0f, 1, 1), 1, 1));
+        assertThat(pass.run(plusZero).program()).isSameAs(plusZero);
+        Program divideByThree = program(new BinaryOp(Operator.DIVIDE, x, new FloatLiteral(3.0f, 1, 1), 1, 1));
+        assertThat(pass.run(divideByThree).rewrites()).isZero();
+
+        Program ints = parse("print (1 / 0) + 0; print 1 * (1 / 0); print (1 / 0) / -1; print (1 / 0) * 0;");
+        // Folding turns -1 into a literal first
+        ints = new ConstantFolding().run(ints).program();
+        PassResult result = pass.run(ints);
+        assertThat(expression(result.program(), 0)).isEqualTo(((BinaryOp) expression(ints, 0)).lhs());
+        assertThat(expression(result.program(), 1)).isEqualTo(((BinaryOp) expression(ints, 1)).rhs());
+        assertThat(expression(result.program(), 2))
+                .isEqualTo(new UnaryOp(Operator.MINUS, ((BinaryOp) expression(ints, 2)).lhs()));
+        // The operand of a multiplication by zero may still fail
+        assertThat(expression(result.program(), 3)).isEqualTo(expression(ints, 3));
+    }
+
+    @Test
+    public void shouldReportEachPassInOrder() {
+        Optimization optimization = PassManager.standard().run(parse("print (1 + 2) * 3; print 2.0 * 0.5;"));
+
+        assertThat(optimization.reports()).extracting(PassReport::pass)
+                .containsExactly("simplify", "fold", "strength-reduce");
+        assertThat(optimization.reports()).extracting(PassReport::rewrites).containsExactly(1, 3, 0);
+        assertThat(optimization.rewrites()).isEqualTo(4);
+        assertThat(expression(optimization.program(), 0)).isInstanceOfSatisfying(IntLiteral.class,
+                literal -> assertThat(literal.value()).isEqualTo(9));
+        assertThat(optimization.reports().get(0).format()).matches("simplify: 1 rewrites in \\d+\\.\\d{3} ms");
+    }
+
+    @Test
+    public void shouldRewriteExpressionsNestedDeeperThanTheStack() {
+        int depth = 1_000_000;
+        Program sum = parse("print 0" + " + 1".repeat(depth) + ";");
+        Program grouped = parse("print " + "(".repeat(depth) + "1 / 0" + ")".repeat(depth) + ";");
+
+        assertThat(expression(PassManager.standard().run(sum).program(), 0)).isInstanceOfSatisfying(IntLiteral.class,
+                literal -> assertThat(literal.value()).isEqualTo(depth));
+        // Every grouping goes, and the division by zero is left to fail when the program runs
+        assertThat(expression(PassManager.standard().run(grouped).program(), 0)).isInstanceOf(BinaryOp.class);
+    }
+
+    @Test
+    public void shouldLeaveAProgramWithNothingToRewriteUnchanged() {
+        Program program = parse("print 1 / 0;");
+
+        Optimization optimization = PassManager.standard().run(program);
+
+        assertThat(optimization.program()).isSameAs(program);
+        assertThat(optimization.rewrites()).isZero();
+    }
+
+    @Test
+    public void shouldTypeTheOptimizedProgram() {
+        String programText = "print 1.5 * (2.0 + 0.5); print -(1 / 0) * 1;";
+        Program optimized = PassManager.standard().run(parse(programText)).program();
+
+        var typeChecker = new TypeChecker("test.wb", programText);
+        optimized.accept(typeChecker);
+
+        assertThat(typeChecker.getDiagnostics()).isEmpty();
+        assertThat(typeChecker.typeOf(expression(optimized, 0))).isEqualTo(WabbitType.FLOAT);
+        assertThat(typeChecker.typeOf(expression(optimized, 1))).isEqualTo(WabbitType.INT);
+    }
+
+    @Test
+    public void shouldPrintWhatTheUnoptimizedProgramPrints() {
+        var random = new Random(14);
+        var programText = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            programText.append("print ").append(random.nextBoolean() ? intExpression(random, 4) : floatExpression(random, 4))
+                    .append(";\n");
+
+        Program program = parse(programText.toString());
+        Optimization optimization = PassManager.standard().run(program);
+
+        assertThat(optimization.rewrites()).isPositive();
+        assertThat(interpret(optimization.program())).isEqualTo(interpret(program));
+    }
+
+    @Test
+    public void shouldStillFailOnIntDivisionByZero() {
+        Program optimized = PassManager.standard().run(parse("print 1 + 2; print (4 - 4) * 1;")).program();
+        assertThat(interpret(optimized)).isEqualTo("3\n0\n");
+
+        Program failing = PassManager.standard().run(parse("print 2 / (4 - 4);")).program();
+        assertThatThrownBy(() -> interpret(failing)).isInstanceOf(ArithmeticException.class);
+    }
+
+    // Every operand is parenthesized, because a unary minus takes the whole expression after it
+    private static String intExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            int[] interesting = {0, 1, -1, 2, 7, 2147483647};
+            int value = random.nextBoolean() ? interesting[random.nextInt(interesting.length)] : random.nextInt(1000);
+            return value < 0 ? "(0 - " + -value + ")" : Integer.toString(value);
+        }
+
+        return switch (random.nextInt(6)) {
+            case 0 -> "(" + intExpression(random, depth - 1) + " + " + intExpression(random, depth - 1) + ")";
+            case 1 -> "(" + intExpression(random, depth - 1) + " - " + intExpression(random, depth - 1) + ")";
+            case 2 -> "(" + intExpression(random, depth - 1) + " * " + intExpression(random, depth - 1) + ")";
+            // Division by a nonzero literal, since a division by zero stops the program
+            case 3 -> "(" + intExpression(random, depth - 1) + " / " + (random.nextInt(5) + 1) + ")";
+            case 4 -> "-(" + intExpression(random, depth - 1) + ")";
+            default -> "+(" + intExpression(random, depth - 1) + ")";
+        };
+    }
+
+    private static String floatExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            String[] interesting = {"0.0", "-0.0", "1.0", "-1.0", "2.0", "0.5", "3.0", "0.1"};
+            return "(" + interesting[random.nextInt(interesting.length)] + ")";
+        }
+
+        String operator = switch (random.nextInt(4)) {
+            case 0 -> " + ";
+            case 1 -> " - ";
+            case 2 -> " * ";
+            default -> " / ";
+        };
+        return switch (random.nextInt(4)) {
+            case 0 -> "-(" + floatExpression(random, depth - 1) + ")";
+            case 1 -> "+(" + floatExpression(random, depth - 1) + ")";
+            default -> "(" + floatExpression(random, depth - 1) + operator + floatExpression(random, depth - 1) + ")";
+        };
+    }
+}
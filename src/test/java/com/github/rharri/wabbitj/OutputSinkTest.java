@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.interpreter.BufferedSink;
+import com.github.rharri.wabbitj.interpreter.FlushPolicy;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.interpreter.WriterSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class OutputSinkTest {
+
+    private static final int[] INTS = {0, 1, -1, 9, 10, -10, 99, 100, 123456789, 999999999, 1000000000, -1000000000,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1};
+    private static final float[] FLOATS = {0.0f, -0.0f, 1.0f, 0.1f, -2.5f, 1.0e7f, 1.0e-3f, 9.999999e-4f,
+            Float.MAX_VALUE, Float.MIN_VALUE, Float.MIN_NORMAL, Float.NaN, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY};
+
+    // Collects what is written and counts the writes
+    static final class RecordingChannel implements WritableByteChannel {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int writes;
+        boolean open = true;
+
+        @Override
+        public int write(ByteBuffer source) {
+            writes++;
+            int length = source.remaining();
+            while (source.hasRemaining())
+                bytes.write(source.get());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        String text() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String printStreamOutput(Consumer<PrintStream> print) {
+        var out = new ByteArrayOutputStream();
+        print.accept(new PrintStream(out, true, StandardCharsets.UTF_8));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldFormatValuesAsPrintStreamDoes() {
+        var random = new Random(15);
+        int[] ints = new int[INTS.length + 1000];
+        System.arraycopy(INTS, 0, ints, 0, INTS.length);
+        for (int i = INTS.length; i < ints.length; i++)
+            ints[i] = random.nextInt() >> random.nextInt(32);
+
+        var channel = new RecordingChannel();
+        try (BufferedSink sink = BufferedSink.owning(channel, FlushPolicy.onExit())) {
+            for (int value : ints)
+                sink.println(value);
+            for (float value : FLOATS)
+                sink.println(value);
+            sink.println("héllo");
+        }
+
+        String expected = printStreamOutput(out -> {
+            for (int value : ints)
+                out.println(value);
+            for (float value : FLOATS)
+                out.println(value);
+            out.println("héllo");
+        });
+        assertThat(channel.text()).isEqualTo(expected)
+                .contains("2147483647\n", "0.001\n", Float.toString(Float.MIN_NORMAL) + "\n");
+        assertThat(channel.open).isFalse();
+
+        var writer = new StringWriter();
+        var writerSink = new WriterSink(writer);
+        for (int value : ints)
+            writerSink.println(value);
+        for (float value : FLOATS)
+            writerSink.println(value);
+        writerSink.println("héllo");
+        assertThat(writer.toString()).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldWriteOnlyFullBuffersUntilClosed() {
+        var channel = new RecordingChannel();
+        var sink = BufferedSink.owning(channel, FlushPolicy.bySize(64));
+
+        // Each line is 11 bytes, so five fit and the sixth forces a write
+        for (int i = 0; i < 5; i++)
+            sink.println(1_000_000_000);
+        assertThat(channel.writes).isZero();
+        sink.println(1_000_000_000);
+        assertThat(channel.bytes.size()).isEqualTo(55);
+
+        sink.close();
+        assertThat(channel.bytes.size()).isEqualTo(66);
+    }
+
+    @Test
+    public void shouldSplitLongTextAcrossBuffers() {
+        var channel = new RecordingChannel();
+        String text = "x".repeat(1000);
+
+        try (BufferedSink sink = BufferedSink.owning(channel, FlushPolicy.bySize(64))) {
+            sink.println(text);
+        }
+
+        assertThat(channel.text()).isEqualTo(text + System.lineSeparator());
+        assertThat(channel.writes).isGreaterThan(10);
+    }
+
+    @Test
+    public void shouldWriteAfterTheInterval() throws InterruptedException {
+        var channel = new RecordingChannel();
+        var sink = BufferedSink.owning(channel, FlushPolicy.byInterval(Duration.ofMillis(20)));
+
+        sink.println(1);
+        Thread.sleep(40);
+        sink.println(2);
+
+        assertThat(channel.text()).isEqualTo("1" + System.lineSeparator() + "2" + System.lineSeparator());
+    }
+
+    @Test
+    public void shouldFlushButNotCloseAStream() {
+        var out = new ByteArrayOutputStream();
+        var stream = new PrintStream(out, false, StandardCharsets.UTF_8);
+
+        var runtime = new JavaRuntime(BufferedSink.of(stream, FlushPolicy.onExit()));
+        runtime.println(42);
+        runtime.println(0.5f);
+        assertThat(out.size()).isZero();
+        runtime.flush();
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(printStreamOutput(expected -> {
+            expected.println(42);
+            expected.println(0.5f);
+        }));
+        stream.println("still open");
+        assertThat(stream.checkError()).isFalse();
+    }
+
+    @Test
+    public void shouldWriteToAFileChannel(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("out.txt");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        try (BufferedSink sink = BufferedSink.owning(channel, FlushPolicy.bySize(128))) {
+            for (int i = 0; i < 10_000; i++)
+                sink.println(i);
+        }
+
+        assertThat(Files.readAllLines(file)).hasSize(10_000).startsWith("0", "1").endsWith("9999");
+        assertThat(channel.isOpen()).isFalse();
+    }
+
+    @Test
+    public void shouldPrintIntsWithoutAllocating() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        var sink = BufferedSink.owning(new RecordingChannel(), FlushPolicy.onExit());
+        // Warm up, so that class loading is not counted
+        for (int i = 0; i < 1000; i++)
+            sink.println(i);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1000; i++)
+            sink.println(i * 7919);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    @Test
+    public void shouldParseFlushPolicies() {
+        assertThat(FlushPolicy.parse("exit")).isEqualTo(FlushPolicy.onExit());
+        assertThat(FlushPolicy.parse("size:4096")).isEqualTo(FlushPolicy.bySize(4096));
+        assertThat(FlushPolicy.parse("Interval:250")).isEqualTo(FlushPolicy.byInterval(Duration.ofMillis(250)));
+
+        assertThatThrownBy(() -> FlushPolicy.parse("size")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FlushPolicy.parse("size:many")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FlushPolicy.parse("size:8")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FlushPolicy.parse("never")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.Program;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelFrontEndTest {
+
+    private static final String PROGRAM_TEXT = """
+            /*
+                print 1; print 2; print 3;
+            */
+            print 2 + 3; print 1.5 * 2.0; // print 4; print 5;
+            print (2 + 3) * 4;
+            print -5;
+            /* ; */ print 6 /
+                3;
+            print .15 - .12;
+            """;
+
+    @Test
+    public void shouldOnlySplitAfterSemicolonsOutsideComments() {
+        var source = Source.of(PROGRAM_TEXT);
+
+        List<ParallelFrontEnd.Chunk> chunks = ParallelFrontEnd.split(source, 100, 1);
+
+        assertThat(chunks).extracting(chunk -> source.decode(chunk.start(), (int) (chunk.end() - chunk.start())))
+                .containsExactly(
+                        "/*\n    print 1; print 2; print 3;\n*/\nprint 2 + 3;",
+                        " print 1.5 * 2.0;",
+                        " // print 4; print 5;\nprint (2 + 3) * 4;",
+                        "\nprint -5;",
+                        "\n/* ; */ print 6 /\n    3;",
+                        "\nprint .15 - .12;",
+                        "\n");
+
+        assertThat(chunks.get(1).line()).isEqualTo(4);
+        assertThat(chunks.get(1).column()).isEqualTo(13);
+    }
+
+    @Test
+    public void shouldParseTheSameProgramAsTheSequentialParser() {
+        var source = Source.of(PROGRAM_TEXT);
+
+        Program expected = new Parser(new Tokenizer(source)).parse();
+        Program actual = new ParallelFrontEnd(3, 1).parse(source);
+
+        assertThat(actual.statements().statements()).isEqualTo(expected.statements().statements());
+    }
+}
@@ -25,7 +25,9 @@ package com.github.rharri.wabbitj;
 import com.github.rharri.wabbitj.interpreter.Interpreter;
 import com.github.rharri.wabbitj.interpreter.JavaRuntime;
 import com.github.rharri.wabbitj.tokenizer.Position;
+import com.github.rharri.wabbitj.tokenizer.Source;
 import com.github.rharri.wabbitj.tokenizer.Token;
+import com.github.rharri.wabbitj.tokenizer.TokenBuffer;
 import com.github.rharri.wabbitj.tokenizer.TokenType;
 import com.github.rharri.wabbitj.tokenizer.Tokenizer;
 import org.junit.jupiter.api.Test;
@@ -300,4 +302,27 @@ public class ParserTest {
         inOrder.verify(interpreter, times(4)).visitBinaryOp(Mockito.any());
         inOrder.verify(interpreter, times(5)).visitIntLiteral(Mockito.any());
     }
+
+    @Test
+    public void shouldParseFromTokenBuffer() {
+        var tokens = TokenBuffer.tokenize(Source.of("// comment\nprint (2 + 3) * 4;"));
+
+        var parser = new Parser(tokens);
+        var ast = parser.parse();
+
+        var runtime = runtimeWithoutStandardOut();
+
+        var interpreter = Mockito.spy(new Interpreter(runtime));
+
+        ast.accept(interpreter);
+
+        InOrder inOrder = inOrder(interpreter);
+        inOrder.verify(interpreter).visitProgram(Mockito.any());
+        inOrder.verify(interpreter).visitStatements(Mockito.any());
+        inOrder.verify(interpreter).visitPrint(Mockito.any());
+        inOrder.verify(interpreter).visitBinaryOp(Mockito.any());
+        inOrder.verify(interpreter).visitGrouping(Mockito.any());
+        inOrder.verify(interpreter).visitBinaryOp(Mockito.any());
+        inOrder.verify(interpreter, times(3)).visitIntLiteral(Mockito.any());
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.engine.CompilationException;
+import com.github.rharri.wabbitj.engine.CompiledScript;
+import com.github.rharri.wabbitj.engine.ScriptCache;
+import com.github.rharri.wabbitj.engine.WabbitEngine;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScriptCacheTest {
+
+    private static final WabbitEngine ENGINE = new WabbitEngine();
+
+    private static long weightOf(String programText) throws CompilationException {
+        return ENGINE.compile(programText).weight();
+    }
+
+    private static String run(CompiledScript script) {
+        var out = new ByteArrayOutputStream();
+        script.run(new PrintStream(out, true, StandardCharsets.UTF_8));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldCompileAScriptOnceAndCountHitsAndMisses() throws CompilationException {
+        var cache = new ScriptCache(ENGINE, 1 << 20);
+
+        CompiledScript first = cache.get("print 6 * 7;");
+        CompiledScript second = cache.get("print 6 * 7;");
+
+        assertThat(second).isSameAs(first);
+        assertThat(run(second)).isEqualTo("42\n");
+
+        ScriptCache.Stats stats = cache.stats();
+        assertThat(stats.hits()).isEqualTo(1);
+        assertThat(stats.misses()).isEqualTo(1);
+        assertThat(stats.loads()).isEqualTo(1);
+        assertThat(stats.hitRate()).isEqualTo(0.5);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.weight()).isEqualTo(first.weight());
+    }
+
+    @Test
+    public void shouldCompileOnceForConcurrentRequests() throws Exception {
+        var cache = new ScriptCache(ENGINE, 1 << 20);
+        String programText = "print (1 + 2) * 3;\n".repeat(2_000);
+        var start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<CompiledScript>> scripts = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                scripts.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(programText);
+                }));
+            }
+            start.countDown();
+
+            CompiledScript first = scripts.get(0).get();
+            for (Future<CompiledScript> script : scripts)
+                assertThat(script.get()).isSameAs(first);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(cache.stats().loads()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldStayWithinItsWeight() throws CompilationException {
+        long maxWeight = weightOf("print 1;") * 10;
+        var cache = new ScriptCache(ENGINE, maxWeight);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get("print " + i + ";");
+            assertThat(cache.weight()).isLessThanOrEqualTo(maxWeight);
+        }
+
+        assertThat(cache.stats().evictions()).isPositive();
+    }
+
+    @Test
+    public void shouldKeepPopularScriptsThroughAScan() throws CompilationException {
+        var cache = new ScriptCache(ENGINE, weightOf("print 1;") * 10);
+        List<String> popular = List.of("print 1;", "print 2;", "print 3;", "print 4;", "print 5;");
+        for (int i = 0; i < 5; i++) {
+            for (String programText : popular)
+                cache.get(programText);
+        }
+
+        // Each is asked for once, which would push every popular script out of an LRU cache of this size
+        for (int i = 100; i < 300; i++)
+            cache.get("print " + i + ";");
+
+        long hits = cache.stats().hits();
+        for (String programText : popular)
+            cache.get(programText);
+
+        assertThat(cache.stats().hits() - hits).isEqualTo(popular.size());
+    }
+
+    @Test
+    public void shouldRememberHowOftenScriptsWereAskedForAsTheCacheGrows() throws CompilationException {
+        var cache = new ScriptCache(ENGINE, weightOf("print 1;") * 100);
+        List<String> popular = List.of("print 1;", "print 2;", "print 3;", "print 4;", "print 5;");
+        for (int i = 0; i < 5; i++) {
+            for (String programText : popular)
+                cache.get(programText);
+        }
+
+        // Enough scripts to widen the frequency sketch several times before the cache is full and starts to evict
+        for (int i = 100; i < 1_000; i++)
+            cache.get("print " + i + ";");
+
+        long hits = cache.stats().hits();
+        for (String programText : popular)
+            cache.get(programText);
+
+        assertThat(cache.stats().hits() - hits).isEqualTo(popular.size());
+    }
+
+    @Test
+    public void shouldNotKeepScriptsThatDoNotCompile() {
+        var cache = new ScriptCache(ENGINE, 1 << 20);
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> cache.get("bad.wb", "print 1 + 2.0;"))
+                    .isInstanceOf(CompilationException.class)
+                    .hasMessageContaining("File 'bad.wb', line 1, col 9");
+        }
+
+        assertThat(cache.stats().loadFailures()).isEqualTo(2);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void shouldFailEveryConcurrentRequestWhenACompileThrowsAnError() throws Exception {
+        int threads = 4;
+        WabbitEngine engine = mock(WabbitEngine.class);
+        var cache = new ScriptCache(engine, 1 << 20);
+        // The compile fails only once every request has missed, so that the others wait for it
+        when(engine.compile(anyString(), anyString())).thenAnswer(invocation -> {
+            while (cache.stats().misses() < threads)
+                Thread.onSpinWait();
+            throw new StackOverflowError();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<CompiledScript>> scripts = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+                scripts.add(executor.submit(() -> cache.get("print 1;")));
+
+            for (Future<CompiledScript> script : scripts) {
+                assertThatThrownBy(() -> script.get(10, TimeUnit.SECONDS))
+                        .isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(StackOverflowError.class);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void shouldNotEmptyTheCacheForAScriptThatCannotFitInTheMainArea() throws CompilationException {
+        String heavy = "print 1;\n".repeat(100);
+        // The window takes at least one unit of the weight, so the main area is lighter than the heavy script
+        var cache = new ScriptCache(ENGINE, weightOf(heavy) + 1);
+
+        List<String> light = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            light.add("print " + (i + 100) + ";");
+        for (int i = 0; i < 3; i++) {
+            for (String programText : light)
+                cache.get(programText);
+        }
+        int size = cache.size();
+        long weight = cache.weight();
+
+        // Asked for often enough to beat every light script
+        for (int i = 0; i < 4; i++)
+            cache.get(heavy);
+
+        assertThat(cache.size()).isEqualTo(size);
+        assertThat(cache.weight()).isEqualTo(weight);
+        long hits = cache.stats().hits();
+        for (String programText : light)
+            cache.get(programText);
+        assertThat(cache.stats().hits() - hits).isEqualTo(size);
+    }
+
+    @Test
+    public void shouldNotKeepAScriptHeavierThanTheWholeCache() throws CompilationException {
+        var cache = new ScriptCache(ENGINE, 1);
+
+        assertThat(run(cache.get("print 1;"))).isEqualTo("1\n");
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.weight()).isZero();
+    }
+}
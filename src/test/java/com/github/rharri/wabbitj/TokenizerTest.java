@@ -22,13 +22,30 @@
 
 package com.github.rharri.wabbitj;
 
+import com.github.rharri.wabbitj.tokenizer.EditableSource;
+import com.github.rharri.wabbitj.tokenizer.MappedSource;
 import com.github.rharri.wabbitj.tokenizer.Position;
+import com.github.rharri.wabbitj.tokenizer.Relexer;
+import com.github.rharri.wabbitj.tokenizer.Source;
+import com.github.rharri.wabbitj.tokenizer.TextEdit;
 import com.github.rharri.wabbitj.tokenizer.Token;
+import com.github.rharri.wabbitj.tokenizer.TokenBuffer;
 import com.github.rharri.wabbitj.tokenizer.TokenType;
 import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -375,4 +392,227 @@ public class TokenizerTest {
 
         assertThat(tokens).containsOnlyOnceElementsOf(expected);
     }
+
+    @Test
+    public void shouldPullTokensFromChannelAcrossWindowBoundaries() {
+        var comment = "/*" + "x".repeat(20_000) + "*/";
+        var programText = comment + "\n" + "print 42;\n".repeat(2_000);
+
+        var channel = Channels.newChannel(new ByteArrayInputStream(programText.getBytes(StandardCharsets.UTF_8)));
+        var tokenizer = new Tokenizer(channel);
+
+        assertThat(tokenizer.nextToken()).isEqualTo(new Token(TokenType.COMMENT, comment, new Position(1, 1)));
+
+        for (int line = 2; line <= 2_001; line++) {
+            assertThat(tokenizer.nextToken()).isEqualTo(new Token(TokenType.PRINT, "print", new Position(line, 1)));
+            assertThat(tokenizer.nextToken()).isEqualTo(new Token(TokenType.INTEGER, "42", new Position(line, 7)));
+            assertThat(tokenizer.nextToken()).isEqualTo(new Token(TokenType.SEMI, ";", new Position(line, 9)));
+        }
+
+        assertThat(tokenizer.nextToken()).isEqualTo(new Token(TokenType.EOF, "EOF", new Position(2_002, 1)));
+    }
+
+    @Test
+    public void shouldDecideNumberTypeFromTheLiteralItself() {
+        var print = new Token(TokenType.PRINT, "print", new Position(1, 1));
+        var intLiteral = new Token(TokenType.INTEGER, "1", new Position(1, 7));
+        var plusOp = new Token(TokenType.PLUS, "+", new Position(1, 8));
+        var floatLiteral = new Token(TokenType.FLOAT, "2.5", new Position(1, 9));
+        var semicolon = new Token(TokenType.SEMI, ";", new Position(1, 12));
+        var endOfFile = new Token(TokenType.EOF, "EOF", new Position(1, 13));
+
+        List<Token> tokens = Tokenizer.tokenize("print 1+2.5;");
+
+        var expected = List.of(print, intLiteral, plusOp, floatLiteral, semicolon, endOfFile);
+
+        assertThat(tokens).containsExactlyElementsOf(expected);
+    }
+
+    // Compares wall-clock times, so it only runs with the benchmarks
+    @Test
+    @Tag("benchmark")
+    public void shouldTokenizeInLinearTime() {
+        // Warm up so that the measurements below are of compiled code
+        timeToTokenize(1_000_000);
+
+        long previous = 0;
+        for (int literals = 1_000; literals <= 10_000_000; literals *= 10) {
+            long nanos = timeToTokenize(literals);
+
+            // Quadratic scanning would take ~100x longer for every 10x more input; allow plenty of noise on top of
+            // the expected ~10x, but only once the input is large enough for the timings to be meaningful
+            if (literals >= 1_000_000)
+                assertThat(nanos).isLessThan(previous * 30);
+
+            previous = nanos;
+        }
+    }
+
+    private static long timeToTokenize(int literals) {
+        var tokenizer = new Tokenizer(new IntegerStatementsChannel(literals));
+
+        long start = System.nanoTime();
+        int count = 0;
+        while (tokenizer.nextToken().type() != TokenType.EOF)
+            count += 1;
+        long nanos = System.nanoTime() - start;
+
+        assertThat(count).isEqualTo(literals * 3);
+        return nanos;
+    }
+
+    // Generates "print 1234;" statements on the fly so that large inputs do not have to be held in memory
+    private static final class IntegerStatementsChannel implements ReadableByteChannel {
+        private static final byte[] STATEMENT = "print 1234;\n".getBytes(StandardCharsets.US_ASCII);
+
+        private final long length;
+        private long position;
+
+        private IntegerStatementsChannel(int statements) {
+            this.length = (long) statements * STATEMENT.length;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (position == length)
+                return -1;
+
+            int read = 0;
+            while (dst.hasRemaining() && position < length) {
+                dst.put(STATEMENT[(int) (position % STATEMENT.length)]);
+                position += 1;
+                read += 1;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void shouldTokenizeMappedSourceWithByteOffsets(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("mapped.wb");
+        Files.writeString(file, "/* é */\nprint 2.5;\n", StandardCharsets.UTF_8);
+
+        MappedSource source = MappedSource.map(file);
+        var tokenizer = new Tokenizer(source);
+
+        assertThat(tokenizer.advance()).isEqualTo(TokenType.COMMENT);
+        assertThat(tokenizer.offset()).isZero();
+        assertThat(tokenizer.length()).isEqualTo(8);
+
+        assertThat(tokenizer.advance()).isEqualTo(TokenType.PRINT);
+        assertThat(tokenizer.offset()).isEqualTo(9);
+        assertThat(tokenizer.line()).isEqualTo(2);
+
+        assertThat(tokenizer.advance()).isEqualTo(TokenType.FLOAT);
+        assertThat(tokenizer.offset()).isEqualTo(15);
+        assertThat(tokenizer.column()).isEqualTo(7);
+        assertThat(tokenizer.text()).isEqualTo("2.5");
+
+        assertThat(source.decode(0, 8)).isEqualTo("/* é */");
+    }
+
+    @Test
+    public void shouldBufferTheSameTokensAsTheTokenizer() {
+        var programText = """
+                /*
+                    Comment
+                */
+                print (2 + 3) * 4; // comment
+                print 1.5 / .5;
+                """;
+
+        TokenBuffer buffer = TokenBuffer.tokenize(Source.of(programText));
+        List<Token> tokens = Tokenizer.tokenize(programText);
+
+        assertThat(buffer.size()).isEqualTo(tokens.size());
+
+        for (int i = 0; i < tokens.size(); i++)
+            assertThat(buffer.token(i)).isEqualTo(tokens.get(i));
+    }
+
+    @Test
+    public void shouldRelexOnlyTheTokensAnEditDamages() {
+        var source = EditableSource.of("print 12 + 3;\nprint 4;\n");
+        TokenBuffer buffer = TokenBuffer.tokenize(source);
+
+        // Typing onto the end of 12 extends it, and relexing stops at the + that follows
+        Relexer.Damage damage = Relexer.relex(buffer, TextEdit.insert(8, "5"));
+
+        assertThat(damage).isEqualTo(new Relexer.Damage(1, 1, 1));
+        assertThat(buffer.text(1)).isEqualTo("125");
+        assertThat(buffer.token(6)).isEqualTo(new Token(TokenType.INTEGER, "4", new Position(2, 7)));
+    }
+
+    @Test
+    public void shouldRelexEditsThatOpenAndCloseComments() {
+        var source = EditableSource.of("print 1 / 2;\nprint 3;\nprint 4;\n");
+        TokenBuffer buffer = TokenBuffer.tokenize(source);
+
+        // Turning the divide into a comment swallows everything up to the end of the program
+        Relexer.relex(buffer, TextEdit.insert(9, "*"));
+        assertThat(buffer.size()).isEqualTo(4);
+        assertThat(buffer.type(2)).isEqualTo(TokenType.COMMENT);
+
+        // Closing it again brings back the statements after it
+        Relexer.Damage damage = Relexer.relex(buffer, TextEdit.insert(20, "*/"));
+        assertThat(source.decode(0, (int) source.length())).isEqualTo("print 1 /* 2;\nprint */3;\nprint 4;\n");
+        assertThat(damage.from()).isEqualTo(2);
+        assertThat(buffer.text(2)).isEqualTo("/* 2;\nprint */");
+        assertThat(buffer.token(3)).isEqualTo(new Token(TokenType.INTEGER, "3", new Position(2, 9)));
+        assertThat(buffer.token(5)).isEqualTo(new Token(TokenType.PRINT, "print", new Position(3, 1)));
+
+        // Deleting the comment's closing */ reopens it; deleting the comment entirely leaves the statement
+        Relexer.relex(buffer, TextEdit.delete(20, 2));
+        assertThat(buffer.type(buffer.size() - 2)).isEqualTo(TokenType.COMMENT);
+        Relexer.relex(buffer, TextEdit.delete(8, 12));
+        assertThat(source.decode(0, (int) source.length())).isEqualTo("print 1 3;\nprint 4;\n");
+        assertThat(buffer.size()).isEqualTo(8);
+    }
+
+    @Test
+    public void shouldRelexToTheSameTokensAsAFullTokenize() {
+        var random = new Random(7);
+        String[] fragments = {"print", " ", "\n", "1", "2.5", ".", "+", "-", "*", "/", "(", ")", ";", "/*", "*/",
+                "//", "é", "x", "12", "print 3;\n"};
+
+        var text = new StringBuilder("/* header */\nprint (2 + 3) * 4; // comment\nprint 1.5 / .5;\n");
+        var source = EditableSource.of(text.toString());
+        TokenBuffer buffer = TokenBuffer.tokenize(source);
+
+        for (int edit = 0; edit < 2_000; edit++) {
+            int at = random.nextInt(text.length() + 1);
+            int end = Math.min(at + random.nextInt(4), text.length());
+            String inserted = random.nextInt(3) == 0 ? "" : fragments[random.nextInt(fragments.length)];
+
+            // Edits are given in bytes
+            int offset = utf8Length(text.substring(0, at));
+            int removed = utf8Length(text.substring(at, end));
+
+            text.replace(at, end, inserted);
+            Relexer.relex(buffer, new TextEdit(offset, removed, inserted));
+
+            TokenBuffer expected = TokenBuffer.tokenize(Source.of(text.toString()));
+            assertThat(buffer.size()).isEqualTo(expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(buffer.start(i)).isEqualTo(expected.start(i));
+                assertThat(buffer.token(i)).isEqualTo(expected.token(i));
+
+                // The columns kept through the edits agree with a scan of the line, not just with another buffer
+                assertThat(buffer.column(i)).isEqualTo(buffer.lines().columnOf(source, buffer.start(i)));
+            }
+        }
+    }
+
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
 }
@@ -23,11 +23,14 @@
 package com.github.rharri.wabbitj;
 
 import com.github.rharri.wabbitj.ast.*;
+import com.github.rharri.wabbitj.interpreter.WabbitType;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class TypeCheckerTest {
 
@@ -50,4 +53,62 @@ public class TypeCheckerTest {
 
         assertEquals(1, typeErrors.size());
     }
+
+    @Test
+    public void shouldCollectStructuredDiagnosticsAndRenderThemLazily() {
+        var programText = "print 1;\nprint (1 * 2.0) - 3;\nprint -(2 + 3) * 4;\n";
+        AbstractSyntaxTree ast = new Parser(Tokenizer.tokenize(programText)).parse();
+
+        var typeChecker = new TypeChecker("test.wb", programText);
+        ast.accept(typeChecker);
+
+        List<Diagnostic> diagnostics = typeChecker.getDiagnostics();
+        assertEquals(1, diagnostics.size());
+
+        Diagnostic diagnostic = diagnostics.get(0);
+        assertEquals(Diagnostic.UNSUPPORTED_OPERAND_TYPES, diagnostic.code());
+        assertEquals(2, diagnostic.line());
+        assertEquals(10, diagnostic.column());
+        assertEquals(18, diagnostic.offset());
+        assertEquals(Operator.TIMES, diagnostic.operator());
+        assertEquals(List.of(WabbitType.INT, WabbitType.FLOAT), diagnostic.operandTypes());
+
+        assertEquals("""
+                File 'test.wb', line 2, col 10
+                \tprint (1 * 2.0) - 3;
+                \t         ^------
+                Type Error: unsupported operand type(s) for TIMES: 'INT' and 'FLOAT'.
+                """, typeChecker.getErrors().get(0));
+    }
+
+    @Test
+    public void shouldWriteDiagnosticsAsJson() {
+        var diagnostic = new Diagnostic(Diagnostic.UNSUPPORTED_OPERAND_TYPES, "Type Error: 'INT' and \"FLOAT\".",
+                "test.wb", 1, 9, 8, Operator.PLUS, List.of(WabbitType.INT, WabbitType.FLOAT));
+
+        assertEquals("[{\"code\":\"WB001\",\"message\":\"Type Error: 'INT' and \\\"FLOAT\\\".\",\"file\":\"test.wb\","
+                + "\"line\":1,\"column\":9,\"offset\":8,\"operator\":\"PLUS\",\"operandTypes\":[\"INT\",\"FLOAT\"]}]",
+                Diagnostic.toJson(List.of(diagnostic)));
+    }
+
+    @Test
+    public void shouldRecordTheTypeOfEveryExpression() {
+        var intLiteral = new IntLiteral(2, 1, 8);
+        var sameIntLiteral = new IntLiteral(2, 1, 8);
+        var grouping = new Grouping(new BinaryOp(Operator.PLUS, intLiteral, sameIntLiteral, 1, 10));
+        var floatLiteral = new FloatLiteral(1.5f, 2, 8);
+        var unaryOp = new UnaryOp(Operator.MINUS, floatLiteral);
+        var statements = new Statements();
+        statements.add(new Print(grouping));
+        statements.add(new Print(unaryOp));
+        var program = new Program(statements);
+
+        var typeChecker = new TypeChecker("test.wb", "print (2 + 2);\nprint -1.5;\n");
+        program.accept(typeChecker);
+
+        assertEquals(WabbitType.INT, typeChecker.typeOf(grouping));
+        assertEquals(WabbitType.INT, typeChecker.typeOf(sameIntLiteral));
+        assertEquals(WabbitType.FLOAT, typeChecker.typeOf(unaryOp));
+        assertThrows(IllegalArgumentException.class, () -> typeChecker.typeOf(new IntLiteral(2, 1, 8)));
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.ast.AbstractSyntaxTree;
+import com.github.rharri.wabbitj.interpreter.JavaRuntime;
+import com.github.rharri.wabbitj.tokenizer.Tokenizer;
+import com.github.rharri.wabbitj.vm.Bytecode;
+import com.github.rharri.wabbitj.vm.BytecodeCompiler;
+import com.github.rharri.wabbitj.vm.Opcode;
+import com.github.rharri.wabbitj.vm.VirtualMachine;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VirtualMachineTest {
+
+    record Checked(AbstractSyntaxTree ast, TypeChecker typeChecker) {
+    }
+
+    private static Checked check(String programText) {
+        AbstractSyntaxTree ast = new Parser(Tokenizer.tokenize(programText)).parse();
+        var typeChecker = new TypeChecker("test.wb", programText);
+        ast.accept(typeChecker);
+        return new Checked(ast, typeChecker);
+    }
+
+    private static String runOnVirtualMachine(String programText) {
+        Checked checked = check(programText);
+        var out = new ByteArrayOutputStream();
+        new VirtualMachine(new JavaRuntime(new PrintStream(out))).run(
+                BytecodeCompiler.compile(checked.ast(), checked.typeChecker()));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldCompileToTypedInstructionsWithAConstantPool() {
+        Checked checked = check("print (2 + 3) * 2; print -+1.5;");
+
+        Bytecode bytecode = BytecodeCompiler.compile(checked.ast(), checked.typeChecker());
+
+        assertThat(bytecode.disassemble()).isEqualTo("""
+                0000 ICONST 2
+                0002 ICONST 3
+                0004 IADD
+                0005 ICONST 2
+                0007 IMUL
+                0008 PRINT_I
+                0009 FCONST 1.5
+                0011 FABS
+                0012 FNEG
+                0013 PRINT_F
+                0014 HALT
+                """);
+        assertThat(bytecode.constantCount()).isEqualTo(3);
+        assertThat(bytecode.maxStack()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldKeepJavaSemanticsForEdgeCases() {
+        String output = runOnVirtualMachine("""
+                print 2147483647 + 1;
+                print (0 - 2147483647 - 1) / -1;
+                print +-0.0;
+                print 1.0 / 0.0;
+                print 7 / -2;
+                """);
+
+        assertThat(output.lines()).containsExactly("-2147483648", "-2147483648", "-0.0", "Infinity", "-3");
+    }
+
+    @Test
+    public void shouldCompileLongAndDeeplyNestedExpressions() {
+        // Both the chain and the nesting are deeper than the compiler could recurse
+        assertThat(runOnVirtualMachine("print 0" + " + 1".repeat(100_000) + ";")).isEqualTo("100000\n");
+        assertThat(runOnVirtualMachine("print " + "1 - (".repeat(100_000) + "1" + ")".repeat(100_000) + ";"))
+                .isEqualTo("1\n");
+        assertThat(runOnVirtualMachine("print " + "-".repeat(100_001) + "2.5;")).isEqualTo("-2.5\n");
+    }
+
+    @Test
+    public void shouldReportTheLineOfADivisionByZero() {
+        assertThatThrownBy(() -> runOnVirtualMachine("print 1;\nprint 2 +\n 3 / 0;\n"))
+                .isInstanceOf(ArithmeticException.class)
+                .hasMessage("/ by zero on line 3");
+    }
+
+    @Test
+    public void shouldNotReportABadIndexInCompiledBytecodeAsADamagedArtifact() {
+        var bytecode = new Bytecode(new int[]{Opcode.ICONST, 99, Opcode.PRINT_I, Opcode.HALT}, new int[]{1}, 1);
+        var machine = new VirtualMachine(new JavaRuntime(new PrintStream(new ByteArrayOutputStream())));
+
+        assertThatThrownBy(() -> machine.run(bytecode)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+}
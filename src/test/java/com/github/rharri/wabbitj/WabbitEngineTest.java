@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2023. Ryan Harri
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.rharri.wabbitj;
+
+import com.github.rharri.wabbitj.engine.CompilationException;
+import com.github.rharri.wabbitj.engine.CompiledScript;
+import com.github.rharri.wabbitj.engine.WabbitEngine;
+import org.junit.jupiter.api.Test;
+
+import javax.script.Compilable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WabbitEngineTest {
+
+    private static final String PROGRAM = """
+            print 2147483647 + 1;
+            print 7 / -2;
+            print +-0.0;
+            print 0.1 + 0.2;
+            print (1.5 * 4.0) / 3.0;
+            """;
+
+    private static final String EXPECTED = "-2147483648\n-3\n-0.0\n0.3\n2.0\n";
+
+    private static String run(CompiledScript script) {
+        var out = new ByteArrayOutputStream();
+        script.run(new PrintStream(out, true, StandardCharsets.UTF_8));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldRunACompiledScriptFromManyThreadsAtOnce() throws Exception {
+        for (WabbitEngine.Backend backend : WabbitEngine.Backend.values()) {
+            CompiledScript script = new WabbitEngine(backend, false).compile("program.wb", PROGRAM);
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<String>> outputs = new ArrayList<>();
+                for (int i = 0; i < 64; i++)
+                    outputs.add(executor.submit(() -> run(script)));
+
+                for (Future<String> output : outputs)
+                    assertThat(output.get()).as(backend.toString()).isEqualTo(EXPECTED);
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void shouldPrintTheSameWithTheOptimizer() throws CompilationException {
+        assertThat(run(new WabbitEngine().compile(PROGRAM))).isEqualTo(EXPECTED);
+    }
+
+    @Test
+    public void shouldCompileLongAndDeeplyNestedExpressions() throws CompilationException {
+        int depth = 100_000;
+        String programText = "print " + "(".repeat(depth) + "1" + ")".repeat(depth) + ";\n"
+                + "print 0" + " + 1".repeat(depth) + ";\n"
+                + "print " + "1 - (".repeat(depth) + "1" + ")".repeat(depth) + ";\n";
+
+        for (WabbitEngine.Backend backend : WabbitEngine.Backend.values()) {
+            for (boolean optimize : new boolean[]{false, true}) {
+                var engine = new WabbitEngine(backend, optimize);
+                assertThat(run(engine.compile("deep.wb", programText))).as(backend + ", optimize=" + optimize)
+                        .isEqualTo("1\n" + depth + "\n1\n");
+            }
+        }
+    }
+
+    @Test
+    public void shouldReportTypeErrorsAsDiagnostics() {
+        assertThatThrownBy(() -> new WabbitEngine().compile("bad.wb", "print 1;\nprint 1 + 2.0;\n"))
+                .isInstanceOfSatisfying(CompilationException.class, e -> {
+                    assertThat(e.getMessage()).contains("File 'bad.wb', line 2, col 9").contains("Type Error");
+                    assertThat(e.diagnostics()).singleElement()
+                            .satisfies(diagnostic -> assertThat(diagnostic.line()).isEqualTo(2));
+                });
+    }
+
+    @Test
+    public void shouldReportSyntaxErrors() {
+        assertThatThrownBy(() -> new WabbitEngine().compile("bad.wb", "print 1 +;"))
+                .isInstanceOfSatisfying(CompilationException.class, e -> {
+                    assertThat(e.getMessage()).startsWith("bad.wb: ");
+                    assertThat(e.diagnostics()).isEmpty();
+                });
+
+        // A statement that does not start with print used to leave the parser looping on the same token
+        assertThatThrownBy(() -> new WabbitEngine().compile("1;"))
+                .isInstanceOf(CompilationException.class)
+                .hasMessage("<script>: Parser error: Unexpected token INTEGER.");
+    }
+
+    @Test
+    public void shouldBeFoundAsAScriptEngine() throws ScriptException {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("wabbit");
+        assertThat(engine).isNotNull();
+        assertThat(new ScriptEngineManager().getEngineByExtension("wb")).isNotNull();
+
+        var out = new StringWriter();
+        ScriptContext context = new SimpleScriptContext();
+        context.setWriter(out);
+
+        javax.script.CompiledScript script = ((Compilable) engine).compile(PROGRAM);
+        script.eval(context);
+        script.eval(context);
+
+        assertThat(out.toString()).isEqualTo((EXPECTED + EXPECTED).replace("\n", System.lineSeparator()));
+    }
+
+    @Test
+    public void shouldReportErrorsAsScriptExceptions() {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("wabbitj");
+        engine.put(ScriptEngine.FILENAME, "bad.wb");
+        engine.getContext().setWriter(new StringWriter());
+
+        assertThatThrownBy(() -> engine.eval("print 1;\nprint 1 + 2.0;\n"))
+                .isInstanceOfSatisfying(ScriptException.class, e -> {
+                    assertThat(e.getFileName()).isEqualTo("bad.wb");
+                    assertThat(e.getLineNumber()).isEqualTo(2);
+                    assertThat(e.getColumnNumber()).isEqualTo(9);
+                });
+        assertThatThrownBy(() -> engine.eval("print 1 / 0;"))
+                .isInstanceOf(ScriptException.class)
+                .hasCauseInstanceOf(ArithmeticException.class);
+    }
+}